@@ -0,0 +1,85 @@
+package com.example.kv_store.bench;
+
+import com.example.kv_store.service.AffinityService;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Routing lookups done on every request: key to partition, partition to
+ * owners, and the "am I primary" check. The {@code *Contended} variants run
+ * on 8 threads to show whether the shared routing table scales.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class AffinityBenchmark {
+
+    @Param({"jdk", "murmur3"})
+    public String hash;
+
+    @Param({"ring", "rendezvous"})
+    public String assignment;
+
+    private AffinityService affinity;
+
+    @Setup
+    public void setUp() {
+        affinity = new AffinityService("node1", 271, "node1,node2,node3", 1, hash, assignment,
+                new StandardEnvironment());
+    }
+
+    /** Per-thread cursor over a fixed key set, so threads do not share a counter. */
+    @State(Scope.Thread)
+    public static class Keys {
+        final String[] keys = BenchData.keys(1024);
+        int next;
+
+        String next() {
+            return keys[next++ & (keys.length - 1)];
+        }
+    }
+
+    @Benchmark
+    public int partition(Keys keys) {
+        return affinity.partition(keys.next());
+    }
+
+    @Benchmark
+    public List<String> owners(Keys keys) {
+        return affinity.owners(affinity.partition(keys.next()));
+    }
+
+    @Benchmark
+    public boolean isPrimaryOwner(Keys keys) {
+        return affinity.isPrimaryOwner(keys.next());
+    }
+
+    @Benchmark
+    @Threads(8)
+    public List<String> ownersContended(Keys keys) {
+        return affinity.owners(affinity.partition(keys.next()));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public boolean isPrimaryOwnerContended(Keys keys) {
+        return affinity.isPrimaryOwner(keys.next());
+    }
+}
@@ -0,0 +1,25 @@
+package com.example.kv_store.bench;
+
+import java.util.Random;
+
+/** Deterministic keys and values shared by the benchmarks. */
+final class BenchData {
+
+    private BenchData() {
+    }
+
+    /** {@code n} keys shaped like real ones ("user:123"); {@code n} should be a power of two. */
+    static String[] keys(int n) {
+        String[] keys = new String[n];
+        for (int i = 0; i < n; i++) {
+            keys[i] = "user:" + i;
+        }
+        return keys;
+    }
+
+    static byte[] value(int size) {
+        byte[] value = new byte[size];
+        new Random(42).nextBytes(value);
+        return value;
+    }
+}
@@ -0,0 +1,87 @@
+package com.example.kv_store.bench;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Entity construction and TTL handling as done per write and per read:
+ * building the row, turning a TTL into {@code expireAt}, the
+ * {@code isExpired} check and the epoch-millis round trip used by replication.
+ * Run with {@code -prof gc} to see the bytes allocated per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class KeyValueEntityBenchmark {
+
+    private static final Duration TTL = Duration.ofMinutes(5);
+
+    private final byte[] value = BenchData.value(128);
+    private final KeyValueEntity noTtl = entity(null);
+    private final KeyValueEntity live = entity(LocalDateTime.now().plusDays(1));
+    private final KeyValueEntity expired = entity(LocalDateTime.now().minusDays(1));
+
+    private KeyValueEntity entity(LocalDateTime expireAt) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey("user:1");
+        e.setValue(value);
+        e.setExpireAt(expireAt);
+        e.setPartitionId(7);
+        return e;
+    }
+
+    @Benchmark
+    public KeyValueEntity construct() {
+        return entity(null);
+    }
+
+    @Benchmark
+    public KeyValueEntity constructWithTtl() {
+        return entity(LocalDateTime.now().plus(TTL));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public KeyValueEntity constructWithTtlContended() {
+        return entity(LocalDateTime.now().plus(TTL));
+    }
+
+    @Benchmark
+    public boolean isExpiredNoTtl() {
+        return noTtl.isExpired();
+    }
+
+    @Benchmark
+    public boolean isExpiredLive() {
+        return live.isExpired();
+    }
+
+    @Benchmark
+    public boolean isExpiredExpired() {
+        return expired.isExpired();
+    }
+
+    @Benchmark
+    public LocalDateTime expireAtEpochRoundTrip() {
+        long millis = live.getExpireAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
+    }
+}
@@ -0,0 +1,235 @@
+package com.example.kv_store.bench;
+
+import com.example.kv_store.antientropy.MerkleTrees;
+import com.example.kv_store.cache.HotKeyDetector;
+import com.example.kv_store.cache.NearCache;
+import com.example.kv_store.cache.PartitionBloomFilters;
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.replication.ReplicaFreshness;
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.storage.InMemoryStorageEngine;
+import com.example.kv_store.transport.PeerClient;
+import com.example.kv_store.transport.PeerHealth;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Local get/put through {@link DistributedKeyValueService}: routing, partition
+ * gate, key lock, near cache, codec, metrics and replication enqueue, against
+ * {@link InMemoryStorageEngine}. Only keys this node is primary for are used,
+ * so nothing is forwarded; with {@code backups=1} every put is queued for a
+ * backup that acks at once.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LocalPathBenchmark {
+
+    private static final int KEYS = 4096;
+
+    @Param({"0", "1"})
+    public int backups;
+
+    @Param({"true", "false"})
+    public boolean nearCache;
+
+    @Param({"128", "4096"})
+    public int valueSize;
+
+    private DistributedKeyValueService service;
+    private ReplicationPipeline replication;
+    private String[] keys;
+    private byte[] value;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        AffinityService affinity = new AffinityService("node1", 271, backups == 0 ? "node1" : "node1,node2",
+                backups, "murmur3", "ring", new StandardEnvironment());
+        HotPathMetrics metrics = new HotPathMetrics(true, 64);
+        PeerClient peers = new AckingPeerClient();
+        replication = new ReplicationPipeline(affinity, peers, metrics, 10_000, 256, 5, 200, 5_000, 250);
+        InMemoryStorageEngine storage = new InMemoryStorageEngine();
+        service = new DistributedKeyValueService(
+                storage,
+                affinity,
+                new NearCache(nearCache, 64L << 20, 16, 65_536),
+                peers,
+                replication,
+                new ReplicaFreshness(),
+                new ValueCodec(false, 512, 1),
+                metrics,
+                new HotKeyDetector(true, 500, 1_000, 16, 4096, 250),
+                new PeerHealth(metrics, 5, 2_000, true, 0.95, 2, 20),
+                new MerkleTrees(affinity, 256),
+                new PartitionBloomFilters(affinity, storage, false, 10, 0.05, 5_000),
+                2_000, 4_000, "primary", "strong", 1_000, 65_536, true, 500, 4, 64 << 20, 1, 2);
+
+        keys = Arrays.stream(BenchData.keys(KEYS * 4)).filter(affinity::isPrimaryOwner).limit(KEYS).toArray(String[]::new);
+        value = BenchData.value(valueSize);
+        for (String key : keys) {
+            service.put(key, value, null).join();
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        replication.shutdown();
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    private String key(Cursor c) {
+        return keys[c.next++ & (KEYS - 1)];
+    }
+
+    @Benchmark
+    public Optional<byte[]> get(Cursor c) {
+        return service.get(key(c)).join();
+    }
+
+    @Benchmark
+    public Void put(Cursor c) {
+        return service.put(key(c), value, null).join();
+    }
+
+    @Benchmark
+    public Void putWithTtl(Cursor c) {
+        return service.put(key(c), value, Duration.ofMinutes(5)).join();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Optional<byte[]> getContended(Cursor c) {
+        return service.get(key(c)).join();
+    }
+
+    @Benchmark
+    @Threads(8)
+    public Void putContended(Cursor c) {
+        return service.put(key(c), value, null).join();
+    }
+
+    /** Backup that acks every batch without doing anything; the benchmarks never forward. */
+    private static final class AckingPeerClient implements PeerClient {
+
+        @Override
+        public CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch) {
+            long last = batch.ops().isEmpty() ? 0 : batch.ops().get(batch.ops().size() - 1).seq();
+            return CompletableFuture.completedFuture(last);
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> get(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey,
+                                                          String prefix, int limit) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves) {
+            return unexpected();
+        }
+
+        private static <T> CompletableFuture<T> unexpected() {
+            return CompletableFuture.failedFuture(new IllegalStateException("Benchmark key is not local"));
+        }
+    }
+}
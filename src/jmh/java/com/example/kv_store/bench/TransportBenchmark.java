@@ -0,0 +1,229 @@
+package com.example.kv_store.bench;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.transport.BinaryPeerClient;
+import com.example.kv_store.transport.BinaryTransportServer;
+import com.example.kv_store.transport.HttpPeerClient;
+import com.example.kv_store.transport.PeerClient;
+import com.example.kv_store.transport.TransportHandler;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.env.MockEnvironment;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A forwarded get over loopback, binary transport vs HTTP, against a peer
+ * that answers from a map: {@code get} has one call in flight and reports
+ * latency percentiles, {@code getPipelined} has 64.
+ */
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TransportBenchmark {
+
+    private static final String PEER = "node2";
+    private static final int KEYS = 1024;
+
+    @Param({"binary", "http"})
+    public String transport;
+
+    @Param({"256"})
+    public int valueSize;
+
+    private final Map<String, byte[]> store = new ConcurrentHashMap<>();
+    private BinaryTransportServer binaryServer;
+    private HttpServer httpServer;
+    private BinaryPeerClient binary;
+    private PeerClient client;
+    private String[] keys;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        keys = BenchData.keys(KEYS);
+        byte[] value = BenchData.value(valueSize);
+        for (String key : keys) {
+            store.put(key, value);
+        }
+
+        if (transport.equals("binary")) {
+            binaryServer = new BinaryTransportServer(new MapHandler(store), new InetSocketAddress("localhost", 0));
+            binary = new BinaryPeerClient(Map.of(PEER, new InetSocketAddress("localhost", binaryServer.port())),
+                    4, 500, 10_000);
+            client = binary;
+        } else {
+            System.setProperty("sun.net.httpserver.nodelay", "true"); // else Nagle adds ~40ms; the fork is ours
+            httpServer = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+            httpServer.createContext("/internal/kv/", this::serveGet);
+            httpServer.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+            httpServer.start();
+            MockEnvironment env = new MockEnvironment()
+                    .withProperty("cluster.nodeUrls." + PEER, "http://localhost:" + httpServer.getAddress().getPort());
+            AffinityService affinity = new AffinityService("node1", 8, "node1," + PEER, 1, "murmur3", "ring", env);
+            client = new HttpPeerClient(affinity, WebClient.builder(), 1024 * 1024, 500, 2_000);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        if (binary != null) binary.close();
+        if (binaryServer != null) binaryServer.close();
+        if (httpServer != null) httpServer.stop(0);
+    }
+
+    @State(Scope.Thread)
+    public static class Cursor {
+        int next;
+    }
+
+    private String key(Cursor c) {
+        return keys[c.next++ & (KEYS - 1)];
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.SampleTime)
+    @OutputTimeUnit(TimeUnit.MICROSECONDS)
+    public Optional<byte[]> get(Cursor c) {
+        return client.get(PEER, key(c)).join();
+    }
+
+    @Benchmark
+    @BenchmarkMode(Mode.Throughput)
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    @Threads(64)
+    public Optional<byte[]> getPipelined(Cursor c) {
+        return client.get(PEER, key(c)).join();
+    }
+
+    private void serveGet(HttpExchange exchange) throws IOException {
+        String key = URLDecoder.decode(
+                exchange.getRequestURI().getRawPath().substring("/internal/kv/".length()), StandardCharsets.UTF_8);
+        byte[] value = store.get(key);
+        if (value == null) {
+            exchange.sendResponseHeaders(404, -1);
+        } else {
+            exchange.getResponseHeaders().add("Content-Type", "application/octet-stream");
+            exchange.sendResponseHeaders(200, value.length);
+            exchange.getResponseBody().write(value);
+        }
+        exchange.close();
+    }
+
+    /** Serves gets from the map; the benchmarks call nothing else. */
+    private record MapHandler(Map<String, byte[]> store) implements TransportHandler {
+
+        @Override
+        public Optional<byte[]> get(String key) {
+            return Optional.ofNullable(store.get(key));
+        }
+
+        @Override
+        public Optional<byte[]> getReplica(String key, long maxStalenessMs) {
+            throw unexpected();
+        }
+
+        @Override
+        public void put(String key, byte[] value, Duration ttl) {
+            throw unexpected();
+        }
+
+        @Override
+        public void delete(String key) {
+            throw unexpected();
+        }
+
+        @Override
+        public Map<String, byte[]> getAll(Collection<String> keys) {
+            throw unexpected();
+        }
+
+        @Override
+        public void putAll(Map<String, byte[]> entries, Duration ttl) {
+            throw unexpected();
+        }
+
+        @Override
+        public void deleteAll(Collection<String> keys) {
+            throw unexpected();
+        }
+
+        @Override
+        public AtomicResult atomic(AtomicOp op) {
+            throw unexpected();
+        }
+
+        @Override
+        public long replicate(ReplicationBatch batch) {
+            throw unexpected();
+        }
+
+        @Override
+        public Optional<VersionedValue> getVersioned(String key) {
+            throw unexpected();
+        }
+
+        @Override
+        public void readRepair(String key, Collection<String> staleNodes) {
+            throw unexpected();
+        }
+
+        @Override
+        public Map<String, byte[]> scan(int partitionId, String afterKey, String prefix, int limit) {
+            throw unexpected();
+        }
+
+        @Override
+        public Optional<byte[]> getLeased(String key, String holder, long leaseMs) {
+            throw unexpected();
+        }
+
+        @Override
+        public void invalidate(Collection<String> keys) {
+            throw unexpected();
+        }
+
+        @Override
+        public long[] merkleHashes(int[] partitions, int[] nodes) {
+            throw unexpected();
+        }
+
+        @Override
+        public Map<String, Long> merkleEntries(int partitionId, int[] leaves) {
+            throw unexpected();
+        }
+
+        private static UnsupportedOperationException unexpected() {
+            return new UnsupportedOperationException("not benchmarked");
+        }
+    }
+}
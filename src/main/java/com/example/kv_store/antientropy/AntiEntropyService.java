@@ -0,0 +1,330 @@
+package com.example.kv_store.antientropy;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.rebalance.RateLimiter;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.storage.StorageEngine;
+import com.example.kv_store.transport.PeerClient;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Repairs backups that have drifted from their primary, using the per-partition
+ * hash trees in {@link MerkleTrees}.
+ *
+ * Every {@code kv.anti-entropy.interval-ms}, or within a second of the
+ * replication pipeline marking a backup's partition dirty, each node compares
+ * the partitions it is primary for with every backup:
+ * <ol>
+ *   <li>Wait until the backup has applied everything queued for it, then ask
+ *       it for the roots of all the partitions they share in one call. Equal
+ *       roots mean equal copies, so a cluster in sync costs one small call per
+ *       backup and round.</li>
+ *   <li>For each partition whose roots differ, walk down the tree a level at
+ *       a time, asking only for the children of nodes that differ.</li>
+ *   <li>At the differing leaves, compare the per-key hashes and queue the
+ *       primary's current copy (or a delete) of each key that differs, through
+ *       the backup's replication stream so it lands in order with live writes.</li>
+ * </ol>
+ * Tree exchange and repair traffic, and the scans that build the trees, are
+ * throttled by {@code kv.anti-entropy.max-bytes-per-sec}.
+ */
+@Component
+public class AntiEntropyService {
+
+    private static final Logger log = LoggerFactory.getLogger(AntiEntropyService.class);
+
+    private static final long CHECK_MS = 1_000;
+    private static final int LEAVES_PER_CALL = 16;
+
+    private final AffinityService affinity;
+    private final DistributedKeyValueService service;
+    private final StorageEngine storage;
+    private final MerkleTrees trees;
+    private final ReplicationPipeline replication;
+    private final PeerClient peers;
+    private final boolean enabled;
+    private final long intervalMs;
+    private final int batchSize;
+    private final long callTimeoutMs;
+    private final RateLimiter limiter;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder rounds = new LongAdder();
+    private final LongAdder treesBuilt = new LongAdder();
+    private final LongAdder partitionsCompared = new LongAdder();
+    private final LongAdder partitionsInSync = new LongAdder();
+    private final LongAdder partitionsNotReady = new LongAdder();
+    private final LongAdder partitionsRepaired = new LongAdder();
+    private final LongAdder treeNodesFetched = new LongAdder();
+    private final LongAdder keysRepaired = new LongAdder();
+    private final LongAdder bytesRepaired = new LongAdder();
+    private final LongAdder failedComparisons = new LongAdder();
+    private volatile long nextRoundAt;
+    private volatile long lastRoundMillis;
+
+    public AntiEntropyService(AffinityService affinity,
+                              DistributedKeyValueService service,
+                              StorageEngine storage,
+                              MerkleTrees trees,
+                              ReplicationPipeline replication,
+                              PeerClient peers,
+                              @Value("${kv.anti-entropy.enabled:true}") boolean enabled,
+                              @Value("${kv.anti-entropy.interval-ms:60000}") long intervalMs,
+                              @Value("${kv.anti-entropy.max-bytes-per-sec:4194304}") long maxBytesPerSec,
+                              @Value("${kv.anti-entropy.batch-size:500}") int batchSize,
+                              @Value("${kv.anti-entropy.call-timeout-ms:5000}") long callTimeoutMs) {
+        this.affinity = affinity;
+        this.service = service;
+        this.storage = storage;
+        this.trees = trees;
+        this.replication = replication;
+        this.peers = peers;
+        this.enabled = enabled;
+        this.intervalMs = intervalMs;
+        this.batchSize = Math.max(1, batchSize);
+        this.callTimeoutMs = callTimeoutMs;
+        this.limiter = new RateLimiter(maxBytesPerSec);
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kv-anti-entropy");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Schedules the rounds, the first one interval after startup. */
+    @PostConstruct
+    public void start() {
+        if (!enabled) return;
+        nextRoundAt = System.currentTimeMillis() + intervalMs;
+        executor.scheduleWithFixedDelay(this::checkSafely, CHECK_MS, CHECK_MS, TimeUnit.MILLISECONDS);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("intervalMs", intervalMs);
+        stats.put("maxBytesPerSec", limiter.rate());
+        stats.put("treesReady", trees.readyCount());
+        stats.put("leavesPerPartition", trees.leaves());
+        stats.put("rounds", rounds.sum());
+        stats.put("treesBuilt", treesBuilt.sum());
+        stats.put("partitionsCompared", partitionsCompared.sum());
+        stats.put("partitionsInSync", partitionsInSync.sum());
+        stats.put("partitionsNotReady", partitionsNotReady.sum());
+        stats.put("partitionsRepaired", partitionsRepaired.sum());
+        stats.put("treeNodesFetched", treeNodesFetched.sum());
+        stats.put("keysRepaired", keysRepaired.sum());
+        stats.put("bytesRepaired", bytesRepaired.sum());
+        stats.put("failedComparisons", failedComparisons.sum());
+        stats.put("lastRoundMillis", lastRoundMillis);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ---------- Rounds ----------
+
+    private void checkSafely() {
+        boolean dirty = replication.dirtyPartitions().values().stream().anyMatch(s -> !s.isEmpty());
+        if (!dirty && System.currentTimeMillis() < nextRoundAt) return;
+        try {
+            runRound();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Anti-entropy round failed", e);
+        } finally {
+            nextRoundAt = System.currentTimeMillis() + intervalMs;
+        }
+    }
+
+    /** Builds missing trees, then compares this node's primary partitions with each backup. */
+    public synchronized void runRound() throws InterruptedException {
+        long start = System.currentTimeMillis();
+        buildTrees();
+
+        String local = affinity.getLocalNodeId();
+        Map<String, List<Integer>> byBackup = new TreeMap<>();
+        for (int p = 0; p < affinity.getPartitions(); p++) {
+            List<String> owners = affinity.owners(p);
+            if (!owners.get(0).equals(local) || !trees.isReady(p)) continue;
+            for (String backup : owners.subList(1, owners.size())) {
+                byBackup.computeIfAbsent(backup, n -> new ArrayList<>()).add(p);
+            }
+        }
+        for (Map.Entry<String, List<Integer>> e : byBackup.entrySet()) {
+            try {
+                compareWith(e.getKey(), e.getValue());
+            } catch (InterruptedException ie) {
+                throw ie;
+            } catch (Exception ex) {
+                failedComparisons.increment();
+                log.warn("Anti-entropy with {} failed: {}", e.getKey(), ex.toString());
+            }
+        }
+        rounds.increment();
+        lastRoundMillis = System.currentTimeMillis() - start;
+    }
+
+    /** Starts tracking partitions this node has come to own and stops tracking those it lost. */
+    private void buildTrees() throws InterruptedException {
+        String local = affinity.getLocalNodeId();
+        for (int p = 0; p < affinity.getPartitions(); p++) {
+            boolean owned = affinity.owners(p).contains(local);
+            if (!owned && trees.isTracked(p)) {
+                trees.drop(p);
+            } else if (owned && !trees.isTracked(p)) {
+                build(p);
+            }
+        }
+    }
+
+    private void build(int partitionId) throws InterruptedException {
+        MerkleTrees.Build build = trees.startBuild(partitionId);
+        if (build == null) return;
+        try {
+            String after = null;
+            while (true) {
+                List<KeyValueEntity> page = storage.scanPartition(partitionId, after, batchSize);
+                if (page.isEmpty()) break;
+                limiter.acquire(page.stream().mapToLong(e -> e.getValue().length).sum());
+                page.forEach(build::add);
+                after = page.get(page.size() - 1).getKey();
+            }
+        } catch (InterruptedException | RuntimeException e) {
+            build.abandon();
+            throw e;
+        }
+        if (build.finish()) treesBuilt.increment();
+    }
+
+    // ---------- Comparing with one backup ----------
+
+    private void compareWith(String backup, List<Integer> partitions) throws Exception {
+        // ops already queued for the backup are not differences
+        replication.barrier(backup).get(callTimeoutMs, TimeUnit.MILLISECONDS);
+        // a spill from here on marks the partition again for the next round
+        Set<Integer> dirty = replication.dirtyPartitions().getOrDefault(backup, Set.of());
+        long dirtySince = replication.dirtySinceMillis(backup);
+        partitions.forEach(p -> replication.clearDirty(backup, p));
+        try {
+            compareWith(backup, partitions, dirty, dirtySince);
+        } catch (Exception e) {
+            dirty.forEach(p -> replication.markDirty(backup, p, dirtySince));
+            throw e;
+        }
+    }
+
+    private void compareWith(String backup, List<Integer> partitions, Set<Integer> dirty, long dirtySince)
+            throws Exception {
+        int[] ps = partitions.stream().mapToInt(Integer::intValue).toArray();
+        int[] roots = new int[ps.length];
+        Arrays.fill(roots, 1);
+        long[] theirs = call(peers.merkleHashes(backup, ps, roots));
+        long[] ours = trees.hashes(ps, roots);
+        treeNodesFetched.add(ps.length);
+        limiter.acquire(ps.length * 12L);
+
+        List<Integer> differing = new ArrayList<>();
+        for (int i = 0; i < ps.length; i++) {
+            partitionsCompared.increment();
+            if (theirs[i] == MerkleTrees.NOT_READY || ours[i] == MerkleTrees.NOT_READY) {
+                partitionsNotReady.increment();
+                // not repaired, so the backup must not look fresh yet
+                if (dirty.contains(ps[i])) replication.markDirty(backup, ps[i], dirtySince);
+            } else if (theirs[i] == ours[i]) {
+                partitionsInSync.increment();
+            } else {
+                differing.add(ps[i]);
+            }
+        }
+        differing.sort((a, b) -> Boolean.compare(dirty.contains(b), dirty.contains(a))); // dirty first
+        for (int p : differing) {
+            if (!repair(backup, p) && dirty.contains(p)) replication.markDirty(backup, p, dirtySince);
+        }
+    }
+
+    /** Returns false if a tree stopped being ready before the partition was repaired. */
+    private boolean repair(String backup, int partitionId) throws Exception {
+        int leaves = trees.leaves();
+        int[] level = {1};
+        while (level[0] < leaves) {
+            int[] children = new int[level.length * 2];
+            for (int i = 0; i < level.length; i++) {
+                children[2 * i] = 2 * level[i];
+                children[2 * i + 1] = 2 * level[i] + 1;
+            }
+            int[] ps = new int[children.length];
+            Arrays.fill(ps, partitionId);
+            long[] theirs = call(peers.merkleHashes(backup, ps, children));
+            long[] ours = trees.hashes(ps, children);
+            treeNodesFetched.add(children.length);
+            limiter.acquire(children.length * 16L);
+            int n = 0;
+            for (int i = 0; i < children.length; i++) {
+                if (theirs[i] == MerkleTrees.NOT_READY || ours[i] == MerkleTrees.NOT_READY) return false;
+                if (theirs[i] != ours[i]) children[n++] = children[i];
+            }
+            if (n == 0) return true; // converged while we walked down
+            level = Arrays.copyOf(children, n);
+        }
+
+        long keys = 0;
+        for (int from = 0; from < level.length; from += LEAVES_PER_CALL) {
+            int[] chunk = new int[Math.min(LEAVES_PER_CALL, level.length - from)];
+            for (int i = 0; i < chunk.length; i++) {
+                chunk[i] = level[from + i] - leaves;
+            }
+            Map<String, Long> theirs = call(peers.merkleEntries(backup, partitionId, chunk));
+            Map<String, Long> ours = trees.entries(partitionId, chunk);
+            if (ours == null) return false;
+            limiter.acquire(theirs.keySet().stream().mapToLong(k -> k.length() + 8L).sum());
+
+            Set<String> keysToSend = new HashSet<>(theirs.keySet());
+            keysToSend.addAll(ours.keySet());
+            keysToSend.removeIf(k -> Objects.equals(theirs.get(k), ours.get(k)));
+            List<String> batch = new ArrayList<>(keysToSend);
+            for (int i = 0; i < batch.size(); i += batchSize) {
+                List<String> slice = batch.subList(i, Math.min(i + batchSize, batch.size()));
+                long bytes = service.repairKeys(backup, slice);
+                if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                limiter.acquire(bytes);
+                bytesRepaired.add(bytes);
+            }
+            keys += batch.size();
+        }
+        keysRepaired.add(keys);
+        partitionsRepaired.increment();
+        log.info("Anti-entropy repaired {} keys of partition {} on {}", keys, partitionId, backup);
+        return true;
+    }
+
+    private <T> T call(CompletableFuture<T> call) throws Exception {
+        return call.get(callTimeoutMs, TimeUnit.MILLISECONDS);
+    }
+}
@@ -0,0 +1,273 @@
+package com.example.kv_store.antientropy;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.AffinityService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.time.ZoneId;
+import java.util.AbstractMap.SimpleImmutableEntry;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One hash tree per partition over this node's copy of it, kept up to date on
+ * every write so comparing two copies needs no scan.
+ *
+ * A tree has {@code kv.anti-entropy.leaves-per-partition} leaves; a key goes
+ * to the leaf picked by the top bits of its hash. Every stored entry has a
+ * 64-bit hash of key, value, expiry and version, a leaf is the XOR of its entries'
+ * hashes and an inner node the XOR of its two children, so a write updates
+ * one path from leaf to root. Nodes are numbered heap-style: 1 is the root,
+ * the children of n are 2n and 2n+1, leaf i is node {@code leaves + i}.
+ *
+ * The per-key hashes are kept too (a key and a long per entry), so a leaf can
+ * list what it covers without reading storage. A tree is built by scanning the
+ * partition once ({@link #startBuild}); writes made during the scan are
+ * journalled and replayed over it. Until then the partition answers
+ * {@link #NOT_READY} and writes to it are not tracked.
+ */
+@Component
+public class MerkleTrees {
+
+    /** Hash reported for a partition whose tree is not built yet. */
+    public static final long NOT_READY = Long.MIN_VALUE;
+
+    private static final long PRIME = 0x9e3779b97f4a7c15L;
+    private static final long NO_EXPIRY = 0x5bd1e9955bd1e995L;
+    private static final VarHandle LONGS = MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+
+    private final AffinityService affinity;
+    private final int leaves;
+    private final int leafBits;
+    private final AtomicReferenceArray<Tree> trees;
+
+    public MerkleTrees(AffinityService affinity,
+                       @Value("${kv.anti-entropy.leaves-per-partition:256}") int leavesPerPartition) {
+        this.affinity = affinity;
+        this.leaves = Integer.highestOneBit(Math.max(2, Math.min(1 << 16, leavesPerPartition)) - 1) << 1;
+        this.leafBits = Integer.numberOfTrailingZeros(leaves);
+        this.trees = new AtomicReferenceArray<>(affinity.getPartitions());
+    }
+
+    public int leaves() {
+        return leaves;
+    }
+
+    public int leafOf(String key) {
+        return (int) (keyHash(key) >>> (64 - leafBits));
+    }
+
+    // ---------- Writes (under the key's write lock, or in replication order on a backup) ----------
+
+    public void put(String key, byte[] value, Long expireAtMillis, long version) {
+        Tree tree = trees.get(affinity.partition(key));
+        if (tree != null) tree.apply(key, entryHash(key, value, expireAtMillis, version));
+    }
+
+    public void putAll(List<KeyValueEntity> entities) {
+        for (KeyValueEntity e : entities) {
+            put(e.getKey(), e.getValue(), expireAtMillis(e), e.getVersion());
+        }
+    }
+
+    public void remove(String key) {
+        Tree tree = trees.get(affinity.partition(key));
+        if (tree != null) tree.apply(key, null);
+    }
+
+    public void removeAll(Iterable<String> keys) {
+        keys.forEach(this::remove);
+    }
+
+    // ---------- Building ----------
+
+    public boolean isTracked(int partitionId) {
+        return trees.get(partitionId) != null;
+    }
+
+    public boolean isReady(int partitionId) {
+        Tree tree = trees.get(partitionId);
+        return tree != null && tree.isReady();
+    }
+
+    /**
+     * Starts tracking the partition. Feed its current content to the returned
+     * build and {@link Build#finish} it; writes from now on are journalled
+     * until then. Returns null if the partition is already tracked.
+     */
+    public Build startBuild(int partitionId) {
+        Tree tree = new Tree(leaves);
+        return trees.compareAndSet(partitionId, null, tree) ? new Build(partitionId, tree) : null;
+    }
+
+    /** Stops tracking a partition this node no longer owns. */
+    public void drop(int partitionId) {
+        trees.set(partitionId, null);
+    }
+
+    public int readyCount() {
+        int ready = 0;
+        for (int p = 0; p < trees.length(); p++) {
+            if (isReady(p)) ready++;
+        }
+        return ready;
+    }
+
+    /** A tree being filled from a scan of its partition. */
+    public final class Build {
+
+        private final int partitionId;
+        private final Tree tree;
+        private final Map<String, Long> scanned = new HashMap<>();
+
+        private Build(int partitionId, Tree tree) {
+            this.partitionId = partitionId;
+            this.tree = tree;
+        }
+
+        public void add(KeyValueEntity e) {
+            scanned.put(e.getKey(), entryHash(e.getKey(), e.getValue(), expireAtMillis(e), e.getVersion()));
+        }
+
+        /** Replays writes made during the scan and makes the tree answer; false if it was dropped meanwhile. */
+        public boolean finish() {
+            tree.finish(scanned);
+            return trees.get(partitionId) == tree;
+        }
+
+        /** Gives up, e.g. when the scan failed; the partition is no longer tracked. */
+        public void abandon() {
+            trees.compareAndSet(partitionId, tree, null);
+        }
+    }
+
+    // ---------- Comparison ----------
+
+    /** Hash of node {@code nodes[i]} of partition {@code partitions[i]}'s tree, or {@link #NOT_READY}. */
+    public long[] hashes(int[] partitions, int[] nodes) {
+        long[] hashes = new long[partitions.length];
+        for (int i = 0; i < partitions.length; i++) {
+            Tree tree = trees.get(partitions[i]);
+            hashes[i] = tree == null ? NOT_READY : tree.hash(nodes[i]);
+        }
+        return hashes;
+    }
+
+    /** Key → entry hash for the keys under the given leaves; null if the tree is not ready. */
+    public Map<String, Long> entries(int partitionId, int[] leafIndexes) {
+        Tree tree = trees.get(partitionId);
+        return tree == null ? null : tree.entries(leafIndexes);
+    }
+
+    // ---------- Hashing ----------
+
+    static long keyHash(String key) {
+        long h = PRIME ^ key.length();
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * PRIME;
+            h ^= h >>> 29;
+        }
+        return fmix(h);
+    }
+
+    /** Depends only on what both copies store, so equal entries hash equally on every node. */
+    static long entryHash(String key, byte[] value, Long expireAtMillis, long version) {
+        long h = keyHash(key) ^ value.length;
+        int i = 0;
+        for (; i + 8 <= value.length; i += 8) {
+            h = Long.rotateLeft(h ^ (long) LONGS.get(value, i) * PRIME, 31) * PRIME;
+        }
+        for (; i < value.length; i++) {
+            h = Long.rotateLeft(h ^ (value[i] & 0xffL) * PRIME, 11) * PRIME;
+        }
+        h ^= fmix(expireAtMillis == null ? NO_EXPIRY : expireAtMillis);
+        h = (h ^ fmix(version + PRIME)) * PRIME;
+        return fmix(h);
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    // stored expiry is a LocalDateTime in the JVM zone; hashed as epoch millis like replication carries it
+    private static Long expireAtMillis(KeyValueEntity e) {
+        return e.getExpireAt() == null ? null
+                : e.getExpireAt().atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    // ---------- One partition ----------
+
+    private final class Tree {
+
+        private final long[] nodes; // heap layout, leaves at [leaves, 2 * leaves)
+        private final List<Map<String, Long>> entries; // per leaf
+        private List<Map.Entry<String, Long>> journal = new ArrayList<>(); // null once built
+
+        Tree(int leaves) {
+            this.nodes = new long[2 * leaves];
+            this.entries = new ArrayList<>(leaves);
+            for (int i = 0; i < leaves; i++) {
+                entries.add(new HashMap<>());
+            }
+        }
+
+        synchronized boolean isReady() {
+            return journal == null;
+        }
+
+        /** {@code hash} null removes the key. */
+        synchronized void apply(String key, Long hash) {
+            if (journal != null) {
+                journal.add(new SimpleImmutableEntry<>(key, hash));
+                return;
+            }
+            int leaf = leafOf(key);
+            Long old = hash == null ? entries.get(leaf).remove(key) : entries.get(leaf).put(key, hash);
+            long delta = (old == null ? 0 : old) ^ (hash == null ? 0 : hash);
+            for (int n = leaves + leaf; n >= 1 && delta != 0; n >>>= 1) {
+                nodes[n] ^= delta;
+            }
+        }
+
+        synchronized void finish(Map<String, Long> scanned) {
+            if (journal == null) return;
+            for (Map.Entry<String, Long> write : journal) {
+                if (write.getValue() == null) scanned.remove(write.getKey());
+                else scanned.put(write.getKey(), write.getValue());
+            }
+            journal = null;
+            scanned.forEach((key, hash) -> {
+                int leaf = leafOf(key);
+                entries.get(leaf).put(key, hash);
+                nodes[leaves + leaf] ^= hash;
+            });
+            for (int n = leaves - 1; n >= 1; n--) {
+                nodes[n] = nodes[2 * n] ^ nodes[2 * n + 1];
+            }
+        }
+
+        synchronized long hash(int node) {
+            return journal != null ? NOT_READY : nodes[node];
+        }
+
+        synchronized Map<String, Long> entries(int[] leafIndexes) {
+            if (journal != null) return null;
+            Map<String, Long> out = new HashMap<>();
+            for (int leaf : leafIndexes) {
+                out.putAll(entries.get(leaf));
+            }
+            return out;
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.kv_store.cache;
+
+/**
+ * Count-min sketch of 4-bit counters used as the TinyLFU admission filter.
+ * Counters are halved every {@code sampleSize} increments so the sketch
+ * follows the recent popularity of keys instead of all-time counts.
+ *
+ * Updates are intentionally unsynchronized: a lost increment only makes the
+ * estimate slightly lower, which is fine for an admission heuristic.
+ */
+class FrequencySketch {
+
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final long[] table;   // 16 counters of 4 bits per long
+    private final int tableMask;
+    private final int sampleSize;
+    private int size;
+
+    FrequencySketch(int expectedEntries) {
+        int capacity = Integer.highestOneBit(Math.max(64, expectedEntries) - 1) << 1;
+        this.table = new long[capacity];
+        this.tableMask = capacity - 1;
+        this.sampleSize = 10 * capacity;
+    }
+
+    int frequency(String key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            min = Math.min(min, counter(hash, i));
+        }
+        return min;
+    }
+
+    void increment(String key) {
+        int hash = spread(key.hashCode());
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(hash, i);
+        }
+        if (added && ++size >= sampleSize) {
+            reset();
+        }
+    }
+
+    private int counter(int hash, int row) {
+        int index = indexOf(hash, row);
+        int offset = counterOffset(hash, row);
+        return (int) ((table[index] >>> offset) & 0xfL);
+    }
+
+    private boolean incrementAt(int hash, int row) {
+        int index = indexOf(hash, row);
+        int offset = counterOffset(hash, row);
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    /** Halves every counter (aging). */
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        size = size / 2;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private int counterOffset(int hash, int row) {
+        // each row owns one 16-bit quarter of the word, the hash picks a counter in it
+        return (row << 4) + (((hash >>> (row << 3)) & 3) << 2);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
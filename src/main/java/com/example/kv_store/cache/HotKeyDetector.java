@@ -0,0 +1,150 @@
+package com.example.kv_store.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Finds the keys this node reads most, online: every client read bumps a
+ * count-min sketch, and keys whose estimate reaches the hot threshold enter a
+ * top-K set that {@link #isHot} answers from.
+ *
+ * Counts are halved every {@code kv.hotkeys.window-ms}, so a key read r times
+ * per window settles at an estimate of about 2r; a key is hot once it is read
+ * {@code kv.hotkeys.min-reads-per-window} times per window and stops being hot
+ * soon after its rate drops below that. Like {@link FrequencySketch} the
+ * counters are updated without synchronization.
+ */
+@Component
+public class HotKeyDetector {
+
+    private static final int DEPTH = 4;
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L
+    };
+
+    private final boolean enabled;
+    private final int hotEstimate;
+    private final int topK;
+    private final long windowMs;
+    private final long cacheTtlMs;
+    private final int[] counters;
+    private final int rowMask;
+    private final int rowBits;
+    private final Map<String, Boolean> hot = new ConcurrentHashMap<>();
+    private final AtomicLong windowEnd = new AtomicLong();
+
+    public HotKeyDetector(@Value("${kv.hotkeys.enabled:true}") boolean enabled,
+                          @Value("${kv.hotkeys.min-reads-per-window:500}") int minReadsPerWindow,
+                          @Value("${kv.hotkeys.window-ms:1000}") long windowMs,
+                          @Value("${kv.hotkeys.top-k:16}") int topK,
+                          @Value("${kv.hotkeys.sketch-width:4096}") int sketchWidth,
+                          @Value("${kv.hotkeys.cache-ttl-ms:250}") long cacheTtlMs) {
+        this.enabled = enabled;
+        this.hotEstimate = 2 * Math.max(1, minReadsPerWindow);
+        this.windowMs = Math.max(1, windowMs);
+        this.topK = Math.max(1, topK);
+        this.cacheTtlMs = Math.max(0, cacheTtlMs);
+        int width = Integer.highestOneBit(Math.max(64, sketchWidth) - 1) << 1;
+        this.rowBits = Integer.numberOfTrailingZeros(width);
+        this.rowMask = width - 1;
+        this.counters = new int[DEPTH * width];
+        this.windowEnd.set(System.currentTimeMillis() + this.windowMs);
+    }
+
+    /** Counts one read of {@code key}. */
+    public void record(String key) {
+        if (!enabled) return;
+        maybeAge(System.currentTimeMillis());
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            int i = indexOf(hash, row);
+            int c = counters[i] + 1;
+            if (c > 0) counters[i] = c; // saturate rather than wrap
+            min = Math.min(min, c);
+        }
+        if (min >= hotEstimate && !hot.containsKey(key)) promote(key, min);
+    }
+
+    public boolean isHot(String key) {
+        return enabled && !hot.isEmpty() && hot.containsKey(key);
+    }
+
+    /**
+     * How long a node that does not own a hot key may cache it, under a lease
+     * from the owner; 0 when mitigation is off.
+     */
+    public long cacheTtlMs() {
+        return enabled ? cacheTtlMs : 0;
+    }
+
+    /** The current hot keys with their decayed read counts, hottest first. */
+    public List<Map.Entry<String, Integer>> hotKeys() {
+        List<Map.Entry<String, Integer>> keys = new ArrayList<>();
+        for (String key : hot.keySet()) {
+            keys.add(Map.entry(key, estimate(key)));
+        }
+        keys.sort(Map.Entry.<String, Integer>comparingByValue().reversed());
+        return keys;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minReadsPerWindow", hotEstimate / 2);
+        stats.put("windowMs", windowMs);
+        stats.put("topK", topK);
+        stats.put("cacheTtlMs", cacheTtlMs());
+        return stats;
+    }
+
+    /** Adds the key to the top-K, displacing the coldest entry if the set is full and colder. */
+    private synchronized void promote(String key, int estimate) {
+        if (hot.containsKey(key)) return;
+        if (hot.size() >= topK) {
+            String coldest = hot.keySet().stream().min(Comparator.comparingInt(this::estimate)).orElseThrow();
+            if (estimate(coldest) >= estimate) return;
+            hot.remove(coldest);
+        }
+        hot.put(key, Boolean.TRUE);
+    }
+
+    private void maybeAge(long now) {
+        long end = windowEnd.get();
+        if (now < end || !windowEnd.compareAndSet(end, now + windowMs)) return;
+        // a key still hot at the end of a window has been read ~2r times including the aged count
+        hot.keySet().removeIf(key -> estimate(key) < hotEstimate);
+        for (int i = 0; i < counters.length; i++) {
+            counters[i] >>>= 1;
+        }
+    }
+
+    private int estimate(String key) {
+        int hash = spread(key.hashCode());
+        int min = Integer.MAX_VALUE;
+        for (int row = 0; row < DEPTH; row++) {
+            min = Math.min(min, counters[indexOf(hash, row)]);
+        }
+        return min;
+    }
+
+    private int indexOf(int hash, int row) {
+        long h = (hash + SEEDS[row]) * SEEDS[row];
+        h += h >>> 32;
+        return (row << rowBits) | (((int) h) & rowMask);
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
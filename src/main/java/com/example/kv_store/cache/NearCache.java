@@ -0,0 +1,224 @@
+package com.example.kv_store.cache;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+/**
+ * Bounded in-process cache in front of the local store.
+ *
+ * Entries are weighed by key + value size and the total is kept under
+ * {@code kv.cache.max-bytes}. Eviction is LRU per segment, but a new entry only
+ * displaces the LRU victim if the {@link FrequencySketch} has seen it more often
+ * (TinyLFU admission), so one-off reads cannot flush the hot set.
+ *
+ * Readers that miss take a {@link #stamp(String)} before going to the store and
+ * hand it back to {@link #putIfUnchanged}; any write in between bumps the stamp
+ * and the (possibly stale) value is dropped instead of cached.
+ *
+ * Values are copied on the way in and out, so a caller that changes the array
+ * it stored or was handed cannot change what later readers see.
+ */
+@Component
+public class NearCache {
+
+    private static final int ENTRY_OVERHEAD = 64; // map node + entry object + array headers
+    private static final long NO_EXPIRY = Long.MAX_VALUE;
+
+    private final boolean enabled;
+    private final long maxBytes;
+    private final Segment[] segments;
+    private final int segmentMask;
+    private final FrequencySketch sketch;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder rejections = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+
+    public NearCache(@Value("${kv.cache.enabled:true}") boolean enabled,
+                     @Value("${kv.cache.max-bytes:67108864}") long maxBytes,
+                     @Value("${kv.cache.segments:16}") int segmentCount,
+                     @Value("${kv.cache.expected-entries:65536}") int expectedEntries) {
+        this.enabled = enabled && maxBytes > 0;
+        this.maxBytes = maxBytes;
+        int count = Integer.highestOneBit(Math.max(1, segmentCount) * 2 - 1);
+        this.segments = new Segment[count];
+        for (int i = 0; i < count; i++) {
+            segments[i] = new Segment(maxBytes / count);
+        }
+        this.segmentMask = count - 1;
+        this.sketch = new FrequencySketch(expectedEntries);
+    }
+
+    /** Returns a copy of the cached value, or empty on a miss (including expired entries). */
+    public Optional<byte[]> get(String key) {
+        if (!enabled) return Optional.empty();
+        sketch.increment(key);
+        byte[] value = segmentFor(key).get(key, System.currentTimeMillis());
+        if (value == null) {
+            misses.increment();
+            return Optional.empty();
+        }
+        hits.increment();
+        return Optional.of(value.clone());
+    }
+
+    /** Write generation of the key's segment; pass it back to {@link #putIfUnchanged}. */
+    public long stamp(String key) {
+        return enabled ? segmentFor(key).generation : 0L;
+    }
+
+    /** Caches a value read from the store unless the key was written since {@code stamp}. */
+    public void putIfUnchanged(String key, byte[] value, LocalDateTime expireAt, long stamp) {
+        if (!enabled) return;
+        long expireAtMillis = expireAt == null
+                ? NO_EXPIRY
+                : expireAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+        putIfUnchanged(key, value, expireAtMillis, stamp);
+    }
+
+    /** As above, with the expiry in epoch millis, e.g. the end of a hot-key lease. */
+    public void putIfUnchanged(String key, byte[] value, long expireAtMillis, long stamp) {
+        if (!enabled || expireAtMillis <= System.currentTimeMillis()) return;
+        segmentFor(key).put(key, new Entry(value.clone(), expireAtMillis, weigh(key, value)), stamp);
+    }
+
+    /** Drops the key and fences off any read that started before this call. */
+    public void invalidate(String key) {
+        if (!enabled) return;
+        segmentFor(key).invalidate(key);
+        invalidations.increment();
+    }
+
+    /** Drops every key matching the filter, e.g. all keys of a partition that changed owner. */
+    public void invalidateIf(Predicate<String> keyFilter) {
+        if (!enabled) return;
+        for (Segment s : segments) {
+            invalidations.add(s.invalidateIf(keyFilter));
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long entries = 0;
+        long bytes = 0;
+        for (Segment s : segments) {
+            synchronized (s) {
+                entries += s.map.size();
+                bytes += s.bytes;
+            }
+        }
+        long h = hits.sum();
+        long m = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("hits", h);
+        stats.put("misses", m);
+        stats.put("hitRate", h + m == 0 ? 0.0 : (double) h / (h + m));
+        stats.put("evictions", evictions.sum());
+        stats.put("rejections", rejections.sum());
+        stats.put("expirations", expirations.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("entries", entries);
+        stats.put("bytes", bytes);
+        stats.put("maxBytes", maxBytes);
+        return stats;
+    }
+
+    private Segment segmentFor(String key) {
+        int h = key.hashCode();
+        return segments[(h ^ (h >>> 16)) & segmentMask];
+    }
+
+    private static int weigh(String key, byte[] value) {
+        return ENTRY_OVERHEAD + 2 * key.length() + value.length;
+    }
+
+    private record Entry(byte[] value, long expireAtMillis, int weight) {
+    }
+
+    private final class Segment {
+
+        private final long maxBytes;
+        private final LinkedHashMap<String, Entry> map = new LinkedHashMap<>(64, 0.75f, true);
+        private long bytes;
+        private volatile long generation;
+
+        Segment(long maxBytes) {
+            this.maxBytes = maxBytes;
+        }
+
+        synchronized byte[] get(String key, long now) {
+            Entry e = map.get(key);
+            if (e == null) return null;
+            if (e.expireAtMillis() <= now) {
+                remove(key);
+                expirations.increment();
+                return null;
+            }
+            return e.value();
+        }
+
+        synchronized void put(String key, Entry entry, long stamp) {
+            if (stamp != generation || entry.weight() > maxBytes) return;
+            Entry old = map.remove(key);
+            if (old != null) bytes -= old.weight();
+
+            long now = System.currentTimeMillis();
+            int candidateFreq = -1;
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while (bytes + entry.weight() > maxBytes && it.hasNext()) {
+                Map.Entry<String, Entry> victim = it.next();
+                if (victim.getValue().expireAtMillis() <= now) {
+                    expirations.increment();
+                } else {
+                    if (candidateFreq < 0) candidateFreq = sketch.frequency(key);
+                    if (candidateFreq <= sketch.frequency(victim.getKey())) {
+                        rejections.increment();
+                        return;
+                    }
+                    evictions.increment();
+                }
+                bytes -= victim.getValue().weight();
+                it.remove();
+            }
+            map.put(key, entry);
+            bytes += entry.weight();
+        }
+
+        synchronized void invalidate(String key) {
+            generation++;
+            remove(key);
+        }
+
+        synchronized int invalidateIf(Predicate<String> keyFilter) {
+            generation++;
+            int removed = 0;
+            Iterator<Map.Entry<String, Entry>> it = map.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, Entry> e = it.next();
+                if (keyFilter.test(e.getKey())) {
+                    bytes -= e.getValue().weight();
+                    it.remove();
+                    removed++;
+                }
+            }
+            return removed;
+        }
+
+        private void remove(String key) {
+            Entry old = map.remove(key);
+            if (old != null) bytes -= old.weight();
+        }
+    }
+}
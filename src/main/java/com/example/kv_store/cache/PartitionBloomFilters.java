@@ -0,0 +1,314 @@
+package com.example.kv_store.cache;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.storage.StorageEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * One Bloom filter per partition this node owns (as primary or backup), so a
+ * read of a key that is not stored here is usually answered without a
+ * storage read.
+ *
+ * Every write adds its key after storing it. Deletes and expiries leave the
+ * key's bits set, so a filter can wrongly answer "maybe" but never "absent".
+ * Stale bits and growth both show up as fill, and a filter's false-positive
+ * rate is fill^k; once that estimate passes {@code kv.bloom.rebuild-fpp} the
+ * filter is rebuilt from a scan of the partition, sized for twice the keys
+ * it seems to hold. A filter that turns out far too large for its partition
+ * (most of what it held was deleted) is rebuilt smaller the same way.
+ *
+ * A background thread builds the filters of partitions this node comes to own
+ * (at startup, all of them) and rebuilds full ones. A write made while a scan
+ * runs is added to the new filter too, so the swap loses nothing. Until a
+ * partition's first filter is ready every lookup is a "maybe".
+ */
+@Component
+public class PartitionBloomFilters {
+
+    private static final Logger log = LoggerFactory.getLogger(PartitionBloomFilters.class);
+
+    private static final long MIN_KEYS = 1_024;
+    private static final long MAX_BITS = 1L << 32; // 512MB per partition
+    private static final int SCAN_PAGE = 1_000;
+    private static final long SEED = 0x9e3779b97f4a7c15L;
+    private static final VarHandle WORDS = MethodHandles.arrayElementVarHandle(long[].class);
+
+    private final AffinityService affinity;
+    private final StorageEngine storage;
+    private final boolean enabled;
+    private final int bitsPerKey;
+    private final int hashes;
+    private final double rebuildFpp;
+    private final long checkIntervalMs;
+    private final AtomicReferenceArray<Filter> active;
+    private final AtomicReferenceArray<Filter> building;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder definiteMisses = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+    private final LongAdder builds = new LongAdder();
+    private final LongAdder rebuilds = new LongAdder();
+    private final LongAdder scanRestarts = new LongAdder();
+
+    public PartitionBloomFilters(AffinityService affinity,
+                                 StorageEngine storage,
+                                 @Value("${kv.bloom.enabled:true}") boolean enabled,
+                                 @Value("${kv.bloom.bits-per-key:10}") int bitsPerKey,
+                                 @Value("${kv.bloom.rebuild-fpp:0.05}") double rebuildFpp,
+                                 @Value("${kv.bloom.check-interval-ms:5000}") long checkIntervalMs) {
+        this.affinity = affinity;
+        this.storage = storage;
+        this.enabled = enabled;
+        this.bitsPerKey = Math.max(1, bitsPerKey);
+        this.hashes = Math.max(1, (int) Math.round(this.bitsPerKey * Math.log(2)));
+        this.rebuildFpp = rebuildFpp;
+        this.checkIntervalMs = checkIntervalMs;
+        this.active = new AtomicReferenceArray<>(affinity.getPartitions());
+        this.building = new AtomicReferenceArray<>(affinity.getPartitions());
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kv-bloom");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Builds the filters right away, then checks them every interval. */
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            executor.scheduleWithFixedDelay(this::maintainSafely, 0, checkIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ---------- Lookups ----------
+
+    /** False only if the key is certainly not stored here; counted as a definite miss. */
+    public boolean mightContain(String key) {
+        Filter f = active.get(affinity.partition(key));
+        if (f == null || f.contains(hash(key))) return true;
+        definiteMisses.increment();
+        return false;
+    }
+
+    /** Called when a "maybe" turned out to be absent in storage. */
+    public void recordFalsePositive(String key) {
+        if (active.get(affinity.partition(key)) != null) falsePositives.increment();
+    }
+
+    // ---------- Writes (after the storage write) ----------
+
+    public void add(String key) {
+        int p = affinity.partition(key);
+        Filter f = active.get(p);
+        Filter next = building.get(p);
+        if (f == null && next == null) return;
+        long h = hash(key);
+        if (f != null) f.add(h);
+        if (next != null) next.add(h);
+    }
+
+    public void addAll(List<KeyValueEntity> entities) {
+        for (KeyValueEntity e : entities) {
+            add(e.getKey());
+        }
+    }
+
+    /** Stops filtering a partition this node no longer owns. */
+    public void drop(int partitionId) {
+        active.set(partitionId, null);
+        building.set(partitionId, null);
+    }
+
+    // ---------- Building ----------
+
+    private void maintainSafely() {
+        try {
+            maintain();
+        } catch (Exception e) {
+            log.warn("Bloom filter maintenance failed", e);
+        }
+    }
+
+    /** Builds filters for partitions this node has come to own, rebuilds full ones and drops lost ones. */
+    public synchronized void maintain() {
+        String local = affinity.getLocalNodeId();
+        for (int p = 0; p < affinity.getPartitions(); p++) {
+            Filter f = active.get(p);
+            if (!affinity.owners(p).contains(local)) {
+                if (f != null) drop(p);
+            } else if (f == null) {
+                build(p, MIN_KEYS);
+                builds.increment();
+            } else if (f.refreshFpp() > rebuildFpp || f.isOversized()) {
+                build(p, f.estimatedKeys() * 2);
+                rebuilds.increment();
+            }
+        }
+    }
+
+    /**
+     * Scans the partition into a new filter and swaps it in. Writes from the
+     * moment the filter is registered reach it directly, and everything stored
+     * before that is seen by the scan. If the partition holds more keys than
+     * the filter was sized for, the scan starts over with a larger one.
+     */
+    private void build(int partitionId, long expectedKeys) {
+        long capacity = Math.max(MIN_KEYS, expectedKeys);
+        while (true) {
+            Filter next = new Filter(capacity, bitsPerKey, hashes);
+            building.set(partitionId, next);
+            long scanned = 0;
+            String after = null;
+            while (scanned <= capacity) {
+                List<KeyValueEntity> page = storage.scanPartition(partitionId, after, SCAN_PAGE);
+                if (page.isEmpty()) break;
+                for (KeyValueEntity e : page) {
+                    next.add(hash(e.getKey()));
+                }
+                scanned += page.size();
+                after = page.get(page.size() - 1).getKey();
+            }
+            if (scanned > capacity) {
+                scanRestarts.increment();
+                capacity = scanned * 4;
+                continue;
+            }
+            if (building.compareAndSet(partitionId, next, null)) {
+                next.refreshFpp();
+                active.set(partitionId, next);
+            }
+            return;
+        }
+    }
+
+    // ---------- Stats ----------
+
+    public Map<String, Object> stats() {
+        int ready = 0;
+        long bytes = 0;
+        double fppSum = 0;
+        for (int p = 0; p < active.length(); p++) {
+            Filter f = active.get(p);
+            if (f == null) continue;
+            ready++;
+            bytes += f.words.length * 8L;
+            fppSum += f.estimatedFpp;
+        }
+        long misses = definiteMisses.sum();
+        long fp = falsePositives.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("bitsPerKey", bitsPerKey);
+        stats.put("hashes", hashes);
+        stats.put("partitionsReady", ready);
+        stats.put("memoryBytes", bytes);
+        stats.put("estimatedFpp", ready == 0 ? 0.0 : fppSum / ready);
+        // of the lookups for keys that were not there, the share the filters let through
+        stats.put("observedFpp", misses + fp == 0 ? 0.0 : (double) fp / (misses + fp));
+        stats.put("definiteMisses", misses);
+        stats.put("falsePositives", fp);
+        stats.put("builds", builds.sum());
+        stats.put("rebuilds", rebuilds.sum());
+        stats.put("scanRestarts", scanRestarts.sum());
+        return stats;
+    }
+
+    // ---------- One filter ----------
+
+    static long hash(String key) {
+        long h = SEED ^ key.length();
+        for (int i = 0; i < key.length(); i++) {
+            h = (h ^ key.charAt(i)) * SEED;
+            h ^= h >>> 29;
+        }
+        return fmix(h);
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        return h ^ (h >>> 33);
+    }
+
+    private static final class Filter {
+
+        final long[] words;
+        final long bits;
+        final long capacity;
+        final int hashes;
+        volatile double estimatedFpp;
+
+        Filter(long capacity, int bitsPerKey, int hashes) {
+            long wanted = Math.min(MAX_BITS, capacity * bitsPerKey);
+            this.words = new long[(int) ((wanted + 63) >>> 6)];
+            this.bits = words.length * 64L;
+            this.capacity = capacity;
+            this.hashes = hashes;
+        }
+
+        // k indexes from two halves of one hash (Kirsch-Mitzenmacher)
+        void add(long h) {
+            long h2 = fmix(h ^ SEED) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h + i * h2, bits);
+                WORDS.getAndBitwiseOr(words, (int) (bit >>> 6), 1L << bit);
+            }
+        }
+
+        boolean contains(long h) {
+            long h2 = fmix(h ^ SEED) | 1;
+            for (int i = 0; i < hashes; i++) {
+                long bit = Math.floorMod(h + i * h2, bits);
+                if (((long) WORDS.getAcquire(words, (int) (bit >>> 6)) & (1L << bit)) == 0) return false;
+            }
+            return true;
+        }
+
+        double fill() {
+            long set = 0;
+            for (long w : words) {
+                set += Long.bitCount(w);
+            }
+            return (double) set / bits;
+        }
+
+        double refreshFpp() {
+            estimatedFpp = Math.pow(fill(), hashes);
+            return estimatedFpp;
+        }
+
+        boolean isOversized() {
+            return capacity > MIN_KEYS && estimatedKeys() * 8 < capacity;
+        }
+
+        /** Distinct keys behind the current fill, deleted ones included. */
+        long estimatedKeys() {
+            double fill = Math.min(fill(), 1 - 1e-9);
+            return (long) (-(double) bits / hashes * Math.log(1 - fill));
+        }
+    }
+}
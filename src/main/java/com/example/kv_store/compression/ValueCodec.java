@@ -0,0 +1,223 @@
+package com.example.kv_store.compression;
+
+import com.example.kv_store.storage.StoredValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Stored form of values. The primary encodes a value once; storage, the near
+ * cache, replication and {@code /internal/kv} all carry the encoded bytes, and
+ * they are decoded only at the client API (or passed through as
+ * {@code Content-Encoding: deflate}).
+ *
+ * An encoded value starts with a header (big-endian):
+ *
+ * <pre>
+ * 0  3 bytes  magic 0x00 'K' 'V'
+ * 3  byte     codec (IDENTITY / DEFLATE)
+ * 4  int      original length
+ * 8  payload  zlib stream for DEFLATE, the raw bytes for IDENTITY
+ * </pre>
+ *
+ * Values without the magic are raw, so data written before compression was
+ * enabled reads unchanged; a raw value that happens to start with the magic is
+ * stored behind an IDENTITY header. Decoding works whether or not
+ * {@code kv.compression.enabled} is set.
+ */
+@Component
+public class ValueCodec {
+
+    static final int HEADER_SIZE = 8;
+    static final byte IDENTITY = 0;
+    static final byte DEFLATE = 1;
+    private static final byte[] MAGIC = {0x00, 'K', 'V'};
+
+    private final boolean enabled;
+    private final int minBytes;
+    private final int level;
+
+    private final LongAdder compressed = new LongAdder();
+    private final LongAdder incompressible = new LongAdder();
+    private final LongAdder rawBytes = new LongAdder();
+    private final LongAdder storedBytes = new LongAdder();
+    private final LongAdder compressNanos = new LongAdder();
+    private final LongAdder decompressed = new LongAdder();
+    private final LongAdder decompressNanos = new LongAdder();
+    private final LongAdder passedThrough = new LongAdder();
+
+    public ValueCodec(@Value("${kv.compression.enabled:false}") boolean enabled,
+                      @Value("${kv.compression.min-bytes:512}") int minBytes,
+                      @Value("${kv.compression.level:1}") int level) {
+        this.enabled = enabled;
+        this.minBytes = minBytes;
+        this.level = level;
+    }
+
+    // ---------- Encoding ----------
+
+    /** Stored form of a client value; kept raw if compression is off, the value is small or it saves < 10%. */
+    public byte[] encode(byte[] raw) {
+        if (enabled && raw.length >= minBytes) {
+            long start = System.nanoTime();
+            byte[] deflated = deflate(raw, raw.length - raw.length / 10);
+            compressNanos.add(System.nanoTime() - start);
+            if (deflated != null) {
+                compressed.increment();
+                rawBytes.add(raw.length);
+                storedBytes.add(deflated.length);
+                return deflated;
+            }
+            incompressible.increment();
+        }
+        return hasMagic(raw) ? withHeader(IDENTITY, raw) : raw;
+    }
+
+    public Map<String, byte[]> encodeAll(Map<String, byte[]> raw) {
+        Map<String, byte[]> encoded = new LinkedHashMap<>(raw.size() * 2);
+        raw.forEach((k, v) -> encoded.put(k, encode(v)));
+        return encoded;
+    }
+
+    /** Header plus zlib stream, or null if that would not fit in {@code limit} bytes. */
+    private byte[] deflate(byte[] raw, int limit) {
+        if (limit <= HEADER_SIZE) return null;
+        byte[] out = new byte[limit];
+        Deflater deflater = new Deflater(level);
+        try {
+            deflater.setInput(raw);
+            deflater.finish();
+            int n = deflater.deflate(out, HEADER_SIZE, limit - HEADER_SIZE);
+            if (!deflater.finished()) return null;
+            writeHeader(out, DEFLATE, raw.length);
+            return Arrays.copyOf(out, HEADER_SIZE + n);
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] withHeader(byte codec, byte[] raw) {
+        byte[] out = new byte[HEADER_SIZE + raw.length];
+        writeHeader(out, codec, raw.length);
+        System.arraycopy(raw, 0, out, HEADER_SIZE, raw.length);
+        return out;
+    }
+
+    private static void writeHeader(byte[] out, byte codec, int originalLength) {
+        System.arraycopy(MAGIC, 0, out, 0, MAGIC.length);
+        out[3] = codec;
+        ByteBuffer.wrap(out).putInt(4, originalLength);
+    }
+
+    // ---------- Decoding ----------
+
+    /** The client value of a stored one. */
+    public byte[] decode(byte[] stored) {
+        if (!hasMagic(stored)) return stored;
+        return decode(ByteBuffer.wrap(stored));
+    }
+
+    public StoredValue decode(StoredValue stored) {
+        ByteBuffer bytes = stored.bytes();
+        if (!hasMagic(bytes)) return stored;
+        return new StoredValue(ByteBuffer.wrap(decode(bytes)), stored.expireAt());
+    }
+
+    public Map<String, byte[]> decodeAll(Map<String, byte[]> stored) {
+        Map<String, byte[]> decoded = new LinkedHashMap<>(stored.size() * 2);
+        stored.forEach((k, v) -> decoded.put(k, decode(v)));
+        return decoded;
+    }
+
+    /**
+     * The zlib stream of a compressed value, i.e. a valid
+     * {@code Content-Encoding: deflate} body, so it can go to the client as is.
+     */
+    public Optional<StoredValue> deflatedPayload(StoredValue stored) {
+        ByteBuffer bytes = stored.bytes();
+        if (!hasMagic(bytes) || bytes.get(bytes.position() + 3) != DEFLATE) return Optional.empty();
+        passedThrough.increment();
+        ByteBuffer payload = bytes.slice(bytes.position() + HEADER_SIZE, bytes.remaining() - HEADER_SIZE);
+        return Optional.of(new StoredValue(payload, stored.expireAt()));
+    }
+
+    private byte[] decode(ByteBuffer encoded) {
+        int base = encoded.position();
+        byte codec = encoded.get(base + 3);
+        int length = encoded.getInt(base + 4);
+        ByteBuffer payload = encoded.slice(base + HEADER_SIZE, encoded.remaining() - HEADER_SIZE);
+        if (codec == IDENTITY) {
+            byte[] raw = new byte[length];
+            payload.get(raw);
+            return raw;
+        }
+        if (codec != DEFLATE) throw new IllegalStateException("Unknown value codec " + codec);
+
+        long start = System.nanoTime();
+        byte[] raw = new byte[length];
+        Inflater inflater = new Inflater();
+        try {
+            inflater.setInput(payload);
+            int n = 0;
+            while (n < length && !inflater.finished()) {
+                int read = inflater.inflate(raw, n, length - n);
+                if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+                n += read;
+            }
+            if (n != length) throw new IllegalStateException("Compressed value is truncated");
+        } catch (DataFormatException e) {
+            throw new IllegalStateException("Compressed value is corrupt", e);
+        } finally {
+            inflater.end();
+        }
+        decompressed.increment();
+        decompressNanos.add(System.nanoTime() - start);
+        return raw;
+    }
+
+    private static boolean hasMagic(byte[] value) {
+        return value.length >= HEADER_SIZE
+                && value[0] == MAGIC[0] && value[1] == MAGIC[1] && value[2] == MAGIC[2];
+    }
+
+    private static boolean hasMagic(ByteBuffer value) {
+        int p = value.position();
+        return value.remaining() >= HEADER_SIZE
+                && value.get(p) == MAGIC[0] && value.get(p + 1) == MAGIC[1] && value.get(p + 2) == MAGIC[2];
+    }
+
+    // ---------- Stats ----------
+
+    public Map<String, Object> stats() {
+        long c = compressed.sum();
+        long skipped = incompressible.sum();
+        long d = decompressed.sum();
+        long raw = rawBytes.sum();
+        long stored = storedBytes.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("minBytes", minBytes);
+        stats.put("level", level);
+        stats.put("compressed", c);
+        stats.put("incompressible", skipped);
+        stats.put("rawBytes", raw);
+        stats.put("storedBytes", stored);
+        stats.put("ratio", stored == 0 ? 1.0 : (double) raw / stored);
+        stats.put("compressCpuMs", compressNanos.sum() / 1_000_000);
+        stats.put("compressMicrosAvg", c + skipped == 0 ? 0.0 : compressNanos.sum() / 1000.0 / (c + skipped));
+        stats.put("decompressed", d);
+        stats.put("decompressCpuMs", decompressNanos.sum() / 1_000_000);
+        stats.put("decompressMicrosAvg", d == 0 ? 0.0 : decompressNanos.sum() / 1000.0 / d);
+        stats.put("passedThrough", passedThrough.sum());
+        return stats;
+    }
+}
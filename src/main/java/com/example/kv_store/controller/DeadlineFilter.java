@@ -0,0 +1,49 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.transport.Deadline;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpStatus;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Picks up the {@link Deadline#HEADER} a peer (or a client) sent: a request
+ * that arrives with no time left gets 504 at once, others are handled with
+ * the deadline set, so calls this node makes on their behalf inherit it.
+ * Requests without the header get {@code kv.request.timeout-ms} from the service.
+ */
+@Component
+public class DeadlineFilter extends OncePerRequestFilter {
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws ServletException, IOException {
+        String header = request.getHeader(Deadline.HEADER);
+        if (header == null) {
+            chain.doFilter(request, response);
+            return;
+        }
+        long remaining;
+        try {
+            remaining = Long.parseLong(header.trim());
+        } catch (NumberFormatException e) {
+            response.sendError(HttpStatus.BAD_REQUEST.value(), "Bad " + Deadline.HEADER);
+            return;
+        }
+        if (remaining <= 0) {
+            response.sendError(HttpStatus.GATEWAY_TIMEOUT.value(), "Deadline exceeded");
+            return;
+        }
+        Deadline.Scope scope = Deadline.enter(System.currentTimeMillis() + remaining);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            scope.close();
+        }
+    }
+}
@@ -1,41 +1,147 @@
 package com.example.kv_store.controller;
 
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
 import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.storage.StoredValue;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.io.IOException;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/internal/kv")
 public class InternalKVController {
 
     private final DistributedKeyValueService service;
+    private final int maxValueBytes;
 
-    public InternalKVController(DistributedKeyValueService service) {
+    public InternalKVController(DistributedKeyValueService service,
+                                @Value("${kv.value.max-bytes:67108864}") int maxValueBytes) {
         this.service = service;
+        this.maxValueBytes = maxValueBytes;
     }
 
+    /**
+     * Without parameters a plain local read (streamed from storage); with
+     * {@code maxStalenessMs} a bounded-staleness replica read; with
+     * {@code leaseMs} and {@code holder} a hot-key read that {@code holder} will cache.
+     */
     @GetMapping("/{k}")
-    public ResponseEntity<byte[]> getLocal(@PathVariable("k") String key) {
-        return service.internalGetLocalOnly(key)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public CompletableFuture<ResponseEntity<Resource>> getLocal(@PathVariable("k") String key,
+                                                                @RequestParam(required = false) Long maxStalenessMs,
+                                                                @RequestParam(required = false) Long leaseMs,
+                                                                @RequestParam(required = false) String holder) {
+        if (leaseMs != null && holder != null) {
+            return service.internalLeasedGet(key, holder, leaseMs).thenApply(v -> v
+                    .map(bytes -> ResponseEntity.ok(ValueBodies.asResource(StoredValue.of(bytes))))
+                    .orElse(ResponseEntity.notFound().build()));
+        }
+        if (maxStalenessMs == null) {
+            return CompletableFuture.completedFuture(service.internalOpenLocalOnly(key)
+                    .map(v -> ResponseEntity.ok(ValueBodies.asResource(v)))
+                    .orElse(ResponseEntity.notFound().build()));
+        }
+        return service.internalReplicaGet(key, maxStalenessMs).thenApply(v -> v
+                .map(bytes -> ResponseEntity.ok(ValueBodies.asResource(StoredValue.of(bytes))))
+                .orElse(ResponseEntity.notFound().build()));
     }
 
     @PostMapping("/{k}")
     public ResponseEntity<Void> putLocal(@PathVariable("k") String key,
                                          @RequestParam(required = false) Long ttlSec,
-                                         @RequestBody byte[] value) {
+                                         HttpServletRequest request) throws IOException {
+        byte[] value = ValueBodies.read(request.getInputStream(), request.getContentLengthLong(), maxValueBytes);
         Duration ttl = ttlSec == null ? null : Duration.ofSeconds(ttlSec);
-        service.internalPutLocalOnly(key, value, ttl);
+        service.internalPut(key, value, ttl);
         return ResponseEntity.ok().build();
     }
 
     @DeleteMapping("/{k}")
     public ResponseEntity<Void> deleteLocal(@PathVariable("k") String key) {
-        service.internalDeleteLocalOnly(key);
+        service.internalDelete(key);
         return ResponseEntity.noContent().build();
     }
-}
 
+    /** An atomic op forwarded to this node as the key's primary; see {@code PeerClient#atomic}. */
+    @PostMapping("/atomic")
+    public CompletableFuture<AtomicResult> atomic(@RequestBody AtomicOp op) {
+        return service.internalAtomic(op);
+    }
+
+    /** This node's copy and its version, for a quorum read; see {@code PeerClient#getVersioned}. */
+    @GetMapping("/{k}/versioned")
+    public ResponseEntity<VersionedValue> getVersioned(@PathVariable("k") String key) {
+        return ResponseEntity.of(service.internalGetVersioned(key));
+    }
+
+    /** Sent to the key's primary by a quorum read that found {@code staleNodes} behind. */
+    @PostMapping("/{k}/repair")
+    public ResponseEntity<Void> readRepair(@PathVariable("k") String key, @RequestBody List<String> staleNodes) {
+        service.internalReadRepair(key, staleNodes);
+        return ResponseEntity.noContent().build();
+    }
+
+    @PostMapping("/batch/get")
+    public Map<String, byte[]> getAllLocal(@RequestBody List<String> keys) {
+        return service.internalGetAllLocalOnly(keys);
+    }
+
+    @PostMapping("/batch/put")
+    public ResponseEntity<Void> putAllLocal(@RequestParam(required = false) Long ttlSec,
+                                            @RequestBody Map<String, byte[]> entries) {
+        Duration ttl = ttlSec == null ? null : Duration.ofSeconds(ttlSec);
+        service.internalPutAll(entries, ttl);
+        return ResponseEntity.ok().build();
+    }
+
+    @PostMapping("/batch/delete")
+    public ResponseEntity<Void> deleteAllLocal(@RequestBody List<String> keys) {
+        service.internalDeleteAll(keys);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** A page of this node's copy of a partition, in key order; see {@code PeerClient#scan}. */
+    @GetMapping("/scan/{partition}")
+    public Map<String, byte[]> scanLocal(@PathVariable("partition") int partitionId,
+                                         @RequestParam(defaultValue = "") String after,
+                                         @RequestParam(defaultValue = "") String prefix,
+                                         @RequestParam int limit) {
+        return service.internalScanLocalOnly(partitionId,
+                after.isEmpty() ? null : after, prefix.isEmpty() ? null : prefix, limit);
+    }
+
+    /** Sent by an owner when it writes keys this node holds hot-key leases on. */
+    @PostMapping("/batch/invalidate")
+    public ResponseEntity<Void> invalidate(@RequestBody List<String> keys) {
+        service.internalInvalidate(keys);
+        return ResponseEntity.noContent().build();
+    }
+
+    /** Hashes from this node's partition trees, for a primary's anti-entropy pass; see {@code PeerClient#merkleHashes}. */
+    @PostMapping("/merkle/hashes")
+    public long[] merkleHashes(@RequestBody Map<String, int[]> body) {
+        return service.internalMerkleHashes(body.get("partitions"), body.get("nodes"));
+    }
+
+    /** Key → entry hash under the given leaves of this node's tree for the partition. */
+    @PostMapping("/merkle/{partition}/entries")
+    public Map<String, Long> merkleEntries(@PathVariable("partition") int partitionId, @RequestBody int[] leaves) {
+        return service.internalMerkleEntries(partitionId, leaves);
+    }
+
+    /** Backup side of the replication pipeline; returns the seq of the last op applied. */
+    @PostMapping("/batch/replicate")
+    public long replicate(@RequestBody ReplicationBatch batch) {
+        return service.internalApplyReplication(batch);
+    }
+}
@@ -0,0 +1,128 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.antientropy.AntiEntropyService;
+import com.example.kv_store.cache.NearCache;
+import com.example.kv_store.cache.PartitionBloomFilters;
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.expiry.ExpiryService;
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.storage.StorageEngine;
+import com.example.kv_store.transport.PeerHealth;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/internal/stats")
+public class InternalStatsController {
+
+    private final NearCache cache;
+    private final StorageEngine storage;
+    private final AffinityService affinity;
+    private final ReplicationPipeline replication;
+    private final ExpiryService expiry;
+    private final DistributedKeyValueService service;
+    private final ValueCodec codec;
+    private final HotPathMetrics metrics;
+    private final PeerHealth health;
+    private final AntiEntropyService antiEntropy;
+    private final PartitionBloomFilters filters;
+
+    public InternalStatsController(NearCache cache, StorageEngine storage, AffinityService affinity,
+                                   ReplicationPipeline replication, ExpiryService expiry,
+                                   DistributedKeyValueService service, ValueCodec codec,
+                                   HotPathMetrics metrics, PeerHealth health, AntiEntropyService antiEntropy,
+                                   PartitionBloomFilters filters) {
+        this.cache = cache;
+        this.storage = storage;
+        this.affinity = affinity;
+        this.replication = replication;
+        this.expiry = expiry;
+        this.service = service;
+        this.codec = codec;
+        this.metrics = metrics;
+        this.health = health;
+        this.antiEntropy = antiEntropy;
+        this.filters = filters;
+    }
+
+    @GetMapping("/cache")
+    public Map<String, Object> cache() {
+        return cache.stats();
+    }
+
+    @GetMapping("/storage")
+    public Map<String, Object> storage() {
+        return storage.stats();
+    }
+
+    @GetMapping("/affinity")
+    public Map<String, Object> affinity(@RequestParam(defaultValue = "key-") String prefix,
+                                        @RequestParam(defaultValue = "100000") int sample) {
+        return affinity.describeSpread(prefix, sample);
+    }
+
+    @GetMapping("/replication")
+    public Map<String, Object> replication() {
+        Map<String, Object> stats = new LinkedHashMap<>(replication.stats());
+        stats.put("dirtyPartitions", replication.dirtyPartitions());
+        return stats;
+    }
+
+    @GetMapping("/reads")
+    public Map<String, Object> reads() {
+        return service.readStats();
+    }
+
+    /** Configured W and R, quorum writes that failed, quorum reads and the read repairs they caused. */
+    @GetMapping("/quorum")
+    public Map<String, Object> quorum() {
+        return service.quorumStats();
+    }
+
+    /** Keys this node reads most and whether they are cached here under a lease from their owner. */
+    @GetMapping("/hotkeys")
+    public Map<String, Object> hotKeys() {
+        return service.hotKeyStats();
+    }
+
+    /** Circuit state, failures and hedging delay per peer. */
+    @GetMapping("/peers")
+    public Map<String, Object> peers() {
+        return health.stats();
+    }
+
+    /** Hash-tree comparisons with backups and what they repaired. */
+    @GetMapping("/anti-entropy")
+    public Map<String, Object> antiEntropy() {
+        return antiEntropy.stats();
+    }
+
+    /** Per-partition Bloom filters: memory, estimated and observed false-positive rates, storage reads skipped. */
+    @GetMapping("/bloom")
+    public Map<String, Object> bloom() {
+        return filters.stats();
+    }
+
+    @GetMapping("/expiry")
+    public Map<String, Object> expiry() {
+        return expiry.stats();
+    }
+
+    /** Stage latencies per peer, local vs forwarded ratio, in-flight requests, errors and replication lag. */
+    @GetMapping("/metrics")
+    public Map<String, Object> metrics() {
+        Map<String, Object> stats = new LinkedHashMap<>(metrics.snapshot());
+        stats.put("replicationLag", replication.lag());
+        return stats;
+    }
+
+    @GetMapping("/compression")
+    public Map<String, Object> compression() {
+        return codec.stats();
+    }
+}
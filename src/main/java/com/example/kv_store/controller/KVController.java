@@ -1,41 +1,290 @@
 package com.example.kv_store.controller;
 
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
 import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.service.ReadConsistency;
+import com.example.kv_store.service.ScanCursor;
+import com.example.kv_store.storage.StoredValue;
+import com.example.kv_store.transport.PeerCallException;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+import tools.jackson.databind.json.JsonMapper;
 
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
 import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
 
 @RestController
 @RequestMapping("/kv")
 public class KVController {
 
     private final DistributedKeyValueService service;
+    private final AffinityService affinity;
+    private final ValueCodec codec;
+    private final JsonMapper json;
+    private final long defaultMaxStalenessMs;
+    private final int maxValueBytes;
 
-    public KVController(DistributedKeyValueService service) {
+    public KVController(DistributedKeyValueService service,
+                        AffinityService affinity,
+                        ValueCodec codec,
+                        JsonMapper json,
+                        @Value("${kv.read.max-staleness-ms:1000}") long defaultMaxStalenessMs,
+                        @Value("${kv.value.max-bytes:67108864}") int maxValueBytes) {
         this.service = service;
+        this.affinity = affinity;
+        this.codec = codec;
+        this.json = json;
+        this.defaultMaxStalenessMs = defaultMaxStalenessMs;
+        this.maxValueBytes = maxValueBytes;
     }
 
     @GetMapping("/{k}")
-    public ResponseEntity<byte[]> get(@PathVariable("k") String key) {
-        return service.get(key)
-                .map(ResponseEntity::ok)
-                .orElse(ResponseEntity.notFound().build());
+    public CompletableFuture<ResponseEntity<Resource>> get(@PathVariable("k") String key,
+                                                           @RequestParam(required = false) String consistency,
+                                                           @RequestParam(required = false) Long maxStalenessMs,
+                                                           @RequestHeader(value = HttpHeaders.ACCEPT_ENCODING, required = false)
+                                                           String acceptEncoding) {
+        boolean acceptsDeflate = acceptsDeflate(acceptEncoding);
+        CompletableFuture<Optional<StoredValue>> result = consistency == null && maxStalenessMs == null
+                ? service.open(key)
+                : service.open(key,
+                        consistency == null ? ReadConsistency.BOUNDED : ReadConsistency.fromParam(consistency),
+                        maxStalenessMs == null ? defaultMaxStalenessMs : maxStalenessMs);
+        return result
+                .thenApply(value -> value
+                        .map(v -> respond(v, acceptsDeflate))
+                        .orElse(ResponseEntity.notFound().build()));
+    }
+
+    /**
+     * A compressed value goes out as stored if the client takes deflate, else
+     * decoded. Either way the response varies on Accept-Encoding, so a shared
+     * cache keeps the two apart.
+     */
+    private ResponseEntity<Resource> respond(StoredValue stored, boolean acceptsDeflate) {
+        if (acceptsDeflate) {
+            Optional<StoredValue> deflated = codec.deflatedPayload(stored);
+            if (deflated.isPresent()) {
+                return ResponseEntity.ok()
+                        .header(HttpHeaders.CONTENT_ENCODING, "deflate")
+                        .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                        .body(ValueBodies.asResource(deflated.get()));
+            }
+        }
+        return ResponseEntity.ok()
+                .header(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING)
+                .body(ValueBodies.asResource(codec.decode(stored)));
+    }
+
+    /**
+     * Whether an Accept-Encoding header takes deflate: listed, or covered by
+     * {@code *}, with a q-value above 0. An explicit entry wins over {@code *}.
+     */
+    static boolean acceptsDeflate(String acceptEncoding) {
+        if (acceptEncoding == null) return false;
+        Double deflate = null;
+        Double any = null;
+        for (String entry : acceptEncoding.split(",")) {
+            String[] parts = entry.split(";");
+            String coding = parts[0].trim().toLowerCase();
+            if (!coding.equals("deflate") && !coding.equals("*")) continue;
+            double q = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String param = parts[i].trim().toLowerCase();
+                if (param.startsWith("q=")) {
+                    try {
+                        q = Double.parseDouble(param.substring(2).trim());
+                    } catch (NumberFormatException e) {
+                        q = 0; // unreadable: do not assume the client takes it
+                    }
+                }
+            }
+            if (coding.equals("deflate")) deflate = q;
+            else any = q;
+        }
+        double q = deflate != null ? deflate : any != null ? any : 0;
+        return q > 0;
     }
 
     @PostMapping("/{k}")
-    public ResponseEntity<Void> put(@PathVariable("k") String key,
-                                    @RequestParam(required = false) Long ttlSec,
-                                    @RequestBody byte[] value) {
+    public CompletableFuture<ResponseEntity<Void>> put(@PathVariable("k") String key,
+                                                       @RequestParam(required = false) Long ttlSec,
+                                                       HttpServletRequest request) throws IOException {
+        byte[] value = ValueBodies.read(request.getInputStream(), request.getContentLengthLong(), maxValueBytes);
         Duration ttl = ttlSec == null ? null : Duration.ofSeconds(ttlSec);
-        service.put(key, value, ttl);
-        return ResponseEntity.ok().build();
+        return service.put(key, value, ttl)
+                .thenApply(v -> ResponseEntity.ok().build());
     }
 
     @DeleteMapping("/{k}")
-    public ResponseEntity<Void> delete(@PathVariable("k") String key) {
-        service.delete(key);
-        return ResponseEntity.noContent().build();
+    public CompletableFuture<ResponseEntity<Void>> delete(@PathVariable("k") String key) {
+        return service.delete(key)
+                .thenApply(v -> ResponseEntity.noContent().build());
+    }
+
+    // ---------- Atomic operations (run at the key's primary) ----------
+    // Each response carries the entry's version in X-KV-Version (0: no entry).
+    // A compare-and-set that finds another version answers 409 with the
+    // current one, so the client can re-read and retry; so does an increment
+    // of a value that is not a decimal long.
+
+    public static final String VERSION_HEADER = "X-KV-Version";
+
+    @GetMapping("/{k}/versioned")
+    public CompletableFuture<ResponseEntity<byte[]>> getVersioned(@PathVariable("k") String key) {
+        return service.atomic(AtomicOp.read(key)).thenApply(r -> r.value() == null
+                ? ResponseEntity.notFound().header(VERSION_HEADER, "0").build()
+                : versioned(HttpStatus.OK, r).body(r.value()));
+    }
+
+    /** Writes the body if the entry is at {@code expectedVersion}; 0 means "only if the key is absent". */
+    @PostMapping("/{k}/cas")
+    public CompletableFuture<ResponseEntity<byte[]>> compareAndSet(@PathVariable("k") String key,
+                                                                   @RequestParam long expectedVersion,
+                                                                   @RequestParam(required = false) Long ttlSec,
+                                                                   HttpServletRequest request) throws IOException {
+        byte[] value = ValueBodies.read(request.getInputStream(), request.getContentLengthLong(), maxValueBytes);
+        Long ttlMillis = ttlSec == null ? null : Duration.ofSeconds(ttlSec).toMillis();
+        return service.atomic(AtomicOp.compareAndSet(key, expectedVersion, value, ttlMillis))
+                .thenApply(r -> versioned(r.applied() ? HttpStatus.OK : HttpStatus.CONFLICT, r).build());
+    }
+
+    /** Adds {@code delta} to a decimal counter (absent counts as 0) and returns the new count as text. */
+    @PostMapping("/{k}/incr")
+    public CompletableFuture<ResponseEntity<byte[]>> increment(@PathVariable("k") String key,
+                                                               @RequestParam(defaultValue = "1") long delta) {
+        return service.atomic(AtomicOp.increment(key, delta)).thenApply(r -> r.applied()
+                ? versioned(HttpStatus.OK, r).contentType(MediaType.TEXT_PLAIN).body(r.value())
+                : versioned(HttpStatus.CONFLICT, r).build());
+    }
+
+    @PostMapping("/{k}/append")
+    public CompletableFuture<ResponseEntity<byte[]>> append(@PathVariable("k") String key,
+                                                            HttpServletRequest request) throws IOException {
+        byte[] suffix = ValueBodies.read(request.getInputStream(), request.getContentLengthLong(), maxValueBytes);
+        return service.atomic(AtomicOp.append(key, suffix)).thenApply(r -> versioned(
+                r.status() == AtomicResult.Status.TOO_LARGE ? HttpStatus.CONTENT_TOO_LARGE : HttpStatus.OK, r).build());
+    }
+
+    private static ResponseEntity.BodyBuilder versioned(HttpStatus status, AtomicResult result) {
+        return ResponseEntity.status(status).header(VERSION_HEADER, Long.toString(result.version()));
+    }
+
+    /** The owner of a key could not be reached: 503, or 504 if the request ran out of time. */
+    @ExceptionHandler(PeerCallException.class)
+    public ResponseEntity<Map<String, Object>> peerCallFailed(PeerCallException e) {
+        HttpStatus status = e.timedOut() ? HttpStatus.GATEWAY_TIMEOUT : HttpStatus.SERVICE_UNAVAILABLE;
+        return ResponseEntity.status(status).body(Map.of("error", String.valueOf(e.getMessage()), "node", e.nodeId()));
+    }
+
+    // ---------- Batch (values are base64 in JSON) ----------
+
+    @PostMapping("/batch/get")
+    public CompletableFuture<Map<String, byte[]>> getAll(@RequestBody List<String> keys) {
+        return service.getAll(keys);
     }
-}
 
+    @PostMapping("/batch/put")
+    public CompletableFuture<ResponseEntity<Void>> putAll(@RequestParam(required = false) Long ttlSec,
+                                                          @RequestBody Map<String, byte[]> entries) {
+        ValueBodies.checkSizes(entries, maxValueBytes);
+        Duration ttl = ttlSec == null ? null : Duration.ofSeconds(ttlSec);
+        return service.putAll(entries, ttl)
+                .thenApply(v -> ResponseEntity.ok().build());
+    }
+
+    @PostMapping("/batch/delete")
+    public CompletableFuture<ResponseEntity<Void>> deleteAll(@RequestBody List<String> keys) {
+        return service.deleteAll(keys)
+                .thenApply(v -> ResponseEntity.noContent().build());
+    }
+
+    // ---------- Scans (streamed as newline-delimited JSON) ----------
+    // One {"key":..,"value":base64} line per entry, in (partition, key) order.
+    // A scan cut short by limit ends with {"next":cursor}; pass that back as
+    // ?cursor= to continue. A failure mid-stream ends with {"error":..,"next":..}.
+
+    @GetMapping("/scan/all")
+    public ResponseEntity<StreamingResponseBody> scanAll(@RequestParam(required = false) String prefix,
+                                                         @RequestParam(required = false) String cursor,
+                                                         @RequestParam(required = false) Long limit) {
+        ScanCursor from = cursor == null ? ScanCursor.start(0) : parseCursor(cursor);
+        return stream(from, affinity.getPartitions() - 1, prefix, limit);
+    }
+
+    @GetMapping("/scan/{partition}")
+    public ResponseEntity<StreamingResponseBody> scanPartition(@PathVariable("partition") int partitionId,
+                                                               @RequestParam(required = false) String prefix,
+                                                               @RequestParam(required = false) String cursor,
+                                                               @RequestParam(required = false) Long limit) {
+        if (partitionId < 0 || partitionId >= affinity.getPartitions()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No partition " + partitionId);
+        }
+        ScanCursor from = cursor == null ? ScanCursor.start(partitionId) : parseCursor(cursor);
+        if (from.partitionId() != partitionId) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Cursor belongs to another partition");
+        }
+        return stream(from, partitionId, prefix, limit);
+    }
+
+    record ScanEntry(String key, byte[] value) {
+    }
+
+    record ScanNext(String next) {
+    }
+
+    record ScanFailure(String error, String next) {
+    }
+
+    private ResponseEntity<StreamingResponseBody> stream(ScanCursor from, int lastPartition, String prefix, Long limit) {
+        if (limit != null && limit < 0) throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Negative limit");
+        long maxEntries = limit == null ? Long.MAX_VALUE : limit;
+        String keyPrefix = prefix == null || prefix.isEmpty() ? null : prefix;
+        StreamingResponseBody body = response -> {
+            OutputStream out = new BufferedOutputStream(response, 64 * 1024);
+            ScanCursor[] reached = {from};
+            try {
+                ScanCursor next = service.scan(from, lastPartition, keyPrefix, maxEntries, (p, key, value) -> {
+                    writeLine(out, new ScanEntry(key, value));
+                    reached[0] = new ScanCursor(p, key);
+                });
+                if (next != null) writeLine(out, new ScanNext(next.encode()));
+            } catch (RuntimeException e) {
+                // the status line is long gone; say where to pick up instead
+                writeLine(out, new ScanFailure(String.valueOf(e.getMessage()), reached[0].encode()));
+            }
+            out.flush();
+        };
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_NDJSON).body(body);
+    }
+
+    private void writeLine(OutputStream out, Object line) throws IOException {
+        out.write(json.writeValueAsBytes(line));
+        out.write('\n');
+    }
+
+    private static ScanCursor parseCursor(String token) {
+        try {
+            return ScanCursor.decode(token);
+        } catch (IllegalArgumentException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Invalid scan cursor");
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.rebalance.RebalanceService;
+import org.springframework.web.bind.annotation.*;
+
+import java.util.List;
+import java.util.Map;
+
+@RestController
+@RequestMapping("/internal/rebalance")
+public class RebalanceController {
+
+    private final RebalanceService rebalance;
+
+    public RebalanceController(RebalanceService rebalance) {
+        this.rebalance = rebalance;
+    }
+
+    /** Operator call: move the cluster to this membership, e.g. ["node-a","node-b","node-c"]. */
+    @PostMapping("/start")
+    public Map<String, Object> start(@RequestBody List<String> nodes) {
+        return rebalance.start(nodes);
+    }
+
+    @GetMapping
+    public Map<String, Object> status() {
+        return rebalance.status();
+    }
+
+    /** Changes the transfer throttle of a running rebalance; 0 = unlimited. */
+    @PostMapping("/rate")
+    public Map<String, Object> rate(@RequestParam long bytesPerSec) {
+        rebalance.setRate(bytesPerSec);
+        return rebalance.status();
+    }
+
+    // ---------- Node to node ----------
+
+    @PostMapping("/begin")
+    public void begin(@RequestBody List<String> nodes) {
+        rebalance.begin(nodes);
+    }
+
+    @PostMapping("/handover")
+    public void handOver(@RequestParam int partition, @RequestBody List<String> owners) {
+        rebalance.onHandOver(partition, owners);
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.snapshot.SnapshotService;
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.*;
+import org.springframework.web.server.ResponseStatusException;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Operator calls for partition snapshots. Directory variants work on paths
+ * local to this node; the streaming variants move one snapshot over HTTP.
+ */
+@RestController
+@RequestMapping("/internal/snapshot")
+public class SnapshotController {
+
+    private final SnapshotService snapshots;
+    private final AffinityService affinity;
+
+    public SnapshotController(SnapshotService snapshots, AffinityService affinity) {
+        this.snapshots = snapshots;
+        this.affinity = affinity;
+    }
+
+    /** This node's copy of one partition, as a snapshot file. */
+    @GetMapping("/partitions/{partition}")
+    public ResponseEntity<StreamingResponseBody> partition(@PathVariable("partition") int partitionId) {
+        if (partitionId < 0 || partitionId >= affinity.getPartitions()) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "No partition " + partitionId);
+        }
+        StreamingResponseBody body = out -> snapshots.export(partitionId, Channels.newChannel(out));
+        return ResponseEntity.ok().contentType(MediaType.APPLICATION_OCTET_STREAM).body(body);
+    }
+
+    /** Loads one snapshot sent as the request body. */
+    @PostMapping(value = "/load", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public SnapshotService.Result load(HttpServletRequest request) throws IOException {
+        try {
+            return snapshots.importFrom(Channels.newChannel(request.getInputStream()));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+
+    /** Writes the partitions this node is primary for into {@code dir}. */
+    @PostMapping("/export")
+    public Map<String, Object> export(@RequestParam String dir) throws IOException {
+        return snapshots.exportTo(Path.of(dir));
+    }
+
+    /** Loads every snapshot file in {@code dir}; run it on each node. */
+    @PostMapping("/import")
+    public Map<String, Object> importDir(@RequestParam String dir) throws IOException {
+        try {
+            return snapshots.importFrom(Path.of(dir));
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        }
+    }
+}
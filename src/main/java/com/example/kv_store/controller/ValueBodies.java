@@ -0,0 +1,72 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.storage.StoredValue;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Map;
+
+/** Reads request bodies into values and writes stored values out, without intermediate copies. */
+final class ValueBodies {
+
+    private ValueBodies() {
+    }
+
+    /**
+     * Reads the body into an array of exactly its size when the length is
+     * declared, and rejects anything over {@code maxBytes} before reading it.
+     */
+    static byte[] read(InputStream body, long contentLength, int maxBytes) throws IOException {
+        if (contentLength > maxBytes) throw tooLarge(maxBytes);
+        if (contentLength >= 0) {
+            byte[] value = body.readNBytes((int) contentLength);
+            if (value.length < contentLength) {
+                throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Body shorter than Content-Length");
+            }
+            return value;
+        }
+        byte[] value = body.readNBytes(maxBytes + 1); // chunked upload: one byte past the limit tells
+        if (value.length > maxBytes) throw tooLarge(maxBytes);
+        return value;
+    }
+
+    static void checkSizes(Map<String, byte[]> entries, int maxBytes) {
+        for (byte[] value : entries.values()) {
+            if (value != null && value.length > maxBytes) throw tooLarge(maxBytes);
+        }
+    }
+
+    /** Streams the value to the response; Spring also serves Range requests from it. */
+    static Resource asResource(StoredValue value) {
+        return new AbstractResource() {
+            @Override
+            public String getDescription() {
+                return "stored value";
+            }
+
+            @Override
+            public InputStream getInputStream() {
+                return value.openStream();
+            }
+
+            @Override
+            public long contentLength() {
+                return value.length();
+            }
+
+            @Override
+            public boolean exists() {
+                return true;
+            }
+        };
+    }
+
+    private static ResponseStatusException tooLarge(int maxBytes) {
+        return new ResponseStatusException(HttpStatus.CONTENT_TOO_LARGE,
+                "Value larger than kv.value.max-bytes=" + maxBytes);
+    }
+}
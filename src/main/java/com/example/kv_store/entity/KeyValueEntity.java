@@ -6,7 +6,10 @@ import lombok.Data;
 import java.time.LocalDateTime;
 
 @Entity
-@Table(name = "kv_store")
+@Table(name = "kv_store", indexes = {
+        @Index(name = "idx_kv_partition_key", columnList = "partition_id, k"),
+        @Index(name = "idx_kv_partition_expiry", columnList = "partition_id, expire_at")
+})
 @Data
 public class KeyValueEntity {
 
@@ -24,6 +27,14 @@ public class KeyValueEntity {
     @Column(name = "partition_id", nullable = false)
     private int partitionId;
 
+    // jpa engine: > 0 when the value lives in that many kv_value_chunk rows and v is empty
+    @Column(name = "chunk_count", nullable = false)
+    private int chunkCount;
+
+    // set by the primary on every write and carried to backups; compare-and-set checks it
+    @Column(name = "version", nullable = false)
+    private long version;
+
     public boolean isExpired() {
         return expireAt != null && expireAt.isBefore(LocalDateTime.now());
     }
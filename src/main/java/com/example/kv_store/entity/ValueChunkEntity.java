@@ -0,0 +1,39 @@
+package com.example.kv_store.entity;
+
+import jakarta.persistence.*;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.io.Serializable;
+
+/** One slice of a value too large for a single kv_store row (see {@code kv.value.chunk-bytes}). */
+@Entity
+@Table(name = "kv_value_chunk")
+@Data
+@NoArgsConstructor
+@AllArgsConstructor
+public class ValueChunkEntity {
+
+    @EmbeddedId
+    private ChunkId id;
+
+    @Lob
+    @Column(name = "data", nullable = false)
+    private byte[] data;
+
+    @Embeddable
+    @Data
+    @NoArgsConstructor
+    @AllArgsConstructor
+    public static class ChunkId implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        @Column(name = "k")
+        private String key;
+
+        @Column(name = "seq")
+        private int seq;
+    }
+}
@@ -0,0 +1,189 @@
+package com.example.kv_store.expiry;
+
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.storage.ExpiryEntry;
+import com.example.kv_store.storage.StorageEngine;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Reclaims expired keys on the partitions this node is primary for.
+ *
+ * Every {@code kv.expiry.sweep-interval-ms} a sweep asks each owned partition
+ * for up to {@code kv.expiry.batch-size} keys expiring within the timing
+ * wheel's horizon, walking the {@code (partition_id, expire_at)} index. Keys
+ * already expired are deleted straight away; the rest go on the wheel, which
+ * deletes them tick by tick as they come due. A page made up only of expired
+ * keys means a backlog, so the sweep reads further pages of that partition
+ * until it catches up or the sweep has run for {@code kv.expiry.sweep-budget-ms};
+ * every partition still gets its first page. Deletes go through
+ * {@link DistributedKeyValueService#expireKeys}, so they are re-checked under
+ * the key lock and replicated to backups like any other delete.
+ */
+@Component
+public class ExpiryService {
+
+    private static final Logger log = LoggerFactory.getLogger(ExpiryService.class);
+
+    private final AffinityService affinity;
+    private final DistributedKeyValueService service;
+    private final StorageEngine storage;
+    private final boolean enabled;
+    private final int batchSize;
+    private final long tickMs;
+    private final long sweepIntervalMs;
+    private final long sweepBudgetMs;
+    private final TimingWheel wheel;
+    private final ScheduledExecutorService executor;
+
+    private final LongAdder reclaimed = new LongAdder();
+    private final long[] backlog; // expired but not yet reclaimed, per partition, as of the last sweep
+    private volatile int wheelSize;
+    private volatile double reclaimedPerSec;
+    private volatile long lastSweepMillis;
+    private long lastRateAtMillis = System.currentTimeMillis();
+    private long lastRateCount;
+
+    public ExpiryService(AffinityService affinity,
+                         DistributedKeyValueService service,
+                         StorageEngine storage,
+                         @Value("${kv.expiry.enabled:true}") boolean enabled,
+                         @Value("${kv.expiry.tick-ms:100}") long tickMs,
+                         @Value("${kv.expiry.wheel-slots:600}") int wheelSlots,
+                         @Value("${kv.expiry.max-scheduled:100000}") int maxScheduled,
+                         @Value("${kv.expiry.batch-size:200}") int batchSize,
+                         @Value("${kv.expiry.sweep-interval-ms:5000}") long sweepIntervalMs,
+                         @Value("${kv.expiry.sweep-budget-ms:500}") long sweepBudgetMs) {
+        this.affinity = affinity;
+        this.service = service;
+        this.storage = storage;
+        this.enabled = enabled;
+        this.batchSize = batchSize;
+        this.tickMs = tickMs;
+        this.sweepIntervalMs = sweepIntervalMs;
+        this.sweepBudgetMs = sweepBudgetMs;
+        this.wheel = new TimingWheel(tickMs, wheelSlots, maxScheduled, System.currentTimeMillis());
+        this.backlog = new long[affinity.getPartitions()];
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kv-expiry");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Advances the wheel every tick and sweeps the index every interval. */
+    @PostConstruct
+    public void start() {
+        if (enabled) {
+            // one thread runs both, so the wheel needs no locking
+            executor.scheduleAtFixedRate(this::tickSafely, tickMs, tickMs, TimeUnit.MILLISECONDS);
+            executor.scheduleWithFixedDelay(this::sweepSafely, sweepIntervalMs, sweepIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    public Map<String, Object> stats() {
+        long total = 0;
+        int partitionsBehind = 0;
+        synchronized (backlog) {
+            for (long b : backlog) {
+                total += b;
+                if (b > 0) partitionsBehind++;
+            }
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("reclaimed", reclaimed.sum());
+        stats.put("reclaimedPerSec", reclaimedPerSec);
+        stats.put("backlog", total);
+        stats.put("partitionsWithBacklog", partitionsBehind);
+        stats.put("scheduled", wheelSize);
+        stats.put("horizonMs", wheel.horizonMillis());
+        stats.put("lastSweepMillis", lastSweepMillis);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdownNow();
+    }
+
+    // ---------- Wheel ----------
+
+    private void tickSafely() {
+        try {
+            List<String> due = wheel.advance(System.currentTimeMillis());
+            for (int i = 0; i < due.size(); i += batchSize) {
+                reclaimed.add(service.expireKeys(due.subList(i, Math.min(i + batchSize, due.size()))));
+            }
+            wheelSize = wheel.size();
+        } catch (Exception e) {
+            log.warn("Expiry tick failed", e);
+        }
+    }
+
+    // ---------- Index sweep ----------
+
+    private void sweepSafely() {
+        long start = System.currentTimeMillis();
+        try {
+            long budgetEnd = start + sweepBudgetMs;
+            for (int p = 0; p < backlog.length; p++) {
+                long remaining = isLocalPrimary(p) ? sweep(p, budgetEnd) : 0;
+                synchronized (backlog) {
+                    backlog[p] = remaining;
+                }
+            }
+        } catch (Exception e) {
+            log.warn("Expiry sweep failed", e);
+        }
+        long now = System.currentTimeMillis();
+        lastSweepMillis = now - start;
+        long count = reclaimed.sum();
+        reclaimedPerSec = (count - lastRateCount) * 1000.0 / Math.max(1, now - lastRateAtMillis);
+        lastRateCount = count;
+        lastRateAtMillis = now;
+        wheelSize = wheel.size();
+    }
+
+    /**
+     * Reads pages while they come back full of expired keys that get deleted,
+     * up to {@code budgetEnd}. Returns the partition's remaining backlog.
+     */
+    private long sweep(int partitionId, long budgetEnd) {
+        while (true) {
+            long now = System.currentTimeMillis();
+            List<ExpiryEntry> page = storage.findExpiring(partitionId, now + wheel.horizonMillis(), batchSize);
+            List<String> expired = new ArrayList<>();
+            for (ExpiryEntry e : page) {
+                if (e.expireAtMillis() <= now) {
+                    expired.add(e.key());
+                } else {
+                    wheel.schedule(e.key(), e.expireAtMillis());
+                }
+            }
+            int deleted = service.expireKeys(expired);
+            reclaimed.add(deleted);
+            if (expired.size() < batchSize) return expired.size() - deleted;
+            // a full page of expired keys means there may be more; read on while that makes progress
+            if (deleted == 0 || System.currentTimeMillis() >= budgetEnd) return storage.countExpired(partitionId);
+        }
+    }
+
+    private boolean isLocalPrimary(int partitionId) {
+        return affinity.owners(partitionId).get(0).equals(affinity.getLocalNodeId());
+    }
+}
@@ -0,0 +1,68 @@
+package com.example.kv_store.expiry;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Hashed timing wheel for keys expiring within the next {@code slots * tickMs}.
+ * A key expiring at {@code t} sits in the slot of the first tick at or after
+ * {@code t} and is handed out by {@link #advance} once that tick has passed,
+ * so reclaim work is spread over ticks instead of arriving in sweeps.
+ * Not thread-safe; owned by the expiry thread.
+ */
+final class TimingWheel {
+
+    private final long tickMs;
+    private final List<List<String>> slots;
+    private final int maxEntries;
+    private final Set<String> scheduled = new HashSet<>();
+    private long cursorTick; // next tick to fire
+
+    TimingWheel(long tickMs, int slotCount, int maxEntries, long nowMillis) {
+        this.tickMs = tickMs;
+        this.maxEntries = maxEntries;
+        this.slots = new ArrayList<>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            slots.add(new ArrayList<>());
+        }
+        this.cursorTick = nowMillis / tickMs;
+    }
+
+    long horizonMillis() {
+        return tickMs * slots.size();
+    }
+
+    int size() {
+        return scheduled.size();
+    }
+
+    /** Returns false if the key is beyond the horizon, already scheduled, or the wheel is full. */
+    boolean schedule(String key, long expireAtMillis) {
+        long tick = Math.max(Math.ceilDiv(expireAtMillis, tickMs), cursorTick);
+        if (tick - cursorTick >= slots.size()) return false;
+        if (scheduled.size() >= maxEntries || !scheduled.add(key)) return false;
+        slots.get(slotOf(tick)).add(key);
+        return true;
+    }
+
+    /** Removes and returns the keys of every tick that has passed. */
+    List<String> advance(long nowMillis) {
+        long nowTick = nowMillis / tickMs;
+        long ticks = Math.min(nowTick - cursorTick + 1, slots.size()); // a late wheel drains each slot once
+        List<String> due = new ArrayList<>();
+        for (long i = 0; i < ticks; i++) {
+            List<String> slot = slots.get(slotOf(cursorTick + i));
+            due.addAll(slot);
+            slot.clear();
+        }
+        cursorTick = Math.max(cursorTick, nowTick + 1);
+        due.forEach(scheduled::remove);
+        return due;
+    }
+
+    private int slotOf(long tick) {
+        return (int) (tick % slots.size());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.kv_store.metrics;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Stage timings and counters for the request path, served at
+ * {@code /internal/stats/metrics}.
+ *
+ * Timers are {@link LatencyHistogram}s keyed by stage and, for node-to-node
+ * calls, by peer; lookups are two map reads and allocate nothing. Stages too
+ * cheap to time on every call (the affinity lookup) are sampled one in
+ * {@code kv.metrics.sample-every}. With {@code kv.metrics.enabled=false}
+ * every method returns immediately.
+ */
+@Component
+public class HotPathMetrics {
+
+    public static final String LOCAL = "local";
+
+    private final boolean enabled;
+    private final int sampleMask;
+
+    private final Map<String, Map<String, LatencyHistogram>> timers = new ConcurrentHashMap<>();
+    private final Map<String, Map<String, LongAdder>> errors = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> servedLocally = new ConcurrentHashMap<>();
+    private final Map<String, LongAdder> forwarded = new ConcurrentHashMap<>();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final LongAccumulator maxInFlight = new LongAccumulator(Math::max, 0);
+
+    public HotPathMetrics(@Value("${kv.metrics.enabled:true}") boolean enabled,
+                          @Value("${kv.metrics.sample-every:64}") int sampleEvery) {
+        this.enabled = enabled;
+        this.sampleMask = Integer.highestOneBit(Math.max(1, sampleEvery)) - 1;
+    }
+
+    /** Start time for {@link #record}; 0 when disabled. */
+    public long start() {
+        return enabled ? System.nanoTime() : 0;
+    }
+
+    /** Like {@link #start()} but only for one call in {@code sample-every}; 0 means "not sampled". */
+    public long startSampled() {
+        if (!enabled || (ThreadLocalRandom.current().nextInt() & sampleMask) != 0) return 0;
+        return System.nanoTime();
+    }
+
+    /** Records the time since {@code start} under {@code stage} / {@code peer} (use {@link #LOCAL} for local stages). */
+    public void record(String stage, String peer, long start) {
+        if (start == 0) return;
+        timer(stage, peer).record(System.nanoTime() - start);
+    }
+
+    /** The {@code q} quantile of a timer in nanos, or -1 if it has fewer than {@code minSamples} samples. */
+    public long percentile(String stage, String peer, double q, long minSamples) {
+        Map<String, LatencyHistogram> byPeer = timers.get(stage);
+        LatencyHistogram h = byPeer == null ? null : byPeer.get(peer);
+        if (h == null || h.count() < minSamples) return -1;
+        return h.percentile(q);
+    }
+
+    public void error(String stage, String peer) {
+        if (!enabled) return;
+        errors.computeIfAbsent(stage, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(peer, p -> new LongAdder())
+                .increment();
+    }
+
+    /** Counts {@code keys} keys of a client operation as answered here or sent to their owner. */
+    public void routed(String op, boolean local, int keys) {
+        if (!enabled) return;
+        (local ? servedLocally : forwarded).computeIfAbsent(op, o -> new LongAdder()).add(keys);
+    }
+
+    public void enter() {
+        if (enabled) maxInFlight.accumulate(inFlight.incrementAndGet());
+    }
+
+    public void exit() {
+        if (enabled) inFlight.decrementAndGet();
+    }
+
+    private LatencyHistogram timer(String stage, String peer) {
+        return timers.computeIfAbsent(stage, s -> new ConcurrentHashMap<>())
+                .computeIfAbsent(peer, p -> new LatencyHistogram());
+    }
+
+    public Map<String, Object> snapshot() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("inFlight", inFlight.get());
+        stats.put("maxInFlight", maxInFlight.get());
+
+        Map<String, Object> routing = new TreeMap<>();
+        for (String op : union(servedLocally, forwarded)) {
+            long l = sum(servedLocally.get(op));
+            long f = sum(forwarded.get(op));
+            routing.put(op, Map.of("local", l, "forwarded", f,
+                    "localRatio", l + f == 0 ? 0.0 : (double) l / (l + f)));
+        }
+        stats.put("routing", routing);
+
+        Map<String, Object> stages = new TreeMap<>();
+        timers.forEach((stage, byPeer) -> {
+            Map<String, Object> peers = new TreeMap<>();
+            byPeer.forEach((peer, h) -> peers.put(peer, h.snapshot()));
+            stages.put(stage, peers);
+        });
+        stats.put("latency", stages);
+
+        Map<String, Object> errorCounts = new TreeMap<>();
+        errors.forEach((stage, byPeer) -> {
+            Map<String, Long> peers = new TreeMap<>();
+            byPeer.forEach((peer, n) -> peers.put(peer, n.sum()));
+            errorCounts.put(stage, peers);
+        });
+        stats.put("errors", errorCounts);
+        return stats;
+    }
+
+    private static Set<String> union(Map<String, ?> a, Map<String, ?> b) {
+        Set<String> keys = new TreeSet<>(a.keySet());
+        keys.addAll(b.keySet());
+        return keys;
+    }
+
+    private static long sum(LongAdder adder) {
+        return adder == null ? 0 : adder.sum();
+    }
+}
@@ -0,0 +1,42 @@
+package com.example.kv_store.rebalance;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Token bucket over bytes. {@link #acquire} sleeps until the bucket has paid
+ * for the request; the bucket holds at most one second of tokens, so an idle
+ * period allows a burst of at most that much. A rate of 0 means unlimited.
+ * Also throttles anti-entropy repair.
+ */
+public final class RateLimiter {
+
+    private volatile long bytesPerSec;
+    private double tokens;
+    private long lastRefillNanos = System.nanoTime();
+
+    public RateLimiter(long bytesPerSec) {
+        this.bytesPerSec = bytesPerSec;
+    }
+
+    public long rate() {
+        return bytesPerSec;
+    }
+
+    public void setRate(long bytesPerSec) {
+        this.bytesPerSec = bytesPerSec;
+    }
+
+    public void acquire(long bytes) throws InterruptedException {
+        long sleepNanos;
+        synchronized (this) {
+            long rate = bytesPerSec;
+            if (rate <= 0) return;
+            long now = System.nanoTime();
+            tokens = Math.min(rate, tokens + (now - lastRefillNanos) * rate / 1e9);
+            lastRefillNanos = now;
+            tokens -= bytes;
+            sleepNanos = tokens >= 0 ? 0 : (long) (-tokens / rate * 1e9);
+        }
+        if (sleepNanos > 0) TimeUnit.NANOSECONDS.sleep(sleepNanos);
+    }
+}
@@ -0,0 +1,293 @@
+package com.example.kv_store.rebalance;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.storage.StorageEngine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.client.WebClient;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Moves partitions when {@code cluster.nodes} changes.
+ *
+ * An operator posts the new membership to any node, which tells every old and
+ * new node to {@link #begin}. Each node then works through the partitions it
+ * is primary for whose owner list changes, one at a time on a single
+ * background thread:
+ * <ol>
+ *   <li>New owners are added as extra replication targets, so writes made
+ *       during the move reach them through the normal pipeline.</li>
+ *   <li>The partition is read in keyset pages ({@code partition_id, k > last})
+ *       and each page is queued for the new owners, throttled by
+ *       {@code kv.rebalance.max-bytes-per-sec}.</li>
+ *   <li>Hand-over: wait until the new owners have acked everything queued,
+ *       then hold off writes to the partition, wait again for the few writes
+ *       queued in between, and install the new owner list on the new primary
+ *       and then this one. Every other node is told once writes flow again.</li>
+ * </ol>
+ * Reads are served by the old primary until the hand-over. Nodes that stop
+ * owning a partition delete their copy afterwards, at the same throttled rate.
+ * A move that fails stops replicating the partition to its new owners.
+ *
+ * A node joining the cluster starts with the old {@code cluster.nodes} (so it
+ * owns nothing yet) and every node needs {@code cluster.nodeUrls.<id>} for it.
+ */
+@Component
+public class RebalanceService {
+
+    private static final Logger log = LoggerFactory.getLogger(RebalanceService.class);
+
+    private final AffinityService affinity;
+    private final DistributedKeyValueService service;
+    private final StorageEngine storage;
+    private final ReplicationPipeline replication;
+    private final WebClient webClient;
+    private final int chunkSize;
+    private final long handOverTimeoutMs;
+    private final RateLimiter limiter;
+
+    private final ExecutorService worker = Executors.newSingleThreadExecutor(r -> {
+        Thread t = new Thread(r, "kv-rebalance");
+        t.setDaemon(true);
+        return t;
+    });
+
+    private volatile String state = "idle";
+    private volatile List<String> targetNodes = List.of();
+    private volatile int pending;
+    private volatile int currentPartition = -1;
+    private final LongAdder partitionsMoved = new LongAdder();
+    private final LongAdder partitionsPurged = new LongAdder();
+    private final LongAdder keysSent = new LongAdder();
+    private final LongAdder bytesSent = new LongAdder();
+
+    public RebalanceService(AffinityService affinity,
+                            DistributedKeyValueService service,
+                            StorageEngine storage,
+                            ReplicationPipeline replication,
+                            WebClient.Builder webClientBuilder,
+                            @Value("${kv.rebalance.chunk-size:500}") int chunkSize,
+                            @Value("${kv.rebalance.max-bytes-per-sec:8388608}") long maxBytesPerSec,
+                            @Value("${kv.rebalance.handover-timeout-ms:10000}") long handOverTimeoutMs) {
+        this.affinity = affinity;
+        this.service = service;
+        this.storage = storage;
+        this.replication = replication;
+        this.webClient = webClientBuilder.build();
+        this.chunkSize = chunkSize;
+        this.handOverTimeoutMs = handOverTimeoutMs;
+        this.limiter = new RateLimiter(maxBytesPerSec);
+    }
+
+    // ---------- Control ----------
+
+    /** Operator entry point: starts the move to {@code nodes} on every old and new node. */
+    public Map<String, Object> start(List<String> nodes) {
+        Set<String> everyone = new LinkedHashSet<>(affinity.getNodes());
+        everyone.addAll(nodes);
+        for (String nodeId : everyone) {
+            if (nodeId.equals(affinity.getLocalNodeId())) {
+                begin(nodes);
+            } else {
+                post(nodeId, "/internal/rebalance/begin", nodes);
+            }
+        }
+        return status();
+    }
+
+    /** Plans and starts streaming the partitions this node is primary for. */
+    public synchronized void begin(List<String> nodes) {
+        if (pending > 0) throw new IllegalStateException("Rebalance already in progress");
+        List<List<String>> plan = affinity.planFor(nodes);
+        Set<String> everyone = new LinkedHashSet<>(affinity.getNodes());
+        everyone.addAll(nodes);
+
+        List<Integer> moves = new ArrayList<>();
+        for (int p = 0; p < plan.size(); p++) {
+            List<String> current = affinity.owners(p);
+            if (!current.equals(plan.get(p)) && current.get(0).equals(affinity.getLocalNodeId())) {
+                moves.add(p);
+            }
+        }
+        affinity.setMembership(nodes);
+        targetNodes = List.copyOf(nodes);
+        pending = moves.size();
+        state = moves.isEmpty() ? "idle" : "streaming";
+        log.info("Rebalancing to {}: {} partitions to move from this node", nodes, moves.size());
+
+        for (int p : moves) {
+            worker.execute(() -> moveSafely(p, plan.get(p), everyone));
+        }
+    }
+
+    /** A partition changed owners; install it and drop our copy if we no longer own it. */
+    public void onHandOver(int partitionId, List<String> owners) {
+        boolean wasOwner = affinity.owners(partitionId).contains(affinity.getLocalNodeId());
+        service.applyHandOver(partitionId, owners);
+        if (wasOwner && !owners.contains(affinity.getLocalNodeId())) {
+            worker.execute(() -> purge(partitionId));
+        }
+    }
+
+    public void setRate(long bytesPerSec) {
+        limiter.setRate(bytesPerSec);
+    }
+
+    public Map<String, Object> status() {
+        Map<String, Object> status = new LinkedHashMap<>();
+        status.put("state", state);
+        status.put("targetNodes", targetNodes);
+        status.put("partitionsPending", pending);
+        status.put("currentPartition", currentPartition);
+        status.put("partitionsMoved", partitionsMoved.sum());
+        status.put("partitionsPurged", partitionsPurged.sum());
+        status.put("keysSent", keysSent.sum());
+        status.put("bytesSent", bytesSent.sum());
+        status.put("maxBytesPerSec", limiter.rate());
+        return status;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        worker.shutdownNow();
+    }
+
+    // ---------- Moving a partition ----------
+
+    private void moveSafely(int partitionId, List<String> newOwners, Set<String> everyone) {
+        if ("failed".equals(state)) return;
+        currentPartition = partitionId;
+        try {
+            move(partitionId, newOwners, everyone);
+            partitionsMoved.increment();
+            synchronized (this) {
+                if (--pending == 0) state = "done";
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.error("Moving partition {} to {} failed; stopping rebalance", partitionId, newOwners, e);
+            synchronized (this) {
+                state = "failed";
+                pending = 0;
+            }
+        } finally {
+            currentPartition = -1;
+        }
+    }
+
+    private void move(int partitionId, List<String> newOwners, Set<String> everyone) throws Exception {
+        List<String> current = affinity.owners(partitionId);
+        List<String> targets = newOwners.stream().filter(n -> !current.contains(n)).toList();
+        affinity.startIncoming(partitionId, targets);
+        try {
+            if (!targets.isEmpty()) {
+                String after = null;
+                while (true) {
+                    List<KeyValueEntity> page = storage.scanPartition(partitionId, after, chunkSize);
+                    if (page.isEmpty()) break;
+                    limiter.acquire(page.stream().mapToLong(e -> e.getValue().length).sum());
+                    List<String> keys = page.stream().map(KeyValueEntity::getKey).toList();
+                    bytesSent.add(service.transferKeys(keys, targets));
+                    if (Thread.currentThread().isInterrupted()) throw new InterruptedException();
+                    keysSent.add(keys.size());
+                    after = keys.get(keys.size() - 1);
+                }
+            }
+
+            // drain the transfer with writes still flowing, so the final barrier is short
+            for (String nodeId : targets) {
+                replication.barrier(nodeId).get(handOverTimeoutMs, TimeUnit.MILLISECONDS);
+            }
+            Exception[] failure = {null};
+            service.withPartitionFrozen(partitionId, () -> {
+                try {
+                    handOver(partitionId, newOwners, targets);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            if (failure[0] != null) throw failure[0];
+        } finally {
+            // handed over already; otherwise the non-owners must not keep getting its writes
+            affinity.stopIncoming(partitionId);
+        }
+        announce(partitionId, newOwners, everyone);
+    }
+
+    /** Runs with writes to the partition held off, so only the calls that must happen here. */
+    private void handOver(int partitionId, List<String> newOwners, List<String> targets) throws Exception {
+        for (String nodeId : targets) {
+            replication.barrier(nodeId).get(handOverTimeoutMs, TimeUnit.MILLISECONDS);
+        }
+        // The new primary must take over before we stop being primary.
+        if (!newOwners.get(0).equals(affinity.getLocalNodeId())) {
+            post(newOwners.get(0), handOverPath(partitionId), newOwners);
+        }
+        onHandOver(partitionId, newOwners);
+    }
+
+    /**
+     * Tells every other node about a hand-over, best effort and with writes
+     * flowing again: a node with a stale table sends to the old primary, which
+     * forwards.
+     */
+    private void announce(int partitionId, List<String> newOwners, Set<String> everyone) {
+        for (String nodeId : everyone) {
+            if (nodeId.equals(affinity.getLocalNodeId()) || nodeId.equals(newOwners.get(0))) continue;
+            try {
+                post(nodeId, handOverPath(partitionId), newOwners);
+            } catch (Exception e) {
+                log.warn("Could not tell {} about the hand-over of partition {}", nodeId, partitionId, e);
+            }
+        }
+    }
+
+    private static String handOverPath(int partitionId) {
+        return "/internal/rebalance/handover?partition=" + partitionId;
+    }
+
+    private void purge(int partitionId) {
+        try {
+            while (!affinity.owners(partitionId).contains(affinity.getLocalNodeId())) {
+                List<KeyValueEntity> page = storage.scanPartition(partitionId, null, chunkSize);
+                if (page.isEmpty()) break;
+                limiter.acquire(page.stream().mapToLong(e -> e.getValue().length).sum());
+                storage.deleteAllById(page.stream().map(KeyValueEntity::getKey).toList());
+            }
+            partitionsPurged.increment();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (Exception e) {
+            log.warn("Purging partition {} failed", partitionId, e);
+        }
+    }
+
+    private void post(String nodeId, String path, Object body) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) throw new IllegalStateException("No URL for node " + nodeId);
+        webClient.post()
+                .uri(baseUrl + path)
+                .bodyValue(body)
+                .retrieve()
+                .toBodilessEntity()
+                .block(Duration.ofMillis(handOverTimeoutMs));
+    }
+}
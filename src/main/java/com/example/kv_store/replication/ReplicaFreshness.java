@@ -0,0 +1,38 @@
+package com.example.kv_store.replication;
+
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Backup side of replication: how far behind each primary this node's copy is.
+ *
+ * Each applied batch says the copy holds every write the primary acknowledged
+ * up to {@code lagMillis} before it was sent. That instant is kept on the local
+ * clock, so staleness needs no clock sync between nodes; the time the batch
+ * spent on the wire is not counted.
+ */
+@Component
+public class ReplicaFreshness {
+
+    private final Map<String, Long> caughtUpAtMillis = new ConcurrentHashMap<>();
+
+    public void record(ReplicationBatch batch) {
+        long caughtUpAt = System.currentTimeMillis() - batch.lagMillis();
+        caughtUpAtMillis.merge(batch.source(), caughtUpAt, Math::max);
+    }
+
+    /** Upper bound on how stale our copy of the primary's data is; MAX_VALUE if never heard from. */
+    public long stalenessMillis(String primary) {
+        Long caughtUpAt = caughtUpAtMillis.get(primary);
+        return caughtUpAt == null ? Long.MAX_VALUE : Math.max(0, System.currentTimeMillis() - caughtUpAt);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        caughtUpAtMillis.keySet().forEach(primary -> stats.put(primary, stalenessMillis(primary)));
+        return stats;
+    }
+}
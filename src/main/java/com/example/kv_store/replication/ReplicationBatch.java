@@ -0,0 +1,11 @@
+package com.example.kv_store.replication;
+
+import java.util.List;
+
+/**
+ * Ops from one primary to one backup, in sequence order. Once applied the
+ * backup has every write the primary acknowledged up to {@code lagMillis}
+ * before sending; an empty batch is a heartbeat carrying only that.
+ */
+public record ReplicationBatch(String source, List<ReplicationOp> ops, long lagMillis) {
+}
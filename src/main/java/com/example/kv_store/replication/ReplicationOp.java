@@ -0,0 +1,21 @@
+package com.example.kv_store.replication;
+
+/**
+ * One write shipped from a primary to a backup. {@code seq} is assigned by the
+ * primary's {@link ReplicationPipeline} and increases in enqueue order.
+ * {@code expireAtMillis} is absolute (epoch millis, null = no TTL) so a replica
+ * expires at the same moment as the primary however late it applies the op.
+ * {@code version} is the entry's version as stored on the primary.
+ */
+public record ReplicationOp(long seq, Type op, String key, byte[] value, Long expireAtMillis, long version) {
+
+    public enum Type { PUT, DELETE }
+
+    public static ReplicationOp put(long seq, String key, byte[] value, Long expireAtMillis, long version) {
+        return new ReplicationOp(seq, Type.PUT, key, value, expireAtMillis, version);
+    }
+
+    public static ReplicationOp delete(long seq, String key) {
+        return new ReplicationOp(seq, Type.DELETE, key, null, null, 0);
+    }
+}
@@ -0,0 +1,436 @@
+package com.example.kv_store.replication;
+
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.transport.PeerClient;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+
+/**
+ * Ships local primary writes to backups.
+ *
+ * Each backup node gets a bounded queue and one sender thread. The sender cuts
+ * a batch when it reaches {@code kv.replication.batch-size} ops or
+ * {@code kv.replication.linger-ms} after its first op, sends it, and waits for
+ * the backup to ack the sequence number of the last op it applied. A failed
+ * batch is retried with backoff before anything behind it is sent, so a
+ * backup applies writes in queue order. Callers enqueue while holding the
+ * key's write lock, which makes queue order match storage order per key.
+ *
+ * Every batch also tells the backup how current it is: the batch covers all
+ * writes acknowledged up to {@code lagMillis} before it was sent. An idle
+ * stream sends an empty batch every {@code kv.replication.heartbeat-ms} so
+ * backups can still bound their staleness (see {@link ReplicaFreshness}).
+ *
+ * When a backup falls behind its queue fills up and a writer waits for up to
+ * {@code kv.replication.backpressure-ms}. If that times out the stream starts
+ * spilling: until the queue drains to half its capacity every op for that
+ * backup is dropped at once and its partition recorded as dirty, so it can be
+ * repaired later. Writers enqueue under the key's lock, so only one bounded
+ * wait is paid per episode rather than one per write.
+ *
+ * A backup that missed spilled ops must not look current to bounded reads:
+ * while any of its partitions is dirty, batches and heartbeats report it as
+ * caught up only to just before the first spill.
+ *
+ * A write made under a write quorum ({@code kv.quorum.write}) passes a
+ * {@link WriteAcks}: its ops count as acked by a backup once the batch
+ * carrying them is, and as lost for that backup if they are spilled.
+ */
+@Component
+public class ReplicationPipeline {
+
+    private static final Logger log = LoggerFactory.getLogger(ReplicationPipeline.class);
+
+    private final AffinityService affinity;
+    private final PeerClient peers;
+    private final HotPathMetrics metrics;
+    private final int queueCapacity;
+    private final int batchSize;
+    private final long lingerMs;
+    private final long backpressureMs;
+    private final long sendTimeoutMs;
+    private final long heartbeatMs;
+
+    private final AtomicLong sequence = new AtomicLong();
+    private final Map<String, BackupStream> streams = new ConcurrentHashMap<>();
+    private volatile boolean running = true;
+
+    public ReplicationPipeline(AffinityService affinity,
+                               PeerClient peers,
+                               HotPathMetrics metrics,
+                               @Value("${kv.replication.queue-capacity:10000}") int queueCapacity,
+                               @Value("${kv.replication.batch-size:256}") int batchSize,
+                               @Value("${kv.replication.linger-ms:5}") long lingerMs,
+                               @Value("${kv.replication.backpressure-ms:200}") long backpressureMs,
+                               @Value("${kv.replication.send-timeout-ms:5000}") long sendTimeoutMs,
+                               @Value("${kv.replication.heartbeat-ms:250}") long heartbeatMs) {
+        this.affinity = affinity;
+        this.peers = peers;
+        this.metrics = metrics;
+        this.queueCapacity = queueCapacity;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.backpressureMs = backpressureMs;
+        this.sendTimeoutMs = sendTimeoutMs;
+        this.heartbeatMs = heartbeatMs;
+        // start streams to our backups up front so they get heartbeats before the first write
+        for (int p = 0; p < affinity.getPartitions(); p++) {
+            if (affinity.owners(p).get(0).equals(affinity.getLocalNodeId())) {
+                affinity.replicaTargets(p).forEach(this::stream);
+            }
+        }
+    }
+
+    // ---------- Producer side (request threads) ----------
+
+    public void replicatePut(String key, byte[] value, Long expireAtMillis, long version) {
+        replicatePut(key, value, expireAtMillis, version, null);
+    }
+
+    /** Queues the put and counts its backup acks into {@code acks} (null: nobody waits). */
+    public void replicatePut(String key, byte[] value, Long expireAtMillis, long version, WriteAcks acks) {
+        enqueue(key, acks, seq -> ReplicationOp.put(seq, key, value, expireAtMillis, version));
+    }
+
+    public void replicateDelete(String key) {
+        replicateDelete(key, null);
+    }
+
+    public void replicateDelete(String key, WriteAcks acks) {
+        enqueue(key, acks, seq -> ReplicationOp.delete(seq, key));
+    }
+
+    private void enqueue(String key, WriteAcks acks, LongFunction<ReplicationOp> opFactory) {
+        int partitionId = affinity.partition(key);
+        List<String> targets = affinity.replicaTargets(partitionId);
+        if (targets.isEmpty()) return; // no backups
+
+        ReplicationOp op = opFactory.apply(sequence.incrementAndGet());
+        WriteAcks.Op ack = acks == null ? null : acks.track(targets.size());
+        for (String nodeId : targets) {
+            stream(nodeId).offer(op, partitionId, ack);
+        }
+    }
+
+    // ---------- Rebalancing ----------
+
+    /**
+     * Queues a copy of an existing entry for one node. Unlike a write it never
+     * spills: a partition being moved must arrive complete, so a full queue
+     * blocks the transfer instead. Returns false if interrupted while blocked.
+     */
+    public boolean transferPut(String nodeId, String key, byte[] value, Long expireAtMillis, long version) {
+        ReplicationOp op = ReplicationOp.put(sequence.incrementAndGet(), key, value, expireAtMillis, version);
+        try {
+            stream(nodeId).put(new Pending(op, System.currentTimeMillis(), null, null));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** {@link #transferPut} of a delete, for a node that holds an entry it should not (anti-entropy repair). */
+    public boolean transferDelete(String nodeId, String key) {
+        ReplicationOp op = ReplicationOp.delete(sequence.incrementAndGet(), key);
+        try {
+            stream(nodeId).put(new Pending(op, System.currentTimeMillis(), null, null));
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /** Completes once everything queued for the node so far has been acked. */
+    public CompletableFuture<Void> barrier(String nodeId) throws InterruptedException {
+        CompletableFuture<Void> done = new CompletableFuture<>();
+        stream(nodeId).put(new Pending(null, System.currentTimeMillis(), done, null));
+        return done;
+    }
+
+    private BackupStream stream(String nodeId) {
+        return streams.computeIfAbsent(nodeId, BackupStream::new);
+    }
+
+    // ---------- Introspection ----------
+
+    /** Partitions that lost ops to spilling, per backup node. */
+    public Map<String, Set<Integer>> dirtyPartitions() {
+        Map<String, Set<Integer>> dirty = new LinkedHashMap<>();
+        streams.forEach((nodeId, s) -> dirty.put(nodeId, Set.copyOf(s.dirtyPartitions)));
+        return dirty;
+    }
+
+    public void clearDirty(String nodeId, int partitionId) {
+        BackupStream s = streams.get(nodeId);
+        if (s != null) s.clearDirty(partitionId);
+    }
+
+    /** When the node's oldest still-dirty partition lost its first op; 0 if none is dirty. */
+    public long dirtySinceMillis(String nodeId) {
+        BackupStream s = streams.get(nodeId);
+        return s == null ? 0 : s.dirtySinceMillis();
+    }
+
+    /** Marks a partition dirty again, e.g. one a repair round had to skip. */
+    public void markDirty(String nodeId, int partitionId, long sinceMillis) {
+        stream(nodeId).markDirty(partitionId, sinceMillis);
+    }
+
+    /** Unacked ops and age of the oldest unacked op, per backup. */
+    public Map<String, Object> lag() {
+        Map<String, Object> lag = new LinkedHashMap<>();
+        streams.forEach((nodeId, s) -> lag.put(nodeId, Map.of("lagOps", s.lagOps(), "lagMillis", s.lagMillis())));
+        return lag;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lastSeq", sequence.get());
+        Map<String, Object> backups = new LinkedHashMap<>();
+        streams.forEach((nodeId, s) -> backups.put(nodeId, s.stats()));
+        stats.put("backups", backups);
+        return stats;
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        streams.values().forEach(s -> s.sender.interrupt());
+    }
+
+    // ---------- Per-backup stream ----------
+
+    /**
+     * An op to send, or a barrier ({@code op == null}) completed when the ops
+     * before it are acked. {@code ack} counts the op towards a write quorum.
+     */
+    private record Pending(ReplicationOp op, long enqueuedAtMillis, CompletableFuture<Void> barrier, WriteAcks.Op ack) {
+    }
+
+    private final class BackupStream {
+
+        private final String nodeId;
+        private final BlockingQueue<Pending> queue = new ArrayBlockingQueue<>(queueCapacity);
+        private final Set<Integer> dirtyPartitions = ConcurrentHashMap.newKeySet();
+        private final Thread sender;
+        private volatile boolean spilling;
+        private long dirtySinceMillis; // guarded by this; 0 while no partition is dirty
+
+        private final AtomicLong enqueuedSeq = new AtomicLong();
+        private final AtomicLong ackedSeq = new AtomicLong();
+        private volatile long oldestUnackedAtMillis; // 0 when fully acked
+        private long lastSentAtMillis;
+        private final LongAdder batchesSent = new LongAdder();
+        private final LongAdder opsSent = new LongAdder();
+        private final LongAdder retries = new LongAdder();
+        private final LongAdder spilled = new LongAdder();
+        private final LongAdder blockedWrites = new LongAdder();
+
+        BackupStream(String nodeId) {
+            this.nodeId = nodeId;
+            this.sender = new Thread(this::run, "kv-replication-" + nodeId);
+            sender.setDaemon(true);
+            sender.start();
+        }
+
+        void offer(ReplicationOp op, int partitionId, WriteAcks.Op ack) {
+            Pending pending = new Pending(op, System.currentTimeMillis(), null, ack);
+            if (spilling && queue.size() <= queueCapacity / 2) {
+                spilling = false;
+                log.info("Backup {} caught up; replication resumed", nodeId);
+            }
+            boolean accepted = !spilling && queue.offer(pending);
+            if (!accepted && !spilling) {
+                blockedWrites.increment();
+                try {
+                    accepted = queue.offer(pending, backpressureMs, TimeUnit.MILLISECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                if (!accepted) spilling = true;
+            }
+            if (accepted) {
+                enqueuedSeq.accumulateAndGet(op.seq(), Math::max);
+            } else {
+                spilled.increment();
+                if (ack != null) ack.spilled(nodeId);
+                if (markDirty(partitionId, pending.enqueuedAtMillis())) {
+                    log.warn("Backup {} is too far behind; partition {} needs repair", nodeId, partitionId);
+                }
+            }
+        }
+
+        synchronized boolean markDirty(int partitionId, long sinceMillis) {
+            if (dirtyPartitions.isEmpty() || sinceMillis < dirtySinceMillis) dirtySinceMillis = sinceMillis;
+            return dirtyPartitions.add(partitionId);
+        }
+
+        synchronized void clearDirty(int partitionId) {
+            dirtyPartitions.remove(partitionId);
+            if (dirtyPartitions.isEmpty()) dirtySinceMillis = 0;
+        }
+
+        synchronized long dirtySinceMillis() {
+            return dirtySinceMillis;
+        }
+
+        void put(Pending pending) throws InterruptedException {
+            queue.put(pending);
+            if (pending.op() != null) enqueuedSeq.accumulateAndGet(pending.op().seq(), Math::max);
+        }
+
+        private void run() {
+            List<Pending> batch = new ArrayList<>(batchSize);
+            while (running) {
+                try {
+                    fill(batch);
+                    if (batch.isEmpty()) {
+                        heartbeatIfIdle();
+                    } else {
+                        send(batch, cutPoint());
+                    }
+                    batch.clear();
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+        }
+
+        /** Waits for a first op, then for up to linger-ms or a full batch. */
+        private void fill(List<Pending> batch) throws InterruptedException {
+            Pending first = queue.poll(heartbeatMs, TimeUnit.MILLISECONDS);
+            if (first == null) return;
+            batch.add(first);
+            if (oldestUnackedAtMillis == 0) oldestUnackedAtMillis = first.enqueuedAtMillis();
+            long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMs);
+            while (batch.size() < batchSize) {
+                queue.drainTo(batch, batchSize - batch.size());
+                long wait = deadline - System.nanoTime();
+                if (batch.size() >= batchSize || wait <= 0) break;
+                Pending next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                if (next == null) break;
+                batch.add(next);
+            }
+        }
+
+        /**
+         * Every write acknowledged before the returned instant is in the batch
+         * just cut or an earlier one: writers enqueue before they ack, so either
+         * the queue was empty or the writes are older than its head. Writes
+         * spilled since the backup went dirty are not, so it stops there.
+         */
+        private long cutPoint() {
+            long now = System.currentTimeMillis();
+            Pending head = queue.peek();
+            long cut = head == null ? now : Math.min(now, head.enqueuedAtMillis() - 1);
+            long dirtySince = dirtySinceMillis();
+            return dirtySince == 0 ? cut : Math.min(cut, dirtySince - 1);
+        }
+
+        private void heartbeatIfIdle() {
+            long now = System.currentTimeMillis();
+            if (now - lastSentAtMillis < heartbeatMs || !queue.isEmpty()) return;
+            lastSentAtMillis = now;
+            ReplicationBatch heartbeat = new ReplicationBatch(affinity.getLocalNodeId(), List.of(), now - cutPoint());
+            try {
+                peers.replicate(nodeId, heartbeat).get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            } catch (Exception e) {
+                log.debug("Heartbeat to {} failed", nodeId, e); // the backup just looks staler
+            }
+        }
+
+        /** Sends until acked; never skips ahead, so order is preserved. */
+        private void send(List<Pending> batch, long cutPoint) throws InterruptedException {
+            List<ReplicationOp> ops = batch.stream().map(Pending::op).filter(Objects::nonNull).toList();
+            boolean acked = ops.isEmpty() || sendOps(ops, cutPoint);
+            for (Pending p : batch) {
+                if (p.barrier() != null) p.barrier().complete(null);
+                if (acked && p.ack() != null) p.ack().acked();
+            }
+        }
+
+        /** Returns false only if the pipeline was shut down first. */
+        private boolean sendOps(List<ReplicationOp> ops, long cutPoint) throws InterruptedException {
+            long lastSeq = ops.get(ops.size() - 1).seq(); // the backup acks the last op it applied
+            long backoffMs = 50;
+            while (running) {
+                try {
+                    long now = System.currentTimeMillis();
+                    ReplicationBatch request = new ReplicationBatch(affinity.getLocalNodeId(), ops, now - cutPoint);
+                    lastSentAtMillis = now;
+                    long start = metrics.start();
+                    long acked = peers.replicate(nodeId, request)
+                            .get(sendTimeoutMs, TimeUnit.MILLISECONDS);
+                    metrics.record("replication", nodeId, start);
+                    if (acked == lastSeq) {
+                        ackedSeq.accumulateAndGet(acked, Math::max);
+                        Pending head = queue.peek();
+                        oldestUnackedAtMillis = head == null ? 0 : head.enqueuedAtMillis();
+                        batchesSent.increment();
+                        opsSent.add(ops.size());
+                        return true;
+                    }
+                    log.warn("Backup {} acked seq {} instead of {}; resending", nodeId, acked, lastSeq);
+                } catch (InterruptedException e) {
+                    throw e;
+                } catch (Exception e) {
+                    metrics.error("replication", nodeId);
+                    log.debug("Replication to {} failed, retrying in {}ms", nodeId, backoffMs, e);
+                }
+                retries.increment();
+                Thread.sleep(backoffMs);
+                backoffMs = Math.min(backoffMs * 2, 5_000);
+            }
+            return false;
+        }
+
+        long lagOps() {
+            return Math.max(0, enqueuedSeq.get() - ackedSeq.get());
+        }
+
+        long lagMillis() {
+            long oldest = oldestUnackedAtMillis;
+            return oldest == 0 ? 0 : System.currentTimeMillis() - oldest;
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("queued", queue.size());
+            stats.put("enqueuedSeq", enqueuedSeq.get());
+            stats.put("ackedSeq", ackedSeq.get());
+            stats.put("lagOps", lagOps());
+            stats.put("lagMillis", lagMillis());
+            stats.put("batchesSent", batchesSent.sum());
+            stats.put("opsSent", opsSent.sum());
+            stats.put("retries", retries.sum());
+            stats.put("blockedWrites", blockedWrites.sum());
+            stats.put("spilled", spilled.sum());
+            stats.put("spilling", spilling);
+            stats.put("dirtyPartitions", dirtyPartitions.size());
+            return stats;
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.example.kv_store.replication;
+
+import com.example.kv_store.transport.PeerCallException;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Backup acks one client write waits for under a write quorum: each op the
+ * write queues must be applied by {@code backupAcks} of its partition's
+ * backups (fewer if the partition has fewer), the primary's own store being
+ * the first of W acks.
+ *
+ * The service creates one per write, passes it to every replicate call the
+ * write makes, then {@link #seal seals} it. The future completes once every op
+ * has its acks, and fails as soon as one op was spilled by so many backups
+ * that it can no longer get them.
+ */
+public final class WriteAcks {
+
+    private final int backupAcks;
+    private final CompletableFuture<Void> done = new CompletableFuture<>();
+    private final AtomicInteger open = new AtomicInteger(1); // ops still short of acks, plus one until sealed
+
+    public WriteAcks(int backupAcks) {
+        this.backupAcks = backupAcks;
+    }
+
+    /** Call once all of the write's ops are queued. */
+    public CompletableFuture<Void> seal() {
+        settle();
+        return done;
+    }
+
+    /** Tracks an op queued for {@code backups} nodes; null if it needs no acks. */
+    Op track(int backups) {
+        int needed = Math.min(backupAcks, backups);
+        if (needed <= 0) return null;
+        open.incrementAndGet();
+        return new Op(needed, backups - needed);
+    }
+
+    private void settle() {
+        if (open.decrementAndGet() == 0) done.complete(null);
+    }
+
+    /** Acks of one queued op, counted down by the backup streams. */
+    final class Op {
+
+        private final AtomicInteger needed;
+        private final AtomicInteger spare;
+
+        private Op(int needed, int spare) {
+            this.needed = new AtomicInteger(needed);
+            this.spare = new AtomicInteger(spare);
+        }
+
+        void acked() {
+            if (needed.decrementAndGet() == 0) settle();
+        }
+
+        void spilled(String nodeId) {
+            if (spare.decrementAndGet() < 0) {
+                done.completeExceptionally(new PeerCallException("replication.quorum", nodeId, false,
+                        "backup spilled the write, quorum cannot be reached"));
+            }
+        }
+    }
+}
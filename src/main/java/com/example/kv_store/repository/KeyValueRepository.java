@@ -1,12 +1,16 @@
 package com.example.kv_store.repository;
 
 import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.storage.ExpiryEntry;
+import org.springframework.data.domain.Limit;
 import org.springframework.data.jpa.repository.JpaRepository;
-import org.springframework.data.jpa.repository.Modifying;
 import org.springframework.data.jpa.repository.Query;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
 
 @Repository
@@ -15,7 +19,38 @@ public interface KeyValueRepository extends JpaRepository<KeyValueEntity, String
     @Query("SELECT k FROM KeyValueEntity k WHERE k.key = :key AND (k.expireAt IS NULL OR k.expireAt > CURRENT_TIMESTAMP)")
     Optional<KeyValueEntity> findValid(@Param("key") String key);
 
-//    @Modifying
-//    @Query("DELETE FROM KeyValueEntity e WHERE e.expireAt IS NOT NULL AND e.expireAt <= CURRENT_TIMESTAMP")
-//    int deleteExpired();
+    @Query("SELECT k FROM KeyValueEntity k WHERE k.key IN :keys AND (k.expireAt IS NULL OR k.expireAt > CURRENT_TIMESTAMP)")
+    List<KeyValueEntity> findAllValid(@Param("keys") Collection<String> keys);
+
+    @Query("SELECT k.key FROM KeyValueEntity k WHERE k.key IN :keys"
+            + " AND k.expireAt IS NOT NULL AND k.expireAt <= CURRENT_TIMESTAMP")
+    List<String> findExpired(@Param("keys") Collection<String> keys);
+
+    // keyset pagination: (partition_id, k) is walked in key order, no OFFSET
+    @Query("SELECT k FROM KeyValueEntity k WHERE k.partitionId = :partitionId AND k.key > :afterKey"
+            + " AND (k.expireAt IS NULL OR k.expireAt > CURRENT_TIMESTAMP) ORDER BY k.key")
+    List<KeyValueEntity> scanPartition(@Param("partitionId") int partitionId,
+                                       @Param("afterKey") String afterKey,
+                                       Limit limit);
+
+    // same walk, cut to one key prefix; the pattern escapes LIKE wildcards with '!'
+    @Query("SELECT k FROM KeyValueEntity k WHERE k.partitionId = :partitionId AND k.key > :afterKey"
+            + " AND k.key LIKE :pattern ESCAPE '!'"
+            + " AND (k.expireAt IS NULL OR k.expireAt > CURRENT_TIMESTAMP) ORDER BY k.key")
+    List<KeyValueEntity> scanPartitionPrefix(@Param("partitionId") int partitionId,
+                                             @Param("afterKey") String afterKey,
+                                             @Param("pattern") String pattern,
+                                             Limit limit);
+
+    // expiry sweep: walks idx_kv_partition_expiry instead of scanning the table
+    @Query("SELECT new com.example.kv_store.storage.ExpiryEntry(k.key, k.expireAt) FROM KeyValueEntity k"
+            + " WHERE k.partitionId = :partitionId AND k.expireAt IS NOT NULL AND k.expireAt <= :before"
+            + " ORDER BY k.expireAt")
+    List<ExpiryEntry> findExpiring(@Param("partitionId") int partitionId,
+                                   @Param("before") LocalDateTime before,
+                                   Limit limit);
+
+    @Query("SELECT COUNT(k) FROM KeyValueEntity k WHERE k.partitionId = :partitionId"
+            + " AND k.expireAt IS NOT NULL AND k.expireAt <= CURRENT_TIMESTAMP")
+    long countExpired(@Param("partitionId") int partitionId);
 }
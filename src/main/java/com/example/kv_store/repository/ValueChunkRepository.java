@@ -0,0 +1,28 @@
+package com.example.kv_store.repository;
+
+import com.example.kv_store.entity.ValueChunkEntity;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.util.Collection;
+import java.util.List;
+
+@Repository
+public interface ValueChunkRepository extends JpaRepository<ValueChunkEntity, ValueChunkEntity.ChunkId> {
+
+    @Query("SELECT c FROM ValueChunkEntity c WHERE c.id.key IN :keys ORDER BY c.id.key, c.id.seq")
+    List<ValueChunkEntity> findByKeys(@Param("keys") Collection<String> keys);
+
+    /** The keys among {@code keys} whose value is stored in chunks. */
+    @Query("SELECT c.id.key FROM ValueChunkEntity c WHERE c.id.key IN :keys AND c.id.seq = 0")
+    List<String> findChunkedKeys(@Param("keys") Collection<String> keys);
+
+    @Modifying
+    @Transactional
+    @Query("DELETE FROM ValueChunkEntity c WHERE c.id.key IN :keys")
+    int deleteByKeys(@Param("keys") Collection<String> keys);
+}
@@ -1,10 +1,12 @@
 package com.example.kv_store.service;
 import java.util.HashMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.stream.Collectors;
+import java.util.Comparator;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.core.env.Environment;
 import org.springframework.stereotype.Component;
@@ -12,17 +14,39 @@ import org.springframework.stereotype.Component;
 @Component
 public class AffinityService {
 
+    /** How partitions are laid out over {@code cluster.nodes}. */
+    public enum Assignment {
+        /** Rotate over the ordered node list; adding a node reshuffles most partitions. */
+        RING,
+        /** Highest-random-weight per partition; adding a node moves ~1/N of the partitions. */
+        RENDEZVOUS
+    }
+
     private final String localNodeId;
-    private final List<String> allNodes;  // ordered list
+    private volatile List<String> allNodes;  // ordered list
     private final int partitions;
     private final int backups;
     private final Map<String, String> nodeUrls;
+    private final KeyHasher hasher;
+    private final Assignment assignment;
+    private final Environment env;
+
+    // precomputed; owners() is on every request path. Replaced copy-on-write
+    // one partition at a time when a rebalance hands a partition over.
+    private record Routing(List<List<String>> owners, boolean[] localPrimary) {
+    }
+
+    private volatile Routing routing;
+    // extra replication targets of partitions being streamed to new owners
+    private volatile Map<Integer, List<String>> incoming = Map.of();
 
     public AffinityService(
             @Value("${cluster.nodeId}") String localNodeId,
             @Value("${cluster.partitions}") int partitions,
             @Value("${cluster.nodes}") String nodesCsv,
             @Value("${cluster.backups:1}") int backups,
+            @Value("${cluster.hash:jdk}") String hash,
+            @Value("${cluster.assignment:ring}") String assignment,
             Environment env
     ) {
         this.localNodeId = localNodeId;
@@ -31,44 +55,182 @@ public class AffinityService {
         this.allNodes = Arrays.stream(nodesCsv.split(","))
                 .map(String::trim)
                 .toList();
+        this.hasher = KeyHasher.fromProperty(hash);
+        this.assignment = Assignment.valueOf(assignment.trim().toUpperCase());
 
-        this.nodeUrls = new HashMap<>();
+        this.env = env;
+        this.nodeUrls = new ConcurrentHashMap<>();
         for (String n : allNodes) {
             String url = env.getProperty("cluster.nodeUrls." + n);
-            this.nodeUrls.put(n, url);
+            if (url != null) this.nodeUrls.put(n, url);
         }
+
+        install(buildOwnersTable(this.allNodes, partitions, backups, this.assignment));
+    }
+
+    private void install(List<List<String>> table) {
+        boolean[] primary = new boolean[partitions];
+        for (int p = 0; p < partitions; p++) {
+            primary[p] = table.get(p).get(0).equals(localNodeId);
+        }
+        this.routing = new Routing(table, primary);
     }
 
     public int partition(String key) {
-        return Math.floorMod(key.hashCode(), partitions);
+        return Math.floorMod(hasher.hash(key), partitions);
     }
 
-    /** owners[0] = primary, others = backups */
+    /** owners[0] = primary, others = backups. Immutable. */
     public List<String> owners(int partitionId) {
-        // simple ring: rotate over allNodes
-        int start = partitionId % allNodes.size();
-        List<String> result = new ArrayList<>();
-        for (int i = 0; i < backups + 1; i++) {
-            result.add(allNodes.get((start + i) % allNodes.size()));
-        }
-        return result;
+        return routing.owners().get(partitionId);
     }
 
     public boolean isPrimaryOwner(String key) {
-        int p = partition(key);
-        List<String> owners = owners(p);
-        return owners.get(0).equals(localNodeId);
+        return routing.localPrimary()[partition(key)];
     }
 
     public String primaryOwner(String key) {
         return owners(partition(key)).get(0);
     }
 
+    /** Nodes that join later are looked up on first use, so every node must list their URLs. */
     public String urlOf(String nodeId) {
-        return nodeUrls.get(nodeId);
+        return nodeUrls.computeIfAbsent(nodeId, n -> env.getProperty("cluster.nodeUrls." + n));
     }
 
     public String getLocalNodeId() {
         return localNodeId;
     }
+
+    public List<String> getNodes() {
+        return allNodes;
+    }
+
+    public int getPartitions() {
+        return partitions;
+    }
+
+    // ---------- Rebalancing ----------
+
+    /** The table the cluster converges to once {@code nodes} is the membership. */
+    public List<List<String>> planFor(List<String> nodes) {
+        return buildOwnersTable(nodes, partitions, backups, assignment);
+    }
+
+    public synchronized void setMembership(List<String> nodes) {
+        this.allNodes = List.copyOf(nodes);
+    }
+
+    /** Writes to the partition are also replicated to {@code targets} until it is handed over. */
+    public synchronized void startIncoming(int partitionId, List<String> targets) {
+        Map<Integer, List<String>> next = new HashMap<>(incoming);
+        next.put(partitionId, List.copyOf(targets));
+        incoming = Map.copyOf(next);
+    }
+
+    /** Swaps in the new owners of one partition; readers see the old or the new list, never a mix. */
+    public synchronized void handOver(int partitionId, List<String> owners) {
+        List<List<String>> next = new ArrayList<>(routing.owners());
+        next.set(partitionId, List.copyOf(owners));
+        install(List.copyOf(next));
+        stopIncoming(partitionId);
+    }
+
+    /** Stops replicating the partition to the nodes it was being streamed to, e.g. after a failed move. */
+    public synchronized void stopIncoming(int partitionId) {
+        if (!incoming.containsKey(partitionId)) return;
+        Map<Integer, List<String>> rest = new HashMap<>(incoming);
+        rest.remove(partitionId);
+        incoming = Map.copyOf(rest);
+    }
+
+    /** Backups of the partition plus any node it is currently being streamed to. */
+    public List<String> replicaTargets(int partitionId) {
+        List<String> owners = owners(partitionId);
+        List<String> extra = incoming.get(partitionId);
+        if (extra == null) return owners.subList(1, owners.size());
+        List<String> targets = new ArrayList<>(owners.subList(1, owners.size()));
+        for (String n : extra) {
+            if (!owners.contains(n)) targets.add(n);
+        }
+        return targets;
+    }
+
+    // ---------- Partition table ----------
+
+    static List<List<String>> buildOwnersTable(List<String> nodes, int partitions, int backups,
+                                               Assignment assignment) {
+        int copies = Math.min(backups + 1, nodes.size());
+        List<List<String>> table = new ArrayList<>(partitions);
+        for (int p = 0; p < partitions; p++) {
+            table.add(List.copyOf(switch (assignment) {
+                case RING -> ringOwners(nodes, p, copies);
+                case RENDEZVOUS -> rendezvousOwners(nodes, p, copies);
+            }));
+        }
+        return List.copyOf(table);
+    }
+
+    private static List<String> ringOwners(List<String> nodes, int partitionId, int copies) {
+        // simple ring: rotate over allNodes
+        int start = partitionId % nodes.size();
+        List<String> result = new ArrayList<>(copies);
+        for (int i = 0; i < copies; i++) {
+            result.add(nodes.get((start + i) % nodes.size()));
+        }
+        return result;
+    }
+
+    private static List<String> rendezvousOwners(List<String> nodes, int partitionId, int copies) {
+        return nodes.stream()
+                .sorted(Comparator.comparingInt((String n) -> KeyHasher.murmur3(n, partitionId)).reversed()
+                        .thenComparing(Comparator.naturalOrder()))
+                .limit(copies)
+                .toList();
+    }
+
+    // ---------- Diagnostics ----------
+
+    /**
+     * Hashes {@code sample} synthetic keys ({@code prefix + i}) and reports how
+     * evenly they land on partitions and primaries. A max/mean close to 1.0 is even.
+     */
+    public Map<String, Object> describeSpread(String prefix, int sample) {
+        long[] perPartition = new long[partitions];
+        for (int i = 0; i < sample; i++) {
+            perPartition[partition(prefix + i)]++;
+        }
+
+        Map<String, Long> keysPerNode = new LinkedHashMap<>();
+        Map<String, Integer> partitionsPerNode = new LinkedHashMap<>();
+        allNodes.forEach(n -> {
+            keysPerNode.put(n, 0L);
+            partitionsPerNode.put(n, 0);
+        });
+        long min = Long.MAX_VALUE;
+        long max = 0;
+        double sumSquares = 0;
+        double mean = (double) sample / partitions;
+        for (int p = 0; p < partitions; p++) {
+            String primary = owners(p).get(0);
+            keysPerNode.merge(primary, perPartition[p], Long::sum);
+            partitionsPerNode.merge(primary, 1, Integer::sum);
+            min = Math.min(min, perPartition[p]);
+            max = Math.max(max, perPartition[p]);
+            sumSquares += (perPartition[p] - mean) * (perPartition[p] - mean);
+        }
+
+        Map<String, Object> report = new LinkedHashMap<>();
+        report.put("hash", hasher.name().toLowerCase());
+        report.put("assignment", assignment.name().toLowerCase());
+        report.put("sampleKeys", sample);
+        report.put("partitions", partitions);
+        report.put("keysPerPartitionMin", min);
+        report.put("keysPerPartitionMax", max);
+        report.put("keysPerPartitionStdDev", Math.sqrt(sumSquares / partitions));
+        report.put("maxOverMean", mean == 0 ? 0.0 : max / mean);
+        report.put("partitionsPerPrimary", partitionsPerNode);
+        report.put("keysPerPrimary", keysPerNode);
+        return report;
+    }
 }
@@ -0,0 +1,36 @@
+package com.example.kv_store.service;
+
+/**
+ * A read-modify-write run at the key's primary under its write lock, so it
+ * takes one hop and no retries however many clients race on the key. Values
+ * are in client form; see {@link DistributedKeyValueService#atomic}.
+ */
+public record AtomicOp(Type type, String key, byte[] operand, long expectedVersion, long delta, Long ttlMillis) {
+
+    public enum Type {
+        /** The value and its version, read at the primary. */
+        READ,
+        /** Writes {@code operand} if the entry is at {@code expectedVersion}; 0 means "only if absent". */
+        COMPARE_AND_SET,
+        /** Adds {@code delta} to a value holding a decimal long; absent counts as 0. Keeps the TTL. */
+        INCREMENT,
+        /** Appends {@code operand} to the value; absent counts as empty. Keeps the TTL. */
+        APPEND
+    }
+
+    public static AtomicOp read(String key) {
+        return new AtomicOp(Type.READ, key, null, 0, 0, null);
+    }
+
+    public static AtomicOp compareAndSet(String key, long expectedVersion, byte[] value, Long ttlMillis) {
+        return new AtomicOp(Type.COMPARE_AND_SET, key, value, expectedVersion, 0, ttlMillis);
+    }
+
+    public static AtomicOp increment(String key, long delta) {
+        return new AtomicOp(Type.INCREMENT, key, null, 0, delta, null);
+    }
+
+    public static AtomicOp append(String key, byte[] suffix) {
+        return new AtomicOp(Type.APPEND, key, suffix, 0, 0, null);
+    }
+}
@@ -0,0 +1,23 @@
+package com.example.kv_store.service;
+
+/**
+ * Outcome of an {@link AtomicOp}. {@code value} and {@code version} are the
+ * entry after the op, or as found if it was not applied; null and 0 if there
+ * is none. The value is in client form.
+ */
+public record AtomicResult(Status status, byte[] value, long version) {
+
+    public enum Status {
+        APPLIED,
+        /** Compare-and-set found another version. */
+        VERSION_MISMATCH,
+        /** Increment found a value that is not a decimal long, or would overflow. */
+        NOT_A_NUMBER,
+        /** Append would exceed {@code kv.value.max-bytes}. */
+        TOO_LARGE
+    }
+
+    public boolean applied() {
+        return status == Status.APPLIED;
+    }
+}
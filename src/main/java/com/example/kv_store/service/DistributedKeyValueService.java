@@ -1,165 +1,1118 @@
 package com.example.kv_store.service;
 
+import com.example.kv_store.antientropy.MerkleTrees;
+import com.example.kv_store.cache.HotKeyDetector;
+import com.example.kv_store.cache.NearCache;
+import com.example.kv_store.cache.PartitionBloomFilters;
+import com.example.kv_store.compression.ValueCodec;
 import com.example.kv_store.entity.KeyValueEntity;
-import com.example.kv_store.repository.KeyValueRepository;
-import jakarta.transaction.Transactional;
-import org.springframework.beans.factory.annotation.Autowired;
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationOp;
+import com.example.kv_store.replication.ReplicaFreshness;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.replication.WriteAcks;
+import com.example.kv_store.storage.StorageEngine;
+import com.example.kv_store.storage.StoredValue;
+import com.example.kv_store.transport.Deadline;
+import com.example.kv_store.transport.PeerCallException;
+import com.example.kv_store.transport.PeerClient;
+import com.example.kv_store.transport.PeerHealth;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
-import org.springframework.web.reactive.function.client.WebClient;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import static com.example.kv_store.metrics.HotPathMetrics.LOCAL;
 
 @Service
 public class DistributedKeyValueService {
 
-    private final KeyValueRepository repo;
+    /** Where GETs go when the request allows a non-primary answer ({@code kv.read.routing}). */
+    public enum ReadRouting {
+        /** Always the primary; consistency is ignored. */
+        PRIMARY,
+        /** This node if it owns the key and is fresh enough, else the primary. */
+        LOCAL,
+        /** Round-robin over the key's owners. */
+        BALANCED
+    }
+
+    private final StorageEngine storage;
     private final AffinityService affinity;
-    private final WebClient webClient; // reactive HTTP client for forwarding
+    private final NearCache cache;
+    private final PeerClient peers; // HTTP or binary node-to-node transport
+    private final ReplicationPipeline replication;
+    private final ReplicaFreshness freshness;
+    private final ValueCodec codec; // values are encoded once here on the primary, decoded at the client API
+    private final HotPathMetrics metrics;
+    private final HotKeyDetector hotKeys;
+    private final HotKeyLeases leases = new HotKeyLeases();
+    private final PeerHealth health;
+    private final PeerCalls calls; // every call to a peer goes through here
+    private final QuorumReads quorumReads;
+    private final MerkleTrees trees; // this node's copies, hashed for anti-entropy
+    private final PartitionBloomFilters filters; // keys of this node's copies, to skip storage on misses
+    private final VersionClock versions = new VersionClock();
+    private final long requestTimeoutMs;
+    private final ReadRouting readRouting;
+    private final ReadConsistency defaultConsistency;
+    private final long defaultMaxStalenessMs;
+    private final long streamThresholdBytes;
+    private final int scanPageSize;
+    private final int scanParallelism;
+    private final int maxValueBytes;
+    private final int writeQuorum;
+    private final AtomicInteger readRoundRobin = new AtomicInteger();
+    private final LongAdder replicaReadsLocal = new LongAdder();
+    private final LongAdder replicaReadsForwarded = new LongAdder();
+    private final LongAdder replicaReadsTooStale = new LongAdder();
+    private final LongAdder hedgedReads = new LongAdder();
+    private final LongAdder hedgesWon = new LongAdder();
+    private final LongAdder hotReadsCached = new LongAdder();
+    private final LongAdder hotReadsFetched = new LongAdder();
+    private final LongAdder hotInvalidationsReceived = new LongAdder();
+    private final LongAdder quorumWritesFailed = new LongAdder();
+    private final KeyLocks writeLocks = new KeyLocks(1024);
+    private final SingleFlight<Optional<StoredValue>> localReads;
+    private final SingleFlight<Optional<byte[]>> remoteReads;
+    private final ReentrantReadWriteLock[] partitionGates;
 
-    public DistributedKeyValueService(KeyValueRepository repo,
+    public DistributedKeyValueService(StorageEngine storage,
                                       AffinityService affinity,
-                                      WebClient.Builder webClientBuilder) {
-        this.repo = repo;
+                                      NearCache cache,
+                                      PeerClient peers,
+                                      ReplicationPipeline replication,
+                                      ReplicaFreshness freshness,
+                                      ValueCodec codec,
+                                      HotPathMetrics metrics,
+                                      HotKeyDetector hotKeys,
+                                      PeerHealth health,
+                                      MerkleTrees trees,
+                                      PartitionBloomFilters filters,
+                                      @Value("${kv.forward.timeout-ms:2000}") long forwardTimeoutMs,
+                                      @Value("${kv.request.timeout-ms:4000}") long requestTimeoutMs,
+                                      @Value("${kv.read.routing:primary}") String readRouting,
+                                      @Value("${kv.read.consistency:strong}") String defaultConsistency,
+                                      @Value("${kv.read.max-staleness-ms:1000}") long defaultMaxStalenessMs,
+                                      @Value("${kv.value.stream-threshold-bytes:65536}") long streamThresholdBytes,
+                                      @Value("${kv.read.coalesce:true}") boolean coalesceReads,
+                                      @Value("${kv.scan.page-size:500}") int scanPageSize,
+                                      @Value("${kv.scan.parallelism:4}") int scanParallelism,
+                                      @Value("${kv.value.max-bytes:67108864}") int maxValueBytes,
+                                      @Value("${kv.quorum.write:1}") int writeQuorum,
+                                      @Value("${kv.quorum.read:2}") int readQuorum) {
+        this.storage = storage;
         this.affinity = affinity;
-        this.webClient = webClientBuilder.build();
+        this.cache = cache;
+        this.peers = peers;
+        this.replication = replication;
+        this.freshness = freshness;
+        this.codec = codec;
+        this.metrics = metrics;
+        this.hotKeys = hotKeys;
+        this.health = health;
+        this.trees = trees;
+        this.filters = filters;
+        this.calls = new PeerCalls(metrics, health, forwardTimeoutMs);
+        this.requestTimeoutMs = requestTimeoutMs;
+        this.readRouting = ReadRouting.valueOf(readRouting.trim().toUpperCase());
+        this.defaultConsistency = ReadConsistency.fromParam(defaultConsistency);
+        this.defaultMaxStalenessMs = defaultMaxStalenessMs;
+        this.streamThresholdBytes = streamThresholdBytes;
+        this.localReads = new SingleFlight<>(coalesceReads);
+        this.remoteReads = new SingleFlight<>(coalesceReads);
+        this.scanPageSize = Math.max(1, scanPageSize);
+        this.scanParallelism = Math.max(1, scanParallelism);
+        this.maxValueBytes = maxValueBytes;
+        this.writeQuorum = Math.max(1, writeQuorum);
+        this.quorumReads = new QuorumReads(affinity, storage, filters, metrics, peers, calls, readQuorum);
+        this.partitionGates = new ReentrantReadWriteLock[affinity.getPartitions()];
+        for (int p = 0; p < partitionGates.length; p++) {
+            partitionGates[p] = new ReentrantReadWriteLock();
+        }
     }
 
     // ---------- Public API (called by controller) ----------
+    // Local operations complete on the calling thread; forwarded ones complete
+    // when the peer answers, without holding a request thread in between.
 
-    public Optional<byte[]> get(String key) {
-        if (!affinity.isPrimaryOwner(key)) {
+    public CompletableFuture<Optional<byte[]>> get(String key) {
+        return get(key, defaultConsistency, defaultMaxStalenessMs);
+    }
+
+    /**
+     * Reads with the given guarantee. Unless it is STRONG (or routing is
+     * PRIMARY) a backup may answer, as long as its copy is within
+     * {@code maxStalenessMs} of the primary according to {@link ReplicaFreshness}.
+     */
+    public CompletableFuture<Optional<byte[]>> get(String key, ReadConsistency consistency, long maxStalenessMs) {
+        return timed("request.get", () -> {
+            hotKeys.record(key);
+            if (consistency == ReadConsistency.QUORUM) return quorumReads.read(key, this::repairKeys).thenApply(v -> v.map(codec::decode));
+            if (servedLocally(key, consistency, maxStalenessMs)) {
+                return CompletableFuture.completedFuture(localGet(key).map(codec::decode));
+            }
+            return remoteGet(key, consistency, maxStalenessMs).thenApply(v -> v.map(codec::decode));
+        });
+    }
+
+    /**
+     * {@link #get(String, ReadConsistency, long)} for the client GET path: a
+     * value served from this node's storage is streamed out of it, and large
+     * ones ({@code kv.value.stream-threshold-bytes}) skip the near cache.
+     * The value is in its stored form; see {@link ValueCodec}.
+     */
+    public CompletableFuture<Optional<StoredValue>> open(String key, ReadConsistency consistency, long maxStalenessMs) {
+        return timed("request.get", () -> {
+            hotKeys.record(key);
+            if (consistency == ReadConsistency.QUORUM) return quorumReads.read(key, this::repairKeys).thenApply(v -> v.map(StoredValue::of));
+            if (servedLocally(key, consistency, maxStalenessMs)) {
+                return CompletableFuture.completedFuture(localOpen(key));
+            }
+            return remoteGet(key, consistency, maxStalenessMs).thenApply(v -> v.map(StoredValue::of));
+        });
+    }
+
+    public CompletableFuture<Optional<StoredValue>> open(String key) {
+        return open(key, defaultConsistency, defaultMaxStalenessMs);
+    }
+
+    private boolean servedLocally(String key, ReadConsistency consistency, long maxStalenessMs) {
+        boolean local = isLocalPrimary(key) || servedByLocalReplica(key, consistency, maxStalenessMs);
+        metrics.routed("get", local, 1);
+        return local;
+    }
+
+    private boolean servedByLocalReplica(String key, ReadConsistency consistency, long maxStalenessMs) {
+        if (consistency == ReadConsistency.STRONG || readRouting == ReadRouting.PRIMARY) return false;
+        List<String> owners = affinity.owners(affinity.partition(key));
+        if (owners.contains(affinity.getLocalNodeId()) && isFresh(owners.get(0), bound(consistency, maxStalenessMs))) {
+            replicaReadsLocal.increment();
+            return true;
+        }
+        return false;
+    }
+
+    /** The routing decision of the client API; sampled into the "affinity" timer. */
+    private boolean isLocalPrimary(String key) {
+        long start = metrics.startSampled();
+        boolean primary = affinity.isPrimaryOwner(key);
+        metrics.record("affinity", LOCAL, start);
+        return primary;
+    }
+
+    private CompletableFuture<Optional<byte[]>> remoteGet(String key, ReadConsistency consistency, long maxStalenessMs) {
+        if (hotKeys.cacheTtlMs() > 0 && hotKeys.isHot(key)) {
+            List<String> owners = affinity.owners(affinity.partition(key));
+            if (!owners.contains(affinity.getLocalNodeId())) return hotGet(key, owners.get(0));
+        }
+        if (consistency == ReadConsistency.STRONG || readRouting == ReadRouting.PRIMARY) {
             return forwardGet(key);
         }
-        return localGet(key);
+        long bound = bound(consistency, maxStalenessMs);
+        List<String> owners = affinity.owners(affinity.partition(key));
+        if (readRouting == ReadRouting.BALANCED) {
+            String target = owners.get(Math.floorMod(readRoundRobin.getAndIncrement(), owners.size()));
+            if (!target.equals(owners.get(0)) && !target.equals(affinity.getLocalNodeId())) {
+                return replicaGet(target, key, bound).exceptionallyCompose(e -> forwardGet(key));
+            }
+        }
+        return hedgedGet(key, owners, bound);
     }
 
-    public void put(String key, byte[] value, Duration ttl) {
-        if (!affinity.isPrimaryOwner(key)) {
-            forwardPut(key, value, ttl);
-            return;
+    private CompletableFuture<Optional<byte[]>> replicaGet(String nodeId, String key, long bound) {
+        replicaReadsForwarded.increment();
+        return calls.roundTrip("forward.getReplica", nodeId, () -> peers.getReplica(nodeId, key, bound));
+    }
+
+    /**
+     * Forwards to the primary and, if it has not answered within its recent
+     * p95 latency (or has failed), also asks a backup; the first answer wins.
+     * The backup answers only if its copy is within {@code bound}, so this is
+     * only done for reads that allow a backup answer. If the primary's circuit
+     * is open the backup is asked straight away.
+     */
+    private CompletableFuture<Optional<byte[]>> hedgedGet(String key, List<String> owners, long bound) {
+        String primary = owners.get(0);
+        String backup = null;
+        for (int i = 1; i < owners.size() && backup == null; i++) {
+            if (!owners.get(i).equals(affinity.getLocalNodeId())) backup = owners.get(i);
         }
-        localPutAndReplicate(key, value, ttl);
+        if (backup == null || !health.hedging()) return forwardGet(key);
+        if (health.isOpen(primary)) return replicaGet(backup, key, bound);
+
+        String hedgeTo = backup;
+        long deadline = Deadline.current();
+        CompletableFuture<Optional<byte[]>> first = forwardGet(key);
+        CompletableFuture<Void> trigger = new CompletableFuture<>();
+        first.whenComplete((v, e) -> {
+            if (e != null) trigger.complete(null);
+        });
+        CompletableFuture.delayedExecutor(health.hedgeDelayMillis(primary), TimeUnit.MILLISECONDS)
+                .execute(() -> trigger.complete(null));
+        CompletableFuture<Optional<byte[]>> hedge = trigger.thenCompose(ignored -> {
+            if (first.isDone() && !first.isCompletedExceptionally()) return first;
+            hedgedReads.increment();
+            return Deadline.within(deadline, () -> replicaGet(hedgeTo, key, bound)).thenApply(v -> {
+                if (!first.isDone()) hedgesWon.increment();
+                return v;
+            });
+        });
+        return firstSuccess(first, hedge);
     }
 
-    public void delete(String key) {
-        if (!affinity.isPrimaryOwner(key)) {
-            forwardDelete(key);
-            return;
+    /** Completes with whichever future succeeds first, or fails once both have failed. */
+    private static <T> CompletableFuture<T> firstSuccess(CompletableFuture<T> a, CompletableFuture<T> b) {
+        CompletableFuture<T> result = new CompletableFuture<>();
+        AtomicInteger failed = new AtomicInteger();
+        a.whenComplete((v, e) -> {
+            if (e == null) result.complete(v);
+            else if (failed.incrementAndGet() == 2) result.completeExceptionally(e);
+        });
+        b.whenComplete((v, e) -> {
+            if (e == null) result.complete(v);
+            else if (failed.incrementAndGet() == 2) result.completeExceptionally(e);
+        });
+        return result;
+    }
+
+    private static long bound(ReadConsistency consistency, long maxStalenessMs) {
+        return consistency == ReadConsistency.ANY ? Long.MAX_VALUE : maxStalenessMs;
+    }
+
+    private boolean isFresh(String primary, long maxStalenessMs) {
+        if (maxStalenessMs == Long.MAX_VALUE || freshness.stalenessMillis(primary) <= maxStalenessMs) return true;
+        replicaReadsTooStale.increment();
+        return false;
+    }
+
+    // A node that does not own a hot key caches it under a lease from the
+    // owner (see HotKeyLeases), so reads of one viral key are spread over every
+    // node instead of all landing on its primary. Owners and backups read it
+    // as before; only nodes that hold no copy of the partition cache it.
+
+    /**
+     * Served from the near cache while the lease lasts, otherwise fetched from
+     * the owner with a new lease. The cached copy expires with the lease.
+     */
+    private CompletableFuture<Optional<byte[]>> hotGet(String key, String owner) {
+        Optional<byte[]> cached = cache.get(key);
+        if (cached.isPresent()) {
+            hotReadsCached.increment();
+            return CompletableFuture.completedFuture(cached);
+        }
+        long leaseMs = hotKeys.cacheTtlMs();
+        String self = affinity.getLocalNodeId();
+        return remoteReads.runAsync(key, () -> {
+            hotReadsFetched.increment();
+            long stamp = cache.stamp(key); // an invalidation that overtakes the response fences it off
+            long until = System.currentTimeMillis() + leaseMs;
+            return calls.roundTrip("forward.getLeased", owner, () -> peers.getLeased(owner, key, self, leaseMs))
+                    .thenApply(v -> {
+                        v.filter(bytes -> bytes.length <= streamThresholdBytes)
+                                .ifPresent(bytes -> cache.putIfUnchanged(key, bytes, until, stamp));
+                        return v;
+                    });
+        });
+    }
+
+    /**
+     * Tells the nodes holding leases on any of {@code keys} to drop their copies.
+     * Completes when they have answered or timed out; a holder that cannot be
+     * reached serves its copy until the lease runs out.
+     */
+    private CompletableFuture<Void> revokeLeases(Collection<String> keys) {
+        Map<String, List<String>> byHolder = null;
+        for (String key : keys) {
+            for (String holder : leases.revoke(key)) {
+                if (byHolder == null) byHolder = new HashMap<>();
+                byHolder.computeIfAbsent(holder, h -> new ArrayList<>()).add(key);
+            }
+        }
+        if (byHolder == null) return CompletableFuture.completedFuture(null);
+        List<CompletableFuture<Void>> sent = new ArrayList<>(byHolder.size());
+        byHolder.forEach((holder, revoked) -> sent.add(
+                calls.roundTrip("forward.invalidate", holder, () -> peers.invalidate(holder, revoked))
+                        .exceptionally(e -> null)));
+        return CompletableFuture.allOf(sent.toArray(CompletableFuture[]::new));
+    }
+
+    /** Hot keys as seen by this node, how each is handled, and the lease counters. */
+    public Map<String, Object> hotKeyStats() {
+        Map<String, Object> stats = new LinkedHashMap<>(hotKeys.stats());
+        List<Map<String, Object>> keys = new ArrayList<>();
+        for (Map.Entry<String, Integer> e : hotKeys.hotKeys()) {
+            List<String> owners = affinity.owners(affinity.partition(e.getKey()));
+            Map<String, Object> key = new LinkedHashMap<>();
+            key.put("key", e.getKey());
+            key.put("decayedReads", e.getValue());
+            key.put("primary", owners.get(0));
+            key.put("mitigation", hotKeys.cacheTtlMs() == 0 ? "off"
+                    : owners.contains(affinity.getLocalNodeId()) ? "owner" : "leased-cache");
+            keys.add(key);
+        }
+        stats.put("hotKeys", keys);
+        stats.put("readsFromLeasedCache", hotReadsCached.sum());
+        stats.put("leasedFetches", hotReadsFetched.sum());
+        stats.put("invalidationsReceived", hotInvalidationsReceived.sum());
+        stats.put("leasesGranted", leases.granted());
+        stats.put("leasesRevoked", leases.revoked());
+        stats.put("activeLeases", leases.active());
+        return stats;
+    }
+
+    public Map<String, Object> quorumStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("writeQuorum", writeQuorum);
+        stats.put("writesFailed", quorumWritesFailed.sum());
+        stats.putAll(quorumReads.stats());
+        return stats;
+    }
+
+    public Map<String, Object> readStats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("routing", readRouting.name().toLowerCase());
+        stats.put("defaultConsistency", defaultConsistency.name().toLowerCase());
+        stats.put("replicaReadsLocal", replicaReadsLocal.sum());
+        stats.put("replicaReadsForwarded", replicaReadsForwarded.sum());
+        stats.put("replicaReadsTooStale", replicaReadsTooStale.sum());
+        stats.put("hedgedReads", hedgedReads.sum());
+        stats.put("hedgesWon", hedgesWon.sum());
+        stats.put("stalenessMsByPrimary", freshness.stats());
+        stats.put("coalescing", Map.of("local", localReads.stats(), "remote", remoteReads.stats()));
+        return stats;
+    }
+
+    public CompletableFuture<Void> put(String key, byte[] value, Duration ttl) {
+        return timed("request.put", () -> {
+            // the second check fails if a rebalance handed the partition over meanwhile
+            WriteAcks acks = writeAcks();
+            boolean local = isLocalPrimary(key) && localPutAndReplicate(key, value, ttl, acks);
+            metrics.routed("put", local, 1);
+            return local ? acknowledged(List.of(key), acks) : forwardPut(key, value, ttl);
+        });
+    }
+
+    public CompletableFuture<Void> delete(String key) {
+        return timed("request.delete", () -> {
+            WriteAcks acks = writeAcks();
+            boolean local = isLocalPrimary(key) && localDeleteAndReplicate(key, acks);
+            metrics.routed("delete", local, 1);
+            return local ? acknowledged(List.of(key), acks) : forwardDelete(key);
+        });
+    }
+
+    // ---------- Atomic operations ----------
+    // Run at the key's primary under its write lock (the same striped lock
+    // plain writes take), then replicated like a put, so a counter or a CAS
+    // loop costs one hop and is never retried.
+
+    /**
+     * Runs {@code op} at the key's primary. A result that is not
+     * {@link AtomicResult#applied() applied} changed nothing.
+     */
+    public CompletableFuture<AtomicResult> atomic(AtomicOp op) {
+        return timed("request.atomic", () -> executeAtomic(op));
+    }
+
+    private CompletableFuture<AtomicResult> executeAtomic(AtomicOp op) {
+        WriteAcks acks = writeAcks();
+        AtomicResult local = isLocalPrimary(op.key()) ? localAtomic(op, acks) : null;
+        metrics.routed("atomic", local != null, 1);
+        if (local == null) return forwardAtomic(op);
+        if (!local.applied() || op.type() == AtomicOp.Type.READ) return CompletableFuture.completedFuture(local);
+        return acknowledged(List.of(op.key()), acks).thenApply(v -> local);
+    }
+
+    // ---------- Batch API ----------
+    // Keys are grouped by primary owner. Remote groups go out as one
+    // /internal/kv/batch call per owner and run while the local group is served.
+
+    public CompletableFuture<Map<String, byte[]>> getAll(Collection<String> keys) {
+        return timed("request.getAll", () -> doGetAll(keys));
+    }
+
+    private CompletableFuture<Map<String, byte[]>> doGetAll(Collection<String> keys) {
+        List<CompletableFuture<Map<String, byte[]>>> remote = new ArrayList<>();
+        List<String> localKeys = List.of();
+        for (Map.Entry<String, List<String>> group : groupByPrimary(keys).entrySet()) {
+            boolean local = group.getKey().equals(affinity.getLocalNodeId());
+            metrics.routed("getAll", local, group.getValue().size());
+            if (local) {
+                localKeys = group.getValue();
+            } else {
+                remote.add(forwardGetAll(group.getKey(), group.getValue()));
+            }
+        }
+        CompletableFuture<Map<String, byte[]>> result =
+                CompletableFuture.completedFuture(new HashMap<>(localGetAll(localKeys)));
+        for (CompletableFuture<Map<String, byte[]>> part : remote) {
+            result = result.thenCombine(part, (acc, values) -> {
+                acc.putAll(values);
+                return acc;
+            });
+        }
+        return result.thenApply(codec::decodeAll);
+    }
+
+    public CompletableFuture<Void> putAll(Map<String, byte[]> entries, Duration ttl) {
+        return timed("request.putAll", () -> doPutAll(entries, ttl));
+    }
+
+    private CompletableFuture<Void> doPutAll(Map<String, byte[]> entries, Duration ttl) {
+        List<CompletableFuture<?>> remote = new ArrayList<>();
+        Map<String, byte[]> localEntries = Map.of();
+        for (Map.Entry<String, List<String>> group : groupByPrimary(entries.keySet()).entrySet()) {
+            Map<String, byte[]> slice = slice(entries, group.getValue());
+            boolean local = group.getKey().equals(affinity.getLocalNodeId());
+            metrics.routed("putAll", local, slice.size());
+            if (local) {
+                localEntries = slice;
+            } else {
+                remote.add(forwardPutAll(group.getKey(), slice, ttl));
+            }
         }
-        localDeleteAndReplicate(key);
+        WriteAcks acks = writeAcks();
+        Map<String, byte[]> moved = localPutAllAndReplicate(localEntries, ttl, acks);
+        if (!moved.isEmpty()) remote.add(doPutAll(moved, ttl)); // handed over meanwhile
+        remote.add(acknowledged(localEntries.keySet(), acks));
+        return CompletableFuture.allOf(remote.toArray(CompletableFuture[]::new));
+    }
+
+    public CompletableFuture<Void> deleteAll(Collection<String> keys) {
+        return timed("request.deleteAll", () -> doDeleteAll(keys));
+    }
+
+    private CompletableFuture<Void> doDeleteAll(Collection<String> keys) {
+        List<CompletableFuture<?>> remote = new ArrayList<>();
+        List<String> localKeys = List.of();
+        for (Map.Entry<String, List<String>> group : groupByPrimary(keys).entrySet()) {
+            boolean local = group.getKey().equals(affinity.getLocalNodeId());
+            metrics.routed("deleteAll", local, group.getValue().size());
+            if (local) {
+                localKeys = group.getValue();
+            } else {
+                remote.add(forwardDeleteAll(group.getKey(), group.getValue()));
+            }
+        }
+        WriteAcks acks = writeAcks();
+        List<String> moved = localDeleteAllAndReplicate(localKeys, acks);
+        if (!moved.isEmpty()) remote.add(doDeleteAll(moved));
+        remote.add(acknowledged(localKeys, acks));
+        return CompletableFuture.allOf(remote.toArray(CompletableFuture[]::new));
+    }
+
+    private Map<String, List<String>> groupByPrimary(Collection<String> keys) {
+        Map<String, List<String>> groups = new LinkedHashMap<>();
+        for (String key : keys) {
+            groups.computeIfAbsent(affinity.primaryOwner(key), n -> new ArrayList<>()).add(key);
+        }
+        return groups;
+    }
+
+    private static Map<String, byte[]> slice(Map<String, byte[]> entries, Collection<String> keys) {
+        Map<String, byte[]> slice = new HashMap<>();
+        for (String key : keys) {
+            slice.put(key, entries.get(key));
+        }
+        return slice;
+    }
+
+    // ---------- Scans ----------
+    // Keyset pagination over (partition, key): a page is fetched from the
+    // partition's primary after the last key seen, so no cursor is held open
+    // and a resumed scan neither repeats nor skips keys that were not written
+    // meanwhile.
+
+    /** Receives scanned entries in (partition, key) order; values are decoded. */
+    @FunctionalInterface
+    public interface ScanSink {
+        void accept(int partitionId, String key, byte[] value) throws IOException;
+    }
+
+    /**
+     * Streams the entries from {@code from} through partition {@code lastPartition}
+     * to {@code sink}, stopping after {@code maxEntries}. The first pages of up
+     * to {@code kv.scan.parallelism} partitions are fetched from their primaries
+     * at once, and the next page of a partition while the current one is sent,
+     * so memory stays at a few pages however much is scanned.
+     *
+     * Returns where to resume if it stopped at {@code maxEntries} with more
+     * entries left, or null once the range is done.
+     */
+    public ScanCursor scan(ScanCursor from, int lastPartition, String prefix, long maxEntries, ScanSink sink)
+            throws IOException {
+        int first = from.partitionId();
+        Deque<CompletableFuture<Map<String, byte[]>>> window = new ArrayDeque<>();
+        int requested = first;
+        long emitted = 0;
+        for (int p = first; p <= lastPartition; p++) {
+            while (requested <= lastPartition && requested < p + scanParallelism) {
+                window.add(fetchPage(requested, requested == first ? from.afterKey() : null, prefix));
+                requested++;
+            }
+            String previous = p == first ? from.afterKey() : null;
+            CompletableFuture<Map<String, byte[]>> next = window.poll();
+            while (next != null) {
+                Map<String, byte[]> page = next.join();
+                next = page.size() < scanPageSize ? null : fetchPage(p, lastKey(page), prefix);
+                for (Map.Entry<String, byte[]> e : page.entrySet()) {
+                    if (emitted == maxEntries) return new ScanCursor(p, previous);
+                    sink.accept(p, e.getKey(), codec.decode(e.getValue()));
+                    previous = e.getKey();
+                    emitted++;
+                }
+            }
+        }
+        return null;
+    }
+
+    private CompletableFuture<Map<String, byte[]>> fetchPage(int partitionId, String afterKey, String prefix) {
+        String owner = affinity.owners(partitionId).get(0);
+        boolean local = owner.equals(affinity.getLocalNodeId());
+        metrics.routed("scan", local, 1);
+        if (local) return CompletableFuture.completedFuture(localScan(partitionId, afterKey, prefix, scanPageSize));
+        return calls.roundTrip("forward.scan", owner, () -> peers.scan(owner, partitionId, afterKey, prefix, scanPageSize));
+    }
+
+    private static String lastKey(Map<String, byte[]> page) {
+        String last = null;
+        for (String key : page.keySet()) {
+            last = key;
+        }
+        return last;
+    }
+
+    private Map<String, byte[]> localScan(int partitionId, String afterKey, String prefix, int limit) {
+        long start = metrics.start();
+        List<KeyValueEntity> page = storage.scanPartition(partitionId, afterKey, prefix, limit);
+        metrics.record("storage.scan", LOCAL, start);
+        Map<String, byte[]> values = new LinkedHashMap<>(page.size() * 2);
+        for (KeyValueEntity e : page) {
+            values.put(e.getKey(), e.getValue());
+        }
+        return values;
     }
 
     // ---------- Local operations ----------
 
     private Optional<byte[]> localGet(String key) {
-        return repo.findValid(key)
-                .filter(e -> !e.isExpired())
-                .map(KeyValueEntity::getValue);
+        Optional<byte[]> cached = cache.get(key);
+        if (cached.isPresent()) return cached;
+        return lookup(key).map(StoredValue::toByteArray);
+    }
+
+    private Optional<StoredValue> localOpen(String key) {
+        Optional<byte[]> cached = cache.get(key);
+        if (cached.isPresent()) return cached.map(StoredValue::of);
+        return lookup(key);
+    }
+
+    /**
+     * Storage read after a near-cache miss, skipped if the partition's Bloom
+     * filter rules the key out; concurrent misses on one key share it.
+     */
+    private Optional<StoredValue> lookup(String key) {
+        if (!filters.mightContain(key)) return Optional.empty();
+        return localReads.run(key, () -> {
+            long stamp = cache.stamp(key);
+            long start = metrics.start();
+            Optional<StoredValue> found = storage.openValid(key);
+            metrics.record("storage.read", LOCAL, start);
+            if (found.isEmpty()) filters.recordFalsePositive(key);
+            if (found.isPresent() && found.get().length() <= streamThresholdBytes) {
+                StoredValue v = found.get();
+                cache.putIfUnchanged(key, v.toByteArray(), v.expireAt(), stamp);
+            }
+            return found;
+        });
+    }
+
+    /**
+     * Drops the key from the near cache and detaches in-flight reads of it, so
+     * reads that start from now on see the write that was just made visible.
+     */
+    private void invalidate(String key) {
+        cache.invalidate(key);
+        localReads.forget(key);
+        remoteReads.forget(key);
+    }
+
+    private Map<String, byte[]> localGetAll(Collection<String> keys) {
+        Map<String, byte[]> result = new HashMap<>();
+        Map<String, Long> stamps = new HashMap<>();
+        for (String key : keys) {
+            Optional<byte[]> cached = cache.get(key);
+            if (cached.isPresent()) {
+                result.put(key, cached.get());
+            } else if (filters.mightContain(key)) {
+                stamps.put(key, cache.stamp(key));
+            }
+        }
+        if (stamps.isEmpty()) return result;
+
+        long start = metrics.start();
+        List<KeyValueEntity> found = storage.findAllValid(stamps.keySet());
+        metrics.record("storage.readAll", LOCAL, start);
+        for (KeyValueEntity e : found) {
+            if (e.isExpired()) continue;
+            cache.putIfUnchanged(e.getKey(), e.getValue(), e.getExpireAt(), stamps.get(e.getKey()));
+            result.put(e.getKey(), e.getValue());
+        }
+        return result;
+    }
+
+    // ---------- Write quorum ----------
+    // With kv.quorum.write = W > 1 a primary write is acknowledged once W - 1
+    // backups have applied it as well (capped at the backups the partition
+    // has). It is queued for all of them at once, so the write waits for the
+    // fastest W - 1, not the slowest. A write whose quorum is not reached in
+    // time fails with 504 (503 if a backup dropped it) but is not undone: it
+    // is stored on the primary and still reaches the backups.
+
+    private WriteAcks writeAcks() {
+        return writeQuorum > 1 ? new WriteAcks(writeQuorum - 1) : null;
+    }
+
+    /**
+     * Completes when a local primary write may be acknowledged: leases on its
+     * keys are revoked and, under a write quorum, enough backups applied it.
+     */
+    private CompletableFuture<Void> acknowledged(Collection<String> keys, WriteAcks acks) {
+        CompletableFuture<Void> revoked = revokeLeases(keys);
+        if (acks == null) return revoked;
+        long remaining = Deadline.remainingMillis();
+        long waitMs = remaining == Deadline.NONE ? requestTimeoutMs : Math.max(0, remaining);
+        CompletableFuture<Void> quorum = acks.seal()
+                .orTimeout(waitMs, TimeUnit.MILLISECONDS)
+                .exceptionallyCompose(e -> {
+                    quorumWritesFailed.increment();
+                    return CompletableFuture.failedFuture(PeerCalls.asPeerFailure("replication.quorum", "backups", e));
+                });
+        return CompletableFuture.allOf(revoked, quorum);
+    }
+
+    // Storage write and replication enqueue happen under the key's write lock,
+    // so backups see writes to a key in the order they were stored here. They
+    // also hold the partition's gate shared, and re-check ownership under it:
+    // a rebalance hands a partition over with the gate held exclusively.
+    // No transaction spans them: each storage engine call commits on its own.
+
+    /** Returns false if this node no longer owns the key; the caller forwards it. */
+    private boolean localPutAndReplicate(String key, byte[] value, Duration ttl, WriteAcks acks) {
+        byte[] stored = codec.encode(value); // outside the key lock
+        return writeIfOwner(key, () -> {
+            KeyValueEntity entity = toEntity(key, stored, ttl == null ? null : LocalDateTime.now().plus(ttl), versions.next());
+            saveAndReplicate(entity, acks);
+        });
+    }
+
+    /** A primary write of one entry; under its write lock. */
+    private void saveAndReplicate(KeyValueEntity entity, WriteAcks acks) {
+        long start = metrics.start();
+        storage.save(entity);
+        metrics.record("storage.write", LOCAL, start);
+        Long expireAtMillis = toEpochMillis(entity.getExpireAt());
+        trees.put(entity.getKey(), entity.getValue(), expireAtMillis, entity.getVersion());
+        filters.add(entity.getKey());
+        invalidate(entity.getKey());
+        replication.replicatePut(entity.getKey(), entity.getValue(), expireAtMillis, entity.getVersion(), acks);
     }
 
-    @Transactional
-    protected void localPutAndReplicate(String key, byte[] value, Duration ttl) {
-        int partitionId = affinity.partition(key);
+    private boolean localDeleteAndReplicate(String key, WriteAcks acks) {
+        return writeIfOwner(key, () -> {
+            long start = metrics.start();
+            storage.deleteById(key);
+            metrics.record("storage.write", LOCAL, start);
+            trees.remove(key);
+            invalidate(key);
+            replication.replicateDelete(key, acks);
+        });
+    }
+
+    /** Returns null if this node no longer owns the key; the caller forwards it. */
+    private AtomicResult localAtomic(AtomicOp op, WriteAcks acks) {
+        AtomicResult[] result = {null};
+        writeIfOwner(op.key(), () -> result[0] = applyAtomic(op, acks));
+        return result[0];
+    }
+
+    /** Under the key's write lock; values are decoded to apply the op and encoded again to store it. */
+    private AtomicResult applyAtomic(AtomicOp op, WriteAcks acks) {
+        Optional<KeyValueEntity> current = storage.findValid(op.key());
+        long version = current.map(KeyValueEntity::getVersion).orElse(0L);
+        byte[] value = current.map(e -> codec.decode(e.getValue())).orElse(null);
+        LocalDateTime expireAt = current.map(KeyValueEntity::getExpireAt).orElse(null);
+        byte[] updated;
+        switch (op.type()) {
+            case READ -> {
+                return new AtomicResult(AtomicResult.Status.APPLIED, value, version);
+            }
+            case COMPARE_AND_SET -> {
+                if (version != op.expectedVersion()) {
+                    return new AtomicResult(AtomicResult.Status.VERSION_MISMATCH, value, version);
+                }
+                updated = op.operand();
+                expireAt = op.ttlMillis() == null ? null : LocalDateTime.now().plus(Duration.ofMillis(op.ttlMillis()));
+            }
+            case INCREMENT -> {
+                try {
+                    long n = value == null ? 0 : Long.parseLong(new String(value, StandardCharsets.US_ASCII).trim());
+                    updated = Long.toString(Math.addExact(n, op.delta())).getBytes(StandardCharsets.US_ASCII);
+                } catch (NumberFormatException | ArithmeticException e) {
+                    return new AtomicResult(AtomicResult.Status.NOT_A_NUMBER, value, version);
+                }
+            }
+            case APPEND -> {
+                int length = (value == null ? 0 : value.length) + op.operand().length;
+                if (length > maxValueBytes) return new AtomicResult(AtomicResult.Status.TOO_LARGE, value, version);
+                updated = Arrays.copyOf(value == null ? new byte[0] : value, length);
+                System.arraycopy(op.operand(), 0, updated, length - op.operand().length, op.operand().length);
+            }
+            default -> throw new IllegalArgumentException("Unknown atomic op " + op.type());
+        }
+        versions.observe(version); // stays above versions written under a clock that ran ahead
+        KeyValueEntity entity = toEntity(op.key(), codec.encode(updated), expireAt, versions.next());
+        saveAndReplicate(entity, acks);
+        return new AtomicResult(AtomicResult.Status.APPLIED, updated, entity.getVersion());
+    }
+
+    /** Returns the entries this node no longer owns; the caller forwards them. */
+    private Map<String, byte[]> localPutAllAndReplicate(Map<String, byte[]> entries, Duration ttl, WriteAcks acks) {
+        if (entries.isEmpty()) return Map.of();
+        Map<String, byte[]> stored = codec.encodeAll(entries);
+        List<String> moved = writeOwned(entries.keySet(), owned -> {
+            List<KeyValueEntity> entities = toEntities(slice(stored, owned), ttl);
+            long start = metrics.start();
+            storage.saveAll(entities);
+            metrics.record("storage.writeAll", LOCAL, start);
+            trees.putAll(entities);
+            filters.addAll(entities);
+            owned.forEach(this::invalidate);
+            for (KeyValueEntity e : entities) {
+                replication.replicatePut(e.getKey(), e.getValue(), toEpochMillis(e.getExpireAt()), e.getVersion(), acks);
+            }
+        });
+        return moved.isEmpty() ? Map.of() : slice(entries, moved);
+    }
+
+    private List<String> localDeleteAllAndReplicate(Collection<String> keys, WriteAcks acks) {
+        if (keys.isEmpty()) return List.of();
+        return writeOwned(keys, owned -> {
+            long start = metrics.start();
+            storage.deleteAllById(owned);
+            metrics.record("storage.writeAll", LOCAL, start);
+            trees.removeAll(owned);
+            owned.forEach(this::invalidate);
+            owned.forEach(key -> replication.replicateDelete(key, acks));
+        });
+    }
+
+    private boolean writeIfOwner(String key, Runnable write) {
+        Lock gate = partitionGates[affinity.partition(key)].readLock();
+        gate.lock();
+        try {
+            if (!affinity.isPrimaryOwner(key)) return false;
+            writeLocks.withLock(key, write);
+            return true;
+        } finally {
+            gate.unlock();
+        }
+    }
+
+    /** Runs {@code write} on the keys this node still owns and returns the others. */
+    private List<String> writeOwned(Collection<String> keys, Consumer<List<String>> write) {
+        int[] partitions = keys.stream().mapToInt(affinity::partition).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int p : partitions) {
+                partitionGates[p].readLock().lock();
+                locked++;
+            }
+            List<String> owned = new ArrayList<>(keys.size());
+            List<String> moved = new ArrayList<>();
+            for (String key : keys) {
+                (affinity.isPrimaryOwner(key) ? owned : moved).add(key);
+            }
+            if (!owned.isEmpty()) writeLocks.withLocks(owned, () -> write.accept(owned));
+            return moved;
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                partitionGates[partitions[i]].readLock().unlock();
+            }
+        }
+    }
+
+    private List<KeyValueEntity> toEntities(Map<String, byte[]> entries, Duration ttl) {
+        LocalDateTime expireAt = ttl == null ? null : LocalDateTime.now().plus(ttl);
+        List<KeyValueEntity> entities = new ArrayList<>(entries.size());
+        entries.forEach((key, value) -> entities.add(toEntity(key, value, expireAt, versions.next())));
+        return entities;
+    }
+
+    private KeyValueEntity toEntity(String key, byte[] value, LocalDateTime expireAt, long version) {
         KeyValueEntity entity = new KeyValueEntity();
         entity.setKey(key);
         entity.setValue(value);
-        entity.setPartitionId(partitionId);
-        if (ttl != null) {
-            entity.setExpireAt(LocalDateTime.now().plus(ttl));
-        }
-        repo.save(entity);
+        entity.setPartitionId(affinity.partition(key));
+        entity.setExpireAt(expireAt);
+        entity.setVersion(version);
+        return entity;
+    }
 
-        // replicate to backups (best-effort)
-        replicateToBackups("PUT", key, value, ttl);
+    // expireAt is a LocalDateTime in the JVM zone; replication carries it as
+    // epoch millis so nodes in different zones agree on the instant.
+    private static Long toEpochMillis(LocalDateTime expireAt) {
+        return expireAt == null ? null : expireAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
     }
 
-    @Transactional
-    protected void localDeleteAndReplicate(String key) {
-        repo.deleteById(key);
-        replicateToBackups("DELETE", key, null, null);
+    private static LocalDateTime fromEpochMillis(Long millis) {
+        return millis == null ? null : LocalDateTime.ofInstant(Instant.ofEpochMilli(millis), ZoneId.systemDefault());
     }
 
-    // ---------- Replication to backups ----------
+    // ---------- Expiry ----------
 
-    private void replicateToBackups(String op, String key, byte[] value, Duration ttl) {
-        List<String> owners = affinity.owners(affinity.partition(key));
-        if (owners.size() <= 1) return; // no backups
-
-        owners.stream()
-                .skip(1) // skip primary
-                .forEach(nodeId -> {
-                    String baseUrl = affinity.urlOf(nodeId);
-                    if (baseUrl == null) return;
-
-                    if (op.equals("PUT")) {
-                        webClient.post()
-                                .uri(baseUrl + "/internal/kv/" + key + buildTtlQuery(ttl))
-                                .bodyValue(value)
-                                .retrieve()
-                                .toBodilessEntity()
-                                .subscribe(); // fire-and-forget
-                    } else if (op.equals("DELETE")) {
-                        webClient.delete()
-                                .uri(baseUrl + "/internal/kv/" + key)
-                                .retrieve()
-                                .toBodilessEntity()
-                                .subscribe();
+    /**
+     * Deletes those of {@code keys} that are expired, if this node is still
+     * their primary, and replicates the deletes. Each key is re-checked under
+     * its write lock, so a key rewritten with a new TTL, or deleted meanwhile,
+     * is left alone. Returns the number of keys actually deleted.
+     */
+    public int expireKeys(Collection<String> keys) {
+        if (keys.isEmpty()) return 0;
+        List<String> deleted = new ArrayList<>();
+        writeOwned(keys, owned -> {
+            List<String> expired = storage.findExpired(owned); // rewritten or already gone: not ours to count
+            if (expired.isEmpty()) return;
+            storage.deleteAllById(expired);
+            trees.removeAll(expired);
+            expired.forEach(this::invalidate);
+            expired.forEach(replication::replicateDelete);
+            deleted.addAll(expired);
+        });
+        revokeLeases(deleted);
+        return deleted.size();
+    }
+
+    // ---------- Rebalancing ----------
+
+    /**
+     * Queues copies of {@code keys} for nodes that are about to own their
+     * partition. Each key is re-read under its write lock, so the copy lands in
+     * the replication queue in order with concurrent writes to the same key.
+     * Returns the number of value bytes queued.
+     */
+    public long transferKeys(List<String> keys, List<String> targets) {
+        long[] bytes = {0};
+        writeLocks.withLocks(keys, () -> {
+            for (KeyValueEntity e : storage.findAllValid(keys)) {
+                for (String nodeId : targets) {
+                    if (!replication.transferPut(nodeId, e.getKey(), e.getValue(), toEpochMillis(e.getExpireAt()), e.getVersion())) {
+                        return; // interrupted; the caller sees the flag
                     }
-                });
+                }
+                bytes[0] += e.getValue().length;
+            }
+        });
+        return bytes[0];
     }
 
-    private String buildTtlQuery(Duration ttl) {
-        if (ttl == null) return "";
-        return "?ttlSec=" + ttl.toSeconds();
+    /** Runs {@code handOver} with every write to the partition held off. */
+    public void withPartitionFrozen(int partitionId, Runnable handOver) {
+        Lock gate = partitionGates[partitionId].writeLock();
+        gate.lock();
+        try {
+            handOver.run();
+        } finally {
+            gate.unlock();
+        }
     }
 
-    // ---------- Forwarding to primary ----------
+    /** Called on every node when a partition changes owners. */
+    public void applyHandOver(int partitionId, List<String> owners) {
+        boolean wasPrimary = affinity.owners(partitionId).get(0).equals(affinity.getLocalNodeId());
+        affinity.handOver(partitionId, owners);
+        if (!wasPrimary || !owners.get(0).equals(affinity.getLocalNodeId())) {
+            // values cached while another node owned the partition may be stale, and
+            // hot-key leases from the old owner are not revoked by the new one
+            cache.invalidateIf(key -> affinity.partition(key) == partitionId);
+        }
+        if (!owners.contains(affinity.getLocalNodeId())) {
+            trees.drop(partitionId);
+            filters.drop(partitionId);
+        }
+        // reads in flight went to the old owner
+        localReads.forgetIf(key -> affinity.partition(key) == partitionId);
+        remoteReads.forgetIf(key -> affinity.partition(key) == partitionId);
+    }
 
-    private Optional<byte[]> forwardGet(String key) {
-        String nodeId = affinity.primaryOwner(key);
-        String baseUrl = affinity.urlOf(nodeId);
-        if (baseUrl == null) return Optional.empty();
+    // ---------- Anti-entropy ----------
 
-        try {
-            byte[] body = webClient.get()
-                    .uri(baseUrl + "/internal/kv/" + key)
-                    .retrieve()
-                    .bodyToMono(byte[].class)
-                    .block();  // can be made async later
-            return Optional.ofNullable(body);
-        } catch (Exception e) {
-            return Optional.empty();
-        }
+    /**
+     * Queues this node's current state of {@code keys} for a backup whose copy
+     * was found to differ: a copy of each entry, or a delete where this node
+     * has none. Like {@link #transferKeys} each key is re-read under its write
+     * lock, and only while this node is still primary for it. Returns the
+     * number of value bytes queued.
+     */
+    public long repairKeys(String nodeId, Collection<String> keys) {
+        long[] bytes = {0};
+        writeOwned(keys, owned -> {
+            Set<String> missing = new HashSet<>(owned);
+            for (KeyValueEntity e : storage.findAllValid(owned)) {
+                missing.remove(e.getKey());
+                if (!replication.transferPut(nodeId, e.getKey(), e.getValue(), toEpochMillis(e.getExpireAt()), e.getVersion())) return;
+                bytes[0] += e.getValue().length;
+            }
+            for (String key : missing) {
+                if (!replication.transferDelete(nodeId, key)) return;
+            }
+        });
+        return bytes[0];
     }
 
-    private void forwardPut(String key, byte[] value, Duration ttl) {
-        String nodeId = affinity.primaryOwner(key);
-        String baseUrl = affinity.urlOf(nodeId);
-        if (baseUrl == null) {
-            throw new IllegalStateException("No URL for node " + nodeId);
+    // ---------- Snapshot import ----------
+
+    /**
+     * Stores those of {@code entities} that fall in partitions this node owns,
+     * as primary or backup, with the versions and expiry they carry. Partition
+     * ids are recomputed for this cluster, and entries that have expired since
+     * the export are skipped. Nothing is replicated: an import runs on every
+     * node, each storing its own share. Each partition's share is written with
+     * the partition's gate held exclusively, so a hand-over cannot run under
+     * it and a primary's writes to those keys wait for it. Returns the number
+     * of entities stored.
+     */
+    public int importEntries(List<KeyValueEntity> entities) {
+        Map<Integer, List<KeyValueEntity>> byPartition = new TreeMap<>();
+        for (KeyValueEntity e : entities) {
+            if (e.isExpired()) continue;
+            e.setPartitionId(affinity.partition(e.getKey()));
+            byPartition.computeIfAbsent(e.getPartitionId(), p -> new ArrayList<>()).add(e);
+        }
+        String local = affinity.getLocalNodeId();
+        int stored = 0;
+        for (Map.Entry<Integer, List<KeyValueEntity>> part : byPartition.entrySet()) {
+            List<KeyValueEntity> batch = part.getValue();
+            Lock gate = partitionGates[part.getKey()].writeLock();
+            gate.lock();
+            try {
+                if (!affinity.owners(part.getKey()).contains(local)) continue;
+                long start = metrics.start();
+                storage.bulkLoad(batch);
+                metrics.record("storage.bulkLoad", LOCAL, start);
+                trees.putAll(batch);
+                filters.addAll(batch);
+                for (KeyValueEntity e : batch) {
+                    invalidate(e.getKey());
+                    versions.observe(e.getVersion());
+                }
+                stored += batch.size();
+            } finally {
+                gate.unlock();
+            }
+            revokeLeases(batch.stream().map(KeyValueEntity::getKey).toList());
         }
+        return stored;
+    }
+
+    // ---------- Forwarding to primary ----------
+
+    /**
+     * Concurrent forwarded reads of one key share a call to the owner. Writes
+     * forwarded from here detach it when they complete; a write made through
+     * another node is only seen by calls that reach the owner after it.
+     * Fails with {@link PeerCallException} if the owner does not answer.
+     */
+    private CompletableFuture<Optional<byte[]>> forwardGet(String key) {
+        String owner = affinity.primaryOwner(key);
+        return remoteReads.runAsync(key, () -> calls.roundTrip("forward.get", owner, () -> peers.get(owner, key)));
+    }
+
+    /** Forwarded writes go out with primary = true so the owner also replicates them. */
+    private CompletableFuture<Void> forwardPut(String key, byte[] value, Duration ttl) {
+        String owner = affinity.primaryOwner(key);
+        return calls.roundTrip("forward.put", owner, () -> peers.put(owner, key, value, ttl))
+                .whenComplete((v, e) -> remoteReads.forget(key));
+    }
+
+    private CompletableFuture<Void> forwardDelete(String key) {
+        String owner = affinity.primaryOwner(key);
+        return calls.roundTrip("forward.delete", owner, () -> peers.delete(owner, key))
+                .whenComplete((v, e) -> remoteReads.forget(key));
+    }
+
+    private CompletableFuture<AtomicResult> forwardAtomic(AtomicOp op) {
+        String owner = affinity.primaryOwner(op.key());
+        return calls.roundTrip("forward.atomic", owner, () -> peers.atomic(owner, op))
+                .whenComplete((v, e) -> remoteReads.forget(op.key()));
+    }
+
+    private CompletableFuture<Map<String, byte[]>> forwardGetAll(String nodeId, List<String> keys) {
+        return calls.roundTrip("forward.getAll", nodeId, () -> peers.getAll(nodeId, keys));
+    }
 
-        webClient.post()
-                .uri(baseUrl + "/internal/kv/" + key + buildTtlQuery(ttl))
-                .bodyValue(value)
-                .retrieve()
-                .toBodilessEntity()
-                .block();
+    /** The owner stores the group as primary and replicates it to its own backups. */
+    private CompletableFuture<Void> forwardPutAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+        return calls.roundTrip("forward.putAll", nodeId, () -> peers.putAll(nodeId, entries, ttl))
+                .whenComplete((v, e) -> entries.keySet().forEach(remoteReads::forget));
     }
 
-    private void forwardDelete(String key) {
-        String nodeId = affinity.primaryOwner(key);
-        String baseUrl = affinity.urlOf(nodeId);
-        if (baseUrl == null) return;
+    private CompletableFuture<Void> forwardDeleteAll(String nodeId, List<String> keys) {
+        return calls.roundTrip("forward.deleteAll", nodeId, () -> peers.deleteAll(nodeId, keys))
+                .whenComplete((v, e) -> keys.forEach(remoteReads::forget));
+    }
 
-        webClient.delete()
-                .uri(baseUrl + "/internal/kv/" + key)
-                .retrieve()
-                .toBodilessEntity()
-                .block();
+    /**
+     * A client operation end to end, including any forward; also tracks
+     * in-flight requests. Runs under the request's {@link Deadline}, or one of
+     * {@code kv.request.timeout-ms} if the request brought none.
+     */
+    private <T> CompletableFuture<T> timed(String stage, Supplier<CompletableFuture<T>> operation) {
+        long start = metrics.start();
+        metrics.enter();
+        long deadline = Deadline.current();
+        if (deadline == Deadline.NONE) deadline = System.currentTimeMillis() + requestTimeoutMs;
+        CompletableFuture<T> result;
+        try {
+            result = Deadline.within(deadline, operation);
+        } catch (RuntimeException e) {
+            metrics.exit();
+            metrics.error(stage, LOCAL);
+            throw e;
+        }
+        return result.whenComplete((v, e) -> {
+            metrics.exit();
+            metrics.record(stage, LOCAL, start);
+            if (e != null) metrics.error(stage, LOCAL);
+        });
     }
 
     // ---------- Internal APIs used across nodes ----------
@@ -169,19 +1122,148 @@ public class DistributedKeyValueService {
         return localGet(key);
     }
 
-    public void internalPutLocalOnly(String key, byte[] value, Duration ttl) {
-        int partitionId = affinity.partition(key);
-        KeyValueEntity entity = new KeyValueEntity();
-        entity.setKey(key);
-        entity.setValue(value);
-        entity.setPartitionId(partitionId);
-        if (ttl != null) entity.setExpireAt(LocalDateTime.now().plus(ttl));
-        repo.save(entity);
+    public Optional<StoredValue> internalOpenLocalOnly(String key) {
+        return localOpen(key);
     }
 
-    public void internalDeleteLocalOnly(String key) {
-        repo.deleteById(key);
+    /**
+     * Write forwarded by a node that routed the key here: stored as its
+     * primary and replicated, or forwarded on if this node no longer owns it.
+     * Backups get writes only through {@link #internalApplyReplication}.
+     */
+    public void internalPut(String key, byte[] value, Duration ttl) {
+        WriteAcks acks = writeAcks();
+        if (localPutAndReplicate(key, value, ttl, acks)) acknowledged(List.of(key), acks).join();
+        else forwardPut(key, value, ttl).join();
     }
-}
 
+    /** An atomic op forwarded by another node; forwarded again if this node no longer owns the key. */
+    public CompletableFuture<AtomicResult> internalAtomic(AtomicOp op) {
+        return executeAtomic(op);
+    }
+
+    public void internalDelete(String key) {
+        WriteAcks acks = writeAcks();
+        if (localDeleteAndReplicate(key, acks)) acknowledged(List.of(key), acks).join();
+        else forwardDelete(key).join();
+    }
+
+    /**
+     * Read sent to this node as a backup. Answers locally if the copy is
+     * fresh enough, otherwise passes the read on to the primary.
+     */
+    public CompletableFuture<Optional<byte[]>> internalReplicaGet(String key, long maxStalenessMs) {
+        if (affinity.isPrimaryOwner(key) || isFresh(affinity.primaryOwner(key), maxStalenessMs)) {
+            return CompletableFuture.completedFuture(localGet(key));
+        }
+        return forwardGet(key);
+    }
 
+    /**
+     * Hot-key read from a node that will cache the value: the lease is granted
+     * before the value is read. If the partition has moved on, the read and the
+     * lease are passed on to the new primary.
+     */
+    public CompletableFuture<Optional<byte[]>> internalLeasedGet(String key, String holder, long leaseMs) {
+        if (!affinity.isPrimaryOwner(key)) {
+            String owner = affinity.primaryOwner(key);
+            return calls.roundTrip("forward.getLeased", owner, () -> peers.getLeased(owner, key, holder, leaseMs));
+        }
+        leases.grant(key, holder, leaseMs);
+        return CompletableFuture.completedFuture(localGet(key));
+    }
+
+    /** This node's copy of the key and its version, for a quorum read. */
+    public Optional<VersionedValue> internalGetVersioned(String key) {
+        return quorumReads.localCopy(key);
+    }
+
+    /**
+     * From a quorum read that found {@code staleNodes} behind this node's copy:
+     * queues the current copy for those that still own the key, if this node
+     * is still its primary.
+     */
+    public void internalReadRepair(String key, Collection<String> staleNodes) {
+        quorumReads.repair(key, staleNodes, this::repairKeys);
+    }
+
+    /** Drops leased copies of keys an owner has just written. */
+    public void internalInvalidate(Collection<String> keys) {
+        hotInvalidationsReceived.add(keys.size());
+        keys.forEach(this::invalidate);
+    }
+
+    public Map<String, byte[]> internalGetAllLocalOnly(Collection<String> keys) {
+        return localGetAll(keys);
+    }
+
+    /** A page of this node's copy of a partition, values in stored form. */
+    public Map<String, byte[]> internalScanLocalOnly(int partitionId, String afterKey, String prefix, int limit) {
+        return localScan(partitionId, afterKey, prefix, limit);
+    }
+
+    /** This node's tree hashes, for a primary comparing its copy; see {@link MerkleTrees#hashes}. */
+    public long[] internalMerkleHashes(int[] partitions, int[] nodes) {
+        return trees.hashes(partitions, nodes);
+    }
+
+    /** Key → entry hash under the given leaves of this node's tree; empty while it is not built. */
+    public Map<String, Long> internalMerkleEntries(int partitionId, int[] leaves) {
+        Map<String, Long> entries = trees.entries(partitionId, leaves);
+        return entries == null ? Map.of() : entries;
+    }
+
+    /**
+     * A group of keys the sender found this node to be primary for, as in
+     * {@link #internalPut}; keys handed over meanwhile are sent on.
+     */
+    public void internalPutAll(Map<String, byte[]> entries, Duration ttl) {
+        WriteAcks acks = writeAcks();
+        Map<String, byte[]> moved = localPutAllAndReplicate(entries, ttl, acks);
+        if (!moved.isEmpty()) putAll(moved, ttl).join();
+        acknowledged(entries.keySet(), acks).join();
+    }
+
+    public void internalDeleteAll(Collection<String> keys) {
+        WriteAcks acks = writeAcks();
+        List<String> moved = localDeleteAllAndReplicate(keys, acks);
+        if (!moved.isEmpty()) deleteAll(moved).join();
+        acknowledged(keys, acks).join();
+    }
+
+    /**
+     * Applies a batch from a primary's replication pipeline. Runs of the same
+     * op type go to storage as one saveAll/deleteAllById; ops keep their order
+     * across runs. Returns the seq of the last op so the sender can ack it.
+     */
+    public long internalApplyReplication(ReplicationBatch batch) {
+        List<ReplicationOp> ops = batch.ops();
+        int i = 0;
+        while (i < ops.size()) {
+            ReplicationOp.Type type = ops.get(i).op();
+            Map<String, ReplicationOp> run = new LinkedHashMap<>(); // last write per key wins
+            while (i < ops.size() && ops.get(i).op() == type) {
+                run.put(ops.get(i).key(), ops.get(i));
+                i++;
+            }
+            long start = metrics.start();
+            if (type == ReplicationOp.Type.PUT) {
+                List<KeyValueEntity> entities = new ArrayList<>(run.size());
+                for (ReplicationOp op : run.values()) {
+                    entities.add(toEntity(op.key(), op.value(), fromEpochMillis(op.expireAtMillis()), op.version()));
+                    versions.observe(op.version());
+                }
+                storage.saveAll(entities);
+                trees.putAll(entities);
+                filters.addAll(entities);
+            } else {
+                storage.deleteAllById(run.keySet());
+                trees.removeAll(run.keySet());
+            }
+            metrics.record("replica.apply", batch.source(), start);
+            run.keySet().forEach(this::invalidate);
+        }
+        freshness.record(batch);
+        return ops.isEmpty() ? 0 : ops.get(ops.size() - 1).seq();
+    }
+}
@@ -0,0 +1,81 @@
+package com.example.kv_store.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Primary-side record of which nodes cache which hot keys, and until when.
+ *
+ * A node that does not own a hot key fetches it with a lease and caches it for
+ * at most the lease time. A write to the key revokes the leases, and the
+ * writer tells the holders to drop their copies before it acknowledges. A
+ * lease is granted before the value is read, so a read that races a write is
+ * either revoked by it or reads the new value.
+ */
+final class HotKeyLeases {
+
+    private final Map<String, Map<String, Long>> leases = new ConcurrentHashMap<>();
+    private final AtomicLong granted = new AtomicLong();
+    private final LongAdder revoked = new LongAdder();
+
+    void grant(String key, String holder, long leaseMs) {
+        long until = System.currentTimeMillis() + leaseMs;
+        leases.compute(key, (k, holders) -> {
+            if (holders == null) holders = new ConcurrentHashMap<>();
+            holders.merge(holder, until, Math::max);
+            return holders;
+        });
+        if ((granted.incrementAndGet() & 1023) == 0) purgeExpired();
+    }
+
+    /** Removes the key's leases and returns the nodes that may still cache it. */
+    List<String> revoke(String key) {
+        if (leases.isEmpty()) return List.of();
+        Map<String, Long> holders = leases.remove(key);
+        if (holders == null) return List.of();
+        long now = System.currentTimeMillis();
+        List<String> live = holders.entrySet().stream()
+                .filter(e -> e.getValue() > now)
+                .map(Map.Entry::getKey)
+                .toList();
+        revoked.add(live.size());
+        return live;
+    }
+
+    /** Leases that have not run out yet, per key. */
+    Map<String, List<String>> active() {
+        long now = System.currentTimeMillis();
+        Map<String, List<String>> active = new TreeMap<>();
+        leases.forEach((key, holders) -> {
+            List<String> live = holders.entrySet().stream()
+                    .filter(e -> e.getValue() > now)
+                    .map(Map.Entry::getKey)
+                    .sorted()
+                    .toList();
+            if (!live.isEmpty()) active.put(key, live);
+        });
+        return active;
+    }
+
+    long granted() {
+        return granted.get();
+    }
+
+    long revoked() {
+        return revoked.sum();
+    }
+
+    private void purgeExpired() {
+        long now = System.currentTimeMillis();
+        for (String key : leases.keySet()) {
+            leases.computeIfPresent(key, (k, holders) -> {
+                holders.values().removeIf(until -> until <= now);
+                return holders.isEmpty() ? null : holders;
+            });
+        }
+    }
+}
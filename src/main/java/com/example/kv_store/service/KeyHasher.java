@@ -0,0 +1,68 @@
+package com.example.kv_store.service;
+
+/**
+ * Key → int hash used by {@link AffinityService#partition(String)}, selected
+ * with {@code cluster.hash}. Changing it on a populated cluster remaps keys, so
+ * {@code jdk} stays the default for existing deployments.
+ */
+public enum KeyHasher {
+
+    /** {@link String#hashCode()}; cheap, but clusters badly for keys like "user:1".."user:N". */
+    JDK {
+        @Override
+        public int hash(String key) {
+            return key.hashCode();
+        }
+    },
+
+    /** MurmurHash3 x86_32 over the UTF-16 code units, without allocating. */
+    MURMUR3 {
+        @Override
+        public int hash(String key) {
+            return murmur3(key, 0);
+        }
+    };
+
+    public abstract int hash(String key);
+
+    public static KeyHasher fromProperty(String name) {
+        return valueOf(name.trim().toUpperCase());
+    }
+
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    static int murmur3(CharSequence s, int seed) {
+        int h = seed;
+        int length = s.length();
+        int i = 1;
+        for (; i < length; i += 2) {
+            int k = s.charAt(i - 1) | (s.charAt(i) << 16);
+            h = mixH(h, mixK(k));
+        }
+        if ((length & 1) == 1) {
+            h ^= mixK(s.charAt(length - 1));
+        }
+        return fmix(h ^ (2 * length));
+    }
+
+    private static int mixK(int k) {
+        k *= C1;
+        k = Integer.rotateLeft(k, 15);
+        return k * C2;
+    }
+
+    private static int mixH(int h, int k) {
+        h ^= k;
+        h = Integer.rotateLeft(h, 13);
+        return h * 5 + 0xe6546b64;
+    }
+
+    private static int fmix(int h) {
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        return h ^ (h >>> 16);
+    }
+}
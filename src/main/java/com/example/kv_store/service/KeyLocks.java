@@ -0,0 +1,55 @@
+package com.example.kv_store.service;
+
+import java.util.Collection;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Striped write locks keyed by hash. Held across "write storage, then enqueue
+ * replication" so concurrent writes of one key reach the backups in the order
+ * they reached the local store. ReentrantLock rather than synchronized so a
+ * virtual thread blocked on JDBC inside the lock does not pin its carrier.
+ */
+final class KeyLocks {
+
+    private final ReentrantLock[] stripes;
+
+    KeyLocks(int stripeCount) {
+        int n = Integer.highestOneBit(Math.max(1, stripeCount) * 2 - 1);
+        this.stripes = new ReentrantLock[n];
+        for (int i = 0; i < n; i++) {
+            stripes[i] = new ReentrantLock();
+        }
+    }
+
+    void withLock(String key, Runnable action) {
+        ReentrantLock lock = stripes[indexOf(key)];
+        lock.lock();
+        try {
+            action.run();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /** Locks every stripe the keys fall on, in index order so batches cannot deadlock. */
+    void withLocks(Collection<String> keys, Runnable action) {
+        int[] indexes = keys.stream().mapToInt(this::indexOf).distinct().sorted().toArray();
+        int locked = 0;
+        try {
+            for (int index : indexes) {
+                stripes[index].lock();
+                locked++;
+            }
+            action.run();
+        } finally {
+            for (int i = locked - 1; i >= 0; i--) {
+                stripes[indexes[i]].unlock();
+            }
+        }
+    }
+
+    private int indexOf(String key) {
+        int h = key.hashCode();
+        return (h ^ (h >>> 16)) & (stripes.length - 1);
+    }
+}
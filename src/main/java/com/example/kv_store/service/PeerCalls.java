@@ -0,0 +1,67 @@
+package com.example.kv_store.service;
+
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.transport.Deadline;
+import com.example.kv_store.transport.PeerCallException;
+import com.example.kv_store.transport.PeerHealth;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * Calls from this node to a peer, timed and error-counted per peer. Each gets
+ * the forward timeout or what is left of the request's deadline, whichever is
+ * shorter, and is refused while the peer's circuit is open. Failures surface
+ * as {@link PeerCallException}.
+ */
+final class PeerCalls {
+
+    private final HotPathMetrics metrics;
+    private final PeerHealth health;
+    private final long forwardTimeoutMs;
+
+    PeerCalls(HotPathMetrics metrics, PeerHealth health, long forwardTimeoutMs) {
+        this.metrics = metrics;
+        this.health = health;
+        this.forwardTimeoutMs = forwardTimeoutMs;
+    }
+
+    <T> CompletableFuture<T> roundTrip(String stage, String nodeId, Supplier<CompletableFuture<T>> call) {
+        long remaining = Deadline.remainingMillis();
+        if (remaining <= 0) {
+            metrics.error(stage, nodeId);
+            return CompletableFuture.failedFuture(new PeerCallException(stage, nodeId, true, "deadline exceeded"));
+        }
+        if (!health.allow(nodeId)) {
+            metrics.error(stage, nodeId);
+            return CompletableFuture.failedFuture(new PeerCallException(stage, nodeId, false, "circuit open"));
+        }
+        long start = metrics.start();
+        CompletableFuture<T> sent;
+        try {
+            sent = call.get();
+        } catch (RuntimeException e) {
+            sent = CompletableFuture.failedFuture(e);
+        }
+        return sent
+                .orTimeout(Math.min(forwardTimeoutMs, remaining), TimeUnit.MILLISECONDS)
+                .whenComplete((v, e) -> {
+                    metrics.record(stage, nodeId, start);
+                    if (e == null) {
+                        health.onSuccess(nodeId);
+                    } else {
+                        metrics.error(stage, nodeId);
+                        health.onFailure(nodeId);
+                    }
+                })
+                .exceptionallyCompose(e -> CompletableFuture.failedFuture(asPeerFailure(stage, nodeId, e)));
+    }
+
+    static PeerCallException asPeerFailure(String stage, String nodeId, Throwable e) {
+        Throwable cause = e instanceof CompletionException && e.getCause() != null ? e.getCause() : e;
+        if (cause instanceof PeerCallException p) return p;
+        return new PeerCallException(stage, nodeId, String.valueOf(cause.getMessage()), cause);
+    }
+}
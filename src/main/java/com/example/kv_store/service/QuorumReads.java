@@ -0,0 +1,212 @@
+package com.example.kv_store.service;
+
+import com.example.kv_store.cache.PartitionBloomFilters;
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.storage.StorageEngine;
+import com.example.kv_store.transport.Deadline;
+import com.example.kv_store.transport.PeerClient;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.LongAdder;
+
+import static com.example.kv_store.metrics.HotPathMetrics.LOCAL;
+
+/**
+ * Reads at {@link ReadConsistency#QUORUM} and the read repair they lead to.
+ *
+ * Writes are ordered by the primary, so while it answers its copy is the
+ * newest: the other owners asked are compared with it, and those that differ
+ * get the primary's copy again through its replication stream, in order with
+ * live writes. If the primary fails, the next owner is asked instead and the
+ * newest version among the answers wins; with R + W > N one of them has every
+ * write acknowledged under the write quorum. Without the primary a delete
+ * cannot be told from a missed write, so a key deleted meanwhile may still be
+ * returned from a backup that has not applied it.
+ */
+final class QuorumReads {
+
+    /** Queues the primary's copy of keys for a node found to differ; see {@code DistributedKeyValueService#repairKeys}. */
+    @FunctionalInterface
+    interface Repairs {
+        long repairKeys(String nodeId, Collection<String> keys);
+    }
+
+    private final AffinityService affinity;
+    private final StorageEngine storage;
+    private final PartitionBloomFilters filters;
+    private final HotPathMetrics metrics;
+    private final PeerClient peers;
+    private final PeerCalls calls;
+    private final int readQuorum;
+
+    private final LongAdder reads = new LongAdder();
+    private final LongAdder readsWithoutPrimary = new LongAdder();
+    private final LongAdder repairsSent = new LongAdder();
+    private final LongAdder repairsApplied = new LongAdder();
+
+    QuorumReads(AffinityService affinity, StorageEngine storage, PartitionBloomFilters filters,
+                HotPathMetrics metrics, PeerClient peers, PeerCalls calls, int readQuorum) {
+        this.affinity = affinity;
+        this.storage = storage;
+        this.filters = filters;
+        this.metrics = metrics;
+        this.peers = peers;
+        this.calls = calls;
+        this.readQuorum = Math.max(1, readQuorum);
+    }
+
+    /** Asks R owners, the primary first and this node next if it owns the key. */
+    CompletableFuture<Optional<byte[]>> read(String key, Repairs repairs) {
+        List<String> owners = affinity.owners(affinity.partition(key));
+        String self = affinity.getLocalNodeId();
+        List<String> order = new ArrayList<>(owners.size());
+        order.add(owners.get(0));
+        if (owners.contains(self) && !order.contains(self)) order.add(self); // a free answer
+        for (String owner : owners) {
+            if (!order.contains(owner)) order.add(owner);
+        }
+        metrics.routed("get", false, 1);
+        reads.increment();
+        return new QuorumRead(key, order, Math.min(readQuorum, order.size()), repairs).start();
+    }
+
+    /** This node's copy of the key and its version. */
+    Optional<VersionedValue> localCopy(String key) {
+        if (!filters.mightContain(key)) return Optional.empty();
+        long start = metrics.start();
+        Optional<KeyValueEntity> found = storage.findValid(key);
+        metrics.record("storage.read", LOCAL, start);
+        if (found.isEmpty()) filters.recordFalsePositive(key);
+        return found.map(e -> new VersionedValue(e.getValue(), e.getVersion()));
+    }
+
+    /**
+     * At the key's primary: queues its current copy for those of
+     * {@code staleNodes} that still own the key. Ignored by any other node.
+     */
+    void repair(String key, Collection<String> staleNodes, Repairs repairs) {
+        if (!affinity.isPrimaryOwner(key)) return;
+        List<String> owners = affinity.owners(affinity.partition(key));
+        for (String nodeId : staleNodes) {
+            if (!owners.contains(nodeId) || nodeId.equals(affinity.getLocalNodeId())) continue;
+            repairs.repairKeys(nodeId, List.of(key));
+            repairsApplied.increment();
+        }
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("readQuorum", readQuorum);
+        stats.put("reads", reads.sum());
+        stats.put("readsWithoutPrimary", readsWithoutPrimary.sum());
+        stats.put("readRepairsSent", repairsSent.sum());
+        stats.put("readRepairsApplied", repairsApplied.sum());
+        return stats;
+    }
+
+    /** Asks the first {@code needed} owners of {@code order}, and the next one in line for each that fails. */
+    private final class QuorumRead {
+
+        private final String key;
+        private final List<String> order;
+        private final int needed;
+        private final Repairs repairs;
+        private final long deadline = Deadline.current();
+        private final Map<String, Optional<VersionedValue>> answers = new LinkedHashMap<>();
+        private final CompletableFuture<Optional<byte[]>> result = new CompletableFuture<>();
+        private int asked;
+        private boolean done;
+
+        QuorumRead(String key, List<String> order, int needed, Repairs repairs) {
+            this.key = key;
+            this.order = order;
+            this.needed = needed;
+            this.repairs = repairs;
+        }
+
+        CompletableFuture<Optional<byte[]>> start() {
+            synchronized (this) {
+                asked = needed;
+            }
+            for (int i = 0; i < needed; i++) {
+                ask(order.get(i));
+            }
+            return result;
+        }
+
+        private void ask(String nodeId) {
+            CompletableFuture<Optional<VersionedValue>> copy;
+            if (nodeId.equals(affinity.getLocalNodeId())) {
+                try {
+                    copy = CompletableFuture.completedFuture(localCopy(key));
+                } catch (RuntimeException e) {
+                    copy = CompletableFuture.failedFuture(e);
+                }
+            } else {
+                copy = Deadline.within(deadline,
+                        () -> calls.roundTrip("forward.getVersioned", nodeId, () -> peers.getVersioned(nodeId, key)));
+            }
+            copy.whenComplete((v, e) -> answered(nodeId, v, e));
+        }
+
+        private void answered(String nodeId, Optional<VersionedValue> copy, Throwable error) {
+            String next = null;
+            boolean finish = false;
+            synchronized (this) {
+                if (done) return;
+                if (error == null) {
+                    answers.put(nodeId, copy);
+                    finish = done = answers.size() == needed;
+                } else if (asked < order.size()) {
+                    next = order.get(asked++);
+                } else {
+                    done = true;
+                }
+            }
+            if (finish) {
+                finish();
+            } else if (next != null) {
+                ask(next);
+            } else if (error != null) {
+                result.completeExceptionally(PeerCalls.asPeerFailure("forward.getVersioned", nodeId, error));
+            }
+        }
+
+        private void finish() {
+            String primary = order.get(0);
+            Optional<VersionedValue> chosen = answers.get(primary);
+            if (chosen == null) {
+                readsWithoutPrimary.increment();
+                chosen = answers.values().stream()
+                        .flatMap(Optional::stream)
+                        .max(Comparator.comparingLong(VersionedValue::version));
+            } else {
+                repairStale(primary, chosen.map(VersionedValue::version).orElse(0L));
+            }
+            result.complete(chosen.map(VersionedValue::value));
+        }
+
+        private void repairStale(String primary, long version) {
+            List<String> stale = new ArrayList<>();
+            answers.forEach((nodeId, copy) -> {
+                if (copy.map(VersionedValue::version).orElse(0L) != version) stale.add(nodeId);
+            });
+            if (stale.isEmpty()) return;
+            repairsSent.add(stale.size());
+            if (primary.equals(affinity.getLocalNodeId())) {
+                repair(key, stale, repairs);
+            } else {
+                Deadline.within(deadline, () -> calls.roundTrip("forward.readRepair", primary,
+                        () -> peers.readRepair(primary, key, stale))).exceptionally(e -> null);
+            }
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.kv_store.service;
+
+/** Per-request read guarantee, chosen with {@code ?consistency=} on GET /kv/{k}. */
+public enum ReadConsistency {
+    /** Always read from the primary. */
+    STRONG,
+    /** A backup may answer if its copy is at most {@code maxStalenessMs} behind the primary. */
+    BOUNDED,
+    /** Any owner may answer, however far behind. */
+    ANY,
+    /**
+     * Ask {@code kv.quorum.read} owners, the primary first, and return the
+     * newest copy; owners found behind are repaired.
+     */
+    QUORUM;
+
+    public static ReadConsistency fromParam(String value) {
+        return valueOf(value.trim().toUpperCase());
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.kv_store.service;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
+/**
+ * Position of a scan: the last key returned in {@code partitionId}, or null
+ * for the start of that partition. Scans run in (partition, key) order, so
+ * this is all a scan needs to resume. Sent to clients as an opaque token.
+ */
+public record ScanCursor(int partitionId, String afterKey) {
+
+    public static ScanCursor start(int partitionId) {
+        return new ScanCursor(partitionId, null);
+    }
+
+    public String encode() {
+        String plain = partitionId + ":" + (afterKey == null ? "" : afterKey);
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(plain.getBytes(StandardCharsets.UTF_8));
+    }
+
+    /** Throws IllegalArgumentException for tokens this class did not produce. */
+    public static ScanCursor decode(String token) {
+        String plain = new String(Base64.getUrlDecoder().decode(token), StandardCharsets.UTF_8);
+        int colon = plain.indexOf(':');
+        if (colon < 0) throw new IllegalArgumentException("Malformed scan cursor");
+        String afterKey = plain.substring(colon + 1);
+        return new ScanCursor(Integer.parseInt(plain.substring(0, colon)), afterKey.isEmpty() ? null : afterKey);
+    }
+}
@@ -0,0 +1,101 @@
+package com.example.kv_store.service;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+import java.util.function.Supplier;
+
+/**
+ * Per-key request coalescing: concurrent reads of one key share a single
+ * in-flight lookup instead of each running their own.
+ *
+ * A caller only ever joins a call that was started before it arrived, and
+ * writers {@link #forget} the key once their write is visible. A read that
+ * starts after a write has completed therefore never joins a lookup that could
+ * have seen the old value; it starts a fresh one.
+ */
+final class SingleFlight<T> {
+
+    private final boolean enabled;
+    private final Map<String, CompletableFuture<T>> inFlight = new ConcurrentHashMap<>();
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder joined = new LongAdder();
+
+    SingleFlight(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /** Runs {@code lookup} on the calling thread, or waits for the call already running for the key. */
+    T run(String key, Supplier<T> lookup) {
+        if (!enabled) return lookup.get();
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            joined.increment();
+            try {
+                return running.join();
+            } catch (CompletionException e) {
+                throw e.getCause() instanceof RuntimeException r ? r : e;
+            }
+        }
+        calls.increment();
+        try {
+            T result = lookup.get();
+            inFlight.remove(key, mine);
+            mine.complete(result);
+            return result;
+        } catch (RuntimeException e) {
+            inFlight.remove(key, mine);
+            mine.completeExceptionally(e);
+            throw e;
+        }
+    }
+
+    /** Async variant of {@link #run}; each caller gets its own copy of the shared future. */
+    CompletableFuture<T> runAsync(String key, Supplier<CompletableFuture<T>> call) {
+        if (!enabled) return call.get();
+        CompletableFuture<T> mine = new CompletableFuture<>();
+        CompletableFuture<T> running = inFlight.putIfAbsent(key, mine);
+        if (running != null) {
+            joined.increment();
+            return running.copy();
+        }
+        calls.increment();
+        CompletableFuture<T> started;
+        try {
+            started = call.get();
+        } catch (RuntimeException e) {
+            started = CompletableFuture.failedFuture(e);
+        }
+        started.whenComplete((v, e) -> {
+            inFlight.remove(key, mine); // before completing, so late arrivals start afresh
+            if (e != null) mine.completeExceptionally(e);
+            else mine.complete(v);
+        });
+        return mine.copy();
+    }
+
+    /** Detaches the key's in-flight call; callers that already joined it still get its result. */
+    void forget(String key) {
+        if (enabled) inFlight.remove(key);
+    }
+
+    void forgetIf(Predicate<String> keyMatches) {
+        if (enabled) inFlight.keySet().removeIf(keyMatches);
+    }
+
+    Map<String, Object> stats() {
+        long c = calls.sum();
+        long j = joined.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", c);
+        stats.put("joined", j);
+        stats.put("coalescingRatio", c + j == 0 ? 0.0 : (double) j / (c + j));
+        stats.put("inFlight", inFlight.size());
+        return stats;
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.kv_store.service;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hands out entry versions. A version is the wall clock in millis shifted
+ * left by 16 bits, or one more than the highest version handed out or
+ * observed, whichever is larger; so a primary can version a plain put without
+ * reading the old entry, and versions keep increasing across restarts as long
+ * as the clock does not go back.
+ *
+ * Backups observe the versions they apply, so a backup promoted to primary
+ * carries on above them.
+ */
+final class VersionClock {
+
+    private final AtomicLong last = new AtomicLong();
+
+    long next() {
+        long floor = System.currentTimeMillis() << 16;
+        return last.updateAndGet(v -> Math.max(v + 1, floor));
+    }
+
+    void observe(long version) {
+        if (version > last.get()) last.accumulateAndGet(version, Math::max);
+    }
+}
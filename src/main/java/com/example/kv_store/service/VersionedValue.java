@@ -0,0 +1,5 @@
+package com.example.kv_store.service;
+
+/** One owner's copy of an entry for a quorum read: the value in stored form and its version. */
+public record VersionedValue(byte[] value, long version) {
+}
@@ -0,0 +1,218 @@
+package com.example.kv_store.snapshot;
+
+import com.example.kv_store.entity.KeyValueEntity;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.Arrays;
+import java.util.zip.CRC32C;
+
+/**
+ * Binary snapshot of one partition. All numbers are big-endian:
+ *
+ * <pre>
+ * header   6 bytes  magic "KVSNAP"
+ *          short    format version (1)
+ *          int      partition id on the exporting cluster
+ *          long     export time, epoch millis
+ * record   int      body length
+ *          body:    ushort key length, key (UTF-8),
+ *                   long expire-at epoch millis (-1: none), long version,
+ *                   int value length, value (stored form, see ValueCodec)
+ *          int      CRC32C of the body
+ * trailer  int      -1
+ *          long     number of records
+ * </pre>
+ *
+ * A record that fails its checksum, or a file that ends before the trailer or
+ * with the wrong count, is rejected with an IOException.
+ */
+public final class SnapshotFormat {
+
+    public static final String FILE_SUFFIX = ".kvsnap";
+
+    private static final byte[] MAGIC = {'K', 'V', 'S', 'N', 'A', 'P'};
+    private static final short FORMAT_VERSION = 1;
+    private static final int HEADER_SIZE = 6 + 2 + 4 + 8;
+    private static final int END = -1;
+    private static final int MIN_BODY = 2 + 8 + 8 + 4;
+    private static final int MAX_BODY = 1 << 30;
+    private static final int BUFFER_SIZE = 256 * 1024;
+
+    private SnapshotFormat() {
+    }
+
+    public record Header(int partitionId, long exportedAtMillis) {
+    }
+
+    /** Writes one snapshot to a channel through a direct buffer; {@link #finish} writes the trailer. */
+    public static final class Writer {
+
+        private final WritableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE);
+        private final CRC32C crc = new CRC32C();
+        private long records;
+        private long bytes;
+
+        public Writer(WritableByteChannel channel, int partitionId) {
+            this.channel = channel;
+            buf.put(MAGIC).putShort(FORMAT_VERSION).putInt(partitionId).putLong(System.currentTimeMillis());
+        }
+
+        public void write(KeyValueEntity e) throws IOException {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            if (key.length > 0xffff) throw new IOException("Key too long for a snapshot: " + e.getKey());
+            byte[] value = e.getValue();
+            int body = MIN_BODY + key.length + value.length;
+            ByteBuffer out = buf;
+            if (4 + body + 4 > buf.remaining()) {
+                flush();
+                if (4 + body + 4 > buf.capacity()) out = ByteBuffer.allocate(4 + body + 4); // one oversized record
+            }
+            out.putInt(body);
+            int start = out.position();
+            out.putShort((short) key.length).put(key)
+                    .putLong(e.getExpireAt() == null ? -1 : toEpochMillis(e.getExpireAt()))
+                    .putLong(e.getVersion())
+                    .putInt(value.length).put(value);
+            crc.reset();
+            crc.update(out.duplicate().position(start).limit(out.position()));
+            out.putInt((int) crc.getValue());
+            records++;
+            if (out != buf) drain(out);
+        }
+
+        /** Writes the trailer and flushes; the channel is left open. */
+        public void finish() throws IOException {
+            if (buf.remaining() < 12) flush();
+            buf.putInt(END).putLong(records);
+            flush();
+        }
+
+        public long records() {
+            return records;
+        }
+
+        public long bytes() {
+            return bytes;
+        }
+
+        private void flush() throws IOException {
+            drain(buf);
+            buf.clear();
+        }
+
+        private void drain(ByteBuffer b) throws IOException {
+            b.flip();
+            bytes += b.remaining();
+            while (b.hasRemaining()) {
+                channel.write(b);
+            }
+        }
+    }
+
+    /** Reads one snapshot from a channel, verifying every record. */
+    public static final class Reader {
+
+        private final ReadableByteChannel channel;
+        private final ByteBuffer buf = ByteBuffer.allocateDirect(BUFFER_SIZE).limit(0);
+        private final CRC32C crc = new CRC32C();
+        private final Header header;
+        private long records;
+        private boolean done;
+
+        public Reader(ReadableByteChannel channel) throws IOException {
+            this.channel = channel;
+            ByteBuffer h = need(HEADER_SIZE);
+            byte[] magic = new byte[MAGIC.length];
+            h.get(magic);
+            if (!Arrays.equals(magic, MAGIC)) throw new IOException("Not a snapshot");
+            short version = h.getShort();
+            if (version != FORMAT_VERSION) throw new IOException("Unsupported snapshot format " + version);
+            this.header = new Header(h.getInt(), h.getLong());
+        }
+
+        public Header header() {
+            return header;
+        }
+
+        /** The next record, or null after the trailer. */
+        public KeyValueEntity next() throws IOException {
+            if (done) return null;
+            int length = need(4).getInt();
+            if (length == END) {
+                long count = need(8).getLong();
+                if (count != records) throw corrupt("trailer counts " + count + " records, read " + records);
+                done = true;
+                return null;
+            }
+            if (length < MIN_BODY || length > MAX_BODY) throw corrupt("bad record length " + length);
+            ByteBuffer body = need(length + 4);
+            int start = body.position();
+            crc.reset();
+            crc.update(body.duplicate().limit(start + length));
+
+            byte[] key = new byte[Short.toUnsignedInt(body.getShort())];
+            if (key.length > length - MIN_BODY) throw corrupt("bad key length");
+            body.get(key);
+            long expireAt = body.getLong();
+            long version = body.getLong();
+            int valueLength = body.getInt();
+            if (valueLength != length - MIN_BODY - key.length) throw corrupt("bad value length");
+            byte[] value = new byte[valueLength];
+            body.get(value);
+            if (body.getInt() != (int) crc.getValue()) throw corrupt("checksum mismatch");
+            records++;
+
+            KeyValueEntity e = new KeyValueEntity();
+            e.setKey(new String(key, StandardCharsets.UTF_8));
+            e.setValue(value);
+            e.setExpireAt(expireAt < 0 ? null
+                    : LocalDateTime.ofInstant(Instant.ofEpochMilli(expireAt), ZoneId.systemDefault()));
+            e.setVersion(version);
+            e.setPartitionId(header.partitionId());
+            return e;
+        }
+
+        /** A buffer holding at least {@code n} unread bytes at its position. */
+        private ByteBuffer need(int n) throws IOException {
+            if (n > buf.capacity()) {
+                ByteBuffer big = ByteBuffer.allocate(n);
+                big.put(buf);
+                fill(big);
+                return big.flip();
+            }
+            if (buf.remaining() < n) {
+                buf.compact();
+                while (buf.position() < n) {
+                    if (channel.read(buf) < 0) throw new EOFException("Snapshot ends after " + records + " records");
+                }
+                buf.flip();
+            }
+            return buf;
+        }
+
+        private void fill(ByteBuffer b) throws IOException {
+            while (b.hasRemaining()) {
+                if (channel.read(b) < 0) throw new EOFException("Snapshot ends after " + records + " records");
+            }
+        }
+
+        private IOException corrupt(String what) {
+            return new IOException("Corrupt snapshot of partition " + header.partitionId()
+                    + " at record " + records + ": " + what);
+        }
+    }
+
+    // expire-at is a LocalDateTime in the JVM zone; snapshots carry the instant
+    private static long toEpochMillis(LocalDateTime expireAt) {
+        return expireAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,215 @@
+package com.example.kv_store.snapshot;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.storage.StorageEngine;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Stream;
+
+/**
+ * Exports partitions to {@link SnapshotFormat} files and loads them back.
+ *
+ * An export writes the partitions this node is primary for, one file each,
+ * read page by page from storage. An import reads snapshot files in parallel
+ * and hands them to {@link DistributedKeyValueService#importEntries} in
+ * batches of {@code kv.snapshot.batch-size}, which stores each batch with one
+ * {@link StorageEngine#bulkLoad} per partition instead of a replicated write
+ * per key. Every node keeps the entries of the partitions it owns, so to load
+ * a cluster run the same import on each node; snapshots taken under another
+ * partition count load all the same.
+ */
+@Component
+public class SnapshotService {
+
+    private static final Logger log = LoggerFactory.getLogger(SnapshotService.class);
+
+    private static final int SCAN_PAGE = 1_000;
+
+    private final AffinityService affinity;
+    private final DistributedKeyValueService service;
+    private final StorageEngine storage;
+    private final int batchSize;
+    private final ExecutorService workers;
+
+    public SnapshotService(AffinityService affinity,
+                           DistributedKeyValueService service,
+                           StorageEngine storage,
+                           @Value("${kv.snapshot.parallelism:4}") int parallelism,
+                           @Value("${kv.snapshot.batch-size:1000}") int batchSize) {
+        this.affinity = affinity;
+        this.service = service;
+        this.storage = storage;
+        this.batchSize = Math.max(1, batchSize);
+        this.workers = Executors.newFixedThreadPool(Math.max(1, parallelism), r -> {
+            Thread t = new Thread(r, "kv-snapshot");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        workers.shutdownNow();
+    }
+
+    public record Result(long records, long stored, long bytes) {
+
+        Result plus(Result other) {
+            return new Result(records + other.records, stored + other.stored, bytes + other.bytes);
+        }
+    }
+
+    // ---------- Export ----------
+
+    /** Writes this node's copy of the partition; the channel is left open. */
+    public Result export(int partitionId, WritableByteChannel out) throws IOException {
+        SnapshotFormat.Writer writer = new SnapshotFormat.Writer(out, partitionId);
+        String after = null;
+        while (true) {
+            List<KeyValueEntity> page = storage.scanPartition(partitionId, after, SCAN_PAGE);
+            for (KeyValueEntity e : page) {
+                writer.write(e);
+            }
+            if (page.size() < SCAN_PAGE) break;
+            after = page.get(page.size() - 1).getKey();
+        }
+        writer.finish();
+        return new Result(writer.records(), writer.records(), writer.bytes());
+    }
+
+    /**
+     * Writes {@code partition-<p>.kvsnap} into {@code dir} for each partition
+     * this node is primary for. A file only appears once it is complete.
+     */
+    public Map<String, Object> exportTo(Path dir) throws IOException {
+        Files.createDirectories(dir);
+        String local = affinity.getLocalNodeId();
+        List<Callable<Result>> tasks = new ArrayList<>();
+        for (int p = 0; p < affinity.getPartitions(); p++) {
+            if (!affinity.owners(p).get(0).equals(local)) continue;
+            int partitionId = p;
+            tasks.add(() -> {
+                Path file = dir.resolve("partition-" + partitionId + SnapshotFormat.FILE_SUFFIX);
+                Path tmp = dir.resolve(file.getFileName() + ".tmp");
+                Result r;
+                try (FileChannel out = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                        StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    r = export(partitionId, out);
+                    out.force(false);
+                }
+                Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                return r;
+            });
+        }
+        return runAll("export", tasks);
+    }
+
+    // ---------- Import ----------
+
+    /** Loads one snapshot, verifying it as it goes; the channel is left open. */
+    public Result importFrom(ReadableByteChannel in) throws IOException {
+        SnapshotFormat.Reader reader = new SnapshotFormat.Reader(in);
+        long records = 0;
+        long stored = 0;
+        List<KeyValueEntity> batch = new ArrayList<>(batchSize);
+        KeyValueEntity e;
+        while ((e = reader.next()) != null) {
+            batch.add(e);
+            records++;
+            if (batch.size() == batchSize) {
+                stored += service.importEntries(batch);
+                batch = new ArrayList<>(batchSize);
+            }
+        }
+        if (!batch.isEmpty()) stored += service.importEntries(batch);
+        return new Result(records, stored, 0);
+    }
+
+    /** Loads every {@code *.kvsnap} file in {@code dir}, several at a time. */
+    public Map<String, Object> importFrom(Path dir) throws IOException {
+        List<Path> files;
+        try (Stream<Path> listing = Files.list(dir)) {
+            files = listing.filter(f -> f.getFileName().toString().endsWith(SnapshotFormat.FILE_SUFFIX))
+                    .sorted()
+                    .toList();
+        }
+        List<Callable<Result>> tasks = new ArrayList<>(files.size());
+        for (Path file : files) {
+            tasks.add(() -> {
+                try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+                    Result r = importFrom(in);
+                    return new Result(r.records(), r.stored(), in.size());
+                } catch (IOException e) {
+                    throw new IOException(file.getFileName() + ": " + e.getMessage(), e);
+                }
+            });
+        }
+        return runAll("import", tasks);
+    }
+
+    // ---------- Running ----------
+
+    private Map<String, Object> runAll(String what, List<Callable<Result>> tasks) throws IOException {
+        long start = System.nanoTime();
+        List<Future<Result>> running = new ArrayList<>(tasks.size());
+        for (Callable<Result> task : tasks) {
+            running.add(workers.submit(task));
+        }
+        Result total = new Result(0, 0, 0);
+        IOException failure = null;
+        for (Future<Result> f : running) {
+            try {
+                total = total.plus(f.get());
+            } catch (ExecutionException e) {
+                IOException cause = e.getCause() instanceof IOException io ? io
+                        : e.getCause() instanceof UncheckedIOException u ? u.getCause()
+                        : new IOException(e.getCause());
+                if (failure == null) failure = cause;
+                else failure.addSuppressed(cause);
+            } catch (InterruptedException e) {
+                running.forEach(r -> r.cancel(true));
+                Thread.currentThread().interrupt();
+                throw new IOException("Interrupted during snapshot " + what, e);
+            }
+        }
+        long millis = (System.nanoTime() - start) / 1_000_000;
+        if (failure != null) {
+            log.warn("Snapshot {} failed after {} records", what, total.records(), failure);
+            throw failure;
+        }
+        log.info("Snapshot {}: {} files, {} records in {} ms", what, tasks.size(), total.records(), millis);
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("files", tasks.size());
+        summary.put("records", total.records());
+        summary.put("stored", total.stored());
+        summary.put("bytes", total.bytes());
+        summary.put("millis", millis);
+        summary.put("recordsPerSec", millis == 0 ? total.records() * 1000 : total.records() * 1000 / millis);
+        return summary;
+    }
+}
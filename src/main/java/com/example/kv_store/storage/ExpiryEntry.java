@@ -0,0 +1,13 @@
+package com.example.kv_store.storage;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+/** A key and the instant it expires, as returned by {@link StorageEngine#findExpiring}. */
+public record ExpiryEntry(String key, long expireAtMillis) {
+
+    // used by the JPQL constructor expression in KeyValueRepository
+    public ExpiryEntry(String key, LocalDateTime expireAt) {
+        this(key, expireAt.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli());
+    }
+}
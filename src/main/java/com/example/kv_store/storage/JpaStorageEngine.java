@@ -0,0 +1,344 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.entity.ValueChunkEntity;
+import com.example.kv_store.repository.KeyValueRepository;
+import com.example.kv_store.repository.ValueChunkRepository;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.data.domain.Limit;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+
+/**
+ * MySQL through JPA. Values larger than {@code kv.value.chunk-bytes} are split
+ * over {@code kv_value_chunk} rows, so no single row or statement carries a
+ * multi-MB LOB; the kv_store row then only holds the chunk count. A key's
+ * chunks and its head row only ever change together, in one transaction, so
+ * no reader or crash sees a head row whose chunks are gone.
+ */
+@Component
+@ConditionalOnProperty(name = "kv.storage.engine", havingValue = "jpa", matchIfMissing = true)
+public class JpaStorageEngine implements StorageEngine {
+
+    private static final int BULK_ROWS = 500;
+
+    private final KeyValueRepository repo;
+    private final ValueChunkRepository chunks;
+    private final TransactionTemplate tx;
+    private final JdbcTemplate jdbc;
+    private final int chunkBytes;
+    private final WriteBehindBuffer writeBehind; // null = write-through
+    // null until known; stays false (no chunk lookups on the write path) until a large value is stored
+    private volatile Boolean chunksMayExist;
+
+    public JpaStorageEngine(
+            KeyValueRepository repo,
+            ValueChunkRepository chunks,
+            PlatformTransactionManager transactionManager,
+            JdbcTemplate jdbc,
+            @Value("${kv.value.chunk-bytes:1048576}") int chunkBytes,
+            @Value("${kv.storage.write-behind.enabled:false}") boolean writeBehindEnabled,
+            @Value("${kv.storage.write-behind.ack:flush}") String ack,
+            @Value("${kv.storage.write-behind.batch-size:500}") int batchSize,
+            @Value("${kv.storage.write-behind.linger-ms:5}") long lingerMs,
+            @Value("${kv.storage.write-behind.max-entries:100000}") int maxEntries,
+            @Value("${kv.storage.write-behind.flush-timeout-ms:5000}") long flushTimeoutMs
+    ) {
+        this.repo = repo;
+        this.chunks = chunks;
+        this.tx = new TransactionTemplate(transactionManager);
+        this.jdbc = jdbc;
+        this.chunkBytes = chunkBytes;
+        this.writeBehind = writeBehindEnabled
+                ? new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.valueOf(ack.trim().toUpperCase()),
+                        batchSize, lingerMs, maxEntries, flushTimeoutMs)
+                : null;
+    }
+
+    @Override
+    public Optional<KeyValueEntity> findValid(String key) {
+        if (writeBehind != null) {
+            Optional<Optional<KeyValueEntity>> buffered = writeBehind.lookup(key);
+            if (buffered.isPresent()) return buffered.get().filter(e -> !e.isExpired());
+        }
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Optional<KeyValueEntity> head = repo.findValid(key);
+            if (head.isEmpty() || head.get().getChunkCount() == 0) return head;
+
+            List<ValueChunkEntity> parts = chunks.findByKeys(List.of(key));
+            if (parts.size() == head.get().getChunkCount()) return Optional.of(join(head.get(), parts));
+            // rewritten between the two queries, read it again
+        }
+        throw new IllegalStateException("Value of key " + key + " kept changing while its chunks were read");
+    }
+
+    @Override
+    public void save(KeyValueEntity entity) {
+        if (isLarge(entity)) saveChunked(entity);
+        else saveInline(List.of(entity));
+    }
+
+    @Override
+    public void deleteById(String key) {
+        deleteInline(List.of(key));
+    }
+
+    @Override
+    public List<KeyValueEntity> findAllValid(Collection<String> keys) {
+        if (writeBehind == null) return withChunks(repo.findAllValid(keys));
+
+        Map<String, KeyValueEntity> found = new LinkedHashMap<>();
+        List<String> unbuffered = new ArrayList<>();
+        for (String key : keys) {
+            Optional<Optional<KeyValueEntity>> buffered = writeBehind.lookup(key);
+            if (buffered.isEmpty()) unbuffered.add(key);
+            else buffered.get().filter(e -> !e.isExpired()).ifPresent(e -> found.put(key, e));
+        }
+        if (!unbuffered.isEmpty()) {
+            withChunks(repo.findAllValid(unbuffered)).forEach(e -> found.putIfAbsent(e.getKey(), e));
+        }
+        return new ArrayList<>(found.values());
+    }
+
+    @Override
+    public List<String> findExpired(Collection<String> keys) {
+        if (writeBehind == null) return repo.findExpired(keys);
+
+        List<String> expired = new ArrayList<>();
+        List<String> unbuffered = new ArrayList<>();
+        for (String key : keys) {
+            Optional<Optional<KeyValueEntity>> buffered = writeBehind.lookup(key);
+            if (buffered.isEmpty()) unbuffered.add(key);
+            else if (buffered.get().filter(KeyValueEntity::isExpired).isPresent()) expired.add(key);
+        }
+        if (!unbuffered.isEmpty()) expired.addAll(repo.findExpired(unbuffered));
+        return expired;
+    }
+
+    @Override
+    public void saveAll(List<KeyValueEntity> entities) {
+        List<KeyValueEntity> inline = new ArrayList<>(entities.size());
+        for (KeyValueEntity e : entities) {
+            if (isLarge(e)) saveChunked(e);
+            else inline.add(e);
+        }
+        saveInline(inline);
+    }
+
+    /**
+     * Multi-row upserts of up to {@value #BULK_ROWS} rows in one transaction
+     * per call, around the JPA session and the write-behind buffer (flushed
+     * first, so nothing buffered lands on top of the load).
+     */
+    @Override
+    public void bulkLoad(List<KeyValueEntity> entities) {
+        flushWriteBehind();
+        List<KeyValueEntity> inline = new ArrayList<>(entities.size());
+        for (KeyValueEntity e : entities) {
+            if (isLarge(e)) saveChunked(e);
+            else inline.add(e);
+        }
+        if (inline.isEmpty()) return;
+        tx.executeWithoutResult(status -> {
+            dropChunks(inline.stream().map(KeyValueEntity::getKey).toList());
+            for (int i = 0; i < inline.size(); i += BULK_ROWS) {
+                WriteBehindBuffer.upsert(jdbc, inline.subList(i, Math.min(i + BULK_ROWS, inline.size())));
+            }
+        });
+    }
+
+    @Override
+    public void deleteAllById(Collection<String> keys) {
+        deleteInline(keys);
+    }
+
+    // The index queries below read the table, so buffered writes go out first.
+
+    @Override
+    public List<KeyValueEntity> scanPartition(int partitionId, String afterKey, String prefix, int limit) {
+        flushWriteBehind();
+        String pattern = prefix == null || prefix.isEmpty()
+                ? null
+                : prefix.replace("!", "!!").replace("%", "!%").replace("_", "!_") + "%";
+        // a chunked value deleted between the two queries drops out of the page;
+        // read on so only the end of the partition returns a short page
+        List<KeyValueEntity> page = new ArrayList<>();
+        String after = afterKey == null ? "" : afterKey;
+        while (true) {
+            int wanted = limit - page.size();
+            List<KeyValueEntity> rows = pattern == null
+                    ? repo.scanPartition(partitionId, after, Limit.of(wanted))
+                    : repo.scanPartitionPrefix(partitionId, after, pattern, Limit.of(wanted));
+            page.addAll(withChunks(rows));
+            if (rows.size() < wanted || page.size() >= limit) return page;
+            after = rows.get(rows.size() - 1).getKey();
+        }
+    }
+
+    @Override
+    public List<ExpiryEntry> findExpiring(int partitionId, long beforeMillis, int limit) {
+        flushWriteBehind();
+        LocalDateTime before = LocalDateTime.ofInstant(Instant.ofEpochMilli(beforeMillis), ZoneId.systemDefault());
+        return repo.findExpiring(partitionId, before, Limit.of(limit));
+    }
+
+    @Override
+    public long countExpired(int partitionId) {
+        flushWriteBehind();
+        return repo.countExpired(partitionId);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        if (writeBehind == null) return Map.of("engine", "jpa");
+        return Map.of("engine", "jpa", "writeBehind", writeBehind.stats());
+    }
+
+    @PreDestroy
+    public void close() {
+        if (writeBehind != null) writeBehind.close();
+    }
+
+    private void flushWriteBehind() {
+        if (writeBehind != null) writeBehind.flushNow();
+    }
+
+    // ---------- Chunked values ----------
+
+    private boolean isLarge(KeyValueEntity entity) {
+        return chunkBytes > 0 && entity.getValue().length > chunkBytes;
+    }
+
+    /** Replaces the key's chunks and its head row in one transaction; bypasses write-behind. */
+    private void saveChunked(KeyValueEntity entity) {
+        flushWriteBehind(); // an older buffered write of the key must not land on top of this one
+        byte[] value = entity.getValue();
+        List<ValueChunkEntity> parts = new ArrayList<>(value.length / chunkBytes + 1);
+        for (int offset = 0, seq = 0; offset < value.length; offset += chunkBytes, seq++) {
+            byte[] part = Arrays.copyOfRange(value, offset, Math.min(offset + chunkBytes, value.length));
+            parts.add(new ValueChunkEntity(new ValueChunkEntity.ChunkId(entity.getKey(), seq), part));
+        }
+
+        KeyValueEntity head = new KeyValueEntity();
+        head.setKey(entity.getKey());
+        head.setValue(new byte[0]);
+        head.setExpireAt(entity.getExpireAt());
+        head.setPartitionId(entity.getPartitionId());
+        head.setChunkCount(parts.size());
+        head.setVersion(entity.getVersion());
+
+        chunksMayExist = true;
+        tx.executeWithoutResult(status -> {
+            chunks.deleteByKeys(List.of(entity.getKey()));
+            chunks.saveAll(parts);
+            repo.save(head);
+        });
+    }
+
+    /**
+     * Writes inline values. A key that still has chunks gets its chunks
+     * dropped and its head row rewritten in one transaction, past the
+     * write-behind buffer; the rest take the usual path.
+     */
+    private void saveInline(List<KeyValueEntity> entities) {
+        if (entities.isEmpty()) return;
+        Set<String> chunked = chunkedKeys(entities.stream().map(KeyValueEntity::getKey).toList());
+        List<KeyValueEntity> plain = entities;
+        if (!chunked.isEmpty()) {
+            List<KeyValueEntity> rewrites = entities.stream().filter(e -> chunked.contains(e.getKey())).toList();
+            tx.executeWithoutResult(status -> {
+                chunks.deleteByKeys(chunked);
+                repo.saveAll(rewrites);
+            });
+            plain = entities.stream().filter(e -> !chunked.contains(e.getKey())).toList();
+            if (plain.isEmpty()) return;
+        }
+        if (writeBehind != null) writeBehind.put(plain);
+        else repo.saveAll(plain);
+    }
+
+    /** Deletes keys; like {@link #saveInline}, a chunked key goes in one transaction with its chunks. */
+    private void deleteInline(Collection<String> keys) {
+        if (keys.isEmpty()) return;
+        Set<String> chunked = chunkedKeys(keys);
+        Collection<String> plain = keys;
+        if (!chunked.isEmpty()) {
+            tx.executeWithoutResult(status -> {
+                chunks.deleteByKeys(chunked);
+                repo.deleteAllByIdInBatch(chunked);
+            });
+            plain = keys.stream().filter(k -> !chunked.contains(k)).toList();
+            if (plain.isEmpty()) return;
+        }
+        if (writeBehind != null) writeBehind.delete(plain);
+        else repo.deleteAllByIdInBatch(plain);
+    }
+
+    /** The keys among {@code keys} stored in chunks; no query until a large value has been stored. */
+    private Set<String> chunkedKeys(Collection<String> keys) {
+        if (!chunksMayExist()) return Set.of();
+        return new HashSet<>(chunks.findChunkedKeys(keys));
+    }
+
+    private void dropChunks(Collection<String> keys) {
+        if (!keys.isEmpty() && chunksMayExist()) chunks.deleteByKeys(keys);
+    }
+
+    private boolean chunksMayExist() {
+        Boolean may = chunksMayExist;
+        if (may == null) {
+            may = chunks.count() > 0;
+            synchronized (this) {
+                if (chunksMayExist == null) chunksMayExist = may; // a concurrent large write wins
+                may = chunksMayExist;
+            }
+        }
+        return may;
+    }
+
+    private List<KeyValueEntity> withChunks(List<KeyValueEntity> rows) {
+        List<KeyValueEntity> result = new ArrayList<>(rows.size());
+        for (KeyValueEntity e : rows) {
+            if (e.getChunkCount() == 0) result.add(e);
+            else findValid(e.getKey()).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    private static KeyValueEntity join(KeyValueEntity head, List<ValueChunkEntity> parts) {
+        int length = 0;
+        for (ValueChunkEntity part : parts) {
+            length += part.getData().length;
+        }
+        byte[] value = new byte[length];
+        int offset = 0;
+        for (ValueChunkEntity part : parts) {
+            System.arraycopy(part.getData(), 0, value, offset, part.getData().length);
+            offset += part.getData().length;
+        }
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(head.getKey());
+        e.setValue(value);
+        e.setExpireAt(head.getExpireAt());
+        e.setPartitionId(head.getPartitionId());
+        e.setVersion(head.getVersion());
+        return e;
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.kv_store.storage;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32C;
+
+/**
+ * On-disk record of the segment log (big-endian):
+ *
+ * <pre>
+ *  0  int   crc32c of bytes [4, end)
+ *  4  byte  type (PUT / TOMBSTONE, 0 = unwritten space)
+ *  5  long  expireAt epoch millis (0 = no TTL)
+ * 13  int   partition id
+ * 17  int   key length
+ * 21  int   value length
+ * 25  key bytes (UTF-8), value bytes
+ * </pre>
+ *
+ * A {@code PUT_VERSIONED} record has the entry's version as a long at 25 and
+ * key and value from 33. Plain {@code PUT} records from before versions
+ * existed still read, with version 0.
+ */
+record LogRecord(byte type, long expireAtMillis, int partitionId, String key, byte[] value, long version) {
+
+    static final int HEADER_SIZE = 25;
+    static final int VERSIONED_HEADER_SIZE = 33;
+    static final byte PUT = 1;
+    static final byte TOMBSTONE = 2;
+    static final byte PUT_VERSIONED = 3;
+
+    static final int TYPE_OFFSET = 4;
+    static final int EXPIRE_OFFSET = 5;
+    static final int PARTITION_OFFSET = 13;
+    static final int KEY_LENGTH_OFFSET = 17;
+    static final int VALUE_LENGTH_OFFSET = 21;
+    static final int VERSION_OFFSET = 25;
+
+    private static final byte[] EMPTY = new byte[0];
+
+    static LogRecord put(String key, byte[] value, int partitionId, long expireAtMillis, long version) {
+        return new LogRecord(PUT_VERSIONED, expireAtMillis, partitionId, key, value, version);
+    }
+
+    static LogRecord tombstone(String key) {
+        return new LogRecord(TOMBSTONE, 0L, 0, key, EMPTY, 0L);
+    }
+
+    static boolean isKnownType(byte type) {
+        return type == PUT || type == TOMBSTONE || type == PUT_VERSIONED;
+    }
+
+    /** Where the key starts in a record of this type. */
+    static int headerSize(byte type) {
+        return type == PUT_VERSIONED ? VERSIONED_HEADER_SIZE : HEADER_SIZE;
+    }
+
+    boolean isTombstone() {
+        return type == TOMBSTONE;
+    }
+
+    boolean isExpired(long nowMillis) {
+        return expireAtMillis != 0 && expireAtMillis <= nowMillis;
+    }
+
+    byte[] encode() {
+        byte[] k = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer buf = ByteBuffer.allocate(headerSize(type) + k.length + value.length);
+        buf.putInt(0)
+                .put(type)
+                .putLong(expireAtMillis)
+                .putInt(partitionId)
+                .putInt(k.length)
+                .putInt(value.length);
+        if (type == PUT_VERSIONED) buf.putLong(version);
+        buf.put(k).put(value);
+        byte[] bytes = buf.array();
+        ByteBuffer.wrap(bytes).putInt(0, crc(bytes));
+        return bytes;
+    }
+
+    /** Decodes a full record, or returns {@code null} if the checksum does not match. */
+    static LogRecord decode(byte[] bytes) {
+        if (ByteBuffer.wrap(bytes).getInt(0) != crc(bytes)) return null;
+        return decodeUnchecked(bytes);
+    }
+
+    /** Checks the CRC of an encoded record in place, e.g. a slice of a mapped segment. */
+    static boolean verify(ByteBuffer record) {
+        CRC32C crc = new CRC32C();
+        crc.update(record.duplicate().position(4));
+        return record.getInt(0) == (int) crc.getValue();
+    }
+
+    static LogRecord decodeUnchecked(byte[] bytes) {
+        ByteBuffer buf = ByteBuffer.wrap(bytes);
+        int keyLength = buf.getInt(KEY_LENGTH_OFFSET);
+        int valueLength = buf.getInt(VALUE_LENGTH_OFFSET);
+        byte type = buf.get(TYPE_OFFSET);
+        int header = headerSize(type);
+        String key = new String(bytes, header, keyLength, StandardCharsets.UTF_8);
+        byte[] value = new byte[valueLength];
+        System.arraycopy(bytes, header + keyLength, value, 0, valueLength);
+        long version = type == PUT_VERSIONED ? buf.getLong(VERSION_OFFSET) : 0L;
+        return new LogRecord(type, buf.getLong(EXPIRE_OFFSET), buf.getInt(PARTITION_OFFSET), key, value, version);
+    }
+
+    private static int crc(byte[] bytes) {
+        CRC32C crc = new CRC32C();
+        crc.update(bytes, 4, bytes.length - 4);
+        return (int) crc.getValue();
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.kv_store.storage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One memory-mapped file of the segment log. Only the active segment is
+ * appended to (under the engine's write lock); reads use absolute gets on the
+ * shared mapping and never move its position, so they need no locking.
+ */
+final class LogSegment {
+
+    private final int id;
+    private final Path path;
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int capacity;
+    private volatile int writePosition;
+    private final AtomicLong deadBytes = new AtomicLong();
+
+    private LogSegment(int id, Path path, FileChannel channel, int capacity) throws IOException {
+        this.id = id;
+        this.path = path;
+        this.channel = channel;
+        this.capacity = capacity;
+        this.buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+
+    static LogSegment create(Path dir, int id, int capacity) throws IOException {
+        Path path = dir.resolve(fileName(id));
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE_NEW, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(id, path, channel, capacity);
+    }
+
+    static LogSegment open(Path path, int id) throws IOException {
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        return new LogSegment(id, path, channel, (int) channel.size());
+    }
+
+    static String fileName(int id) {
+        return String.format("segment-%08d.log", id);
+    }
+
+    static int idOf(Path path) {
+        String name = path.getFileName().toString();
+        return Integer.parseInt(name.substring("segment-".length(), name.length() - ".log".length()));
+    }
+
+    int id() {
+        return id;
+    }
+
+    Path path() {
+        return path;
+    }
+
+    int writePosition() {
+        return writePosition;
+    }
+
+    void setWritePosition(int position) {
+        this.writePosition = position;
+    }
+
+    int remaining() {
+        return capacity - writePosition;
+    }
+
+    /** Appends an encoded record and returns its offset. Caller holds the write lock. */
+    int append(byte[] record) {
+        int offset = writePosition;
+        buffer.put(offset, record);
+        writePosition = offset + record.length;
+        return offset;
+    }
+
+    byte[] read(int offset, int length) {
+        byte[] dst = new byte[length];
+        buffer.get(offset, dst);
+        return dst;
+    }
+
+    /** Read-only view of the mapping; shares memory with the segment, copies nothing. */
+    ByteBuffer slice(int offset, int length) {
+        return buffer.slice(offset, length).asReadOnlyBuffer();
+    }
+
+    /**
+     * Length of the record starting at {@code offset}, or -1 at the end of the
+     * written region (unwritten space, truncated header or impossible lengths).
+     */
+    int recordLengthAt(int offset) {
+        if (offset + LogRecord.HEADER_SIZE > capacity) return -1;
+        byte type = buffer.get(offset + LogRecord.TYPE_OFFSET);
+        if (!LogRecord.isKnownType(type)) return -1;
+        int keyLength = buffer.getInt(offset + LogRecord.KEY_LENGTH_OFFSET);
+        int valueLength = buffer.getInt(offset + LogRecord.VALUE_LENGTH_OFFSET);
+        long length = (long) LogRecord.headerSize(type) + keyLength + valueLength;
+        if (keyLength < 0 || valueLength < 0 || offset + length > capacity) return -1;
+        return (int) length;
+    }
+
+    void markDead(int bytes) {
+        deadBytes.addAndGet(bytes);
+    }
+
+    long deadBytes() {
+        return deadBytes.get();
+    }
+
+    double deadRatio() {
+        int written = writePosition;
+        return written == 0 ? 0.0 : (double) deadBytes.get() / written;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    void close() {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    void delete() throws IOException {
+        close();
+        Files.deleteIfExists(path);
+    }
+}
@@ -0,0 +1,497 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableSet;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Embedded Bitcask-style engine: an append-only log of memory-mapped segments
+ * plus an in-memory key directory pointing at the latest record of each key.
+ *
+ * <ul>
+ *   <li>Writes append one CRC-checked record to the active segment; a full
+ *       segment is sealed and a new one is started.</li>
+ *   <li>Reads are one hash lookup and one copy out of the mapping.</li>
+ *   <li>The TTL lives in the record header, so expiry survives restarts.</li>
+ *   <li>On startup every segment is scanned in order to rebuild the directory;
+ *       a torn record at the tail of the last segment ends the scan.</li>
+ *   <li>A background task rewrites the live records of sealed segments whose
+ *       dead-byte ratio is above {@code kv.storage.log.compaction-threshold}
+ *       and deletes the old files.</li>
+ * </ul>
+ */
+@Component
+@ConditionalOnProperty(name = "kv.storage.engine", havingValue = "log")
+public class LogStructuredStorageEngine implements StorageEngine {
+
+    private static final Logger log = LoggerFactory.getLogger(LogStructuredStorageEngine.class);
+    private static final ZoneId ZONE = ZoneId.systemDefault();
+
+    private record Location(int segmentId, int offset, int length, long expireAtMillis, int partitionId) {
+    }
+
+    private final Path dir;
+    private final int segmentBytes;
+    private final double compactionThreshold;
+    private final long compactionIntervalMs;
+    private final long fsyncIntervalMs;
+    private final boolean syncEveryWrite;
+    private final boolean verifyReads;
+
+    private final ConcurrentHashMap<String, Location> keyDir = new ConcurrentHashMap<>();
+    // sorted keys per partition, for keyset scans during rebalancing
+    private final Map<Integer, ConcurrentSkipListSet<String>> partitionKeys = new ConcurrentHashMap<>();
+    // keys with a TTL per partition, earliest expiry first, for the expiry sweep
+    private final Map<Integer, ConcurrentSkipListSet<ExpiryEntry>> partitionExpiries = new ConcurrentHashMap<>();
+    private static final Comparator<ExpiryEntry> BY_EXPIRY =
+            Comparator.comparingLong(ExpiryEntry::expireAtMillis).thenComparing(ExpiryEntry::key);
+    private final ConcurrentSkipListMap<Integer, LogSegment> segments = new ConcurrentSkipListMap<>();
+    private final Object writeLock = new Object();
+    private LogSegment active;
+
+    private final ScheduledExecutorService background;
+    private final LongAdder compactedSegments = new LongAdder();
+    private final LongAdder reclaimedBytes = new LongAdder();
+    private final LongAdder corruptReads = new LongAdder();
+
+    public LogStructuredStorageEngine(
+            @Value("${kv.storage.log.dir:./data/${cluster.nodeId}}") String dir,
+            @Value("${kv.storage.log.segment-bytes:67108864}") int segmentBytes,
+            @Value("${kv.storage.log.compaction-threshold:0.5}") double compactionThreshold,
+            @Value("${kv.storage.log.compaction-interval-ms:30000}") long compactionIntervalMs,
+            @Value("${kv.storage.log.fsync-interval-ms:1000}") long fsyncIntervalMs,
+            @Value("${kv.storage.log.verify-reads:true}") boolean verifyReads
+    ) throws IOException {
+        this.dir = Paths.get(dir);
+        this.segmentBytes = segmentBytes;
+        this.compactionThreshold = compactionThreshold;
+        this.compactionIntervalMs = compactionIntervalMs;
+        this.fsyncIntervalMs = fsyncIntervalMs;
+        this.syncEveryWrite = fsyncIntervalMs <= 0;
+        this.verifyReads = verifyReads;
+
+        Files.createDirectories(this.dir);
+        recover();
+
+        this.background = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "kv-log-engine");
+            t.setDaemon(true);
+            return t;
+        });
+    }
+
+    /** Starts background compaction and, unless every write syncs, the periodic fsync. */
+    @PostConstruct
+    public void start() {
+        background.scheduleWithFixedDelay(this::compactSafely,
+                compactionIntervalMs, compactionIntervalMs, TimeUnit.MILLISECONDS);
+        if (!syncEveryWrite) {
+            background.scheduleWithFixedDelay(this::forceActive,
+                    fsyncIntervalMs, fsyncIntervalMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    // ---------- StorageEngine ----------
+
+    @Override
+    public Optional<KeyValueEntity> findValid(String key) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Location loc = keyDir.get(key);
+            if (loc == null) return Optional.empty();
+            if (loc.expireAtMillis() != 0 && loc.expireAtMillis() <= System.currentTimeMillis()) {
+                return Optional.empty();
+            }
+            LogSegment segment = segments.get(loc.segmentId());
+            if (segment == null) continue; // compacted away under us, re-read the directory
+
+            LogRecord record = readRecord(segment, loc);
+            if (record == null) {
+                corruptReads.increment();
+                throw new IllegalStateException("Checksum mismatch for key " + key
+                        + " in " + segment.path() + " at offset " + loc.offset());
+            }
+            return Optional.of(toEntity(record));
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * Serves the value straight out of the segment mapping; only the CRC check
+     * reads it first. Compaction closes but never unmaps a segment, so a stream
+     * that is still being written out stays valid.
+     */
+    @Override
+    public Optional<StoredValue> openValid(String key) {
+        for (int attempt = 0; attempt < 3; attempt++) {
+            Location loc = keyDir.get(key);
+            if (loc == null) return Optional.empty();
+            if (loc.expireAtMillis() != 0 && loc.expireAtMillis() <= System.currentTimeMillis()) {
+                return Optional.empty();
+            }
+            LogSegment segment = segments.get(loc.segmentId());
+            if (segment == null) continue; // compacted away under us, re-read the directory
+
+            ByteBuffer record = segment.slice(loc.offset(), loc.length());
+            if (verifyReads && !LogRecord.verify(record)) {
+                corruptReads.increment();
+                throw new IllegalStateException("Checksum mismatch for key " + key
+                        + " in " + segment.path() + " at offset " + loc.offset());
+            }
+            int keyLength = record.getInt(LogRecord.KEY_LENGTH_OFFSET);
+            int valueLength = record.getInt(LogRecord.VALUE_LENGTH_OFFSET);
+            int header = LogRecord.headerSize(record.get(LogRecord.TYPE_OFFSET));
+            return Optional.of(new StoredValue(record.slice(header + keyLength, valueLength),
+                    loc.expireAtMillis() == 0 ? null
+                            : LocalDateTime.ofInstant(Instant.ofEpochMilli(loc.expireAtMillis()), ZONE)));
+        }
+        return Optional.empty();
+    }
+
+    @Override
+    public void save(KeyValueEntity entity) {
+        append(List.of(toRecord(entity)));
+    }
+
+    @Override
+    public void deleteById(String key) {
+        if (!keyDir.containsKey(key)) return;
+        append(List.of(LogRecord.tombstone(key)));
+    }
+
+    @Override
+    public List<KeyValueEntity> findAllValid(Collection<String> keys) {
+        List<KeyValueEntity> result = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            findValid(key).ifPresent(result::add);
+        }
+        return result;
+    }
+
+    @Override
+    public List<String> findExpired(Collection<String> keys) {
+        long now = System.currentTimeMillis();
+        List<String> expired = new ArrayList<>();
+        for (String key : keys) {
+            Location loc = keyDir.get(key);
+            if (loc != null && loc.expireAtMillis() != 0 && loc.expireAtMillis() <= now) expired.add(key);
+        }
+        return expired;
+    }
+
+    @Override
+    public void saveAll(List<KeyValueEntity> entities) {
+        append(entities.stream().map(LogStructuredStorageEngine::toRecord).toList());
+    }
+
+    @Override
+    public void deleteAllById(Collection<String> keys) {
+        append(keys.stream().filter(keyDir::containsKey).map(LogRecord::tombstone).toList());
+    }
+
+    @Override
+    public List<KeyValueEntity> scanPartition(int partitionId, String afterKey, String prefix, int limit) {
+        ConcurrentSkipListSet<String> keys = partitionKeys.get(partitionId);
+        if (keys == null) return List.of();
+        boolean all = prefix == null || prefix.isEmpty();
+        NavigableSet<String> from = afterKey == null ? keys : keys.tailSet(afterKey, false);
+        if (!all && (afterKey == null || afterKey.compareTo(prefix) < 0)) from = keys.tailSet(prefix, true);
+
+        List<KeyValueEntity> page = new ArrayList<>(Math.min(limit, 1024));
+        for (String key : from) {
+            if (page.size() >= limit || !(all || key.startsWith(prefix))) break;
+            findValid(key).ifPresent(page::add);
+        }
+        return page;
+    }
+
+    @Override
+    public List<ExpiryEntry> findExpiring(int partitionId, long beforeMillis, int limit) {
+        ConcurrentSkipListSet<ExpiryEntry> expiries = partitionExpiries.get(partitionId);
+        if (expiries == null) return List.of();
+        List<ExpiryEntry> due = new ArrayList<>();
+        for (ExpiryEntry e : expiries) {
+            if (e.expireAtMillis() > beforeMillis || due.size() >= limit) break;
+            due.add(e);
+        }
+        return due;
+    }
+
+    @Override
+    public long countExpired(int partitionId) {
+        ConcurrentSkipListSet<ExpiryEntry> expiries = partitionExpiries.get(partitionId);
+        if (expiries == null) return 0;
+        return expiries.headSet(new ExpiryEntry("", System.currentTimeMillis() + 1)).size();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        long written = 0;
+        long dead = 0;
+        for (LogSegment s : segments.values()) {
+            written += s.writePosition();
+            dead += s.deadBytes();
+        }
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("engine", "log");
+        stats.put("keys", keyDir.size());
+        stats.put("segments", segments.size());
+        stats.put("bytesWritten", written);
+        stats.put("deadBytes", dead);
+        stats.put("compactedSegments", compactedSegments.sum());
+        stats.put("reclaimedBytes", reclaimedBytes.sum());
+        stats.put("corruptReads", corruptReads.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public void close() {
+        background.shutdownNow();
+        synchronized (writeLock) {
+            for (LogSegment s : segments.values()) {
+                s.force();
+                s.close();
+            }
+        }
+    }
+
+    // ---------- Write path ----------
+
+    /** Appends the records under one lock acquisition (and one fsync, if enabled). */
+    private void append(List<LogRecord> records) {
+        if (records.isEmpty()) return;
+        List<byte[]> encoded = records.stream().map(LogRecord::encode).toList();
+        synchronized (writeLock) {
+            for (int i = 0; i < records.size(); i++) {
+                LogRecord record = records.get(i);
+                byte[] bytes = encoded.get(i);
+                LogSegment segment = activeFor(bytes.length);
+                int offset = segment.append(bytes);
+                applyToDirectory(record, segment, offset, bytes.length);
+            }
+            if (syncEveryWrite) active.force();
+        }
+    }
+
+    /** Points the directory at a just-appended record. Caller holds the write lock or is recovering. */
+    private void applyToDirectory(LogRecord record, LogSegment segment, int offset, int length) {
+        Location old;
+        if (record.isTombstone()) {
+            old = keyDir.remove(record.key());
+            segment.markDead(length); // a tombstone is never read back
+        } else {
+            old = keyDir.put(record.key(),
+                    new Location(segment.id(), offset, length, record.expireAtMillis(), record.partitionId()));
+            partitionKeys.computeIfAbsent(record.partitionId(), p -> new ConcurrentSkipListSet<>())
+                    .add(record.key());
+        }
+        if (old != null && old.expireAtMillis() != 0) {
+            Set<ExpiryEntry> expiries = partitionExpiries.get(old.partitionId());
+            if (expiries != null) expiries.remove(new ExpiryEntry(record.key(), old.expireAtMillis()));
+        }
+        if (!record.isTombstone() && record.expireAtMillis() != 0) {
+            partitionExpiries.computeIfAbsent(record.partitionId(), p -> new ConcurrentSkipListSet<>(BY_EXPIRY))
+                    .add(new ExpiryEntry(record.key(), record.expireAtMillis()));
+        }
+        if (old != null) {
+            markDead(old);
+            if (record.isTombstone() || old.partitionId() != record.partitionId()) {
+                Set<String> keys = partitionKeys.get(old.partitionId());
+                if (keys != null) keys.remove(record.key());
+            }
+        }
+    }
+
+    /** Rolls to a new segment if the record does not fit. Caller holds the write lock. */
+    private LogSegment activeFor(int recordLength) {
+        if (active.remaining() >= recordLength) return active;
+        active.force();
+        try {
+            active = LogSegment.create(dir, active.id() + 1, Math.max(segmentBytes, recordLength));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        segments.put(active.id(), active);
+        return active;
+    }
+
+    private void markDead(Location loc) {
+        LogSegment s = segments.get(loc.segmentId());
+        if (s != null) s.markDead(loc.length());
+    }
+
+    private void forceActive() {
+        synchronized (writeLock) {
+            active.force();
+        }
+    }
+
+    // ---------- Recovery ----------
+
+    private void recover() throws IOException {
+        List<Path> files;
+        try (Stream<Path> s = Files.list(dir)) {
+            files = s.filter(p -> p.getFileName().toString().matches("segment-\\d+\\.log"))
+                    .sorted()
+                    .toList();
+        }
+        for (Path file : files) {
+            LogSegment segment = LogSegment.open(file, LogSegment.idOf(file));
+            segments.put(segment.id(), segment);
+            int end = replay(segment);
+            segment.setWritePosition(end);
+        }
+        if (segments.isEmpty()) {
+            active = LogSegment.create(dir, 1, segmentBytes);
+            segments.put(active.id(), active);
+        } else {
+            active = segments.lastEntry().getValue();
+        }
+        log.info("Recovered {} keys from {} segments in {}", keyDir.size(), segments.size(), dir);
+    }
+
+    /** Applies every valid record of the segment to the key directory; returns the end offset. */
+    private int replay(LogSegment segment) {
+        int offset = 0;
+        while (true) {
+            int length = segment.recordLengthAt(offset);
+            if (length < 0) break;
+            LogRecord record = LogRecord.decode(segment.read(offset, length));
+            if (record == null) {
+                log.warn("Torn record in {} at offset {}, ignoring the rest of the segment",
+                        segment.path(), offset);
+                break;
+            }
+            applyToDirectory(record, segment, offset, length);
+            offset += length;
+        }
+        return offset;
+    }
+
+    // ---------- Compaction ----------
+
+    private void compactSafely() {
+        try {
+            compact();
+        } catch (Exception e) {
+            log.warn("Log compaction failed", e);
+        }
+    }
+
+    void compact() throws IOException {
+        List<LogSegment> candidates = new ArrayList<>();
+        for (LogSegment s : segments.values()) {
+            if (s != active && s.deadRatio() >= compactionThreshold) candidates.add(s);
+        }
+        for (LogSegment segment : candidates) {
+            compactSegment(segment);
+        }
+    }
+
+    /**
+     * Copies the records the directory still points at into the active segment,
+     * then drops the file. Tombstones are carried over only while an older
+     * segment that may still hold a value for the key exists.
+     */
+    private void compactSegment(LogSegment segment) throws IOException {
+        boolean olderSegmentsExist = segments.firstKey() < segment.id();
+        int offset = 0;
+        int end = segment.writePosition();
+        while (offset < end) {
+            int length = segment.recordLengthAt(offset);
+            if (length < 0) break;
+            byte[] bytes = segment.read(offset, length);
+            LogRecord record = LogRecord.decode(bytes);
+            if (record != null) {
+                relocate(segment, offset, length, record, bytes, olderSegmentsExist);
+            }
+            offset += length;
+        }
+        synchronized (writeLock) {
+            active.force();
+            segments.remove(segment.id());
+        }
+        reclaimedBytes.add(segment.deadBytes());
+        segment.delete();
+        compactedSegments.increment();
+    }
+
+    private void relocate(LogSegment from, int offset, int length, LogRecord record,
+                          byte[] bytes, boolean olderSegmentsExist) {
+        synchronized (writeLock) {
+            if (record.isTombstone()) {
+                if (olderSegmentsExist && !keyDir.containsKey(record.key())) {
+                    activeFor(length).append(bytes);
+                    active.markDead(length);
+                }
+                return;
+            }
+            Location current = keyDir.get(record.key());
+            if (current == null || current.segmentId() != from.id() || current.offset() != offset) {
+                return; // overwritten or deleted since
+            }
+            LogSegment target = activeFor(length);
+            int newOffset = target.append(bytes);
+            keyDir.put(record.key(), new Location(target.id(), newOffset, length,
+                    current.expireAtMillis(), current.partitionId()));
+        }
+    }
+
+    // ---------- Helpers ----------
+
+    private LogRecord readRecord(LogSegment segment, Location loc) {
+        byte[] bytes = segment.read(loc.offset(), loc.length());
+        if (verifyReads) return LogRecord.decode(bytes);
+        return LogRecord.decodeUnchecked(bytes);
+    }
+
+    private static LogRecord toRecord(KeyValueEntity entity) {
+        long expireAt = entity.getExpireAt() == null
+                ? 0L
+                : entity.getExpireAt().atZone(ZONE).toInstant().toEpochMilli();
+        return LogRecord.put(entity.getKey(), entity.getValue(), entity.getPartitionId(), expireAt, entity.getVersion());
+    }
+
+    private static KeyValueEntity toEntity(LogRecord record) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(record.key());
+        e.setValue(record.value());
+        e.setPartitionId(record.partitionId());
+        e.setVersion(record.version());
+        if (record.expireAtMillis() != 0) {
+            e.setExpireAt(LocalDateTime.ofInstant(Instant.ofEpochMilli(record.expireAtMillis()), ZONE));
+        }
+        return e;
+    }
+}
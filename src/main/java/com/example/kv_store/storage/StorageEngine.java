@@ -0,0 +1,79 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Node-local persistence used by {@code DistributedKeyValueService}.
+ *
+ * Selected with {@code kv.storage.engine}: {@code jpa} (default, MySQL through
+ * {@link com.example.kv_store.repository.KeyValueRepository}) or {@code log}
+ * (embedded append-only segment log, see {@link LogStructuredStorageEngine}).
+ */
+public interface StorageEngine {
+
+    /** Returns the entry for the key unless it is missing or expired. */
+    Optional<KeyValueEntity> findValid(String key);
+
+    /**
+     * Like {@link #findValid} but for streaming the value out. Engines that can
+     * serve it without copying it onto the heap override this.
+     */
+    default Optional<StoredValue> openValid(String key) {
+        return findValid(key).map(StoredValue::of);
+    }
+
+    /** Insert or overwrite. */
+    void save(KeyValueEntity entity);
+
+    void deleteById(String key);
+
+    /** Bulk variant of {@link #findValid}; missing and expired keys are left out. */
+    List<KeyValueEntity> findAllValid(Collection<String> keys);
+
+    /** Those of {@code keys} that are still stored but have expired: what reclaiming them would delete. */
+    List<String> findExpired(Collection<String> keys);
+
+    void saveAll(List<KeyValueEntity> entities);
+
+    /**
+     * {@link #saveAll} for loading a snapshot: entities carry their own
+     * versions and partition ids, and may be large. Engines with a cheaper
+     * path than their per-write one override this.
+     */
+    default void bulkLoad(List<KeyValueEntity> entities) {
+        saveAll(entities);
+    }
+
+    void deleteAllById(Collection<String> keys);
+
+    /**
+     * One page of a partition in key order, starting after {@code afterKey}
+     * (null for the first page). Expired entries are skipped. Used to stream a
+     * partition without holding a cursor open between pages.
+     */
+    default List<KeyValueEntity> scanPartition(int partitionId, String afterKey, int limit) {
+        return scanPartition(partitionId, afterKey, null, limit);
+    }
+
+    /** {@link #scanPartition(int, String, int)} over the keys starting with {@code prefix} (null for all). */
+    List<KeyValueEntity> scanPartition(int partitionId, String afterKey, String prefix, int limit);
+
+    /**
+     * Keys of the partition that expire at or before {@code beforeMillis},
+     * earliest first. Index-driven, so the expiry sweep never scans live data.
+     */
+    List<ExpiryEntry> findExpiring(int partitionId, long beforeMillis, int limit);
+
+    /** Keys of the partition that have expired but are still stored. */
+    long countExpired(int partitionId);
+
+    /** Engine specific counters for {@code /internal/stats/storage}. */
+    default Map<String, Object> stats() {
+        return Map.of();
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.time.LocalDateTime;
+
+/**
+ * A value as the storage engine holds it, for callers that stream it out
+ * instead of needing it on the heap (see {@link StorageEngine#openValid}).
+ * {@code bytes} may be a view of a mapped segment; its position and limit are
+ * never moved, every read works on a duplicate.
+ */
+public record StoredValue(ByteBuffer bytes, LocalDateTime expireAt) {
+
+    public static StoredValue of(byte[] value) {
+        return new StoredValue(ByteBuffer.wrap(value), null);
+    }
+
+    public static StoredValue of(KeyValueEntity entity) {
+        return new StoredValue(ByteBuffer.wrap(entity.getValue()), entity.getExpireAt());
+    }
+
+    public long length() {
+        return bytes.remaining();
+    }
+
+    /** Reads the value from the start; each call returns an independent stream. */
+    public InputStream openStream() {
+        ByteBuffer b = bytes.duplicate();
+        return new InputStream() {
+            @Override
+            public int read() {
+                return b.hasRemaining() ? b.get() & 0xFF : -1;
+            }
+
+            @Override
+            public int read(byte[] dst, int off, int len) {
+                if (len == 0) return 0;
+                if (!b.hasRemaining()) return -1;
+                int n = Math.min(len, b.remaining());
+                b.get(dst, off, n);
+                return n;
+            }
+
+            @Override
+            public int available() {
+                return b.remaining();
+            }
+        };
+    }
+
+    /** The value on the heap; free for heap-backed values, a copy for mapped ones. */
+    public byte[] toByteArray() {
+        if (bytes.hasArray() && bytes.arrayOffset() == 0 && bytes.position() == 0
+                && bytes.remaining() == bytes.array().length) {
+            return bytes.array();
+        }
+        byte[] copy = new byte[bytes.remaining()];
+        bytes.duplicate().get(copy);
+        return copy;
+    }
+}
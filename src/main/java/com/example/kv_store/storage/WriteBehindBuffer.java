@@ -0,0 +1,313 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Write-behind in front of the {@code kv_store} table, used by
+ * {@link JpaStorageEngine} when {@code kv.storage.write-behind.enabled=true}.
+ *
+ * Puts and deletes land in an insertion-ordered buffer with one entry per key
+ * (last write wins) and in a key index that reads consult before the
+ * database, so a write is visible as soon as it is buffered. One flusher
+ * thread drains the buffer when {@code batch-size} entries are pending or the
+ * oldest has waited {@code linger-ms}, as multi-row
+ * {@code INSERT ... ON DUPLICATE KEY UPDATE} and {@code DELETE ... IN}
+ * statements. With {@code ack=flush} a writer waits for the flush that
+ * carries its write (group commit); with {@code ack=buffer} it returns at once
+ * and a crash loses what was still buffered.
+ *
+ * The {@code ack=flush} wait happens inside the storage call, while the
+ * service still holds the key's striped write lock, so writes to other keys
+ * of the same stripe queue behind it for up to a linger plus a flush. That is
+ * the price of acknowledging only what is in the table; {@code ack=buffer}
+ * does not pay it.
+ *
+ * Flushes never overlap: the flusher and {@link #close}'s final drain take
+ * turns, so two snapshots of the same key cannot reach the table out of order.
+ */
+final class WriteBehindBuffer {
+
+    private static final Logger log = LoggerFactory.getLogger(WriteBehindBuffer.class);
+
+    enum Ack { BUFFER, FLUSH }
+
+    /** A buffered put, or a delete when {@code entity} is null. */
+    private record Entry(String key, KeyValueEntity entity) {
+    }
+
+    private final JdbcTemplate jdbc;
+    private final Ack ack;
+    private final int batchSize;
+    private final long lingerMs;
+    private final int maxEntries;
+    private final long flushTimeoutMs;
+
+    private final LinkedHashMap<String, Entry> pending = new LinkedHashMap<>();
+    private final Map<String, Entry> view = new ConcurrentHashMap<>(); // lock-free read side of pending
+    private final Object lock = new Object(); // guards pending, oldestAtMillis, nextFlush
+    private final Object flushMutex = new Object(); // held for the whole of one flush
+    private long oldestAtMillis;
+    private CompletableFuture<Void> nextFlush = new CompletableFuture<>();
+    private final Thread flusher;
+    private volatile boolean running = true;
+
+    private final LongAdder flushes = new LongAdder();
+    private final LongAdder rowsFlushed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder failedFlushes = new LongAdder();
+
+    WriteBehindBuffer(JdbcTemplate jdbc, Ack ack, int batchSize, long lingerMs, int maxEntries, long flushTimeoutMs) {
+        this.jdbc = jdbc;
+        this.ack = ack;
+        this.batchSize = batchSize;
+        this.lingerMs = lingerMs;
+        this.maxEntries = maxEntries;
+        this.flushTimeoutMs = flushTimeoutMs;
+        this.flusher = new Thread(this::run, "kv-write-behind");
+        flusher.setDaemon(true);
+        flusher.start();
+    }
+
+    // ---------- Writes ----------
+
+    void put(List<KeyValueEntity> entities) {
+        List<Entry> entries = new ArrayList<>(entities.size());
+        for (KeyValueEntity e : entities) {
+            entries.add(new Entry(e.getKey(), e));
+        }
+        buffer(entries);
+    }
+
+    void delete(Collection<String> keys) {
+        List<Entry> entries = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            entries.add(new Entry(key, null));
+        }
+        buffer(entries);
+    }
+
+    private void buffer(List<Entry> entries) {
+        if (entries.isEmpty()) return;
+        CompletableFuture<Void> flushed;
+        synchronized (lock) {
+            while (pending.size() >= maxEntries && running) {
+                waitForFlush(); // backpressure: the database is not keeping up
+            }
+            for (Entry e : entries) {
+                // re-inserting moves the key to the back, so the buffer stays in write order
+                if (pending.remove(e.key()) != null) coalesced.increment();
+                pending.put(e.key(), e);
+                view.put(e.key(), e);
+            }
+            if (oldestAtMillis == 0) oldestAtMillis = System.currentTimeMillis();
+            flushed = nextFlush;
+            lock.notifyAll();
+        }
+        if (ack == Ack.FLUSH) await(flushed);
+    }
+
+    // ---------- Reads ----------
+
+    /** Empty if the key has nothing buffered; otherwise the buffered state (null entity = deleted). */
+    Optional<Optional<KeyValueEntity>> lookup(String key) {
+        Entry e = view.get(key);
+        return e == null ? Optional.empty() : Optional.of(Optional.ofNullable(e.entity()));
+    }
+
+    /** Writes everything buffered so far before returning, e.g. before a table scan. */
+    void flushNow() {
+        CompletableFuture<Void> flushed;
+        synchronized (lock) {
+            if (pending.isEmpty()) return;
+            flushed = nextFlush;
+            oldestAtMillis = 1; // make the linger deadline pass
+            lock.notifyAll();
+        }
+        await(flushed);
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("ack", ack.name().toLowerCase());
+        synchronized (lock) {
+            stats.put("buffered", pending.size());
+        }
+        stats.put("flushes", flushes.sum());
+        stats.put("rowsFlushed", rowsFlushed.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("failedFlushes", failedFlushes.sum());
+        return stats;
+    }
+
+    /**
+     * Stops the flusher and writes out what is left, retrying for up to
+     * {@code flush-timeout-ms}. Throws if entries are still buffered then.
+     */
+    void close() {
+        synchronized (lock) {
+            running = false;
+            lock.notifyAll(); // not an interrupt: a flush in progress runs to the end
+        }
+        long deadline = System.currentTimeMillis() + flushTimeoutMs;
+        try {
+            flusher.join(flushTimeoutMs);
+            while (!drainOnce()) {
+                if (System.currentTimeMillis() >= deadline) break;
+                Thread.sleep(100);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        int left;
+        synchronized (lock) {
+            left = pending.size();
+        }
+        if (left > 0) {
+            throw new IllegalStateException("Write-behind closed with " + left + " writes not flushed");
+        }
+    }
+
+    // ---------- Flushing ----------
+
+    private void run() {
+        while (running) {
+            try {
+                synchronized (lock) {
+                    while (running && !due()) {
+                        long wait = pending.isEmpty() ? 0 : Math.max(1, oldestAtMillis + lingerMs - System.currentTimeMillis());
+                        lock.wait(wait);
+                    }
+                }
+                if (!drainOnce()) Thread.sleep(100); // database error; keep the entries and retry
+            } catch (InterruptedException e) {
+                return;
+            }
+        }
+    }
+
+    private boolean due() {
+        return pending.size() >= batchSize
+                || (!pending.isEmpty() && System.currentTimeMillis() >= oldestAtMillis + lingerMs);
+    }
+
+    /** Flushes one snapshot of the buffer; false if the database failed. */
+    private boolean drainOnce() {
+        synchronized (flushMutex) {
+            return drainSnapshot();
+        }
+    }
+
+    private boolean drainSnapshot() {
+        List<Entry> snapshot;
+        CompletableFuture<Void> flushed;
+        synchronized (lock) {
+            if (pending.isEmpty()) return true;
+            snapshot = new ArrayList<>(pending.values());
+            // writers arriving from now on wait for the next flush
+            flushed = nextFlush;
+            nextFlush = new CompletableFuture<>();
+        }
+
+        try {
+            write(snapshot);
+        } catch (RuntimeException e) {
+            failedFlushes.increment();
+            log.warn("Write-behind flush of {} entries failed; they stay buffered", snapshot.size(), e);
+            synchronized (lock) {
+                // the entries go out with the next flush, so their writers wait for that one
+                nextFlush.whenComplete((v, t) -> flushed.complete(null));
+            }
+            return false;
+        }
+
+        synchronized (lock) {
+            for (Entry e : snapshot) {
+                // a newer write to the key stays buffered for the next flush
+                if (pending.get(e.key()) == e) pending.remove(e.key());
+                view.computeIfPresent(e.key(), (k, current) -> current == e ? null : current);
+            }
+            oldestAtMillis = pending.isEmpty() ? 0 : System.currentTimeMillis();
+            lock.notifyAll();
+        }
+        flushes.increment();
+        flushed.complete(null);
+        return true;
+    }
+
+    private void write(Collection<Entry> entries) {
+        List<KeyValueEntity> puts = new ArrayList<>();
+        List<String> deletes = new ArrayList<>();
+        for (Entry e : entries) {
+            if (e.entity() == null) deletes.add(e.key());
+            else puts.add(e.entity());
+        }
+        for (int i = 0; i < puts.size(); i += batchSize) {
+            upsert(jdbc, puts.subList(i, Math.min(i + batchSize, puts.size())));
+        }
+        for (int i = 0; i < deletes.size(); i += batchSize) {
+            List<String> chunk = deletes.subList(i, Math.min(i + batchSize, deletes.size()));
+            jdbc.update("DELETE FROM kv_store WHERE k IN (" + placeholders(chunk.size(), "?") + ")", chunk.toArray());
+        }
+        rowsFlushed.add(entries.size());
+    }
+
+    /** One multi-row upsert of inline values; also used by the engine's bulk load. */
+    static void upsert(JdbcTemplate jdbc, List<KeyValueEntity> rows) {
+        Object[] args = new Object[rows.size() * 5];
+        int i = 0;
+        for (KeyValueEntity e : rows) {
+            args[i++] = e.getKey();
+            args[i++] = e.getValue();
+            args[i++] = e.getExpireAt();
+            args[i++] = e.getPartitionId();
+            args[i++] = e.getVersion();
+        }
+        // callers only pass inline values; large ones are chunked by the engine
+        jdbc.update("INSERT INTO kv_store (k, v, expire_at, partition_id, version, chunk_count) VALUES "
+                + placeholders(rows.size(), "(?, ?, ?, ?, ?, 0)")
+                + " AS new ON DUPLICATE KEY UPDATE v = new.v, expire_at = new.expire_at,"
+                + " partition_id = new.partition_id, version = new.version, chunk_count = 0", args);
+    }
+
+    private static String placeholders(int n, String group) {
+        return String.join(", ", Collections.nCopies(n, group));
+    }
+
+    private void waitForFlush() {
+        try {
+            lock.wait(lingerMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for write-behind space", e);
+        }
+    }
+
+    private void await(CompletableFuture<Void> flushed) {
+        try {
+            flushed.get(flushTimeoutMs, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            throw new IllegalStateException("Write buffered but not flushed within " + flushTimeoutMs + "ms");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for flush", e);
+        } catch (Exception e) {
+            throw new IllegalStateException("Flush failed", e);
+        }
+    }
+}
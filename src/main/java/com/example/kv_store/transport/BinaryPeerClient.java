@@ -0,0 +1,407 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationOp;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.transport.Frames.Frame;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * {@link PeerClient} over {@link BinaryTransportServer}: a small pool of
+ * persistent TCP connections per peer. Requests are pipelined; each connection
+ * has one reader thread that matches responses to pending futures by
+ * correlation id and completes them on virtual threads, so what a caller
+ * chains on its response never holds up the responses read after it.
+ *
+ * A connection connects on its reader thread, within {@code connectTimeoutMs},
+ * and calls made meanwhile are sent once it is up; the calling thread never
+ * waits on the network. Every call times out on its own, after what is left
+ * of the current {@link Deadline} or else {@code callTimeoutMs}, so a peer
+ * that stops answering cannot pile up pending calls.
+ */
+public class BinaryPeerClient implements PeerClient, AutoCloseable {
+
+    private final Function<String, InetSocketAddress> addressOf;
+    private final int connectionsPerPeer;
+    private final long connectTimeoutMs;
+    private final long callTimeoutMs;
+    private final Map<String, Connection[]> pools = new ConcurrentHashMap<>();
+    private final AtomicLong correlationIds = new AtomicLong();
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private final ExecutorService callbacks = Executors.newVirtualThreadPerTaskExecutor();
+
+    public BinaryPeerClient(Map<String, InetSocketAddress> peers, int connectionsPerPeer,
+                            long connectTimeoutMs, long callTimeoutMs) {
+        this(Map.copyOf(peers)::get, connectionsPerPeer, connectTimeoutMs, callTimeoutMs);
+    }
+
+    /** {@code addressOf} is asked on first contact, so nodes that join later can be resolved. */
+    public BinaryPeerClient(Function<String, InetSocketAddress> addressOf, int connectionsPerPeer,
+                            long connectTimeoutMs, long callTimeoutMs) {
+        this.addressOf = addressOf;
+        this.connectionsPerPeer = Math.max(1, connectionsPerPeer);
+        this.connectTimeoutMs = Math.max(1, connectTimeoutMs);
+        this.callTimeoutMs = Math.max(1, callTimeoutMs);
+    }
+
+    // ---------- PeerClient ----------
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> get(String nodeId, String key) {
+        byte[] payload = new Frames.Writer().string(key).toByteArray();
+        return call(nodeId, Frames.GET, (byte) 0, payload)
+                .thenApply(f -> f.code() == Frames.NOT_FOUND ? Optional.empty() : Optional.of(f.payload()));
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs) {
+        byte[] payload = new Frames.Writer().string(key).int64(maxStalenessMs).toByteArray();
+        return call(nodeId, Frames.GET_REPLICA, (byte) 0, payload)
+                .thenApply(f -> f.code() == Frames.NOT_FOUND ? Optional.empty() : Optional.of(f.payload()));
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl) {
+        byte[] payload = new Frames.Writer().string(key).int64(ttlMillis(ttl)).bytes(value).toByteArray();
+        return call(nodeId, Frames.PUT, (byte) 0, payload).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String nodeId, String key) {
+        byte[] payload = new Frames.Writer().string(key).toByteArray();
+        return call(nodeId, Frames.DELETE, (byte) 0, payload).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys) {
+        return call(nodeId, Frames.GET_ALL, (byte) 0, writeKeys(keys)).thenApply(f -> {
+            Frames.Reader in = new Frames.Reader(f.payload());
+            int n = in.int32();
+            Map<String, byte[]> values = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                values.put(in.string(), in.bytes());
+            }
+            return values;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+        Frames.Writer out = new Frames.Writer().int64(ttlMillis(ttl)).int32(entries.size());
+        entries.forEach((k, v) -> out.string(k).bytes(v));
+        return call(nodeId, Frames.PUT_ALL, (byte) 0, out.toByteArray()).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys) {
+        return call(nodeId, Frames.DELETE_ALL, (byte) 0, writeKeys(keys)).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op) {
+        byte[] payload = new Frames.Writer()
+                .int8(op.type().ordinal())
+                .string(op.key())
+                .bytes(op.operand() == null ? new byte[0] : op.operand())
+                .int64(op.expectedVersion())
+                .int64(op.delta())
+                .int64(op.ttlMillis() == null ? -1 : op.ttlMillis())
+                .toByteArray();
+        return call(nodeId, Frames.ATOMIC, (byte) 0, payload).thenApply(f -> {
+            Frames.Reader in = new Frames.Reader(f.payload());
+            AtomicResult.Status status = AtomicResult.Status.values()[in.int8()];
+            long version = in.int64();
+            byte[] value = in.int8() == 0 ? null : in.bytes();
+            return new AtomicResult(status, value, version);
+        });
+    }
+
+    @Override
+    public CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch) {
+        Frames.Writer out = new Frames.Writer()
+                .string(batch.source())
+                .int64(batch.lagMillis())
+                .int32(batch.ops().size());
+        for (ReplicationOp op : batch.ops()) {
+            out.int64(op.seq())
+                    .int8(op.op().ordinal())
+                    .string(op.key())
+                    .int64(op.expireAtMillis() == null ? -1 : op.expireAtMillis())
+                    .int64(op.version())
+                    .bytes(op.value() == null ? new byte[0] : op.value());
+        }
+        return call(nodeId, Frames.REPLICATE, (byte) 0, out.toByteArray())
+                .thenApply(f -> new Frames.Reader(f.payload()).int64());
+    }
+
+    @Override
+    public CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key) {
+        byte[] payload = new Frames.Writer().string(key).toByteArray();
+        return call(nodeId, Frames.GET_VERSIONED, (byte) 0, payload).thenApply(f -> {
+            if (f.code() == Frames.NOT_FOUND) return Optional.empty();
+            Frames.Reader in = new Frames.Reader(f.payload());
+            long version = in.int64();
+            return Optional.of(new VersionedValue(in.bytes(), version));
+        });
+    }
+
+    @Override
+    public CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes) {
+        Frames.Writer out = new Frames.Writer().string(key).int32(staleNodes.size());
+        staleNodes.forEach(out::string);
+        return call(nodeId, Frames.READ_REPAIR, (byte) 0, out.toByteArray()).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey,
+                                                      String prefix, int limit) {
+        byte[] payload = new Frames.Writer()
+                .int32(partitionId)
+                .string(afterKey == null ? "" : afterKey)
+                .string(prefix == null ? "" : prefix)
+                .int32(limit)
+                .toByteArray();
+        return call(nodeId, Frames.SCAN, (byte) 0, payload).thenApply(f -> {
+            Frames.Reader in = new Frames.Reader(f.payload());
+            int n = in.int32();
+            Map<String, byte[]> page = new LinkedHashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                page.put(in.string(), in.bytes());
+            }
+            return page;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs) {
+        byte[] payload = new Frames.Writer().string(key).string(holder).int64(leaseMs).toByteArray();
+        return call(nodeId, Frames.GET_LEASED, (byte) 0, payload)
+                .thenApply(f -> f.code() == Frames.NOT_FOUND ? Optional.empty() : Optional.of(f.payload()));
+    }
+
+    @Override
+    public CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys) {
+        return call(nodeId, Frames.INVALIDATE, (byte) 0, writeKeys(keys)).thenApply(f -> null);
+    }
+
+    @Override
+    public CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes) {
+        Frames.Writer out = new Frames.Writer().int32(partitions.length);
+        for (int i = 0; i < partitions.length; i++) {
+            out.int32(partitions[i]).int32(nodes[i]);
+        }
+        return call(nodeId, Frames.MERKLE_HASHES, (byte) 0, out.toByteArray()).thenApply(f -> {
+            Frames.Reader in = new Frames.Reader(f.payload());
+            long[] hashes = new long[in.int32()];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = in.int64();
+            }
+            return hashes;
+        });
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves) {
+        Frames.Writer out = new Frames.Writer().int32(partitionId).int32(leaves.length);
+        for (int leaf : leaves) {
+            out.int32(leaf);
+        }
+        return call(nodeId, Frames.MERKLE_ENTRIES, (byte) 0, out.toByteArray()).thenApply(f -> {
+            Frames.Reader in = new Frames.Reader(f.payload());
+            int n = in.int32();
+            Map<String, Long> entries = new HashMap<>(n * 2);
+            for (int i = 0; i < n; i++) {
+                entries.put(in.string(), in.int64());
+            }
+            return entries;
+        });
+    }
+
+    /** Calls sent and not yet answered, failed or timed out, over all connections. */
+    int pendingCalls() {
+        int n = 0;
+        for (Connection[] pool : pools.values()) {
+            for (Connection c : pool) {
+                if (c != null) n += c.pending.size();
+            }
+        }
+        return n;
+    }
+
+    @Override
+    public void close() {
+        pools.values().forEach(pool -> {
+            for (Connection c : pool) {
+                if (c != null) c.close(new IOException("Client closed"));
+            }
+        });
+        callbacks.shutdown();
+    }
+
+    // ---------- Connections ----------
+
+    /** Sends the time left on the current {@link Deadline}, if any, ahead of the payload. */
+    private CompletableFuture<Frame> call(String nodeId, byte op, byte flags, byte[] payload) {
+        long remaining = Deadline.remainingMillis();
+        long timeoutMs = remaining == Deadline.NONE ? callTimeoutMs : Math.max(1, remaining);
+        if (remaining != Deadline.NONE) {
+            byte[] prefixed = new byte[8 + payload.length];
+            ByteBuffer.wrap(prefixed).putLong(remaining).put(payload);
+            payload = prefixed;
+            flags |= Frames.FLAG_DEADLINE;
+        }
+        try {
+            return connection(nodeId).send(correlationIds.incrementAndGet(), op, flags, payload, timeoutMs);
+        } catch (IOException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /** Never waits for a connect: a new connection is set up on its own thread. */
+    private Connection connection(String nodeId) throws IOException {
+        InetSocketAddress address = addressOf.apply(nodeId);
+        if (address == null) throw new IOException("No transport address for node " + nodeId);
+
+        Connection[] pool = pools.computeIfAbsent(nodeId, n -> new Connection[connectionsPerPeer]);
+        int slot = Math.floorMod(roundRobin.getAndIncrement(), pool.length);
+        Connection c = pool[slot];
+        if (c != null && c.isOpen()) return c;
+        synchronized (pool) {
+            c = pool[slot];
+            if (c == null || !c.isOpen()) {
+                c = new Connection(address, connectTimeoutMs, callbacks);
+                pool[slot] = c;
+            }
+            return c;
+        }
+    }
+
+    private static byte[] writeKeys(Collection<String> keys) {
+        Frames.Writer out = new Frames.Writer().int32(keys.size());
+        keys.forEach(out::string);
+        return out.toByteArray();
+    }
+
+    private static long ttlMillis(Duration ttl) {
+        return ttl == null ? -1 : ttl.toMillis();
+    }
+
+    private static final class Connection {
+
+        private final SocketChannel channel;
+        private final CompletableFuture<Void> connected = new CompletableFuture<>();
+        private final Map<Long, CompletableFuture<Frame>> pending = new ConcurrentHashMap<>();
+        private final Object writeLock = new Object();
+        private final ExecutorService callbacks;
+        private volatile boolean open = true;
+
+        Connection(InetSocketAddress address, long connectTimeoutMs, ExecutorService callbacks) throws IOException {
+            this.channel = SocketChannel.open();
+            this.callbacks = callbacks;
+            Thread.ofVirtual().name("kv-binary-reader-" + address).start(() -> run(address, connectTimeoutMs));
+        }
+
+        boolean isOpen() {
+            return open;
+        }
+
+        CompletableFuture<Frame> send(long id, byte op, byte flags, byte[] payload, long timeoutMs) {
+            CompletableFuture<Frame> future = new CompletableFuture<>();
+            pending.put(id, future);
+            // the caller sees the outcome only once the call is forgotten
+            CompletableFuture<Frame> result = future.orTimeout(timeoutMs, TimeUnit.MILLISECONDS)
+                    .whenComplete((f, e) -> pending.remove(id));
+            Frame request = new Frame(id, op, flags, payload);
+            if (connected.isDone()) write(request);
+            else connected.thenRun(() -> write(request)); // a failed connect fails it through close()
+            if (!open) failPending(new IOException("Connection closed"));
+            return result;
+        }
+
+        private void write(Frame request) {
+            try {
+                synchronized (writeLock) {
+                    Frames.write(channel, request);
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        private void run(InetSocketAddress address, long connectTimeoutMs) {
+            try {
+                channel.socket().connect(address, (int) Math.min(Integer.MAX_VALUE, connectTimeoutMs));
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                close(e);
+                return;
+            }
+            connected.complete(null);
+            try {
+                while (open) {
+                    Frame response = Frames.read(channel);
+                    CompletableFuture<Frame> future = pending.remove(response.correlationId());
+                    if (future != null) dispatch(future, response);
+                }
+            } catch (IOException e) {
+                close(e);
+            }
+        }
+
+        /** Completes off the reader thread: decoding and the caller's continuations run there. */
+        private void dispatch(CompletableFuture<Frame> future, Frame response) {
+            try {
+                callbacks.execute(() -> complete(future, response));
+            } catch (RejectedExecutionException closed) {
+                complete(future, response);
+            }
+        }
+
+        private static void complete(CompletableFuture<Frame> future, Frame response) {
+            if (response.code() == Frames.ERROR) {
+                String message = new Frames.Reader(response.payload()).string();
+                future.completeExceptionally(new IllegalStateException("Peer error: " + message));
+            } else {
+                future.complete(response);
+            }
+        }
+
+        void close(IOException cause) {
+            open = false;
+            connected.completeExceptionally(cause);
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            failPending(cause);
+        }
+
+        private void failPending(IOException cause) {
+            pending.forEach((id, f) -> {
+                if (pending.remove(id, f)) f.completeExceptionally(cause);
+            });
+        }
+    }
+}
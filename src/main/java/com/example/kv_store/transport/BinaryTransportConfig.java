@@ -0,0 +1,52 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.DistributedKeyValueService;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.core.env.Environment;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Wires the binary transport when {@code kv.transport=binary}. Every node then
+ * needs {@code cluster.transportAddresses.<nodeId>=host:port}; the local entry
+ * is the address this node listens on.
+ */
+@Configuration
+@ConditionalOnProperty(name = "kv.transport", havingValue = "binary")
+public class BinaryTransportConfig {
+
+    @Bean(destroyMethod = "close")
+    public BinaryPeerClient binaryPeerClient(Environment env,
+                                             @Value("${kv.transport.binary.connections-per-peer:4}") int connections,
+                                             @Value("${kv.transport.binary.connect-timeout-ms:500}") long connectTimeoutMs,
+                                             @Value("${kv.transport.binary.call-timeout-ms:10000}") long callTimeoutMs) {
+        Map<String, InetSocketAddress> resolved = new ConcurrentHashMap<>();
+        return new BinaryPeerClient(nodeId -> resolved.computeIfAbsent(nodeId, n -> {
+            String address = env.getProperty("cluster.transportAddresses." + n);
+            return address == null ? null : parse(address);
+        }), connections, connectTimeoutMs, callTimeoutMs);
+    }
+
+    @Bean(destroyMethod = "close")
+    public BinaryTransportServer binaryTransportServer(@Lazy DistributedKeyValueService service,
+                                                      AffinityService affinity,
+                                                      Environment env) throws IOException {
+        String address = env.getRequiredProperty("cluster.transportAddresses." + affinity.getLocalNodeId());
+        InetSocketAddress bind = new InetSocketAddress(parse(address).getPort());
+        return new BinaryTransportServer(new ServiceTransportHandler(service), bind);
+    }
+
+    static InetSocketAddress parse(String hostPort) {
+        int colon = hostPort.lastIndexOf(':');
+        return new InetSocketAddress(hostPort.substring(0, colon).trim(),
+                Integer.parseInt(hostPort.substring(colon + 1).trim()));
+    }
+}
@@ -0,0 +1,290 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationOp;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.transport.Frames.Frame;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Accepts long-lived peer connections and serves framed requests.
+ *
+ * Each connection has one reader; every request it reads runs on its own
+ * virtual thread, so a slow request does not hold up the ones pipelined behind
+ * it. Responses carry the request's correlation id and may go out of order.
+ */
+public class BinaryTransportServer implements AutoCloseable {
+
+    private static final Logger log = LoggerFactory.getLogger(BinaryTransportServer.class);
+
+    private final TransportHandler handler;
+    private final ServerSocketChannel server;
+    private final ExecutorService workers = Executors.newVirtualThreadPerTaskExecutor();
+    private final Set<SocketChannel> connections = ConcurrentHashMap.newKeySet();
+    private volatile boolean running = true;
+
+    public BinaryTransportServer(TransportHandler handler, InetSocketAddress bindAddress) throws IOException {
+        this.handler = handler;
+        this.server = ServerSocketChannel.open();
+        server.bind(bindAddress);
+        Thread.ofVirtual().name("kv-binary-accept").start(this::acceptLoop);
+        log.info("Binary transport listening on {}", server.getLocalAddress());
+    }
+
+    public int port() {
+        try {
+            return ((InetSocketAddress) server.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void acceptLoop() {
+        while (running) {
+            try {
+                SocketChannel channel = server.accept();
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                connections.add(channel);
+                workers.execute(() -> serve(channel));
+            } catch (ClosedChannelException e) {
+                return;
+            } catch (IOException e) {
+                log.warn("Binary transport accept failed", e);
+            }
+        }
+    }
+
+    private void serve(SocketChannel channel) {
+        Object writeLock = new Object();
+        try (channel) {
+            while (running) {
+                Frame request = Frames.read(channel);
+                workers.execute(() -> {
+                    Frame response = handle(request);
+                    try {
+                        synchronized (writeLock) {
+                            Frames.write(channel, response);
+                        }
+                    } catch (IOException e) {
+                        closeQuietly(channel);
+                    }
+                });
+            }
+        } catch (EOFException | ClosedChannelException e) {
+            // peer went away
+        } catch (IOException e) {
+            log.debug("Binary transport connection failed", e);
+        } finally {
+            connections.remove(channel);
+        }
+    }
+
+    private Frame handle(Frame request) {
+        long id = request.correlationId();
+        Frames.Reader in = new Frames.Reader(request.payload());
+        if ((request.flags() & Frames.FLAG_DEADLINE) == 0) return dispatch(request, in);
+        long remaining = in.int64();
+        if (remaining <= 0) return error(id, "Deadline exceeded");
+        return Deadline.within(System.currentTimeMillis() + remaining, () -> dispatch(request, in));
+    }
+
+    private Frame dispatch(Frame request, Frames.Reader in) {
+        long id = request.correlationId();
+        try {
+            switch (request.code()) {
+                case Frames.GET -> {
+                    Optional<byte[]> value = handler.get(in.string());
+                    return value.map(v -> response(id, Frames.OK, v))
+                            .orElseGet(() -> response(id, Frames.NOT_FOUND, new byte[0]));
+                }
+                case Frames.GET_REPLICA -> {
+                    String key = in.string();
+                    Optional<byte[]> value = handler.getReplica(key, in.int64());
+                    return value.map(v -> response(id, Frames.OK, v))
+                            .orElseGet(() -> response(id, Frames.NOT_FOUND, new byte[0]));
+                }
+                case Frames.PUT -> {
+                    String key = in.string();
+                    Duration ttl = ttl(in.int64());
+                    handler.put(key, in.bytes(), ttl);
+                }
+                case Frames.DELETE -> handler.delete(in.string());
+                case Frames.GET_ALL -> {
+                    Map<String, byte[]> values = handler.getAll(readKeys(in));
+                    Frames.Writer out = new Frames.Writer().int32(values.size());
+                    values.forEach((k, v) -> out.string(k).bytes(v));
+                    return response(id, Frames.OK, out.toByteArray());
+                }
+                case Frames.PUT_ALL -> {
+                    Duration ttl = ttl(in.int64());
+                    int n = in.int32();
+                    Map<String, byte[]> entries = new LinkedHashMap<>(n * 2);
+                    for (int i = 0; i < n; i++) {
+                        entries.put(in.string(), in.bytes());
+                    }
+                    handler.putAll(entries, ttl);
+                }
+                case Frames.DELETE_ALL -> handler.deleteAll(readKeys(in));
+                case Frames.ATOMIC -> {
+                    AtomicResult result = handler.atomic(readAtomicOp(in));
+                    Frames.Writer out = new Frames.Writer()
+                            .int8(result.status().ordinal())
+                            .int64(result.version())
+                            .int8(result.value() == null ? 0 : 1);
+                    if (result.value() != null) out.bytes(result.value());
+                    return response(id, Frames.OK, out.toByteArray());
+                }
+                case Frames.REPLICATE -> {
+                    long acked = handler.replicate(readBatch(in));
+                    return response(id, Frames.OK, new Frames.Writer().int64(acked).toByteArray());
+                }
+                case Frames.GET_VERSIONED -> {
+                    Optional<VersionedValue> copy = handler.getVersioned(in.string());
+                    return copy.map(c -> response(id, Frames.OK,
+                                    new Frames.Writer().int64(c.version()).bytes(c.value()).toByteArray()))
+                            .orElseGet(() -> response(id, Frames.NOT_FOUND, new byte[0]));
+                }
+                case Frames.READ_REPAIR -> {
+                    String key = in.string();
+                    handler.readRepair(key, readKeys(in));
+                }
+                case Frames.SCAN -> {
+                    int partitionId = in.int32();
+                    String afterKey = in.string();
+                    String prefix = in.string();
+                    Map<String, byte[]> page = handler.scan(partitionId,
+                            afterKey.isEmpty() ? null : afterKey, prefix.isEmpty() ? null : prefix, in.int32());
+                    Frames.Writer out = new Frames.Writer().int32(page.size());
+                    page.forEach((k, v) -> out.string(k).bytes(v));
+                    return response(id, Frames.OK, out.toByteArray());
+                }
+                case Frames.GET_LEASED -> {
+                    String key = in.string();
+                    String holder = in.string();
+                    Optional<byte[]> value = handler.getLeased(key, holder, in.int64());
+                    return value.map(v -> response(id, Frames.OK, v))
+                            .orElseGet(() -> response(id, Frames.NOT_FOUND, new byte[0]));
+                }
+                case Frames.INVALIDATE -> handler.invalidate(readKeys(in));
+                case Frames.MERKLE_HASHES -> {
+                    int n = in.int32();
+                    int[] partitions = new int[n];
+                    int[] nodes = new int[n];
+                    for (int i = 0; i < n; i++) {
+                        partitions[i] = in.int32();
+                        nodes[i] = in.int32();
+                    }
+                    long[] hashes = handler.merkleHashes(partitions, nodes);
+                    Frames.Writer out = new Frames.Writer().int32(hashes.length);
+                    for (long h : hashes) {
+                        out.int64(h);
+                    }
+                    return response(id, Frames.OK, out.toByteArray());
+                }
+                case Frames.MERKLE_ENTRIES -> {
+                    int partitionId = in.int32();
+                    int[] leaves = new int[in.int32()];
+                    for (int i = 0; i < leaves.length; i++) {
+                        leaves[i] = in.int32();
+                    }
+                    Map<String, Long> entries = handler.merkleEntries(partitionId, leaves);
+                    Frames.Writer out = new Frames.Writer().int32(entries.size());
+                    entries.forEach((k, h) -> out.string(k).int64(h));
+                    return response(id, Frames.OK, out.toByteArray());
+                }
+                default -> {
+                    return error(id, "Unknown opcode " + request.code());
+                }
+            }
+            return response(id, Frames.OK, new byte[0]);
+        } catch (Exception e) {
+            return error(id, String.valueOf(e.getMessage()));
+        }
+    }
+
+    private static List<String> readKeys(Frames.Reader in) {
+        int n = in.int32();
+        List<String> keys = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            keys.add(in.string());
+        }
+        return keys;
+    }
+
+    private static AtomicOp readAtomicOp(Frames.Reader in) {
+        AtomicOp.Type type = AtomicOp.Type.values()[in.int8()];
+        String key = in.string();
+        byte[] operand = in.bytes();
+        long expectedVersion = in.int64();
+        long delta = in.int64();
+        long ttlMillis = in.int64();
+        return new AtomicOp(type, key, operand, expectedVersion, delta, ttlMillis < 0 ? null : ttlMillis);
+    }
+
+    private static ReplicationBatch readBatch(Frames.Reader in) {
+        String source = in.string();
+        long lagMillis = in.int64();
+        int n = in.int32();
+        List<ReplicationOp> ops = new ArrayList<>(n);
+        for (int i = 0; i < n; i++) {
+            long seq = in.int64();
+            ReplicationOp.Type type = ReplicationOp.Type.values()[in.int8()];
+            String key = in.string();
+            long expireAt = in.int64();
+            long version = in.int64();
+            byte[] value = in.bytes();
+            ops.add(type == ReplicationOp.Type.PUT
+                    ? ReplicationOp.put(seq, key, value, expireAt < 0 ? null : expireAt, version)
+                    : ReplicationOp.delete(seq, key));
+        }
+        return new ReplicationBatch(source, ops, lagMillis);
+    }
+
+    private static Duration ttl(long millis) {
+        return millis < 0 ? null : Duration.ofMillis(millis);
+    }
+
+    private static Frame response(long id, byte status, byte[] payload) {
+        return new Frame(id, status, (byte) 0, payload);
+    }
+
+    private static Frame error(long id, String message) {
+        return response(id, Frames.ERROR, new Frames.Writer().string(message).toByteArray());
+    }
+
+    private static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException ignored) {
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        running = false;
+        server.close();
+        connections.forEach(BinaryTransportServer::closeQuietly);
+        workers.shutdownNow();
+    }
+}
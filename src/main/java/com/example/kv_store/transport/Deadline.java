@@ -0,0 +1,62 @@
+package com.example.kv_store.transport;
+
+import java.util.function.Supplier;
+
+/**
+ * Deadline of the request being handled on this thread, as epoch millis.
+ *
+ * Peer clients send what is left of it with every call ({@link #HEADER} over
+ * HTTP, a frame field over the binary transport) and the receiving node
+ * handles the call within it, so work a caller has already given up on is not
+ * started further down the chain. Only the remaining time travels, never the
+ * absolute instant, so nodes need not agree on the clock.
+ */
+public final class Deadline {
+
+    public static final String HEADER = "X-KV-Deadline-Ms";
+    public static final long NONE = Long.MAX_VALUE;
+
+    private static final ThreadLocal<Long> CURRENT = new ThreadLocal<>();
+
+    private Deadline() {
+    }
+
+    /** The deadline of the current request, or {@link #NONE}. */
+    public static long current() {
+        Long deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline;
+    }
+
+    /** Milliseconds left, possibly negative, or {@link #NONE} when there is no deadline. */
+    public static long remainingMillis() {
+        Long deadline = CURRENT.get();
+        return deadline == null ? NONE : deadline - System.currentTimeMillis();
+    }
+
+    /** Makes {@code deadlineMillis} (or none) the current deadline until the returned scope is closed. */
+    public static Scope enter(long deadlineMillis) {
+        long previous = current();
+        set(deadlineMillis);
+        return () -> set(previous);
+    }
+
+    /** Runs {@code work} with {@code deadlineMillis} (or none) as the current deadline. */
+    public static <T> T within(long deadlineMillis, Supplier<T> work) {
+        Scope scope = enter(deadlineMillis);
+        try {
+            return work.get();
+        } finally {
+            scope.close();
+        }
+    }
+
+    private static void set(long deadlineMillis) {
+        if (deadlineMillis == NONE) CURRENT.remove();
+        else CURRENT.set(deadlineMillis);
+    }
+
+    public interface Scope extends AutoCloseable {
+        @Override
+        void close();
+    }
+}
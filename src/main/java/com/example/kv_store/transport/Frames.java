@@ -0,0 +1,185 @@
+package com.example.kv_store.transport;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Wire format of the binary transport. Every frame is
+ *
+ * <pre>
+ * int   length of the rest of the frame
+ * long  correlation id (a response echoes its request's id)
+ * byte  opcode (request) or status (response)
+ * byte  flags
+ * ...   payload
+ * </pre>
+ *
+ * Payload strings and byte arrays are int-length-prefixed; a TTL is a long in
+ * milliseconds with -1 meaning "none".
+ */
+final class Frames {
+
+    // request opcodes
+    static final byte GET = 1;
+    static final byte PUT = 2;
+    static final byte DELETE = 3;
+    static final byte GET_ALL = 4;
+    static final byte PUT_ALL = 5;
+    static final byte DELETE_ALL = 6;
+    static final byte REPLICATE = 7;
+    static final byte GET_REPLICA = 8;
+    static final byte SCAN = 9;
+    static final byte GET_LEASED = 10;
+    static final byte INVALIDATE = 11;
+    static final byte MERKLE_HASHES = 12;
+    static final byte MERKLE_ENTRIES = 13;
+    static final byte ATOMIC = 14;
+    static final byte GET_VERSIONED = 15;
+    static final byte READ_REPAIR = 16;
+
+    // response statuses
+    static final byte OK = 0;
+    static final byte NOT_FOUND = 1;
+    static final byte ERROR = 2;
+
+    /** The payload starts with a long: milliseconds left until the caller's {@link Deadline}. */
+    static final byte FLAG_DEADLINE = 2;
+
+    static final int HEADER_SIZE = 8 + 1 + 1;
+    static final int MAX_FRAME_SIZE = 256 * 1024 * 1024;
+
+    record Frame(long correlationId, byte code, byte flags, byte[] payload) {
+    }
+
+    private Frames() {
+    }
+
+    /** Blocking read of one frame; throws {@link EOFException} when the peer closed the connection. */
+    static Frame read(ReadableByteChannel channel) throws IOException {
+        ByteBuffer lengthBuf = readFully(channel, ByteBuffer.allocate(4));
+        int length = lengthBuf.getInt(0);
+        if (length < HEADER_SIZE || length > MAX_FRAME_SIZE) {
+            throw new IOException("Bad frame length " + length);
+        }
+        ByteBuffer body = readFully(channel, ByteBuffer.allocate(length));
+        body.flip();
+        long correlationId = body.getLong();
+        byte code = body.get();
+        byte flags = body.get();
+        byte[] payload = new byte[body.remaining()];
+        body.get(payload);
+        return new Frame(correlationId, code, flags, payload);
+    }
+
+    /** Caller serializes writes per channel. */
+    static void write(WritableByteChannel channel, Frame frame) throws IOException {
+        ByteBuffer buf = ByteBuffer.allocate(4 + HEADER_SIZE + frame.payload().length);
+        buf.putInt(HEADER_SIZE + frame.payload().length)
+                .putLong(frame.correlationId())
+                .put(frame.code())
+                .put(frame.flags())
+                .put(frame.payload())
+                .flip();
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    private static ByteBuffer readFully(ReadableByteChannel channel, ByteBuffer buf) throws IOException {
+        while (buf.hasRemaining()) {
+            if (channel.read(buf) < 0) throw new EOFException();
+        }
+        return buf;
+    }
+
+    /** Builds a payload. */
+    static final class Writer {
+
+        private final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        private final DataOutputStream out = new DataOutputStream(bytes);
+
+        Writer string(String s) {
+            return bytes(s.getBytes(StandardCharsets.UTF_8));
+        }
+
+        Writer bytes(byte[] b) {
+            try {
+                out.writeInt(b.length);
+                out.write(b);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        Writer int8(int v) {
+            try {
+                out.writeByte(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        Writer int32(int v) {
+            try {
+                out.writeInt(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        Writer int64(long v) {
+            try {
+                out.writeLong(v);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return this;
+        }
+
+        byte[] toByteArray() {
+            return bytes.toByteArray();
+        }
+    }
+
+    /** Reads a payload built by {@link Writer}. */
+    static final class Reader {
+
+        private final ByteBuffer buf;
+
+        Reader(byte[] payload) {
+            this.buf = ByteBuffer.wrap(payload);
+        }
+
+        String string() {
+            return new String(bytes(), StandardCharsets.UTF_8);
+        }
+
+        byte[] bytes() {
+            byte[] b = new byte[buf.getInt()];
+            buf.get(b);
+            return b;
+        }
+
+        byte int8() {
+            return buf.get();
+        }
+
+        int int32() {
+            return buf.getInt();
+        }
+
+        long int64() {
+            return buf.getLong();
+        }
+    }
+}
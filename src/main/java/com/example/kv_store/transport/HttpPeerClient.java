@@ -0,0 +1,314 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.stereotype.Component;
+import org.springframework.http.client.reactive.JdkClientHttpConnector;
+import org.springframework.web.reactive.function.client.ClientRequest;
+import org.springframework.web.reactive.function.client.ClientResponse;
+import org.springframework.web.reactive.function.client.ExchangeFunction;
+import org.springframework.web.reactive.function.client.WebClient;
+import org.springframework.web.reactive.function.client.WebClientResponseException;
+import reactor.core.publisher.Mono;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+
+@Component
+@ConditionalOnProperty(name = "kv.transport", havingValue = "http", matchIfMissing = true)
+public class HttpPeerClient implements PeerClient {
+
+    private static final ParameterizedTypeReference<Map<String, byte[]>> VALUE_MAP =
+            new ParameterizedTypeReference<>() {};
+    private static final ParameterizedTypeReference<Map<String, Long>> HASH_MAP =
+            new ParameterizedTypeReference<>() {};
+
+    private final AffinityService affinity;
+    private final WebClient webClient; // reactive HTTP client for forwarding
+
+    public HttpPeerClient(AffinityService affinity, WebClient.Builder webClientBuilder,
+                          @Value("${kv.value.max-bytes:67108864}") int maxValueBytes,
+                          @Value("${kv.transport.http.connect-timeout-ms:500}") long connectTimeoutMs,
+                          @Value("${kv.forward.timeout-ms:2000}") long readTimeoutMs) {
+        this.affinity = affinity;
+        // the default 256KB response limit would fail forwarded reads of larger values;
+        // leave room for one max-size value base64-encoded in a batch response
+        int maxInMemory = (int) Math.min(Integer.MAX_VALUE, maxValueBytes * 4L / 3 + 1024 * 1024);
+        this.webClient = webClientBuilder
+                .clientConnector(connector(connectTimeoutMs, readTimeoutMs))
+                .codecs(c -> c.defaultCodecs().maxInMemorySize(maxInMemory))
+                .filter(HttpPeerClient::withDeadline)
+                .build();
+    }
+
+    /**
+     * Keep-alive HTTP/1.1 connections (the JDK client pools them per peer and
+     * would otherwise try an h2c upgrade on every new one), a short connect
+     * timeout so a dead peer fails fast, and virtual threads for the client's
+     * own work.
+     */
+    private static JdkClientHttpConnector connector(long connectTimeoutMs, long readTimeoutMs) {
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofMillis(connectTimeoutMs))
+                .executor(Executors.newVirtualThreadPerTaskExecutor())
+                .build();
+        JdkClientHttpConnector connector = new JdkClientHttpConnector(client);
+        connector.setReadTimeout(Duration.ofMillis(readTimeoutMs));
+        return connector;
+    }
+
+    /** Runs as the request is sent, on the calling thread, so it sees that thread's {@link Deadline}. */
+    private static Mono<ClientResponse> withDeadline(ClientRequest request, ExchangeFunction next) {
+        long remaining = Deadline.remainingMillis();
+        if (remaining == Deadline.NONE) return next.exchange(request);
+        return next.exchange(ClientRequest.from(request)
+                .header(Deadline.HEADER, Long.toString(remaining))
+                .build());
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> get(String nodeId, String key) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.get()
+                .uri(baseUrl + "/internal/kv/{k}", key)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .map(Optional::of)
+                .onErrorReturn(WebClientResponseException.NotFound.class, Optional.empty())
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.get()
+                .uri(baseUrl + "/internal/kv/{k}?maxStalenessMs=" + maxStalenessMs, key)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .map(Optional::of)
+                .onErrorReturn(WebClientResponseException.NotFound.class, Optional.empty())
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/{k}" + buildTtlQuery(ttl, "?"), key)
+                .bodyValue(value)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> delete(String nodeId, String key) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.delete()
+                .uri(baseUrl + "/internal/kv/{k}", key)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/batch/get")
+                .bodyValue(keys)
+                .retrieve()
+                .bodyToMono(VALUE_MAP)
+                .defaultIfEmpty(Map.of())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/batch/put" + buildTtlQuery(ttl, "?"))
+                .bodyValue(entries)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/batch/delete")
+                .bodyValue(keys)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/atomic")
+                .bodyValue(op)
+                .retrieve()
+                .bodyToMono(AtomicResult.class)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/batch/replicate")
+                .bodyValue(batch)
+                .retrieve()
+                .bodyToMono(Long.class)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.get()
+                .uri(baseUrl + "/internal/kv/{k}/versioned", key)
+                .retrieve()
+                .bodyToMono(VersionedValue.class)
+                .map(Optional::of)
+                .onErrorReturn(WebClientResponseException.NotFound.class, Optional.empty())
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/{k}/repair", key)
+                .bodyValue(staleNodes)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey,
+                                                      String prefix, int limit) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.get()
+                .uri(baseUrl + "/internal/kv/scan/{p}?after={after}&prefix={prefix}&limit={limit}",
+                        partitionId, afterKey == null ? "" : afterKey, prefix == null ? "" : prefix, limit)
+                .retrieve()
+                .bodyToMono(VALUE_MAP) // JSON objects keep their order, so the page stays sorted
+                .defaultIfEmpty(Map.of())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.get()
+                .uri(baseUrl + "/internal/kv/{k}?leaseMs={ms}&holder={holder}", key, leaseMs, holder)
+                .retrieve()
+                .bodyToMono(byte[].class)
+                .map(Optional::of)
+                .onErrorReturn(WebClientResponseException.NotFound.class, Optional.empty())
+                .defaultIfEmpty(Optional.empty())
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/batch/invalidate")
+                .bodyValue(keys)
+                .retrieve()
+                .toBodilessEntity()
+                .then()
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/merkle/hashes")
+                .bodyValue(Map.of("partitions", partitions, "nodes", nodes))
+                .retrieve()
+                .bodyToMono(long[].class)
+                .toFuture();
+    }
+
+    @Override
+    public CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves) {
+        String baseUrl = affinity.urlOf(nodeId);
+        if (baseUrl == null) return noUrl(nodeId);
+
+        return webClient.post()
+                .uri(baseUrl + "/internal/kv/merkle/{p}/entries", partitionId)
+                .bodyValue(leaves)
+                .retrieve()
+                .bodyToMono(HASH_MAP)
+                .defaultIfEmpty(Map.of())
+                .toFuture();
+    }
+
+    private static String buildTtlQuery(Duration ttl, String separator) {
+        if (ttl == null) return "";
+        return separator + "ttlSec=" + ttl.toSeconds();
+    }
+
+    private static <T> CompletableFuture<T> noUrl(String nodeId) {
+        return CompletableFuture.failedFuture(new IllegalStateException("No URL for node " + nodeId));
+    }
+}
@@ -0,0 +1,36 @@
+package com.example.kv_store.transport;
+
+import java.util.concurrent.TimeoutException;
+
+/**
+ * A call to a peer that got no answer: the peer failed, timed out, or its
+ * circuit is open. Distinct from "not found", which is an empty result.
+ */
+public class PeerCallException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final String nodeId;
+    private final boolean timedOut;
+
+    public PeerCallException(String stage, String nodeId, String reason, Throwable cause) {
+        super(stage + " to " + nodeId + " failed: " + reason, cause);
+        this.nodeId = nodeId;
+        this.timedOut = cause instanceof TimeoutException;
+    }
+
+    public PeerCallException(String stage, String nodeId, boolean timedOut, String reason) {
+        super(stage + " to " + nodeId + " failed: " + reason);
+        this.nodeId = nodeId;
+        this.timedOut = timedOut;
+    }
+
+    public String nodeId() {
+        return nodeId;
+    }
+
+    /** True if the call ran out of time rather than failed. */
+    public boolean timedOut() {
+        return timedOut;
+    }
+}
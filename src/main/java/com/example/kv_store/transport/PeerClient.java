@@ -0,0 +1,81 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Node-to-node calls against a peer's internal API. Chosen with
+ * {@code kv.transport}: {@code http} (WebClient against /internal/kv, default)
+ * or {@code binary} (framed TCP, see {@link BinaryPeerClient}).
+ *
+ * Futures fail on transport errors; "not found" is an empty Optional.
+ * Write ops ask the peer to store the data as the key's primary and replicate
+ * it, or to forward them on if it no longer owns the key; backups only get
+ * data through {@link #replicate}.
+ * {@link #replicate} completes with the seq of the last op the backup applied.
+ */
+public interface PeerClient {
+
+    CompletableFuture<Optional<byte[]>> get(String nodeId, String key);
+
+    /** Read from a backup, which answers only if its copy is within {@code maxStalenessMs}. */
+    CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs);
+
+    CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl);
+
+    CompletableFuture<Void> delete(String nodeId, String key);
+
+    CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys);
+
+    CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl);
+
+    CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys);
+
+    /** Runs the op at the peer, which forwards it on if it is no longer the key's primary. */
+    CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op);
+
+    CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch);
+
+    /** The peer's own copy of the key and its version, primary or backup alike; no freshness check. */
+    CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key);
+
+    /**
+     * Asks the key's primary to queue its current copy of the key, or a
+     * delete, for {@code staleNodes}: owners a quorum read found behind it.
+     */
+    CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes);
+
+    /**
+     * One page of the peer's copy of a partition: up to {@code limit} entries
+     * after {@code afterKey} (null for the start) whose keys start with
+     * {@code prefix} (null for all), in key order.
+     */
+    CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey, String prefix, int limit);
+
+    /**
+     * {@link #get} of a hot key that {@code holder} will cache for up to
+     * {@code leaseMs}: the owner records the lease and sends {@code holder} an
+     * {@link #invalidate} before it acknowledges a write to the key.
+     */
+    CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs);
+
+    /** Drops the keys from the peer's near cache; sent by an owner to its lease holders. */
+    CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys);
+
+    /**
+     * Hashes from the peer's per-partition hash trees: node {@code nodes[i]} of
+     * partition {@code partitions[i]}, or {@code MerkleTrees.NOT_READY}.
+     */
+    CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes);
+
+    /** Key → entry hash for the peer's entries under the given leaves of a partition's tree. */
+    CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves);
+}
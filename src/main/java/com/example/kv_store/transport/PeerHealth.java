@@ -0,0 +1,153 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.metrics.HotPathMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Per-peer circuit breaker and hedging delay for forwarded calls.
+ *
+ * After {@code kv.forward.breaker.failure-threshold} failures in a row a
+ * peer's circuit opens and calls to it fail at once for
+ * {@code kv.forward.breaker.open-ms}. Then one call is let through as a probe:
+ * it closes the circuit if it succeeds and reopens it if it fails.
+ *
+ * The hedging delay for a peer is the {@code kv.forward.hedge.quantile} of its
+ * forwarded-GET latency, recomputed once a second from {@link HotPathMetrics}.
+ */
+@Component
+public class PeerHealth {
+
+    private static final long HEDGE_DELAY_REFRESH_MS = 1_000;
+    private static final long HEDGE_MIN_SAMPLES = 100;
+
+    private enum State { CLOSED, OPEN, HALF_OPEN }
+
+    private final HotPathMetrics metrics;
+    private final int failureThreshold;
+    private final long openMs;
+    private final boolean hedging;
+    private final double hedgeQuantile;
+    private final long hedgeMinDelayMs;
+    private final long hedgeInitialDelayMs;
+    private final Map<String, Peer> peers = new ConcurrentHashMap<>();
+
+    public PeerHealth(HotPathMetrics metrics,
+                      @Value("${kv.forward.breaker.failure-threshold:5}") int failureThreshold,
+                      @Value("${kv.forward.breaker.open-ms:2000}") long openMs,
+                      @Value("${kv.forward.hedge.enabled:true}") boolean hedging,
+                      @Value("${kv.forward.hedge.quantile:0.95}") double hedgeQuantile,
+                      @Value("${kv.forward.hedge.min-delay-ms:2}") long hedgeMinDelayMs,
+                      @Value("${kv.forward.hedge.initial-delay-ms:20}") long hedgeInitialDelayMs) {
+        this.metrics = metrics;
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openMs = openMs;
+        this.hedging = hedging;
+        this.hedgeQuantile = hedgeQuantile;
+        this.hedgeMinDelayMs = hedgeMinDelayMs;
+        this.hedgeInitialDelayMs = hedgeInitialDelayMs;
+    }
+
+    /** Whether a call to the peer may go out; lets one probe through once an open circuit has cooled down. */
+    public boolean allow(String nodeId) {
+        Peer p = peer(nodeId);
+        State s = p.state.get();
+        if (s == State.CLOSED) return true;
+        if (s == State.OPEN && System.currentTimeMillis() >= p.openUntil
+                && p.state.compareAndSet(State.OPEN, State.HALF_OPEN)) {
+            return true;
+        }
+        p.rejected.increment();
+        return false;
+    }
+
+    /** Whether a call to the peer would be refused right now; does not use up the probe. */
+    public boolean isOpen(String nodeId) {
+        Peer p = peers.get(nodeId);
+        if (p == null) return false;
+        State s = p.state.get();
+        return s == State.HALF_OPEN || (s == State.OPEN && System.currentTimeMillis() < p.openUntil);
+    }
+
+    public void onSuccess(String nodeId) {
+        Peer p = peer(nodeId);
+        p.successes.increment();
+        p.consecutiveFailures.set(0);
+        if (p.state.get() != State.CLOSED) p.state.set(State.CLOSED);
+    }
+
+    public void onFailure(String nodeId) {
+        Peer p = peer(nodeId);
+        p.failures.increment();
+        int failures = p.consecutiveFailures.incrementAndGet();
+        if (p.state.get() == State.HALF_OPEN || failures >= failureThreshold) {
+            p.openUntil = System.currentTimeMillis() + openMs;
+            if (p.state.getAndSet(State.OPEN) != State.OPEN) p.opened.increment();
+        }
+    }
+
+    public boolean hedging() {
+        return hedging;
+    }
+
+    /** How long to wait for the peer before hedging a read to a backup. */
+    public long hedgeDelayMillis(String nodeId) {
+        Peer p = peer(nodeId);
+        long now = System.currentTimeMillis();
+        if (now - p.hedgeDelayComputedAt >= HEDGE_DELAY_REFRESH_MS) {
+            long nanos = metrics.percentile("forward.get", nodeId, hedgeQuantile, HEDGE_MIN_SAMPLES);
+            p.hedgeDelayMs = nanos < 0 ? hedgeInitialDelayMs : Math.max(hedgeMinDelayMs, nanos / 1_000_000);
+            p.hedgeDelayComputedAt = now;
+        }
+        return p.hedgeDelayMs;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> byPeer = new TreeMap<>();
+        peers.forEach((nodeId, p) -> {
+            Map<String, Object> s = new LinkedHashMap<>();
+            s.put("state", p.state.get().name().toLowerCase());
+            s.put("successes", p.successes.sum());
+            s.put("failures", p.failures.sum());
+            s.put("consecutiveFailures", p.consecutiveFailures.get());
+            s.put("rejected", p.rejected.sum());
+            s.put("timesOpened", p.opened.sum());
+            s.put("hedgeDelayMs", p.hedgeDelayMs);
+            byPeer.put(nodeId, s);
+        });
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("failureThreshold", failureThreshold);
+        stats.put("openMs", openMs);
+        stats.put("hedging", hedging);
+        stats.put("peers", byPeer);
+        return stats;
+    }
+
+    private Peer peer(String nodeId) {
+        return peers.computeIfAbsent(nodeId, n -> new Peer(hedgeInitialDelayMs));
+    }
+
+    private static final class Peer {
+        final AtomicReference<State> state = new AtomicReference<>(State.CLOSED);
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final LongAdder successes = new LongAdder();
+        final LongAdder failures = new LongAdder();
+        final LongAdder rejected = new LongAdder();
+        final LongAdder opened = new LongAdder();
+        volatile long openUntil;
+        volatile long hedgeDelayMs;
+        volatile long hedgeDelayComputedAt;
+
+        Peer(long initialHedgeDelayMs) {
+            this.hedgeDelayMs = initialHedgeDelayMs;
+        }
+    }
+}
@@ -0,0 +1,96 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.service.VersionedValue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/** Routes frames to the same service methods as InternalKVController. */
+public record ServiceTransportHandler(DistributedKeyValueService service) implements TransportHandler {
+
+    @Override
+    public Optional<byte[]> get(String key) {
+        return service.internalGetLocalOnly(key);
+    }
+
+    @Override
+    public Optional<byte[]> getReplica(String key, long maxStalenessMs) {
+        return service.internalReplicaGet(key, maxStalenessMs).join();
+    }
+
+    @Override
+    public void put(String key, byte[] value, Duration ttl) {
+        service.internalPut(key, value, ttl);
+    }
+
+    @Override
+    public void delete(String key) {
+        service.internalDelete(key);
+    }
+
+    @Override
+    public Map<String, byte[]> getAll(Collection<String> keys) {
+        return service.internalGetAllLocalOnly(keys);
+    }
+
+    @Override
+    public void putAll(Map<String, byte[]> entries, Duration ttl) {
+        service.internalPutAll(entries, ttl);
+    }
+
+    @Override
+    public void deleteAll(Collection<String> keys) {
+        service.internalDeleteAll(keys);
+    }
+
+    @Override
+    public AtomicResult atomic(AtomicOp op) {
+        return service.internalAtomic(op).join();
+    }
+
+    @Override
+    public long replicate(ReplicationBatch batch) {
+        return service.internalApplyReplication(batch);
+    }
+
+    @Override
+    public Optional<VersionedValue> getVersioned(String key) {
+        return service.internalGetVersioned(key);
+    }
+
+    @Override
+    public void readRepair(String key, Collection<String> staleNodes) {
+        service.internalReadRepair(key, staleNodes);
+    }
+
+    @Override
+    public Map<String, byte[]> scan(int partitionId, String afterKey, String prefix, int limit) {
+        return service.internalScanLocalOnly(partitionId, afterKey, prefix, limit);
+    }
+
+    @Override
+    public Optional<byte[]> getLeased(String key, String holder, long leaseMs) {
+        return service.internalLeasedGet(key, holder, leaseMs).join();
+    }
+
+    @Override
+    public void invalidate(Collection<String> keys) {
+        service.internalInvalidate(keys);
+    }
+
+    @Override
+    public long[] merkleHashes(int[] partitions, int[] nodes) {
+        return service.internalMerkleHashes(partitions, nodes);
+    }
+
+    @Override
+    public Map<String, Long> merkleEntries(int partitionId, int[] leaves) {
+        return service.internalMerkleEntries(partitionId, leaves);
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+
+import java.time.Duration;
+import java.util.Collection;
+import java.util.Map;
+import java.util.Optional;
+
+/** Server side of the binary transport; mirrors the /internal/kv endpoints. */
+public interface TransportHandler {
+
+    Optional<byte[]> get(String key);
+
+    Optional<byte[]> getReplica(String key, long maxStalenessMs);
+
+    void put(String key, byte[] value, Duration ttl);
+
+    void delete(String key);
+
+    Map<String, byte[]> getAll(Collection<String> keys);
+
+    void putAll(Map<String, byte[]> entries, Duration ttl);
+
+    void deleteAll(Collection<String> keys);
+
+    AtomicResult atomic(AtomicOp op);
+
+    /** Applies a replication batch and returns the seq of the last op applied. */
+    long replicate(ReplicationBatch batch);
+
+    Optional<VersionedValue> getVersioned(String key);
+
+    void readRepair(String key, Collection<String> staleNodes);
+
+    /** A page of the local copy of a partition, in key order; see {@link PeerClient#scan}. */
+    Map<String, byte[]> scan(int partitionId, String afterKey, String prefix, int limit);
+
+    Optional<byte[]> getLeased(String key, String holder, long leaseMs);
+
+    void invalidate(Collection<String> keys);
+
+    long[] merkleHashes(int[] partitions, int[] nodes);
+
+    Map<String, Long> merkleEntries(int partitionId, int[] leaves);
+}
@@ -0,0 +1,99 @@
+package com.example.kv_store.cache;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class NearCacheTest {
+
+    private static final int VALUE_BYTES = 100;
+    private static final int WEIGHT = 64 + 2 * 2 + VALUE_BYTES; // see NearCache.weigh, two-char keys
+
+    @Test
+    void callersGetTheirOwnCopy() {
+        NearCache cache = new NearCache(true, 1 << 20, 1, 1024);
+        byte[] stored = "value".getBytes();
+        cache.putIfUnchanged("k", stored, null, cache.stamp("k"));
+        stored[0] = 'X';
+
+        byte[] read = cache.get("k").orElseThrow();
+        assertArrayEquals("value".getBytes(), read);
+        read[0] = 'Y';
+        assertArrayEquals("value".getBytes(), cache.get("k").orElseThrow());
+    }
+
+    @Test
+    void fullCacheAdmitsOnlyKeysReadMoreOftenThanTheVictim() {
+        NearCache cache = new NearCache(true, 4 * WEIGHT, 1, 1024);
+        for (int i = 0; i < 4; i++) {
+            put(cache, "k" + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 4; i++) {
+                assertTrue(cache.get("k" + i).isPresent());
+            }
+        }
+
+        put(cache, "k4"); // never read: would displace k0
+        assertTrue(cache.get("k0").isPresent());
+        assertEquals(1L, cache.stats().get("rejections"));
+
+        for (int i = 0; i < 10; i++) {
+            cache.get("k5");
+        }
+        put(cache, "k5");
+        assertTrue(cache.get("k5").isPresent());
+        Map<String, Object> stats = cache.stats();
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(4L, stats.get("entries"));
+        assertTrue((Long) stats.get("bytes") <= 4 * WEIGHT);
+        assertTrue(cache.get("k1").isEmpty(), "least recently used of the hot set");
+    }
+
+    @Test
+    void expiredEntriesAreMisses() throws InterruptedException {
+        NearCache cache = new NearCache(true, 1 << 20, 1, 1024);
+        cache.putIfUnchanged("k", "v".getBytes(), System.currentTimeMillis() + 50, cache.stamp("k"));
+        assertTrue(cache.get("k").isPresent());
+        Thread.sleep(80);
+        assertTrue(cache.get("k").isEmpty());
+        assertEquals(1L, cache.stats().get("expirations"));
+
+        cache.putIfUnchanged("gone", "v".getBytes(), System.currentTimeMillis() - 1, cache.stamp("gone"));
+        assertTrue(cache.get("gone").isEmpty(), "already expired, never cached");
+    }
+
+    @Test
+    void readThatRacedAWriteIsNotCached() {
+        NearCache cache = new NearCache(true, 1 << 20, 1, 1024);
+        long stamp = cache.stamp("k");
+        cache.invalidate("k"); // a write lands while the reader is at the store
+        cache.putIfUnchanged("k", "old".getBytes(), null, stamp);
+        assertTrue(cache.get("k").isEmpty());
+
+        cache.putIfUnchanged("k", "new".getBytes(), null, cache.stamp("k"));
+        assertArrayEquals("new".getBytes(), cache.get("k").orElseThrow());
+    }
+
+    @Test
+    void sketchSaturatesAndAges() {
+        FrequencySketch sketch = new FrequencySketch(64);
+        for (int i = 0; i < 20; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"), "4-bit counters");
+        assertEquals(0, sketch.frequency("cold"));
+
+        for (int i = 0; i < 700; i++) { // 640 increments (10 x 64 counters) trigger a halving
+            sketch.increment("other-" + i);
+        }
+        int aged = sketch.frequency("hot");
+        assertTrue(aged >= 7 && aged < 15, "halved: " + aged);
+    }
+
+    private static void put(NearCache cache, String key) {
+        cache.putIfUnchanged(key, new byte[VALUE_BYTES], null, cache.stamp(key));
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.kv_store.cache;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.storage.InMemoryStorageEngine;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PartitionBloomFiltersTest {
+
+    private final AffinityService affinity =
+            new AffinityService("node1", 8, "node1", 0, "murmur3", "ring", new StandardEnvironment());
+    private final InMemoryStorageEngine storage = new InMemoryStorageEngine();
+    private final PartitionBloomFilters filters = new PartitionBloomFilters(affinity, storage, false, 10, 0.05, 5_000);
+
+    @Test
+    void storedKeysAlwaysPassAndMostAbsentKeysAreRuledOut() {
+        assertTrue(filters.mightContain("anything"), "no filter yet");
+        for (int i = 0; i < 20_000; i++) {
+            save("key-" + i);
+        }
+        filters.maintain();
+        assertTrue((Long) filters.stats().get("scanRestarts") > 0, "2500 keys a partition outgrow the first sizing");
+
+        save("late");
+        filters.add("late");
+        for (int i = 0; i < 20_000; i++) {
+            assertTrue(filters.mightContain("key-" + i));
+        }
+        assertTrue(filters.mightContain("late"));
+
+        int ruledOut = 0;
+        for (int i = 0; i < 20_000; i++) {
+            if (!filters.mightContain("missing-" + i)) ruledOut++;
+        }
+        assertTrue(ruledOut > 19_500, "about 1% false positives at 10 bits per key: " + ruledOut);
+        Map<String, Object> stats = filters.stats();
+        assertEquals(8, stats.get("partitionsReady"));
+        assertEquals((long) ruledOut, stats.get("definiteMisses"));
+        assertTrue((Long) stats.get("memoryBytes") > 0);
+    }
+
+    @Test
+    void filterFilledByChurnIsRebuilt() {
+        filters.maintain();
+        for (int i = 0; i < 50_000; i++) {
+            String key = "churn-" + i;
+            save(key);
+            filters.add(key);
+            storage.deleteById(key); // bits stay set
+        }
+        save("kept");
+        filters.add("kept");
+        filters.maintain();
+        Map<String, Object> stats = filters.stats();
+        assertEquals(8L, stats.get("rebuilds"));
+        assertTrue((Double) stats.get("estimatedFpp") < 0.01, stats.toString());
+        assertTrue(filters.mightContain("kept"));
+
+        filters.maintain();
+        assertEquals(16L, filters.stats().get("rebuilds"), "sized from the stale fill, so shrunk on the next check");
+        assertTrue(filters.mightContain("kept"));
+    }
+
+    private void save(String key) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue(new byte[]{1});
+        e.setPartitionId(affinity.partition(key));
+        storage.save(e);
+    }
+}
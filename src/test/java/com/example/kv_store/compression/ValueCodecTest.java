@@ -0,0 +1,47 @@
+package com.example.kv_store.compression;
+
+import com.example.kv_store.storage.StoredValue;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.InflaterOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueCodecTest {
+
+    private static final byte[] JSON = "{\"user\":\"someone\",\"tags\":[\"a\",\"b\",\"c\"]}".repeat(50)
+            .getBytes(StandardCharsets.UTF_8);
+
+    @Test
+    void compressesLargeValuesAndRoundTrips() throws Exception {
+        ValueCodec codec = new ValueCodec(true, 512, 1);
+        byte[] stored = codec.encode(JSON);
+
+        assertTrue(stored.length < JSON.length / 4, "JSON should compress well");
+        assertArrayEquals(JSON, codec.decode(stored));
+
+        // the payload after the header is a plain zlib stream, usable as Content-Encoding: deflate
+        StoredValue payload = codec.deflatedPayload(StoredValue.of(stored)).orElseThrow();
+        ByteArrayOutputStream inflated = new ByteArrayOutputStream();
+        try (InflaterOutputStream out = new InflaterOutputStream(inflated)) {
+            out.write(payload.toByteArray());
+        }
+        assertArrayEquals(JSON, inflated.toByteArray());
+    }
+
+    @Test
+    void smallAndRawValuesStayReadable() {
+        ValueCodec codec = new ValueCodec(true, 512, 1);
+        byte[] small = "tiny".getBytes(StandardCharsets.UTF_8);
+        assertSame(small, codec.encode(small));
+        assertSame(small, codec.decode(small));
+
+        // a raw value that looks like a header is escaped, not misread
+        byte[] lookalike = {0x00, 'K', 'V', 1, 0, 0, 0, 1, 42};
+        byte[] stored = new ValueCodec(false, 512, 1).encode(lookalike);
+        assertArrayEquals(lookalike, codec.decode(stored));
+        assertTrue(codec.deflatedPayload(StoredValue.of(stored)).isEmpty());
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.kv_store.controller;
+
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.load.InProcessCluster;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class KVControllerTest {
+
+    @Test
+    void acceptEncodingIsReadWithItsQValues() {
+        assertTrue(KVController.acceptsDeflate("deflate"));
+        assertTrue(KVController.acceptsDeflate("gzip, Deflate;q=0.5"));
+        assertTrue(KVController.acceptsDeflate("*"));
+        assertFalse(KVController.acceptsDeflate(null));
+        assertFalse(KVController.acceptsDeflate("gzip, br"));
+        assertFalse(KVController.acceptsDeflate("deflate;q=0"));
+        assertFalse(KVController.acceptsDeflate("deflate; q=0.000"));
+        assertFalse(KVController.acceptsDeflate("*, deflate;q=0"), "an explicit refusal wins over *");
+        assertFalse(KVController.acceptsDeflate("gzip, *;q=0"));
+        assertFalse(KVController.acceptsDeflate("x-deflate-ish"));
+    }
+
+    @Test
+    void plainResponsesVaryOnAcceptEncodingToo() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(1, 0, 4)) {
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            node.service().put("a", "1".getBytes(), null).join();
+            KVController controller = new KVController(node.service(), node.affinity(), new ValueCodec(false, 512, 1),
+                    new JsonMapper(), 1_000, 64 << 20);
+
+            ResponseEntity<Resource> response = controller.get("a", null, null, "deflate;q=0").join();
+            assertNull(response.getHeaders().getFirst(HttpHeaders.CONTENT_ENCODING));
+            assertEquals(List.of(HttpHeaders.ACCEPT_ENCODING), response.getHeaders().getVary());
+            assertArrayEquals("1".getBytes(), response.getBody().getContentAsByteArray());
+        }
+    }
+}
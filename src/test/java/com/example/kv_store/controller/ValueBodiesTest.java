@@ -0,0 +1,57 @@
+package com.example.kv_store.controller;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.function.Executable;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ValueBodiesTest {
+
+    private static final int MAX = 8;
+
+    @Test
+    void declaredOversizeBodyIsRejectedBeforeItIsRead() {
+        InputStream unread = new InputStream() {
+            @Override
+            public int read() {
+                throw new AssertionError("body read");
+            }
+        };
+        assertStatus(HttpStatus.CONTENT_TOO_LARGE, () -> ValueBodies.read(unread, MAX + 1, MAX));
+    }
+
+    @Test
+    void undeclaredBodyIsRejectedOneBytePastTheLimit() throws Exception {
+        assertArrayEquals(new byte[MAX], ValueBodies.read(new ByteArrayInputStream(new byte[MAX]), -1, MAX));
+        assertStatus(HttpStatus.CONTENT_TOO_LARGE,
+                () -> ValueBodies.read(new ByteArrayInputStream(new byte[MAX + 1]), -1, MAX));
+    }
+
+    @Test
+    void bodyShorterThanItsContentLengthIsABadRequest() throws Exception {
+        assertArrayEquals(new byte[MAX], ValueBodies.read(new ByteArrayInputStream(new byte[MAX]), MAX, MAX));
+        assertStatus(HttpStatus.BAD_REQUEST, () -> ValueBodies.read(new ByteArrayInputStream(new byte[2]), 3, MAX));
+    }
+
+    @Test
+    void batchIsRejectedIfAnyValueIsOversize() {
+        Map<String, byte[]> entries = new HashMap<>();
+        entries.put("a", new byte[MAX]);
+        entries.put("deleted", null);
+        ValueBodies.checkSizes(entries, MAX);
+        entries.put("b", new byte[MAX + 1]);
+        assertStatus(HttpStatus.CONTENT_TOO_LARGE, () -> ValueBodies.checkSizes(entries, MAX));
+    }
+
+    private static void assertStatus(HttpStatus status, Executable call) {
+        ResponseStatusException e = assertThrows(ResponseStatusException.class, call);
+        assertEquals(status, e.getStatusCode());
+    }
+}
@@ -0,0 +1,58 @@
+package com.example.kv_store.expiry;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.load.InProcessCluster;
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ExpiryServiceTest {
+
+    @Test
+    void sweepReadsOnWhilePagesComeBackFullOfExpiredKeys() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(1, 0, 4)) {
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            for (int i = 0; i < 1_000; i++) {
+                node.storage().save(entity(node, "key-" + i, LocalDateTime.now().minusMinutes(1)));
+            }
+            // batches of 50, one sweep 300ms in
+            ExpiryService expiry = new ExpiryService(node.affinity(), node.service(), node.storage(),
+                    true, 100, 600, 100_000, 50, 300, 5_000);
+            expiry.start();
+            try {
+                Thread.sleep(450);
+                Map<String, Object> stats = expiry.stats();
+                assertEquals(1_000L, stats.get("reclaimed"), stats.toString());
+                assertEquals(0L, stats.get("backlog"));
+            } finally {
+                expiry.shutdown();
+            }
+        }
+    }
+
+    @Test
+    void onlyKeysActuallyDeletedAreCounted() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(1, 0, 4)) {
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            node.storage().save(entity(node, "expired", LocalDateTime.now().minusSeconds(1)));
+            node.storage().save(entity(node, "rewritten", null));
+
+            assertEquals(1, node.service().expireKeys(List.of("expired", "rewritten", "missing")));
+            assertTrue(node.storage().findValid("rewritten").isPresent());
+            assertEquals(0, node.service().expireKeys(List.of("expired")), "already reclaimed");
+        }
+    }
+
+    private static KeyValueEntity entity(InProcessCluster.Node node, String key, LocalDateTime expireAt) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue("v".getBytes());
+        e.setPartitionId(node.affinity().partition(key));
+        e.setExpireAt(expireAt);
+        return e;
+    }
+}
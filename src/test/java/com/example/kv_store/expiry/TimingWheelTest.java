@@ -0,0 +1,36 @@
+package com.example.kv_store.expiry;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    @Test
+    void firesKeysOnceTheirTickHasPassed() {
+        TimingWheel wheel = new TimingWheel(100, 10, 100, 1_000);
+
+        assertTrue(wheel.schedule("a", 1_050));
+        assertTrue(wheel.schedule("b", 1_250));
+        assertFalse(wheel.schedule("a", 1_050), "already scheduled");
+        assertFalse(wheel.schedule("far", 2_100), "beyond the 1s horizon");
+
+        assertEquals(List.of(), wheel.advance(1_099));
+        assertEquals(List.of("a"), wheel.advance(1_100));
+        assertEquals(List.of("b"), wheel.advance(1_300));
+        assertEquals(0, wheel.size());
+    }
+
+    @Test
+    void lateWheelDrainsEverythingAndPastKeysFireNext() {
+        TimingWheel wheel = new TimingWheel(100, 10, 100, 1_000);
+        wheel.schedule("a", 1_200);
+        wheel.schedule("b", 1_900);
+
+        assertEquals(List.of("a", "b"), wheel.advance(5_000));
+        assertTrue(wheel.schedule("overdue", 4_000));
+        assertEquals(List.of("overdue"), wheel.advance(5_100));
+    }
+}
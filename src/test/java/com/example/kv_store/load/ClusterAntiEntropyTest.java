@@ -0,0 +1,95 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A backup that comes back with a stale copy (entries lost, overwritten or
+ * left behind) is brought back in line by its primaries' hash-tree
+ * comparison, and only the keys that differ are sent.
+ */
+class ClusterAntiEntropyTest {
+
+    @Test
+    void primaryRepairsOnlyTheKeysABackupGotWrong() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 1, 16)) {
+            List<InProcessCluster.Node> nodes = cluster.nodes();
+            Map<String, byte[]> expected = new HashMap<>();
+            for (int i = 0; i < 2_000; i++) {
+                expected.put("key-" + i, ("value-" + i).getBytes());
+            }
+            nodes.get(0).service().putAll(expected, null).join();
+            awaitReplicated(cluster);
+
+            roundOnAll(nodes); // builds the trees
+            roundOnAll(nodes);
+            for (InProcessCluster.Node node : nodes) {
+                Map<String, Object> stats = node.antiEntropy().stats();
+                assertEquals(0L, stats.get("partitionsRepaired"), node.id() + " " + stats);
+                assertTrue((Long) stats.get("partitionsInSync") >= 8, "8 of 16 partitions are primary on each node");
+            }
+
+            // node2 restarts with a stale copy of the partitions it backs up
+            InProcessCluster.Node backup = nodes.get(1);
+            int lost = 0;
+            int changed = 0;
+            for (String key : expected.keySet()) {
+                if (backup.affinity().isPrimaryOwner(key)) continue;
+                if (lost < 20) {
+                    backup.storage().deleteById(key);
+                    lost++;
+                } else if (changed < 10) {
+                    backup.storage().save(entity(backup, key, "stale".getBytes()));
+                    changed++;
+                }
+            }
+            String stray = "stray-0";
+            for (int i = 1; backup.affinity().isPrimaryOwner(stray); i++) stray = "stray-" + i;
+            backup.storage().save(entity(backup, stray, "deleted long ago".getBytes()));
+            for (int p = 0; p < 16; p++) {
+                backup.trees().drop(p);
+            }
+
+            backup.antiEntropy().runRound();
+            nodes.get(0).antiEntropy().runRound();
+            awaitReplicated(cluster);
+
+            assertEquals(31L, nodes.get(0).antiEntropy().stats().get("keysRepaired"));
+            for (Map.Entry<String, byte[]> e : expected.entrySet()) {
+                assertArrayEquals(e.getValue(), backup.storage().findValid(e.getKey()).orElseThrow().getValue(), e.getKey());
+            }
+            assertTrue(backup.storage().findValid(stray).isEmpty());
+
+            long repaired = (Long) nodes.get(0).antiEntropy().stats().get("partitionsRepaired");
+            nodes.get(0).antiEntropy().runRound();
+            assertEquals(repaired, nodes.get(0).antiEntropy().stats().get("partitionsRepaired"), "in sync again");
+        }
+    }
+
+    private static void roundOnAll(List<InProcessCluster.Node> nodes) throws InterruptedException {
+        for (InProcessCluster.Node node : nodes) {
+            node.antiEntropy().runRound();
+        }
+    }
+
+    private static void awaitReplicated(InProcessCluster cluster) throws InterruptedException {
+        for (int i = 0; i < 500 && cluster.replicationLagOps() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cluster.replicationLagOps());
+    }
+
+    private static KeyValueEntity entity(InProcessCluster.Node node, String key, byte[] value) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue(value);
+        e.setPartitionId(node.affinity().partition(key));
+        return e;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.DistributedKeyValueService;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Increments racing through every node lose no update, compare-and-set only
+ * succeeds against the version it read, and backups end up with the primary's
+ * value and version.
+ */
+class ClusterAtomicOpsTest {
+
+    @Test
+    void concurrentIncrementsThroughAllNodesAddUp() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 1, 16);
+             ExecutorService pool = Executors.newFixedThreadPool(12)) {
+            List<InProcessCluster.Node> nodes = cluster.nodes();
+            List<Future<?>> workers = new ArrayList<>();
+            for (int t = 0; t < 12; t++) {
+                DistributedKeyValueService service = nodes.get(t % nodes.size()).service();
+                workers.add(pool.submit(() -> {
+                    for (int i = 0; i < 100; i++) {
+                        assertTrue(service.atomic(AtomicOp.increment("counter", 1)).join().applied());
+                    }
+                }));
+            }
+            for (Future<?> w : workers) {
+                w.get();
+            }
+
+            AtomicResult read = nodes.get(2).service().atomic(AtomicOp.read("counter")).join();
+            assertArrayEquals("1200".getBytes(), read.value());
+            assertArrayEquals("1200".getBytes(), nodes.get(1).service().get("counter").join().orElseThrow());
+
+            awaitReplicated(cluster);
+            for (InProcessCluster.Node node : nodes) {
+                KeyValueEntity copy = node.storage().findValid("counter").orElse(null);
+                if (copy != null) assertEquals(read.version(), copy.getVersion(), node.id() + " has the primary's version");
+            }
+        }
+    }
+
+    @Test
+    void compareAndSetAppendAndIncrementChecks() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 1, 16)) {
+            DistributedKeyValueService a = cluster.nodes().get(0).service();
+            DistributedKeyValueService b = cluster.nodes().get(1).service();
+
+            AtomicResult created = a.atomic(AtomicOp.compareAndSet("doc", 0, "v1".getBytes(), null)).join();
+            assertTrue(created.applied());
+            assertEquals(AtomicResult.Status.VERSION_MISMATCH,
+                    b.atomic(AtomicOp.compareAndSet("doc", 0, "v1'".getBytes(), null)).join().status(),
+                    "0 only matches an absent key");
+
+            AtomicResult updated = b.atomic(AtomicOp.compareAndSet("doc", created.version(), "v2".getBytes(), null)).join();
+            assertTrue(updated.applied());
+            assertTrue(updated.version() > created.version());
+            AtomicResult stale = a.atomic(AtomicOp.compareAndSet("doc", created.version(), "v3".getBytes(), null)).join();
+            assertEquals(AtomicResult.Status.VERSION_MISMATCH, stale.status());
+            assertEquals(updated.version(), stale.version());
+            assertArrayEquals("v2".getBytes(), stale.value());
+
+            a.put("doc", "plain".getBytes(), null).join();
+            assertFalse(b.atomic(AtomicOp.compareAndSet("doc", updated.version(), "v3".getBytes(), null)).join().applied(),
+                    "a plain put moves the version on too");
+
+            AtomicResult appended = b.atomic(AtomicOp.append("doc", "+tail".getBytes())).join();
+            assertArrayEquals("plain+tail".getBytes(), appended.value());
+            assertEquals(AtomicResult.Status.NOT_A_NUMBER, a.atomic(AtomicOp.increment("doc", 1)).join().status());
+            assertArrayEquals("plain+tail".getBytes(), a.get("doc").join().orElseThrow());
+        }
+    }
+
+    private static void awaitReplicated(InProcessCluster cluster) throws InterruptedException {
+        for (int i = 0; i < 500 && cluster.replicationLagOps() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cluster.replicationLagOps());
+    }
+}
@@ -0,0 +1,82 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.transport.PeerCallException;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Batch calls go out as one forward per remote owner while the local share
+ * is served in place; a forward to an owner that is gone fails the returned
+ * future instead of blocking the caller.
+ */
+class ClusterBatchTest {
+
+    @Test
+    void batchesAreGroupedIntoOneCallPerRemoteOwner() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 0, 16)) {
+            InProcessCluster.Node coordinator = cluster.nodes().get(0);
+            Map<String, byte[]> entries = new HashMap<>();
+            for (int i = 0; i < 300; i++) {
+                entries.put("key-" + i, ("value-" + i).getBytes());
+            }
+
+            coordinator.service().putAll(entries, null).join();
+            assertEquals(2, cluster.forwardedCalls(), "one putAll per other node");
+            for (InProcessCluster.Node node : cluster.nodes()) {
+                long owned = entries.keySet().stream().filter(node.affinity()::isPrimaryOwner).count();
+                assertTrue(owned > 0, node.id() + " owns some of the keys");
+                assertEquals(owned, node.storage().findAllValid(entries.keySet()).size(), node.id());
+            }
+
+            List<String> keys = new ArrayList<>(entries.keySet());
+            keys.add("missing");
+            Map<String, byte[]> read = coordinator.service().getAll(keys).join();
+            assertEquals(4, cluster.forwardedCalls());
+            assertEquals(300, read.size());
+            entries.forEach((k, v) -> assertArrayEquals(v, read.get(k), k));
+
+            coordinator.service().deleteAll(keys.subList(0, 150)).join();
+            assertEquals(6, cluster.forwardedCalls());
+            assertEquals(150, coordinator.service().getAll(keys).join().size());
+        }
+    }
+
+    @Test
+    void forwardToAStoppedOwnerFailsTheFuture() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 0, 16)) {
+            InProcessCluster.Node coordinator = cluster.nodes().get(0);
+            InProcessCluster.Node gone = cluster.nodes().get(2);
+            String key = "key-0";
+            for (int i = 1; !gone.affinity().isPrimaryOwner(key); i++) key = "key-" + i;
+            coordinator.service().put(key, "v".getBytes(), null).join();
+            cluster.stop(gone.id());
+
+            String remoteKey = key;
+            CompletableFuture<Optional<byte[]>> get = assertTimeoutPreemptively(Duration.ofMillis(500),
+                    () -> coordinator.service().get(remoteKey));
+            CompletionException e = assertThrows(CompletionException.class, get::join);
+            PeerCallException failure = assertInstanceOf(PeerCallException.class, e.getCause());
+            assertEquals(gone.id(), failure.nodeId());
+
+            Map<String, byte[]> batch = new HashMap<>();
+            for (int i = 0; i < 30; i++) {
+                batch.put("batch-" + i, "v".getBytes());
+            }
+            CompletableFuture<Void> putAll = coordinator.service().putAll(batch, null);
+            e = assertThrows(CompletionException.class, putAll::join);
+            assertInstanceOf(PeerCallException.class, e.getCause());
+            batch.keySet().stream().filter(coordinator.affinity()::isPrimaryOwner).forEach(k ->
+                    assertTrue(coordinator.storage().findValid(k).isPresent(), "local share is stored: " + k));
+        }
+    }
+}
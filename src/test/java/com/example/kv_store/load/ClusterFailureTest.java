@@ -0,0 +1,158 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.controller.KVController;
+import com.example.kv_store.service.ReadConsistency;
+import com.example.kv_store.transport.Deadline;
+import com.example.kv_store.transport.PeerCallException;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * What clients see when peers fail: a write quorum that cannot be met, a read
+ * quorum short of owners, an open circuit and an unreachable lease holder all
+ * end the request promptly, with the status the controller maps them to.
+ */
+class ClusterFailureTest {
+
+    @Test
+    void writeSpilledByTheOnlyBackupFailsItsQuorumAt503() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 1, 8, 2, 1)) {
+            InProcessCluster.Node primary = cluster.nodes().get(0);
+            InProcessCluster.Node backup = cluster.nodes().get(1);
+            Map<String, byte[]> entries = new HashMap<>();
+            for (int i = 0; entries.size() < 11_000; i++) {
+                if (primary.affinity().isPrimaryOwner("key-" + i)) entries.put("key-" + i, "v".getBytes());
+            }
+
+            // more ops than the backup's queue holds while it is not acking
+            cluster.holdReplication(backup.id());
+            PeerCallException e = failure(primary.service().putAll(entries, null));
+            assertEquals(backup.id(), e.nodeId());
+            assertTrue(e.getMessage().contains("spilled"), e.getMessage());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status(primary, e));
+            assertEquals(1L, primary.service().quorumStats().get("writesFailed"));
+            Map<?, ?> stats = (Map<?, ?>) ((Map<?, ?>) primary.replication().stats().get("backups")).get(backup.id());
+            assertTrue((Long) stats.get("spilled") > 0, stats.toString());
+            assertFalse(primary.replication().dirtyPartitions().get(backup.id()).isEmpty(), "left for anti-entropy");
+            cluster.releaseReplication(backup.id());
+        }
+    }
+
+    @Test
+    void writeQuorumNotMetInTimeFailsAt504() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 1, 8, 2, 1)) {
+            InProcessCluster.Node primary = cluster.nodes().get(0);
+            InProcessCluster.Node backup = cluster.nodes().get(1);
+            String key = ownedKey(primary);
+
+            cluster.holdReplication(backup.id());
+            long start = System.currentTimeMillis();
+            PeerCallException e = failure(Deadline.within(start + 300,
+                    () -> primary.service().put(key, "v".getBytes(), null)));
+            assertTrue(System.currentTimeMillis() - start < 2_000, "bounded by the request's deadline");
+            assertTrue(e.timedOut());
+            assertEquals(HttpStatus.GATEWAY_TIMEOUT, status(primary, e));
+            assertTrue(primary.storage().findValid(key).isPresent(), "stored on the primary all the same");
+            cluster.releaseReplication(backup.id());
+        }
+    }
+
+    @Test
+    void readQuorumWithAnOwnerDownFailsAt503() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 1, 8, 1, 2)) {
+            InProcessCluster.Node primary = cluster.nodes().get(0);
+            String key = ownedKey(primary);
+            primary.service().put(key, "v".getBytes(), null).join();
+
+            cluster.stop(cluster.nodes().get(1).id());
+            PeerCallException e = failure(primary.service().get(key, ReadConsistency.QUORUM, 0));
+            assertEquals("node2", e.nodeId());
+            assertFalse(e.timedOut());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status(primary, e));
+            assertArrayEquals("v".getBytes(), primary.service().get(key, ReadConsistency.STRONG, 0).join().orElseThrow(),
+                    "a single-copy read still works");
+        }
+    }
+
+    @Test
+    void circuitOpensOnAnUnreachableOwnerAndFailsFastWithoutCallingIt() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 0, 8)) {
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            InProcessCluster.Node down = cluster.nodes().get(1);
+            cluster.stop(down.id());
+
+            int failures = 0;
+            long called = cluster.forwardedCalls();
+            for (int i = 0; failures < 5; i++) {
+                if (node.affinity().isPrimaryOwner("key-" + i)) continue;
+                PeerCallException e = failure(node.service().get("key-" + i));
+                assertFalse(e.getMessage().contains("circuit open"), e.getMessage());
+                failures++;
+            }
+            assertEquals(called + 5, cluster.forwardedCalls());
+
+            String key = "key-0";
+            for (int i = 1; node.affinity().isPrimaryOwner(key); i++) key = "key-" + i;
+            PeerCallException e = failure(node.service().put(key, "v".getBytes(), null));
+            assertTrue(e.getMessage().contains("circuit open"), e.getMessage());
+            assertEquals(down.id(), e.nodeId());
+            assertEquals(HttpStatus.SERVICE_UNAVAILABLE, status(node, e));
+            assertEquals(called + 5, cluster.forwardedCalls(), "refused before reaching the transport");
+        }
+    }
+
+    @Test
+    void writeIsNotHeldUpByALeaseHolderThatCannotBeReached() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 0, 16)) {
+            List<InProcessCluster.Node> nodes = cluster.nodes();
+            InProcessCluster.Node owner = nodes.stream()
+                    .filter(n -> n.affinity().isPrimaryOwner("viral")).findFirst().orElseThrow();
+            InProcessCluster.Node reader = nodes.stream().filter(n -> n != owner).findFirst().orElseThrow();
+            owner.service().put("viral", "v1".getBytes(), null).join();
+            for (int i = 0; i < 2_000; i++) {
+                reader.service().get("viral").join();
+            }
+            assertEquals(Map.of("viral", List.of(reader.id())), owner.service().hotKeyStats().get("activeLeases"),
+                    "the reader caches it under a lease");
+
+            cluster.stop(reader.id());
+            long start = System.currentTimeMillis();
+            owner.service().put("viral", "v2".getBytes(), null).join();
+            assertTrue(System.currentTimeMillis() - start < 2_000, "the failed revoke is not waited out");
+            assertEquals(1L, owner.service().hotKeyStats().get("leasesRevoked"));
+            assertEquals(Map.of(), owner.service().hotKeyStats().get("activeLeases"));
+
+            Thread.sleep(300); // the reader's copy lapses with its lease
+            assertArrayEquals("v2".getBytes(), reader.service().get("viral").join().orElseThrow());
+        }
+    }
+
+    private static String ownedKey(InProcessCluster.Node node) {
+        String key = "key-0";
+        for (int i = 1; !node.affinity().isPrimaryOwner(key); i++) key = "key-" + i;
+        return key;
+    }
+
+    private static PeerCallException failure(CompletableFuture<?> call) {
+        CompletionException e = assertThrows(CompletionException.class, () -> call.orTimeout(5, TimeUnit.SECONDS).join());
+        return assertInstanceOf(PeerCallException.class, e.getCause(), String.valueOf(e.getCause()));
+    }
+
+    /** The status KVController answers the failure with. */
+    private static HttpStatus status(InProcessCluster.Node node, PeerCallException e) {
+        KVController controller = new KVController(node.service(), node.affinity(), new ValueCodec(false, 512, 1),
+                new JsonMapper(), 1_000, 64 << 20);
+        return HttpStatus.valueOf(controller.peerCallFailed(e).getStatusCode().value());
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.service.DistributedKeyValueService;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A key read hard enough through a node that does not own it is cached there
+ * under a lease: further reads stop reaching the owner, and a write through
+ * any node is still seen by the next read.
+ */
+class ClusterHotKeyTest {
+
+    @Test
+    void hotKeyIsCachedOnNonOwnerAndInvalidatedOnWrite() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 0, 16)) {
+            List<InProcessCluster.Node> nodes = cluster.nodes();
+            nodes.get(0).service().put("viral", "v1".getBytes(), null).join();
+
+            InProcessCluster.Node reader = null;
+            String primary = null;
+            for (InProcessCluster.Node node : nodes) {
+                for (int i = 0; i < 2_000; i++) {
+                    node.service().get("viral").join();
+                }
+                Map<String, Object> key = hotKey(node.service());
+                assertNotNull(key, node.id() + " should see the key as hot");
+                primary = (String) key.get("primary");
+                if ("leased-cache".equals(key.get("mitigation"))) reader = node;
+            }
+            assertNotNull(reader, "with no backups two of three nodes do not own the key");
+
+            long forwarded = cluster.forwardedCalls();
+            for (int i = 0; i < 1_000; i++) {
+                assertArrayEquals("v1".getBytes(), reader.service().get("viral").join().orElseThrow());
+            }
+            assertTrue(cluster.forwardedCalls() - forwarded < 50, "reads are served from the leased copy");
+
+            // through the owner, then through the third node
+            String owner = primary;
+            DistributedKeyValueService ownerService = nodes.stream()
+                    .filter(n -> n.id().equals(owner)).findFirst().orElseThrow().service();
+            ownerService.put("viral", "v2".getBytes(), null).join();
+            assertArrayEquals("v2".getBytes(), reader.service().get("viral").join().orElseThrow());
+
+            String readerId = reader.id();
+            DistributedKeyValueService other = nodes.stream()
+                    .filter(n -> !n.id().equals(owner) && !n.id().equals(readerId)).findFirst().orElseThrow().service();
+            other.put("viral", "v3".getBytes(), null).join();
+            assertArrayEquals("v3".getBytes(), reader.service().get("viral").join().orElseThrow());
+
+            other.delete("viral").join();
+            assertTrue(reader.service().get("viral").join().isEmpty());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> hotKey(DistributedKeyValueService service) {
+        List<Map<String, Object>> keys = (List<Map<String, Object>>) service.hotKeyStats().get("hotKeys");
+        return keys.stream().filter(k -> "viral".equals(k.get("key"))).findFirst().orElse(null);
+    }
+}
@@ -0,0 +1,187 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.metrics.LatencyHistogram;
+import com.example.kv_store.service.DistributedKeyValueService;
+
+import java.lang.reflect.RecordComponent;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+
+/**
+ * Closed-loop load against an {@link InProcessCluster}. Every client thread
+ * sends each request to a random node, as a load balancer would, so most
+ * requests are forwarded to the key's primary. Runs offline, no MySQL needed:
+ *
+ * <pre>
+ * mvn test-compile exec:java -Dexec.classpathScope=test \
+ *     -Dexec.mainClass=com.example.kv_store.load.ClusterLoadHarness \
+ *     -Dexec.args="nodes=3 threads=32 seconds=30 readRatio=0.95 zipf=0.99"
+ * </pre>
+ *
+ * Arguments are {@code name=value} pairs naming {@link Workload} fields.
+ */
+public final class ClusterLoadHarness {
+
+    /** {@code zipf} is the Zipfian theta (0 = uniform); {@code ttlShare} is the fraction of writes with a TTL. */
+    public record Workload(int nodes, int backups, int partitions, int threads, int warmupSeconds, int seconds,
+                           int keys, double readRatio, double zipf, int valueBytes, double ttlShare, int ttlSeconds) {
+
+        public static Workload defaults() {
+            return new Workload(3, 1, 64, 16, 2, 10, 100_000, 0.9, 0.99, 256, 0.0, 60);
+        }
+
+        public static Workload parse(String... args) {
+            Map<String, String> a = new LinkedHashMap<>();
+            for (String arg : args) {
+                int eq = arg.indexOf('=');
+                if (eq < 0) throw new IllegalArgumentException("Expected name=value, got " + arg);
+                a.put(arg.substring(0, eq).trim(), arg.substring(eq + 1).trim());
+            }
+            Workload d = defaults();
+            Workload w = new Workload(
+                    Integer.parseInt(a.getOrDefault("nodes", "" + d.nodes())),
+                    Integer.parseInt(a.getOrDefault("backups", "" + d.backups())),
+                    Integer.parseInt(a.getOrDefault("partitions", "" + d.partitions())),
+                    Integer.parseInt(a.getOrDefault("threads", "" + d.threads())),
+                    Integer.parseInt(a.getOrDefault("warmupSeconds", "" + d.warmupSeconds())),
+                    Integer.parseInt(a.getOrDefault("seconds", "" + d.seconds())),
+                    Integer.parseInt(a.getOrDefault("keys", "" + d.keys())),
+                    Double.parseDouble(a.getOrDefault("readRatio", "" + d.readRatio())),
+                    Double.parseDouble(a.getOrDefault("zipf", "" + d.zipf())),
+                    Integer.parseInt(a.getOrDefault("valueBytes", "" + d.valueBytes())),
+                    Double.parseDouble(a.getOrDefault("ttlShare", "" + d.ttlShare())),
+                    Integer.parseInt(a.getOrDefault("ttlSeconds", "" + d.ttlSeconds())));
+            Set<String> known = Arrays.stream(Workload.class.getRecordComponents())
+                    .map(RecordComponent::getName)
+                    .collect(Collectors.toSet());
+            a.keySet().forEach(name -> {
+                if (!known.contains(name)) throw new IllegalArgumentException("Unknown workload field " + name);
+            });
+            return w;
+        }
+    }
+
+    public record Report(Workload workload, long ops, long errors, long readMisses, double opsPerSec,
+                         Map<String, Object> readLatency, Map<String, Object> writeLatency,
+                         long forwardedCalls, long replicationBatches, long replicatedOps, long replicationLagOps) {
+
+        @Override
+        public String toString() {
+            return String.format("""
+                            %s
+                              ops=%d errors=%d readMisses=%d throughput=%.0f ops/s
+                              read  %s
+                              write %s
+                              forwarded=%d (%.2f per op) replicationBatches=%d replicatedOps=%d lagOps=%d""",
+                    workload, ops, errors, readMisses, opsPerSec, readLatency, writeLatency,
+                    forwardedCalls, ops == 0 ? 0.0 : (double) forwardedCalls / ops,
+                    replicationBatches, replicatedOps, replicationLagOps);
+        }
+    }
+
+    public static void main(String[] args) throws Exception {
+        System.out.println(run(Workload.parse(args)));
+    }
+
+    public static Report run(Workload w) throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(w.nodes(), w.backups(), w.partitions())) {
+            byte[] value = new byte[w.valueBytes()];
+            new Random(42).nextBytes(value);
+            preload(cluster, w, value);
+
+            Phase warmup = new Phase();
+            drive(cluster, w, value, warmup, w.warmupSeconds());
+
+            long forwarded = cluster.forwardedCalls();
+            long batches = cluster.replicationBatches();
+            long replicated = cluster.replicatedOps();
+            Phase measured = new Phase();
+            long start = System.nanoTime();
+            drive(cluster, w, value, measured, w.seconds());
+            double elapsed = (System.nanoTime() - start) / 1e9;
+
+            long ops = measured.reads.count() + measured.writes.count();
+            return new Report(w, ops, measured.errors.sum(), measured.misses.sum(), ops / elapsed,
+                    measured.reads.snapshot(), measured.writes.snapshot(),
+                    cluster.forwardedCalls() - forwarded,
+                    cluster.replicationBatches() - batches,
+                    cluster.replicatedOps() - replicated,
+                    cluster.replicationLagOps());
+        }
+    }
+
+    /** Writes every key once, through its batch API, so reads hit from the start. */
+    private static void preload(InProcessCluster cluster, Workload w, byte[] value) {
+        DistributedKeyValueService entry = cluster.nodes().get(0).service();
+        Map<String, byte[]> batch = new LinkedHashMap<>();
+        for (int i = 0; i < w.keys(); i++) {
+            batch.put(key(i), value);
+            if (batch.size() == 500 || i == w.keys() - 1) {
+                entry.putAll(batch, null).join();
+                batch = new LinkedHashMap<>();
+            }
+        }
+    }
+
+    private static final class Phase {
+        final LatencyHistogram reads = new LatencyHistogram();
+        final LatencyHistogram writes = new LatencyHistogram();
+        final LongAdder errors = new LongAdder();
+        final LongAdder misses = new LongAdder();
+    }
+
+    private static void drive(InProcessCluster cluster, Workload w, byte[] value, Phase phase, int seconds)
+            throws Exception {
+        if (seconds <= 0) return;
+        ZipfianGenerator keys = new ZipfianGenerator(w.keys(), w.zipf());
+        Duration ttl = Duration.ofSeconds(w.ttlSeconds());
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        ExecutorService clients = Executors.newFixedThreadPool(w.threads());
+        try {
+            List<Future<?>> running = new ArrayList<>();
+            for (int t = 0; t < w.threads(); t++) {
+                running.add(clients.submit(() -> {
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    while (System.nanoTime() < deadline) {
+                        DistributedKeyValueService node = cluster.nodes().get(random.nextInt(w.nodes())).service();
+                        String key = key(keys.next());
+                        boolean read = random.nextDouble() < w.readRatio();
+                        long start = System.nanoTime();
+                        try {
+                            if (read) {
+                                if (node.get(key).join().isEmpty()) phase.misses.increment();
+                            } else {
+                                node.put(key, value, random.nextDouble() < w.ttlShare() ? ttl : null).join();
+                            }
+                            (read ? phase.reads : phase.writes).record(System.nanoTime() - start);
+                        } catch (RuntimeException e) {
+                            phase.errors.increment();
+                        }
+                    }
+                }));
+            }
+            for (Future<?> f : running) {
+                f.get();
+            }
+        } finally {
+            clients.shutdownNow();
+        }
+    }
+
+    private static String key(int i) {
+        return "key-" + i;
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.kv_store.load;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A short run of the load harness: three nodes, one backup, skewed keys.
+ * Checks that requests were forwarded and replicated and that nothing failed;
+ * ClusterLoadHarness.main prints the full report.
+ */
+class ClusterLoadHarnessTest {
+
+    @Test
+    void skewedReadMostlyWorkload() throws Exception {
+        ClusterLoadHarness.Report report = ClusterLoadHarness.run(ClusterLoadHarness.Workload.parse(
+                "nodes=3", "backups=1", "threads=8", "warmupSeconds=1", "seconds=2",
+                "keys=5000", "readRatio=0.8", "zipf=0.99", "valueBytes=128", "ttlShare=0.1"));
+
+        assertTrue(report.ops() > 0);
+        assertEquals(0, report.errors());
+        assertEquals(0, report.readMisses());
+        assertTrue(report.forwardedCalls() > 0, "a random entry node is mostly not the primary");
+        assertTrue(report.replicatedOps() > 0, "every write goes to one backup");
+    }
+
+    @Test
+    void rejectsUnknownWorkloadFields() {
+        assertThrows(IllegalArgumentException.class, () -> ClusterLoadHarness.Workload.parse("nodez=3"));
+    }
+}
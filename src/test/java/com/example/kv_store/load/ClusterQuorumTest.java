@@ -0,0 +1,73 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.service.ReadConsistency;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * With W = N a write is on every owner once acknowledged; a quorum read
+ * returns the primary's copy and sends it again to an owner found stale.
+ */
+class ClusterQuorumTest {
+
+    @Test
+    void acknowledgedWriteIsOnEveryOwner() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 2, 16, 3, 2)) {
+            for (int i = 0; i < 200; i++) {
+                String key = "key-" + i;
+                byte[] value = ("value-" + i).getBytes();
+                cluster.nodes().get(i % 3).service().put(key, value, null).join();
+                for (InProcessCluster.Node node : cluster.nodes()) {
+                    assertArrayEquals(value, node.storage().findValid(key).orElseThrow().getValue(), node.id() + " " + key);
+                }
+            }
+            cluster.nodes().get(0).service().delete("key-7").join();
+            for (InProcessCluster.Node node : cluster.nodes()) {
+                assertTrue(node.storage().findValid("key-7").isEmpty(), node.id());
+            }
+        }
+    }
+
+    @Test
+    void quorumReadRepairsAStaleOwner() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 2, 16, 1, 2)) {
+            InProcessCluster.Node primary = cluster.nodes().get(0);
+            String key = "key-0";
+            for (int i = 1; !primary.affinity().isPrimaryOwner(key); i++) key = "key-" + i;
+            primary.service().put(key, "current".getBytes(), null).join();
+            awaitReplicated(cluster);
+
+            InProcessCluster.Node backup = cluster.nodes().get(1);
+            KeyValueEntity stale = new KeyValueEntity();
+            stale.setKey(key);
+            stale.setValue("stale".getBytes());
+            stale.setPartitionId(backup.affinity().partition(key));
+            backup.storage().save(stale);
+
+            // asks the primary and itself
+            byte[] read = backup.service().get(key, ReadConsistency.QUORUM, 0).join().orElseThrow();
+            assertArrayEquals("current".getBytes(), read);
+
+            for (int i = 0; i < 500
+                    && !Arrays.equals("current".getBytes(), backup.storage().findValid(key).orElseThrow().getValue()); i++) {
+                Thread.sleep(10);
+            }
+            assertArrayEquals("current".getBytes(), backup.storage().findValid(key).orElseThrow().getValue());
+            Map<String, Object> stats = primary.service().quorumStats();
+            assertEquals(1L, stats.get("readRepairsApplied"), stats.toString());
+            assertEquals(1L, backup.service().quorumStats().get("reads"));
+        }
+    }
+
+    private static void awaitReplicated(InProcessCluster cluster) throws InterruptedException {
+        for (int i = 0; i < 500 && cluster.replicationLagOps() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cluster.replicationLagOps());
+    }
+}
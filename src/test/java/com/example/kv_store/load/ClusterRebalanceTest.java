@@ -0,0 +1,128 @@
+package com.example.kv_store.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Growing the cluster while clients keep writing: every acknowledged write is
+ * on its new owners afterwards and readable through any node.
+ */
+class ClusterRebalanceTest {
+
+    private final Map<String, Object> keyLocks = new ConcurrentHashMap<>();
+
+    @Test
+    void growingFromThreeToFourNodesUnderWritesLosesNoKey() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 1, 16)) {
+            Map<String, String> acknowledged = new ConcurrentHashMap<>();
+            for (int i = 0; i < 2_000; i++) {
+                write(cluster, "key-" + i, acknowledged);
+            }
+
+            AtomicBoolean writing = new AtomicBoolean(true);
+            AtomicInteger next = new AtomicInteger(2_000);
+            List<Thread> writers = new ArrayList<>();
+            for (int t = 0; t < 4; t++) {
+                writers.add(Thread.ofPlatform().start(() -> {
+                    while (writing.get()) {
+                        int i = next.getAndIncrement();
+                        write(cluster, "key-" + i, acknowledged);
+                        if (i % 10 == 0) write(cluster, "key-" + (i / 10), acknowledged); // overwrite an old key
+                    }
+                }));
+            }
+
+            Thread.sleep(50);
+            InProcessCluster.Node joined = cluster.addNode();
+            cluster.rebalance(List.of("node1", "node2", "node3", "node4"), 30_000);
+            Thread.sleep(50);
+            writing.set(false);
+            for (Thread w : writers) {
+                w.join();
+            }
+            awaitReplicated(cluster);
+
+            assertTrue(acknowledged.size() > 2_000, "writes went on during the move");
+            long ownedByJoined = acknowledged.keySet().stream().filter(joined.affinity()::isPrimaryOwner).count();
+            assertTrue(ownedByJoined > 0, "the new node took over some partitions");
+            for (InProcessCluster.Node node : cluster.nodes()) {
+                assertEquals(List.of("node1", "node2", "node3", "node4"), node.affinity().getNodes(), node.id());
+            }
+            InProcessCluster.Node reader = cluster.nodes().get(0);
+            acknowledged.forEach((key, value) -> {
+                assertArrayEquals(value.getBytes(), reader.service().get(key).join().orElseThrow(), key);
+                for (String owner : reader.affinity().owners(reader.affinity().partition(key))) {
+                    InProcessCluster.Node node = cluster.nodes().get(Integer.parseInt(owner.substring(4)) - 1);
+                    assertArrayEquals(value.getBytes(), node.storage().findValid(key).orElseThrow().getValue(),
+                            owner + " " + key);
+                }
+            });
+        }
+    }
+
+    @Test
+    void anAbandonedMoveStopsReplicatingToTheNewOwner() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(3, 1, 16)) {
+            Map<String, String> acknowledged = new ConcurrentHashMap<>();
+            for (int i = 0; i < 500; i++) {
+                write(cluster, "key-" + i, acknowledged);
+            }
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            InProcessCluster.Node joined = cluster.addNode();
+            cluster.holdReplication(joined.id()); // the move waits on its barrier
+
+            node.rebalance().start(List.of("node1", "node2", "node3", "node4"));
+            for (int i = 0; i < 500 && !streamingTo(node, joined.id()); i++) {
+                Thread.sleep(10);
+            }
+            assertTrue(streamingTo(node, joined.id()), "writes are replicated to the incoming owner");
+
+            node.rebalance().shutdown();
+            for (int i = 0; i < 500 && streamingTo(node, joined.id()); i++) {
+                Thread.sleep(10);
+            }
+            assertFalse(streamingTo(node, joined.id()), "not after the move was given up");
+            cluster.releaseReplication(joined.id());
+        }
+    }
+
+    private static boolean streamingTo(InProcessCluster.Node node, String nodeId) {
+        for (int p = 0; p < 16; p++) {
+            if (!node.affinity().owners(p).contains(nodeId) && node.affinity().replicaTargets(p).contains(nodeId)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /** Writes through a random node; records the value only once the write is acknowledged. */
+    private void write(InProcessCluster cluster, String key, Map<String, String> acknowledged) {
+        List<InProcessCluster.Node> nodes = cluster.nodes();
+        InProcessCluster.Node coordinator = nodes.get(ThreadLocalRandom.current().nextInt(Math.min(3, nodes.size())));
+        String value = key + "@" + System.nanoTime();
+        synchronized (keyLocks.computeIfAbsent(key, k -> new Object())) {
+            try {
+                coordinator.service().put(key, value.getBytes(), null).join();
+                acknowledged.put(key, value);
+            } catch (RuntimeException e) {
+                acknowledged.remove(key); // the write may or may not have landed
+            }
+        }
+    }
+
+    private static void awaitReplicated(InProcessCluster cluster) throws InterruptedException {
+        for (int i = 0; i < 1_000 && cluster.replicationLagOps() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cluster.replicationLagOps());
+    }
+}
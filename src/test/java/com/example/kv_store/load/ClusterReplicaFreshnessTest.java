@@ -0,0 +1,76 @@
+package com.example.kv_store.load;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A backup that lost ops to a replication spill stops answering bounded reads
+ * until anti-entropy has repaired it; they go to the primary instead.
+ */
+class ClusterReplicaFreshnessTest {
+
+    private static final long MAX_STALENESS_MS = 1_000;
+
+    @Test
+    void spilledBackupSendsBoundedReadsToThePrimaryUntilRepaired() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(2, 1, 8)) {
+            InProcessCluster.Node primary = cluster.nodes().get(0);
+            InProcessCluster.Node backup = cluster.nodes().get(1);
+            List<String> keys = new ArrayList<>();
+            for (int i = 0; keys.size() < 11_000; i++) {
+                if (primary.affinity().isPrimaryOwner("key-" + i)) keys.add("key-" + i);
+            }
+            String key = keys.get(0);
+            primary.service().put(key, "v".getBytes(), null).join();
+            awaitReplicated(cluster);
+            assertArrayEquals("v".getBytes(), backup.service().internalReplicaGet(key, MAX_STALENESS_MS).join().orElseThrow());
+            assertEquals(0, cluster.forwardedCalls(), "a fresh backup answers itself");
+
+            // more writes than the backup's queue and one batch in flight hold while it is not acking
+            cluster.holdReplication(backup.id());
+            for (String k : keys.subList(1, keys.size())) {
+                primary.service().put(k, "v".getBytes(), null).join();
+            }
+            long spilledAt = System.currentTimeMillis();
+            Map<?, ?> stats = (Map<?, ?>) ((Map<?, ?>) primary.replication().stats().get("backups")).get(backup.id());
+            assertTrue((Long) stats.get("spilled") > 0, stats.toString());
+            Set<Integer> dirty = primary.replication().dirtyPartitions().get(backup.id());
+            assertFalse(dirty.isEmpty());
+
+            cluster.releaseReplication(backup.id());
+            awaitReplicated(cluster);
+            Thread.sleep(Math.max(0, spilledAt + MAX_STALENESS_MS + 300 - System.currentTimeMillis()));
+            assertArrayEquals("v".getBytes(), backup.service().internalReplicaGet(key, MAX_STALENESS_MS).join().orElseThrow());
+            assertEquals(1, cluster.forwardedCalls(), "heartbeats after the spill do not make it fresh again");
+            assertEquals(1L, backup.service().readStats().get("replicaReadsTooStale"));
+
+            primary.antiEntropy().runRound(); // the backup has no trees yet, so nothing is repaired
+            assertEquals(dirty, primary.replication().dirtyPartitions().get(backup.id()));
+            Thread.sleep(500);
+            backup.service().internalReplicaGet(key, MAX_STALENESS_MS).join();
+            assertEquals(2, cluster.forwardedCalls(), "still stale");
+
+            backup.antiEntropy().runRound();
+            primary.antiEntropy().runRound();
+            awaitReplicated(cluster);
+            assertTrue(primary.replication().dirtyPartitions().get(backup.id()).isEmpty());
+            assertEquals(keys.size(), backup.storage().findAllValid(keys).size(), "repaired");
+            Thread.sleep(500); // a heartbeat with the unfrozen cut point
+            backup.service().internalReplicaGet(key, MAX_STALENESS_MS).join();
+            assertEquals(2, cluster.forwardedCalls(), "answers itself again");
+        }
+    }
+
+    private static void awaitReplicated(InProcessCluster cluster) throws InterruptedException {
+        for (int i = 0; i < 1_000 && cluster.replicationLagOps() > 0; i++) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, cluster.replicationLagOps());
+    }
+}
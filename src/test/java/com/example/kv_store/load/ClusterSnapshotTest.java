@@ -0,0 +1,106 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.snapshot.SnapshotService;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * A cluster exported to snapshot files loads into a cluster with another
+ * partition count, values, versions and expiry intact; a damaged file is
+ * rejected.
+ */
+class ClusterSnapshotTest {
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void exportedClusterLoadsIntoAnotherPartitioning() throws Exception {
+        Map<String, Long> versions = new HashMap<>();
+        try (InProcessCluster source = new InProcessCluster(3, 1, 16)) {
+            Map<String, byte[]> entries = new HashMap<>();
+            for (int i = 0; i < 2_000; i++) {
+                entries.put("key-" + i, ("value-" + i).getBytes());
+            }
+            source.nodes().get(0).service().putAll(entries, null).join();
+            source.nodes().get(1).service().put("ttl", "soon".getBytes(), Duration.ofHours(1)).join();
+
+            long records = 0;
+            for (InProcessCluster.Node node : source.nodes()) {
+                records += (Long) snapshots(node).exportTo(dir).get("records");
+                node.storage().findAllValid(entries.keySet()).forEach(e -> versions.putIfAbsent(e.getKey(), e.getVersion()));
+            }
+            assertEquals(2_001, records, "each partition once, from its primary");
+        }
+
+        try (InProcessCluster target = new InProcessCluster(3, 1, 32)) {
+            long stored = 0;
+            for (InProcessCluster.Node node : target.nodes()) {
+                Map<String, Object> summary = snapshots(node).importFrom(dir);
+                assertEquals(2_001L, summary.get("records"));
+                stored += (Long) summary.get("stored");
+            }
+            assertEquals(2 * 2_001, stored, "primary and one backup each");
+
+            for (int i = 0; i < 2_000; i += 7) {
+                String key = "key-" + i;
+                InProcessCluster.Node node = target.nodes().get(i % 3);
+                assertArrayEquals(("value-" + i).getBytes(), node.service().get(key).join().orElseThrow());
+            }
+            for (InProcessCluster.Node node : target.nodes()) {
+                KeyValueEntity copy = node.storage().findValid("key-42").orElse(null);
+                if (copy != null) assertEquals(versions.get("key-42"), copy.getVersion());
+                KeyValueEntity ttl = node.storage().findValid("ttl").orElse(null);
+                if (ttl != null) assertNotNull(ttl.getExpireAt());
+            }
+        }
+    }
+
+    @Test
+    void damagedSnapshotIsRejected() throws Exception {
+        try (InProcessCluster cluster = new InProcessCluster(1, 0, 1)) {
+            InProcessCluster.Node node = cluster.nodes().get(0);
+            for (int i = 0; i < 100; i++) {
+                node.service().put("key-" + i, ("value-" + i).getBytes(), null).join();
+            }
+            snapshots(node).exportTo(dir);
+            Path file = dir.resolve("partition-0.kvsnap");
+            byte[] good = Files.readAllBytes(file);
+
+            byte[] flipped = good.clone();
+            flipped[good.length / 2] ^= 1;
+            IOException corrupt = assertThrows(IOException.class, () -> load(node, flipped));
+            assertTrue(corrupt.getMessage().contains("Corrupt snapshot"), corrupt.getMessage());
+
+            byte[] cut = Arrays.copyOf(good, good.length - 5);
+            assertThrows(IOException.class, () -> load(node, cut), "ends before the trailer");
+
+            assertEquals(100, load(node, good).records());
+        }
+    }
+
+    private SnapshotService.Result load(InProcessCluster.Node node, byte[] snapshot) throws IOException {
+        Path file = dir.resolve("single.bin");
+        Files.write(file, snapshot);
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            return snapshots(node).importFrom(in);
+        }
+    }
+
+    private static SnapshotService snapshots(InProcessCluster.Node node) {
+        return new SnapshotService(node.affinity(), node.service(), node.storage(), 4, 250);
+    }
+}
@@ -0,0 +1,375 @@
+package com.example.kv_store.load;
+
+import com.example.kv_store.antientropy.AntiEntropyService;
+import com.example.kv_store.antientropy.MerkleTrees;
+import com.example.kv_store.cache.HotKeyDetector;
+import com.example.kv_store.cache.NearCache;
+import com.example.kv_store.cache.PartitionBloomFilters;
+import com.example.kv_store.compression.ValueCodec;
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.rebalance.RebalanceService;
+import com.example.kv_store.replication.ReplicaFreshness;
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationPipeline;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.DistributedKeyValueService;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.storage.InMemoryStorageEngine;
+import com.example.kv_store.transport.BinaryPeerClient;
+import com.example.kv_store.transport.BinaryTransportServer;
+import com.example.kv_store.transport.PeerClient;
+import com.example.kv_store.transport.PeerHealth;
+import com.example.kv_store.transport.ServiceTransportHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.springframework.core.env.MapPropertySource;
+import org.springframework.core.env.StandardEnvironment;
+import org.springframework.web.reactive.function.client.WebClient;
+import tools.jackson.core.type.TypeReference;
+import tools.jackson.databind.json.JsonMapper;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+/**
+ * N nodes in one JVM: each has its own service, in-memory storage, near cache
+ * and replication pipeline, and they talk to each other over the binary
+ * transport on ephemeral localhost ports. Node-to-node calls are counted.
+ * Rebalance control calls go over HTTP, as between real nodes.
+ */
+public final class InProcessCluster implements AutoCloseable {
+
+    public record Node(String id, DistributedKeyValueService service, HotPathMetrics metrics,
+                       AffinityService affinity, InMemoryStorageEngine storage, MerkleTrees trees,
+                       AntiEntropyService antiEntropy, ReplicationPipeline replication, RebalanceService rebalance) {
+    }
+
+    private final List<Node> nodes = new ArrayList<>();
+    private final List<AutoCloseable> resources = new ArrayList<>();
+    private final List<ReplicationPipeline> pipelines = new ArrayList<>();
+    private final Map<String, InetSocketAddress> addresses = new ConcurrentHashMap<>();
+    private final Map<String, BinaryTransportServer> servers = new ConcurrentHashMap<>();
+    private final Map<String, CompletableFuture<Void>> heldReplication = new ConcurrentHashMap<>();
+
+    private final StandardEnvironment env = new StandardEnvironment();
+    private final Map<String, Object> nodeUrls = new ConcurrentHashMap<>();
+    private final JsonMapper json = new JsonMapper();
+    private final int backups;
+    private final int partitions;
+    private final int writeQuorum;
+    private final int readQuorum;
+
+    private final LongAdder forwarded = new LongAdder();
+    private final LongAdder replicationBatches = new LongAdder();
+    private final LongAdder replicatedOps = new LongAdder();
+
+    public InProcessCluster(int size, int backups, int partitions) throws IOException {
+        this(size, backups, partitions, 1, 2);
+    }
+
+    /** A cluster whose nodes use the given write and read quorums (W and R). */
+    public InProcessCluster(int size, int backups, int partitions, int writeQuorum, int readQuorum) throws IOException {
+        this.backups = backups;
+        this.partitions = partitions;
+        this.writeQuorum = writeQuorum;
+        this.readQuorum = readQuorum;
+        env.getPropertySources().addFirst(new MapPropertySource("nodeUrls", nodeUrls));
+        List<String> ids = IntStream.rangeClosed(1, size).mapToObj(i -> "node" + i).toList();
+        try {
+            for (String id : ids) {
+                nodes.add(start(id, ids));
+            }
+        } catch (IOException | RuntimeException e) {
+            close();
+            throw e;
+        }
+    }
+
+    /**
+     * Starts one more node that knows the current members but owns nothing
+     * until a {@link #rebalance} includes it.
+     */
+    public Node addNode() throws IOException {
+        Node node = start("node" + (nodes.size() + 1), nodes.get(0).affinity().getNodes());
+        nodes.add(node);
+        return node;
+    }
+
+    /** Moves the cluster to {@code nodeIds} and waits until every node has handed over what it had to. */
+    public void rebalance(List<String> nodeIds, long timeoutMs) throws InterruptedException {
+        nodes.get(0).rebalance().start(nodeIds);
+        long deadline = System.currentTimeMillis() + timeoutMs;
+        for (Node node : nodes) {
+            while (!Set.of("idle", "done").contains(node.rebalance().status().get("state"))) {
+                if ("failed".equals(node.rebalance().status().get("state")) || System.currentTimeMillis() > deadline) {
+                    throw new IllegalStateException("Rebalance did not finish on " + node.id() + ": "
+                            + node.rebalance().status());
+                }
+                Thread.sleep(10);
+            }
+        }
+    }
+
+    private Node start(String id, List<String> members) throws IOException {
+        // peers are resolved on first contact, so nodes started later are found too
+        BinaryPeerClient client = new BinaryPeerClient(addresses::get, 2, 500, 10_000);
+        resources.add(client);
+        PeerClient peers = new CountingPeerClient(client);
+
+        AffinityService affinity = new AffinityService(id, partitions, String.join(",", members), backups,
+                "murmur3", "ring", env);
+        HotPathMetrics metrics = new HotPathMetrics(true, 64);
+        ReplicationPipeline replication = new ReplicationPipeline(affinity, peers, metrics,
+                10_000, 256, 1, 200, 5_000, 250);
+        pipelines.add(replication);
+        InMemoryStorageEngine storage = new InMemoryStorageEngine();
+        MerkleTrees trees = new MerkleTrees(affinity, 64);
+        PartitionBloomFilters filters = new PartitionBloomFilters(affinity, storage, true, 10, 0.05, 60_000);
+        filters.start();
+        resources.add(filters::shutdown);
+        DistributedKeyValueService service = new DistributedKeyValueService(
+                storage,
+                affinity,
+                new NearCache(true, 64L << 20, 16, 65_536),
+                peers,
+                replication,
+                new ReplicaFreshness(),
+                new ValueCodec(false, 512, 1),
+                metrics,
+                new HotKeyDetector(true, 500, 1_000, 16, 4096, 250),
+                new PeerHealth(metrics, 5, 2_000, true, 0.95, 2, 20),
+                trees,
+                filters,
+                2_000, 4_000, "primary", "strong", 1_000, 65_536, true, 500, 4, 64 << 20,
+                writeQuorum, readQuorum);
+
+        BinaryTransportServer server = new BinaryTransportServer(new ServiceTransportHandler(service),
+                new InetSocketAddress("localhost", 0));
+        resources.add(server);
+        servers.put(id, server);
+        addresses.put(id, new InetSocketAddress("localhost", server.port()));
+        // rounds are run by the test (runRound), not on a timer
+        AntiEntropyService antiEntropy = new AntiEntropyService(affinity, service, storage, trees,
+                replication, peers, false, 60_000, 0, 500, 5_000);
+        antiEntropy.start();
+        resources.add(antiEntropy::shutdown);
+        RebalanceService rebalance = new RebalanceService(affinity, service, storage, replication,
+                WebClient.builder(), 500, 0, 10_000);
+        resources.add(rebalance::shutdown);
+        nodeUrls.put("cluster.nodeUrls." + id, "http://127.0.0.1:" + serveRebalance(rebalance).getAddress().getPort());
+        return new Node(id, service, metrics, affinity, storage, trees, antiEntropy, replication, rebalance);
+    }
+
+    /** The node-to-node half of RebalanceController, over plain HTTP. */
+    private HttpServer serveRebalance(RebalanceService rebalance) throws IOException {
+        HttpServer http = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        http.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        http.createContext("/internal/rebalance/", exchange -> {
+            int status = 200;
+            try {
+                List<String> body = json.readValue(exchange.getRequestBody(), new TypeReference<List<String>>() {
+                });
+                String path = exchange.getRequestURI().getPath();
+                if (path.endsWith("/begin")) {
+                    rebalance.begin(body);
+                } else {
+                    rebalance.onHandOver(Integer.parseInt(exchange.getRequestURI().getQuery().replace("partition=", "")), body);
+                }
+            } catch (RuntimeException e) {
+                status = 500;
+            }
+            exchange.sendResponseHeaders(status, -1);
+            exchange.close();
+        });
+        http.start();
+        resources.add(() -> http.stop(0));
+        return http;
+    }
+
+    public List<Node> nodes() {
+        return nodes;
+    }
+
+    /**
+     * Takes a node off the network: its transport server closes, so calls to
+     * it fail, while the node itself keeps running.
+     */
+    public void stop(String nodeId) {
+        try {
+            servers.get(nodeId).close();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Holds back replication batches sent to a node, not heartbeats, until
+     * {@link #releaseReplication}: the node looks slow to its primaries.
+     */
+    public void holdReplication(String nodeId) {
+        heldReplication.putIfAbsent(nodeId, new CompletableFuture<>());
+    }
+
+    public void releaseReplication(String nodeId) {
+        CompletableFuture<Void> held = heldReplication.remove(nodeId);
+        if (held != null) held.complete(null);
+    }
+
+    /** Forwarded client calls (not replication) sent by any node. */
+    public long forwardedCalls() {
+        return forwarded.sum();
+    }
+
+    /** Non-empty replication batches sent by any node. */
+    public long replicationBatches() {
+        return replicationBatches.sum();
+    }
+
+    public long replicatedOps() {
+        return replicatedOps.sum();
+    }
+
+    /** Unacked replication ops over all primaries and backups. */
+    public long replicationLagOps() {
+        long lag = 0;
+        for (ReplicationPipeline p : pipelines) {
+            for (Object perBackup : p.lag().values()) {
+                lag += (Long) ((Map<?, ?>) perBackup).get("lagOps");
+            }
+        }
+        return lag;
+    }
+
+    public String describe() {
+        return nodes.stream().map(n -> n.id() + "@" + addresses.get(n.id()).getPort())
+                .collect(Collectors.joining(", "));
+    }
+
+    @Override
+    public void close() {
+        heldReplication.values().forEach(held -> held.complete(null));
+        pipelines.forEach(ReplicationPipeline::shutdown);
+        for (AutoCloseable r : resources) {
+            try {
+                r.close();
+            } catch (Exception ignored) {
+            }
+        }
+    }
+
+    private final class CountingPeerClient implements PeerClient {
+
+        private final PeerClient delegate;
+
+        CountingPeerClient(PeerClient delegate) {
+            this.delegate = delegate;
+        }
+
+        private <T> CompletableFuture<T> forward(CompletableFuture<T> call) {
+            forwarded.increment();
+            return call;
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> get(String nodeId, String key) {
+            return forward(delegate.get(nodeId, key));
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs) {
+            return forward(delegate.getReplica(nodeId, key, maxStalenessMs));
+        }
+
+        @Override
+        public CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl) {
+            return forward(delegate.put(nodeId, key, value, ttl));
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(String nodeId, String key) {
+            return forward(delegate.delete(nodeId, key));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys) {
+            return forward(delegate.getAll(nodeId, keys));
+        }
+
+        @Override
+        public CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+            return forward(delegate.putAll(nodeId, entries, ttl));
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys) {
+            return forward(delegate.deleteAll(nodeId, keys));
+        }
+
+        @Override
+        public CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op) {
+            return forward(delegate.atomic(nodeId, op));
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey,
+                                                          String prefix, int limit) {
+            return forward(delegate.scan(nodeId, partitionId, afterKey, prefix, limit));
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs) {
+            return forward(delegate.getLeased(nodeId, key, holder, leaseMs));
+        }
+
+        @Override
+        public CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key) {
+            return forward(delegate.getVersioned(nodeId, key));
+        }
+
+        @Override
+        public CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes) {
+            return delegate.readRepair(nodeId, key, staleNodes);
+        }
+
+        @Override
+        public CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys) {
+            return delegate.invalidate(nodeId, keys);
+        }
+
+        @Override
+        public CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes) {
+            return delegate.merkleHashes(nodeId, partitions, nodes);
+        }
+
+        @Override
+        public CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves) {
+            return delegate.merkleEntries(nodeId, partitionId, leaves);
+        }
+
+        @Override
+        public CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch) {
+            if (!batch.ops().isEmpty()) {
+                replicationBatches.increment();
+                replicatedOps.add(batch.ops().size());
+                CompletableFuture<Void> held = heldReplication.get(nodeId);
+                if (held != null) return held.thenCompose(v -> delegate.replicate(nodeId, batch));
+            }
+            return delegate.replicate(nodeId, batch);
+        }
+    }
+}
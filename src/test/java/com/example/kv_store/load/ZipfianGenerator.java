@@ -0,0 +1,57 @@
+package com.example.kv_store.load;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Zipfian item picker after Gray et al., "Quickly Generating Billion-Record
+ * Synthetic Databases" (the YCSB generator). Item 0 is the hottest; ranks are
+ * scrambled so the hot items do not all land in the same few partitions.
+ * {@code theta <= 0} picks uniformly.
+ */
+final class ZipfianGenerator {
+
+    private final int items;
+    private final double theta;
+    private final double alpha;
+    private final double zetaN;
+    private final double eta;
+
+    ZipfianGenerator(int items, double theta) {
+        this.items = items;
+        this.theta = theta;
+        if (theta <= 0) {
+            this.alpha = this.zetaN = this.eta = 0;
+            return;
+        }
+        double zeta2 = zeta(2, theta);
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zetaN = zeta(items, theta);
+        this.eta = (1 - Math.pow(2.0 / items, 1 - theta)) / (1 - zeta2 / zetaN);
+    }
+
+    int next() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        if (theta <= 0) return random.nextInt(items);
+
+        double u = random.nextDouble();
+        double uz = u * zetaN;
+        int rank;
+        if (uz < 1.0) rank = 0;
+        else if (uz < 1.0 + Math.pow(0.5, theta)) rank = 1;
+        else rank = (int) (items * Math.pow(eta * u - eta + 1, alpha));
+        return scramble(Math.min(rank, items - 1));
+    }
+
+    private int scramble(int rank) {
+        long h = rank * 0x9E3779B97F4A7C15L;
+        return (int) Long.remainderUnsigned(h ^ (h >>> 29), items);
+    }
+
+    private static double zeta(long n, double theta) {
+        double sum = 0;
+        for (long i = 1; i <= n; i++) {
+            sum += 1 / Math.pow(i, theta);
+        }
+        return sum;
+    }
+}
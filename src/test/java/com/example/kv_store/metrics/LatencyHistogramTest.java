@@ -0,0 +1,57 @@
+package com.example.kv_store.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LatencyHistogramTest {
+
+    @Test
+    void percentilesStayWithinBucketPrecision() {
+        LatencyHistogram h = new LatencyHistogram();
+        for (long v = 1; v <= 100_000; v++) {
+            h.record(v * 1_000); // 1us .. 100ms
+        }
+        assertEquals(100_000, h.count());
+        assertWithin(50_000_000, h.percentile(0.50));
+        assertWithin(99_000_000, h.percentile(0.99));
+        assertWithin(99_900_000, h.percentile(0.999));
+        assertEquals(100_000_000, h.percentile(1.0));
+    }
+
+    @Test
+    void tailOfASkewedDistributionIsNotHiddenByTheBulk() throws InterruptedException {
+        LatencyHistogram h = new LatencyHistogram();
+        Thread[] writers = new Thread[4];
+        for (int t = 0; t < writers.length; t++) {
+            writers[t] = new Thread(() -> {
+                for (int i = 0; i < 25_000; i++) {
+                    h.record(i % 100 == 0 ? 50_000_000 : 100_000); // 1% at 50ms, the rest at 100us
+                }
+            });
+            writers[t].start();
+        }
+        for (Thread t : writers) {
+            t.join();
+        }
+        assertEquals(100_000, h.count());
+        assertWithin(100_000, h.percentile(0.50));
+        assertWithin(100_000, h.percentile(0.99));
+        assertWithin(50_000_000, h.percentile(0.995));
+        assertEquals(50_000_000, h.percentile(1.0));
+        assertEquals(0, new LatencyHistogram().percentile(0.99), "empty");
+    }
+
+    @Test
+    void bucketsCoverEveryValueExactlyOnce() {
+        for (long v = 0; v < 1L << 20; v += 7) {
+            int i = LatencyHistogram.indexOf(v);
+            assertTrue(v <= LatencyHistogram.highestValue(i));
+            assertTrue(i == 0 || v > LatencyHistogram.highestValue(i - 1));
+        }
+    }
+
+    private static void assertWithin(long expected, long actual) {
+        assertTrue(Math.abs(actual - expected) <= expected * 0.035, expected + " vs " + actual);
+    }
+}
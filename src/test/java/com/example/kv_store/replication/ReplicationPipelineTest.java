@@ -0,0 +1,270 @@
+package com.example.kv_store.replication;
+
+import com.example.kv_store.metrics.HotPathMetrics;
+import com.example.kv_store.service.AffinityService;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import com.example.kv_store.transport.PeerCallException;
+import com.example.kv_store.transport.PeerClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * One primary (node1) replicating to one backup (node2) through a stub peer
+ * that can hold, fail or mis-ack batches.
+ */
+class ReplicationPipelineTest {
+
+    private final AffinityService affinity = new AffinityService("node1", 2, "node1,node2", 1, "jdk", "ring",
+            new StandardEnvironment());
+    private final StubPeer peer = new StubPeer();
+    private ReplicationPipeline pipeline;
+
+    @AfterEach
+    void shutdown() {
+        peer.release();
+        if (pipeline != null) pipeline.shutdown();
+    }
+
+    @Test
+    void opsAreCutIntoBatchesOfAtMostBatchSize() throws Exception {
+        pipeline = pipeline(100, 4, 50, 200);
+        peer.hold();
+        for (int i = 0; i < 10; i++) {
+            pipeline.replicatePut(key(i), "v".getBytes(), null, i + 1);
+        }
+        peer.release();
+        await(() -> lagOps() == 0);
+
+        assertEquals(List.of(List.of(1L, 2L, 3L, 4L), List.of(5L, 6L, 7L, 8L), List.of(9L, 10L)), peer.attempts());
+        assertEquals(3L, backupStats().get("batchesSent"));
+        assertEquals(10L, backupStats().get("opsSent"));
+    }
+
+    @Test
+    void failedBatchIsRetriedBeforeAnythingBehindIt() throws Exception {
+        pipeline = pipeline(100, 4, 50, 200);
+        peer.failures.set(2);
+        for (int i = 0; i < 8; i++) {
+            pipeline.replicatePut(key(i), "v".getBytes(), null, i + 1);
+        }
+        await(() -> lagOps() == 0);
+
+        List<Long> first = List.of(1L, 2L, 3L, 4L);
+        assertEquals(List.of(first, first, first, List.of(5L, 6L, 7L, 8L)), peer.attempts());
+        assertEquals(2L, backupStats().get("retries"));
+        assertEquals(8L, backupStats().get("ackedSeq"));
+    }
+
+    @Test
+    void batchCountsOnlyOnceTheBackupAcksItsLastSeq() throws Exception {
+        pipeline = pipeline(100, 4, 0, 200);
+        peer.shortAcks.set(1);
+        WriteAcks acks = new WriteAcks(1);
+        pipeline.replicatePut(key(0), "v".getBytes(), null, 1, acks);
+        acks.seal().get(5, TimeUnit.SECONDS);
+
+        assertEquals(List.of(List.of(1L), List.of(1L)), peer.attempts(), "resent after the short ack");
+        assertEquals(1L, backupStats().get("retries"));
+        assertEquals(1L, backupStats().get("ackedSeq"));
+    }
+
+    @Test
+    void fullQueueSpillsWithoutWaitingAgainUntilItDrains() throws Exception {
+        pipeline = pipeline(4, 1, 0, 200);
+        int partition = affinity.partition(key(0));
+        peer.hold();
+        pipeline.replicatePut(key(0), "v".getBytes(), null, 1);
+        await(() -> peer.attempts().size() == 1); // in flight, the queue is empty again
+        for (int i = 1; i <= 4; i++) {
+            pipeline.replicatePut(key(i), "v".getBytes(), null, i + 1);
+        }
+
+        long start = System.nanoTime();
+        pipeline.replicatePut(key(5), "v".getBytes(), null, 6);
+        assertTrue(System.nanoTime() - start >= TimeUnit.MILLISECONDS.toNanos(150), "first overflow waits");
+        assertEquals(true, backupStats().get("spilling"));
+
+        start = System.nanoTime();
+        for (int i = 6; i < 16; i++) {
+            pipeline.replicatePut(key(i), "v".getBytes(), null, i + 1);
+        }
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(100), "later ones fail fast");
+        WriteAcks acks = new WriteAcks(1);
+        pipeline.replicatePut(key(16), "v".getBytes(), null, 17, acks);
+        ExecutionException quorum = assertThrows(ExecutionException.class, () -> acks.seal().get(1, TimeUnit.SECONDS));
+        assertInstanceOf(PeerCallException.class, quorum.getCause());
+
+        assertEquals(1L, backupStats().get("blockedWrites"));
+        assertEquals(12L, backupStats().get("spilled"));
+        assertEquals(Map.of("node2", Set.of(partition)), pipeline.dirtyPartitions());
+
+        peer.release();
+        await(() -> lagOps() == 0);
+        pipeline.replicatePut(key(17), "v".getBytes(), null, 18);
+        await(() -> lagOps() == 0);
+        assertEquals(false, backupStats().get("spilling"));
+        assertEquals(12L, backupStats().get("spilled"));
+        assertEquals(List.of(18L), peer.attempts().get(peer.attempts().size() - 1));
+    }
+
+    private ReplicationPipeline pipeline(int queueCapacity, int batchSize, long lingerMs, long backpressureMs) {
+        return new ReplicationPipeline(affinity, peer, new HotPathMetrics(true, 1),
+                queueCapacity, batchSize, lingerMs, backpressureMs, 5_000, 60_000);
+    }
+
+    /** The n-th key whose primary is node1, so its only backup is node2. */
+    private String key(int n) {
+        int found = -1;
+        for (int i = 0; ; i++) {
+            if (affinity.isPrimaryOwner("key-" + i) && ++found == n) return "key-" + i;
+        }
+    }
+
+    private long lagOps() {
+        return (Long) backupStats().get("lagOps");
+    }
+
+    private Map<?, ?> backupStats() {
+        return (Map<?, ?>) ((Map<?, ?>) pipeline.stats().get("backups")).get("node2");
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        for (int i = 0; i < 500 && !condition.getAsBoolean(); i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(condition.getAsBoolean());
+    }
+
+    /** Acks each batch with its last seq unless told to hold, fail or ack short; heartbeats are not recorded. */
+    private static final class StubPeer implements PeerClient {
+
+        private final List<List<Long>> attempts = Collections.synchronizedList(new ArrayList<>());
+        private final AtomicInteger failures = new AtomicInteger();
+        private final AtomicInteger shortAcks = new AtomicInteger();
+        private volatile CompletableFuture<Void> gate = CompletableFuture.completedFuture(null);
+
+        void hold() {
+            gate = new CompletableFuture<>();
+        }
+
+        void release() {
+            gate.complete(null);
+        }
+
+        List<List<Long>> attempts() {
+            synchronized (attempts) {
+                return List.copyOf(attempts);
+            }
+        }
+
+        @Override
+        public CompletableFuture<Long> replicate(String nodeId, ReplicationBatch batch) {
+            if (batch.ops().isEmpty()) return CompletableFuture.completedFuture(0L);
+            attempts.add(batch.ops().stream().map(ReplicationOp::seq).toList());
+            if (failures.getAndDecrement() > 0) {
+                return CompletableFuture.failedFuture(new IllegalStateException("backup unavailable"));
+            }
+            long last = batch.ops().get(batch.ops().size() - 1).seq();
+            long acked = shortAcks.getAndDecrement() > 0 ? last - 1 : last;
+            return gate.thenApply(v -> acked);
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> get(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getReplica(String nodeId, String key, long maxStalenessMs) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> put(String nodeId, String key, byte[] value, Duration ttl) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> delete(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> getAll(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> putAll(String nodeId, Map<String, byte[]> entries, Duration ttl) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> deleteAll(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<AtomicResult> atomic(String nodeId, AtomicOp op) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<VersionedValue>> getVersioned(String nodeId, String key) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> readRepair(String nodeId, String key, Collection<String> staleNodes) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, byte[]>> scan(String nodeId, int partitionId, String afterKey, String prefix, int limit) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Optional<byte[]>> getLeased(String nodeId, String key, String holder, long leaseMs) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Void> invalidate(String nodeId, Collection<String> keys) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<long[]> merkleHashes(String nodeId, int[] partitions, int[] nodes) {
+            return unexpected();
+        }
+
+        @Override
+        public CompletableFuture<Map<String, Long>> merkleEntries(String nodeId, int partitionId, int[] leaves) {
+            return unexpected();
+        }
+
+        private static <T> CompletableFuture<T> unexpected() {
+            return CompletableFuture.failedFuture(new IllegalStateException("only replication is stubbed"));
+        }
+    }
+}
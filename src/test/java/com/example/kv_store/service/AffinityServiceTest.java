@@ -0,0 +1,74 @@
+package com.example.kv_store.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.core.env.StandardEnvironment;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AffinityServiceTest {
+
+    @Test
+    void defaultsKeepTheOriginalPlacement() {
+        AffinityService affinity = new AffinityService("node2", 64, "node1,node2,node3", 1, "jdk", "ring",
+                new StandardEnvironment());
+        List<String> nodes = List.of("node1", "node2", "node3");
+        for (int i = 0; i < 10_000; i++) {
+            String key = "user:" + i;
+            int p = Math.floorMod(key.hashCode(), 64);
+            assertEquals(p, affinity.partition(key));
+            assertEquals(nodes.get(p % 3).equals("node2"), affinity.isPrimaryOwner(key));
+        }
+        for (int p = 0; p < 64; p++) {
+            assertEquals(List.of(nodes.get(p % 3), nodes.get((p + 1) % 3)), affinity.owners(p));
+        }
+    }
+
+    @Test
+    void ownersAreCappedAtTheNodeCount() {
+        AffinityService affinity = new AffinityService("node1", 8, "node1,node2", 3, "jdk", "rendezvous",
+                new StandardEnvironment());
+        for (int p = 0; p < 8; p++) {
+            assertEquals(2, affinity.owners(p).size());
+            assertEquals(2, affinity.owners(p).stream().distinct().count());
+        }
+    }
+
+    @Test
+    void rendezvousMovesAboutOneInNPrimariesWhenANodeJoins() {
+        List<String> four = List.of("node1", "node2", "node3", "node4");
+        List<String> five = List.of("node1", "node2", "node3", "node4", "node5");
+        int ring = movedPrimaries(four, five, AffinityService.Assignment.RING);
+        int rendezvous = movedPrimaries(four, five, AffinityService.Assignment.RENDEZVOUS);
+        assertEquals(816, ring);
+        assertEquals(192, rendezvous, "about 1024 / 5");
+    }
+
+    @Test
+    void murmur3SpreadsSequentialKeysEvenly() {
+        Map<String, Object> jdk = spread("jdk");
+        Map<String, Object> murmur3 = spread("murmur3");
+        assertEquals(5811L, jdk.get("keysPerPartitionMax"));
+        assertEquals(3273L, murmur3.get("keysPerPartitionMax"));
+        assertTrue((Double) murmur3.get("maxOverMean") < 1.05, murmur3.toString());
+        assertEquals(100_000L, ((Map<?, ?>) murmur3.get("keysPerPrimary")).values().stream()
+                .mapToLong(v -> (Long) v).sum());
+    }
+
+    private static int movedPrimaries(List<String> before, List<String> after, AffinityService.Assignment assignment) {
+        List<List<String>> from = AffinityService.buildOwnersTable(before, 1024, 1, assignment);
+        List<List<String>> to = AffinityService.buildOwnersTable(after, 1024, 1, assignment);
+        int moved = 0;
+        for (int p = 0; p < 1024; p++) {
+            if (!from.get(p).get(0).equals(to.get(p).get(0))) moved++;
+        }
+        return moved;
+    }
+
+    private static Map<String, Object> spread(String hash) {
+        return new AffinityService("node1", 32, "node1,node2,node3,node4", 1, hash, "ring", new StandardEnvironment())
+                .describeSpread("user:", 100_000);
+    }
+}
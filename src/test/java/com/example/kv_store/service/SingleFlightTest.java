@@ -0,0 +1,72 @@
+package com.example.kv_store.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+
+    @Test
+    void concurrentReadersShareOneLookup() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<>(true);
+        AtomicInteger lookups = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+
+        Thread leader = Thread.ofVirtual().start(() -> flight.run("k", () -> {
+            lookups.incrementAndGet();
+            await(release);
+            return "v1";
+        }));
+        while (((Number) flight.stats().get("inFlight")).intValue() == 0) Thread.onSpinWait();
+
+        List<CompletableFuture<String>> joiners = new ArrayList<>();
+        for (int i = 0; i < 8; i++) {
+            joiners.add(CompletableFuture.supplyAsync(() -> flight.run("k", () -> {
+                lookups.incrementAndGet();
+                return "unexpected";
+            })));
+        }
+        while (((Number) flight.stats().get("joined")).intValue() < 8) Thread.onSpinWait();
+        release.countDown();
+        leader.join();
+
+        for (CompletableFuture<String> j : joiners) {
+            assertEquals("v1", j.get(5, TimeUnit.SECONDS));
+        }
+        assertEquals(1, lookups.get());
+    }
+
+    @Test
+    void readAfterWriteDoesNotJoinOlderLookup() throws Exception {
+        SingleFlight<String> flight = new SingleFlight<>(true);
+        CountDownLatch release = new CountDownLatch(1);
+        CompletableFuture<String> old = flight.runAsync("k",
+                () -> CompletableFuture.supplyAsync(() -> {
+                    await(release);
+                    return "before-write";
+                }));
+
+        flight.forget("k"); // a write to k completed
+        CompletableFuture<String> fresh = flight.runAsync("k", () -> CompletableFuture.completedFuture("after-write"));
+
+        assertEquals("after-write", fresh.get(5, TimeUnit.SECONDS));
+        release.countDown();
+        assertEquals("before-write", old.get(5, TimeUnit.SECONDS));
+        assertEquals(0L, flight.stats().get("joined"));
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
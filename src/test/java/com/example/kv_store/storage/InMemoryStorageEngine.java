@@ -0,0 +1,92 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+
+/**
+ * Heap-only {@link StorageEngine} for benchmarks and the load harness, so they
+ * measure the service and not MySQL or the disk.
+ */
+public class InMemoryStorageEngine implements StorageEngine {
+
+    private final ConcurrentSkipListMap<String, KeyValueEntity> entries = new ConcurrentSkipListMap<>();
+
+    @Override
+    public Optional<KeyValueEntity> findValid(String key) {
+        KeyValueEntity e = entries.get(key);
+        return e == null || e.isExpired() ? Optional.empty() : Optional.of(e);
+    }
+
+    @Override
+    public void save(KeyValueEntity entity) {
+        entries.put(entity.getKey(), entity);
+    }
+
+    @Override
+    public void deleteById(String key) {
+        entries.remove(key);
+    }
+
+    @Override
+    public List<KeyValueEntity> findAllValid(Collection<String> keys) {
+        List<KeyValueEntity> found = new ArrayList<>(keys.size());
+        keys.forEach(k -> findValid(k).ifPresent(found::add));
+        return found;
+    }
+
+    @Override
+    public List<String> findExpired(Collection<String> keys) {
+        return keys.stream().filter(k -> {
+            KeyValueEntity e = entries.get(k);
+            return e != null && e.isExpired();
+        }).toList();
+    }
+
+    @Override
+    public void saveAll(List<KeyValueEntity> entities) {
+        entities.forEach(this::save);
+    }
+
+    @Override
+    public void deleteAllById(Collection<String> keys) {
+        keys.forEach(entries::remove);
+    }
+
+    @Override
+    public List<KeyValueEntity> scanPartition(int partitionId, String afterKey, String prefix, int limit) {
+        Map<String, KeyValueEntity> tail = afterKey == null ? entries : entries.tailMap(afterKey, false);
+        return tail.values().stream()
+                .filter(e -> prefix == null || e.getKey().startsWith(prefix))
+                .filter(e -> e.getPartitionId() == partitionId && !e.isExpired())
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public List<ExpiryEntry> findExpiring(int partitionId, long beforeMillis, int limit) {
+        return entries.values().stream()
+                .filter(e -> e.getPartitionId() == partitionId && e.getExpireAt() != null)
+                .map(e -> new ExpiryEntry(e.getKey(), e.getExpireAt()))
+                .filter(e -> e.expireAtMillis() <= beforeMillis)
+                .sorted(Comparator.comparingLong(ExpiryEntry::expireAtMillis))
+                .limit(limit)
+                .toList();
+    }
+
+    @Override
+    public long countExpired(int partitionId) {
+        return entries.values().stream().filter(e -> e.getPartitionId() == partitionId && e.isExpired()).count();
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        return Map.of("engine", "memory", "entries", entries.size());
+    }
+}
@@ -0,0 +1,226 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import com.example.kv_store.entity.ValueChunkEntity;
+import com.example.kv_store.repository.KeyValueRepository;
+import com.example.kv_store.repository.ValueChunkRepository;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.SimpleTransactionStatus;
+
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * The engine over stub repositories and {@link RecordingJdbcTemplate}: what
+ * reaches the tables, and when.
+ */
+class JpaStorageEngineTest {
+
+    private final RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+    private final List<String> queries = new ArrayList<>(); // repository calls, with the rows flushed by then
+    private final Map<String, KeyValueEntity> rows = new ConcurrentHashMap<>(); // kv_store as JPA writes it
+    private final TreeMap<String, byte[]> chunkRows = new TreeMap<>(); // kv_value_chunk by "key/seq"
+    private final NoTransactions transactions = new NoTransactions();
+    private JpaStorageEngine engine;
+
+    @AfterEach
+    void close() {
+        if (engine != null) engine.close();
+    }
+
+    @Test
+    void indexQueriesFlushBufferedWritesFirst() {
+        engine = engine(1 << 20, true);
+        engine.save(entity("a", "1"));
+        engine.deleteById("b");
+        assertTrue(jdbc.table.isEmpty(), "still buffered");
+        assertArrayEquals("1".getBytes(), engine.findValid("a").orElseThrow().getValue(), "read from the buffer");
+
+        engine.findExpiring(0, Long.MAX_VALUE, 10);
+        engine.save(entity("c", "1"));
+        engine.countExpired(0);
+        engine.save(entity("d", "1"));
+        engine.scanPartition(0, null, 10);
+        assertEquals(List.of("findExpiring after [upsert 1, delete 1]",
+                "countExpired after [upsert 1, delete 1, upsert 1]",
+                "scanPartition after [upsert 1, delete 1, upsert 1, upsert 1]"), queries);
+    }
+
+    @Test
+    void largeValuesAreSplitIntoChunksAndReassembled() {
+        engine = engine(4, false);
+        engine.save(entity("big", "0123456789"));
+        engine.save(entity("small", "0123"));
+
+        assertEquals(List.of("big/0", "big/1", "big/2"), new ArrayList<>(chunkRows.keySet()));
+        assertArrayEquals("89".getBytes(), chunkRows.get("big/2"));
+        KeyValueEntity head = rows.get("big");
+        assertEquals(3, head.getChunkCount());
+        assertEquals(0, head.getValue().length, "the head row carries no value");
+        assertEquals(0, rows.get("small").getChunkCount());
+
+        assertArrayEquals("0123456789".getBytes(), engine.findValid("big").orElseThrow().getValue());
+        Map<String, String> found = new TreeMap<>();
+        engine.findAllValid(List.of("big", "small")).forEach(e -> found.put(e.getKey(), new String(e.getValue())));
+        assertEquals(Map.of("big", "0123456789", "small", "0123"), found);
+
+        engine.save(entity("big", "01"));
+        assertTrue(chunkRows.isEmpty(), "an inline rewrite drops the chunks");
+        assertArrayEquals("01".getBytes(), engine.findValid("big").orElseThrow().getValue());
+        engine.save(entity("big", "012345"));
+        engine.deleteById("big");
+        assertTrue(chunkRows.isEmpty());
+        assertEquals(Optional.empty(), engine.findValid("big"));
+    }
+
+    @Test
+    void chunkedWritesBypassWriteBehindAfterFlushingIt() {
+        engine = engine(4, true);
+        engine.save(entity("a", "1"));
+        engine.save(entity("b", "1"));
+        assertTrue(jdbc.table.isEmpty(), "still buffered");
+
+        engine.save(entity("a", "0123456789"));
+        assertEquals(List.of("save a (3 chunks) after [upsert 2]"), queries,
+                "the older buffered write of a went out before its chunks");
+        assertArrayEquals("0123456789".getBytes(), engine.findValid("a").orElseThrow().getValue());
+        assertEquals(List.of("upsert 2"), jdbc.statements, "the chunked value itself is not buffered");
+    }
+
+    @Test
+    void replacingAChunkedValueIsOneTransactionPastTheBuffer() {
+        engine = engine(4, true);
+        engine.save(entity("big", "0123456789"));
+        engine.save(entity("gone", "0123456789"));
+        int commits = transactions.commits;
+
+        engine.save(entity("big", "01"));
+        engine.deleteById("gone");
+        assertEquals(commits + 2, transactions.commits, "chunks and head row change together");
+        assertTrue(chunkRows.isEmpty());
+        assertArrayEquals("01".getBytes(), rows.get("big").getValue(), "the head row is not left to the buffer");
+        assertFalse(rows.containsKey("gone"));
+        assertTrue(jdbc.statements.isEmpty(), "nothing was buffered");
+
+        engine.save(entity("big", "23"));
+        assertEquals(commits + 2, transactions.commits, "no chunks left: buffered as usual");
+        assertArrayEquals("01".getBytes(), rows.get("big").getValue());
+        assertArrayEquals("23".getBytes(), engine.findValid("big").orElseThrow().getValue());
+    }
+
+    private JpaStorageEngine engine(int chunkBytes, boolean writeBehind) {
+        KeyValueRepository repo = stub(KeyValueRepository.class);
+        ValueChunkRepository chunks = stub(ValueChunkRepository.class);
+        return new JpaStorageEngine(repo, chunks, transactions, jdbc, chunkBytes,
+                writeBehind, "buffer", 100, 60_000, 1_000, 5_000);
+    }
+
+    /**
+     * Keeps rows written through JPA in memory, answers the index queries
+     * with nothing and records when they, and head-row saves, ran.
+     */
+    @SuppressWarnings("unchecked")
+    private <T> T stub(Class<T> repository) {
+        boolean chunkRepo = repository == ValueChunkRepository.class;
+        Object proxy = Proxy.newProxyInstance(getClass().getClassLoader(), new Class<?>[]{repository},
+                (self, method, args) -> switch (chunkRepo ? "chunks." + method.getName() : method.getName()) {
+                    case "chunks.count" -> (long) chunkRows.size();
+                    case "chunks.saveAll" -> {
+                        for (ValueChunkEntity c : (Iterable<ValueChunkEntity>) args[0]) {
+                            chunkRows.put(c.getId().getKey() + "/" + c.getId().getSeq(), c.getData());
+                        }
+                        yield args[0];
+                    }
+                    case "chunks.findByKeys" -> {
+                        List<ValueChunkEntity> found = new ArrayList<>();
+                        chunkRows.forEach((id, data) -> {
+                            String key = id.substring(0, id.lastIndexOf('/'));
+                            int seq = Integer.parseInt(id.substring(id.lastIndexOf('/') + 1));
+                            if (((Collection<String>) args[0]).contains(key)) {
+                                found.add(new ValueChunkEntity(new ValueChunkEntity.ChunkId(key, seq), data));
+                            }
+                        });
+                        yield found;
+                    }
+                    case "chunks.findChunkedKeys" -> ((Collection<String>) args[0]).stream()
+                            .filter(key -> chunkRows.containsKey(key + "/0")).toList();
+                    case "chunks.deleteByKeys" -> {
+                        int before = chunkRows.size();
+                        chunkRows.keySet().removeIf(id ->
+                                ((Collection<String>) args[0]).contains(id.substring(0, id.lastIndexOf('/'))));
+                        yield before - chunkRows.size();
+                    }
+                    case "save" -> {
+                        KeyValueEntity e = (KeyValueEntity) args[0];
+                        if (e.getChunkCount() > 0) {
+                            synchronized (jdbc.statements) {
+                                queries.add("save " + e.getKey() + " (" + e.getChunkCount() + " chunks) after "
+                                        + jdbc.statements);
+                            }
+                        }
+                        rows.put(e.getKey(), e);
+                        yield e;
+                    }
+                    case "saveAll" -> {
+                        for (KeyValueEntity e : (Iterable<KeyValueEntity>) args[0]) {
+                            rows.put(e.getKey(), e);
+                        }
+                        yield args[0];
+                    }
+                    case "findValid" -> Optional.ofNullable(rows.get((String) args[0]));
+                    case "findAllValid" -> ((Collection<String>) args[0]).stream()
+                            .map(rows::get).filter(e -> e != null).toList();
+                    case "deleteAllByIdInBatch" -> {
+                        ((Iterable<String>) args[0]).forEach(rows::remove);
+                        yield null;
+                    }
+                    case "count" -> (long) rows.size();
+                    case "findExpiring", "scanPartition", "countExpired" -> {
+                        synchronized (jdbc.statements) {
+                            queries.add(method.getName() + " after " + jdbc.statements);
+                        }
+                        yield method.getName().equals("countExpired") ? 0L : List.of();
+                    }
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+        return repository.cast(proxy);
+    }
+
+    private static KeyValueEntity entity(String key, String value) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue(value.getBytes());
+        return e;
+    }
+
+    private static final class NoTransactions implements PlatformTransactionManager {
+
+        int commits;
+
+        @Override
+        public TransactionStatus getTransaction(TransactionDefinition definition) {
+            return new SimpleTransactionStatus();
+        }
+
+        @Override
+        public void commit(TransactionStatus status) {
+            commits++;
+        }
+
+        @Override
+        public void rollback(TransactionStatus status) {
+        }
+    }
+}
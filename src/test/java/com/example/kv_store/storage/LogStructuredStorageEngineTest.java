@@ -0,0 +1,214 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LogStructuredStorageEngineTest {
+
+    private static final int PARTITION = 3;
+
+    @TempDir
+    Path dir;
+
+    private LogStructuredStorageEngine engine;
+
+    @AfterEach
+    void close() {
+        if (engine != null) engine.close();
+    }
+
+    @Test
+    void restartReplaysPutsOverwritesDeletesAndExpiry() throws IOException {
+        engine = open(1 << 16);
+        LocalDateTime expireAt = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MILLIS);
+        for (int i = 0; i < 100; i++) {
+            engine.save(entity("key-" + i, "v1-" + i, i + 1, null));
+        }
+        engine.save(entity("key-7", "v2", 500, null));
+        engine.deleteById("key-8");
+        engine.save(entity("ttl", "soon", 600, expireAt));
+
+        engine = reopen(1 << 16);
+        assertEquals("v2", value("key-7"));
+        assertEquals(500, engine.findValid("key-7").orElseThrow().getVersion());
+        assertTrue(engine.findValid("key-8").isEmpty());
+        assertEquals("v1-99", value("key-99"));
+        assertEquals(expireAt, engine.findValid("ttl").orElseThrow().getExpireAt());
+        assertEquals(List.of("ttl"), engine.findExpiring(PARTITION, Long.MAX_VALUE, 10).stream()
+                .map(ExpiryEntry::key).toList());
+        assertEquals(99, engine.scanPartition(PARTITION, null, "key-", 1_000).size());
+    }
+
+    @Test
+    void tornLastRecordIsDroppedAndOverwrittenAfterRestart() throws IOException {
+        engine = open(1 << 16);
+        engine.save(entity("a", "first", 1, null));
+        engine.save(entity("b", "second", 2, null));
+        engine.save(entity("c", "third", 3, null));
+        engine.close();
+
+        // the write of "c" only half reached the disk
+        int offset = length("a", "first") + length("b", "second");
+        flipByte(segment(1), offset + length("c", "third") - 1);
+
+        engine = open(1 << 16);
+        assertEquals("first", value("a"));
+        assertEquals("second", value("b"));
+        assertTrue(engine.findValid("c").isEmpty());
+
+        engine.save(entity("d", "after", 4, null)); // lands where the torn record was
+        engine = reopen(1 << 16);
+        assertEquals("after", value("d"));
+        assertEquals("second", value("b"));
+        assertTrue(engine.findValid("c").isEmpty());
+    }
+
+    @Test
+    void headerCutShortEndsTheScan() throws IOException {
+        engine = open(1 << 16);
+        engine.save(entity("a", "first", 1, null));
+        engine.close();
+
+        // a header claiming more bytes than the segment holds
+        try (FileChannel ch = FileChannel.open(segment(1), StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate(LogRecord.HEADER_SIZE);
+            header.putInt(0).put(LogRecord.PUT_VERSIONED).putLong(0).putInt(PARTITION).putInt(1).putInt(1 << 20).flip();
+            ch.write(header, length("a", "first"));
+        }
+        engine = open(1 << 16);
+        assertEquals("first", value("a"));
+        engine.save(entity("b", "next", 2, null));
+        engine = reopen(1 << 16);
+        assertEquals("next", value("b"));
+    }
+
+    @Test
+    void corruptLiveRecordFailsTheReadInsteadOfReturningGarbage() throws IOException {
+        engine = open(1 << 16);
+        engine.save(entity("a", "first", 1, null));
+        engine.save(entity("b", "second", 2, null));
+        flipByte(segment(1), length("a", "first") - 1); // shows through the shared mapping
+
+        assertThrows(IllegalStateException.class, () -> engine.findValid("a"));
+        assertThrows(IllegalStateException.class, () -> engine.openValid("a"));
+        assertEquals("second", value("b"));
+        assertEquals(2L, engine.stats().get("corruptReads"));
+    }
+
+    @Test
+    void compactionKeepsLiveKeysTombstonesAndExpiry() throws IOException {
+        int segmentBytes = 512;
+        engine = open(segmentBytes);
+        LocalDateTime expireAt = LocalDateTime.now().plusHours(1).truncatedTo(ChronoUnit.MILLIS);
+        for (int i = 0; i < 20; i++) {
+            engine.save(entity("key-" + i, "first-value-of-" + i + "-padded-to-a-few-dozen-bytes", i + 1, null));
+        }
+        engine.save(entity("ttl", "expires-later", 100, expireAt));
+        for (int i = 0; i < 10; i++) {
+            engine.save(entity("key-" + i, "second-" + i, 200 + i, null));
+        }
+        for (int i = 10; i < 15; i++) {
+            engine.deleteById("key-" + i);
+        }
+        int before = (Integer) engine.stats().get("segments");
+
+        engine.compact();
+        Map<String, Object> stats = engine.stats();
+        assertTrue((Long) stats.get("compactedSegments") > 0, stats.toString());
+        assertTrue((Integer) stats.get("segments") < before + (Long) stats.get("compactedSegments"));
+        assertCompactedState(expireAt);
+
+        engine = reopen(segmentBytes);
+        assertCompactedState(expireAt);
+    }
+
+    @Test
+    void legacyAndVersionedRecordsReadAfterRestart() throws IOException {
+        LogSegment segment = LogSegment.create(dir, 1, 1 << 16);
+        segment.append(new LogRecord(LogRecord.PUT, 0L, PARTITION, "legacy", "old".getBytes(), 0L).encode());
+        segment.force();
+        segment.close();
+
+        engine = open(1 << 16);
+        KeyValueEntity legacy = engine.findValid("legacy").orElseThrow();
+        assertEquals("old", new String(legacy.getValue()));
+        assertEquals(0, legacy.getVersion(), "written before versions existed");
+        assertEquals("old", new String(engine.openValid("legacy").orElseThrow().toByteArray()));
+
+        engine.save(entity("versioned", "new", 42, null));
+        engine = reopen(1 << 16);
+        assertEquals(0, engine.findValid("legacy").orElseThrow().getVersion());
+        assertEquals(42, engine.findValid("versioned").orElseThrow().getVersion());
+        assertEquals("new", new String(engine.openValid("versioned").orElseThrow().toByteArray()));
+    }
+
+    private void assertCompactedState(LocalDateTime expireAt) {
+        for (int i = 0; i < 10; i++) {
+            assertEquals("second-" + i, value("key-" + i));
+            assertEquals(200 + i, engine.findValid("key-" + i).orElseThrow().getVersion());
+        }
+        for (int i = 10; i < 15; i++) {
+            assertTrue(engine.findValid("key-" + i).isEmpty(), "key-" + i + " stays deleted");
+        }
+        for (int i = 15; i < 20; i++) {
+            assertTrue(value("key-" + i).startsWith("first-value-of-" + i));
+        }
+        assertEquals(expireAt, engine.findValid("ttl").orElseThrow().getExpireAt());
+        assertEquals(1, engine.findExpiring(PARTITION, Long.MAX_VALUE, 10).size());
+    }
+
+    private LogStructuredStorageEngine open(int segmentBytes) throws IOException {
+        return new LogStructuredStorageEngine(dir.toString(), segmentBytes, 0.5, 60_000, 0, true);
+    }
+
+    private LogStructuredStorageEngine reopen(int segmentBytes) throws IOException {
+        engine.close();
+        engine = null;
+        return open(segmentBytes);
+    }
+
+    private String value(String key) {
+        return new String(engine.findValid(key).orElseThrow().getValue());
+    }
+
+    private Path segment(int id) {
+        return dir.resolve(LogSegment.fileName(id));
+    }
+
+    private static int length(String key, String value) {
+        return LogRecord.put(key, value.getBytes(), PARTITION, 0L, 0L).encode().length;
+    }
+
+    private static void flipByte(Path file, long position) throws IOException {
+        try (FileChannel ch = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            ByteBuffer b = ByteBuffer.allocate(1);
+            ch.read(b, position);
+            b.put(0, (byte) (b.get(0) ^ 1)).rewind();
+            ch.write(b, position);
+        }
+    }
+
+    private static KeyValueEntity entity(String key, String value, long version, LocalDateTime expireAt) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue(value.getBytes());
+        e.setPartitionId(PARTITION);
+        e.setVersion(version);
+        e.setExpireAt(expireAt);
+        return e;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.kv_store.storage;
+
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Stands in for MySQL under {@link WriteBehindBuffer}: applies its upserts and
+ * deletes to a map, and can hold statements back or fail them.
+ */
+class RecordingJdbcTemplate extends JdbcTemplate {
+
+    final Map<String, byte[]> table = new ConcurrentHashMap<>();
+    final List<String> statements = Collections.synchronizedList(new ArrayList<>());
+    final AtomicInteger failures = new AtomicInteger();
+    final AtomicInteger maxInFlight = new AtomicInteger();
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile CountDownLatch gate = new CountDownLatch(0);
+
+    void hold() {
+        gate = new CountDownLatch(1);
+    }
+
+    void release() {
+        gate.countDown();
+    }
+
+    @Override
+    public int update(String sql, Object... args) {
+        maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+        try {
+            if (!gate.await(10, TimeUnit.SECONDS)) throw new IllegalStateException("held too long");
+            if (failures.getAndDecrement() > 0) throw new DataAccessResourceFailureException("database down");
+            if (sql.startsWith("INSERT")) {
+                for (int i = 0; i < args.length; i += 5) {
+                    table.put((String) args[i], (byte[]) args[i + 1]);
+                }
+                statements.add("upsert " + args.length / 5);
+                return args.length / 5;
+            }
+            for (Object key : args) {
+                table.remove((String) key);
+            }
+            statements.add("delete " + args.length);
+            return args.length;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        } finally {
+            inFlight.decrementAndGet();
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package com.example.kv_store.storage;
+
+import com.example.kv_store.entity.KeyValueEntity;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WriteBehindBufferTest {
+
+    private static final long NEVER = 60_000; // linger: flushes happen only when asked for
+
+    private final RecordingJdbcTemplate jdbc = new RecordingJdbcTemplate();
+    private WriteBehindBuffer buffer;
+
+    @AfterEach
+    void close() {
+        jdbc.release();
+        jdbc.failures.set(0);
+        if (buffer != null) buffer.close();
+    }
+
+    @Test
+    void repeatedWritesToAKeyGoOutAsOneRow() {
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.BUFFER, 100, NEVER, 1_000, 5_000);
+        buffer.put(List.of(entity("a", "1")));
+        buffer.put(List.of(entity("a", "2")));
+        buffer.put(List.of(entity("b", "1")));
+        buffer.delete(List.of("b"));
+        buffer.put(List.of(entity("a", "3")));
+        buffer.delete(List.of("c"));
+
+        buffer.flushNow();
+        assertEquals(List.of("upsert 1", "delete 2"), jdbc.statements);
+        assertArrayEquals("3".getBytes(), jdbc.table.get("a"));
+        Map<String, Object> stats = buffer.stats();
+        assertEquals(3L, stats.get("coalesced"));
+        assertEquals(3L, stats.get("rowsFlushed"));
+        assertEquals(0, stats.get("buffered"));
+    }
+
+    @Test
+    void ackFlushWaitsForTheDatabaseAndAckBufferDoesNot() throws Exception {
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.FLUSH, 100, 1, 1_000, 5_000);
+        jdbc.hold();
+        CompletableFuture<Void> write = CompletableFuture.runAsync(() -> buffer.put(List.of(entity("a", "1"))));
+        Thread.sleep(100);
+        assertFalse(write.isDone(), "waits for the flush carrying it");
+        jdbc.release();
+        write.get(5, TimeUnit.SECONDS);
+        assertArrayEquals("1".getBytes(), jdbc.table.get("a"));
+        buffer.close();
+
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.BUFFER, 100, 1, 1_000, 5_000);
+        jdbc.hold();
+        assertTimeoutPreemptively(Duration.ofMillis(500), () -> buffer.put(List.of(entity("b", "1"))));
+        assertFalse(jdbc.table.containsKey("b"));
+        jdbc.release();
+    }
+
+    @Test
+    void bufferedWritesAreReadBeforeTheTable() {
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.BUFFER, 100, NEVER, 1_000, 5_000);
+        jdbc.table.put("gone", "old".getBytes());
+        assertEquals(Optional.empty(), buffer.lookup("a"), "nothing buffered: read the table");
+
+        buffer.put(List.of(entity("a", "1")));
+        buffer.delete(List.of("gone"));
+        assertArrayEquals("1".getBytes(), buffer.lookup("a").orElseThrow().orElseThrow().getValue());
+        assertEquals(Optional.of(Optional.empty()), buffer.lookup("gone"), "a buffered delete hides the row");
+
+        buffer.flushNow();
+        assertEquals(Optional.empty(), buffer.lookup("a"));
+        assertEquals(Optional.empty(), buffer.lookup("gone"));
+        assertFalse(jdbc.table.containsKey("gone"));
+    }
+
+    @Test
+    void closeWaitsForARunningFlushAndRetriesItsOwn() throws Exception {
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.BUFFER, 1, NEVER, 1_000, 5_000);
+        jdbc.hold();
+        buffer.put(List.of(entity("a", "1"))); // the flusher takes it and blocks in the database
+        Thread.sleep(50);
+        buffer.put(List.of(entity("a", "2")));
+        jdbc.failures.set(2);
+
+        CompletableFuture<Void> closed = CompletableFuture.runAsync(buffer::close);
+        Thread.sleep(100);
+        assertFalse(closed.isDone());
+        jdbc.release();
+        closed.get(5, TimeUnit.SECONDS);
+        buffer = null;
+
+        assertEquals(1, jdbc.maxInFlight.get(), "flushes never overlap");
+        assertArrayEquals("2".getBytes(), jdbc.table.get("a"), "the newer write lands last");
+    }
+
+    @Test
+    void closeFailsIfTheFinalDrainCannotBeWritten() {
+        buffer = new WriteBehindBuffer(jdbc, WriteBehindBuffer.Ack.BUFFER, 100, NEVER, 1_000, 300);
+        buffer.put(List.of(entity("a", "1")));
+        jdbc.failures.set(Integer.MAX_VALUE);
+
+        IllegalStateException e = assertThrows(IllegalStateException.class, buffer::close);
+        assertTrue(e.getMessage().contains("1 writes not flushed"), e.getMessage());
+        jdbc.failures.set(0);
+        buffer = null;
+    }
+
+    private static KeyValueEntity entity(String key, String value) {
+        KeyValueEntity e = new KeyValueEntity();
+        e.setKey(key);
+        e.setValue(value.getBytes());
+        return e;
+    }
+}
@@ -0,0 +1,279 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.replication.ReplicationBatch;
+import com.example.kv_store.replication.ReplicationOp;
+import com.example.kv_store.service.AtomicOp;
+import com.example.kv_store.service.AtomicResult;
+import com.example.kv_store.service.VersionedValue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Loopback "cluster" of one peer served over the binary transport from an
+ * in-memory map. Checks the binary protocol end to end; TransportBenchmark in
+ * the jmh profile compares its latency and throughput with HTTP forwarding.
+ */
+class BinaryTransportLoopbackTest {
+
+    private static final String PEER = "node-b";
+
+    private final Map<String, byte[]> store = new ConcurrentHashMap<>();
+    private BinaryTransportServer binaryServer;
+    private BinaryPeerClient binary;
+
+    @BeforeEach
+    void startCluster() throws IOException {
+        binaryServer = new BinaryTransportServer(new MapHandler(store), new InetSocketAddress("localhost", 0));
+        binary = new BinaryPeerClient(Map.of(PEER, new InetSocketAddress("localhost", binaryServer.port())), 4, 500, 10_000);
+    }
+
+    @AfterEach
+    void stopCluster() throws IOException {
+        binary.close();
+        binaryServer.close();
+    }
+
+    @Test
+    void binaryTransportRoundTrips() {
+        binary.put(PEER, "a", "1".getBytes(), null).join();
+        binary.putAll(PEER, Map.of("b", "2".getBytes(), "c", "3".getBytes()), Duration.ofSeconds(5)).join();
+
+        assertArrayEquals("1".getBytes(), binary.get(PEER, "a").join().orElseThrow());
+        assertTrue(binary.get(PEER, "missing").join().isEmpty());
+        Map<String, byte[]> values = binary.getAll(PEER, List.of("a", "b", "c", "missing")).join();
+        assertEquals(3, values.size());
+        assertArrayEquals("3".getBytes(), values.get("c"));
+
+        binary.delete(PEER, "a").join();
+        binary.deleteAll(PEER, List.of("b")).join();
+        assertEquals(List.of("c"), List.copyOf(store.keySet()));
+
+        ReplicationBatch batch = new ReplicationBatch("node-a", List.of(
+                ReplicationOp.put(7, "d", "4".getBytes(), 1234L, 3),
+                ReplicationOp.delete(8, "c")), 0);
+        assertEquals(8L, binary.replicate(PEER, batch).join());
+        assertArrayEquals("4".getBytes(), store.get("d"));
+        assertFalse(store.containsKey("c"));
+
+        assertArrayEquals(new long[]{(3L << 32) | 1, (5L << 32) | 7},
+                binary.merkleHashes(PEER, new int[]{3, 5}, new int[]{1, 7}).join());
+        assertEquals(Map.of("d", 1L), binary.merkleEntries(PEER, 0, new int[]{0, 1}).join());
+
+        AtomicResult appended = binary.atomic(PEER, AtomicOp.append("d", "5".getBytes())).join();
+        assertEquals(AtomicResult.Status.APPLIED, appended.status());
+        assertArrayEquals("45".getBytes(), appended.value());
+        assertEquals(1, appended.version());
+
+        CompletableFuture<Optional<byte[]>> unknown = binary.get("node-x", "a");
+        assertThrows(Exception.class, unknown::join);
+    }
+
+    @Test
+    void connectToAPeerThatDoesNotAnswerNeverBlocksTheCaller() throws Exception {
+        // a listener whose accept queue is full: further connects get no SYN-ACK
+        try (ServerSocket blackhole = new ServerSocket(0, 1, InetAddress.getLoopbackAddress())) {
+            List<Socket> backlog = new ArrayList<>();
+            try {
+                for (int i = 0; i < 8; i++) {
+                    Socket s = new Socket();
+                    s.connect(blackhole.getLocalSocketAddress(), 200);
+                    backlog.add(s);
+                }
+            } catch (IOException full) {
+                // queue is full
+            }
+            try (BinaryPeerClient client = new BinaryPeerClient(
+                    Map.of(PEER, (InetSocketAddress) blackhole.getLocalSocketAddress()), 1, 200, 10_000)) {
+                long start = System.nanoTime();
+                CompletableFuture<Optional<byte[]>> first = client.get(PEER, "a");
+                CompletableFuture<Optional<byte[]>> second = client.get(PEER, "b");
+                assertTrue(System.nanoTime() - start < 100_000_000L, "the caller does not wait for the connect");
+
+                assertThrows(Exception.class, () -> first.get(2, TimeUnit.SECONDS));
+                assertThrows(Exception.class, () -> second.get(2, TimeUnit.SECONDS));
+                assertEquals(0, client.pendingCalls());
+            } finally {
+                for (Socket s : backlog) {
+                    s.close();
+                }
+            }
+        }
+    }
+
+    @Test
+    void callsToAPeerThatStopsAnsweringTimeOutAndAreForgotten() throws Exception {
+        try (ServerSocket silent = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+             BinaryPeerClient client = new BinaryPeerClient(
+                     Map.of(PEER, (InetSocketAddress) silent.getLocalSocketAddress()), 1, 500, 150)) {
+            List<CompletableFuture<Optional<byte[]>>> calls = new ArrayList<>();
+            for (int i = 0; i < 20; i++) {
+                calls.add(client.get(PEER, "key-" + i));
+            }
+            try (Socket accepted = silent.accept()) {
+                for (CompletableFuture<Optional<byte[]>> call : calls) {
+                    ExecutionException e = assertThrows(ExecutionException.class, () -> call.get(2, TimeUnit.SECONDS));
+                    assertInstanceOf(TimeoutException.class, e.getCause());
+                }
+                assertEquals(0, client.pendingCalls());
+
+                // under a request deadline the call gives up when the deadline does
+                long start = System.currentTimeMillis();
+                CompletableFuture<Optional<byte[]>> bounded =
+                        Deadline.within(start + 50, () -> client.get(PEER, "late"));
+                assertThrows(ExecutionException.class, () -> bounded.get(2, TimeUnit.SECONDS));
+                assertTrue(System.currentTimeMillis() - start < 140, "deadline, not the call timeout");
+                assertEquals(0, client.pendingCalls());
+            }
+        }
+    }
+
+    @Test
+    void aSlowCallerDoesNotHoldUpTheResponsesBehindIt() throws Exception {
+        store.put("a", "1".getBytes());
+        try (BinaryPeerClient client = new BinaryPeerClient(
+                Map.of(PEER, new InetSocketAddress("localhost", binaryServer.port())), 1, 500, 10_000)) {
+            Thread caller = Thread.currentThread();
+            CountDownLatch release = new CountDownLatch(1);
+            CompletableFuture<Void> slow = client.get(PEER, "a").thenRun(() -> {
+                if (Thread.currentThread() == caller) return; // answered before this was attached
+                try {
+                    release.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+
+            // the same connection reads the next response while the first caller is still busy
+            assertArrayEquals("1".getBytes(), client.get(PEER, "a").get(2, TimeUnit.SECONDS).orElseThrow());
+            release.countDown();
+            slow.get(2, TimeUnit.SECONDS);
+        }
+    }
+
+    private record MapHandler(Map<String, byte[]> store) implements TransportHandler {
+
+        @Override
+        public Optional<byte[]> get(String key) {
+            return Optional.ofNullable(store.get(key));
+        }
+
+        @Override
+        public Optional<byte[]> getReplica(String key, long maxStalenessMs) {
+            return get(key);
+        }
+
+        @Override
+        public void put(String key, byte[] value, Duration ttl) {
+            store.put(key, value);
+        }
+
+        @Override
+        public void delete(String key) {
+            store.remove(key);
+        }
+
+        @Override
+        public Map<String, byte[]> getAll(Collection<String> keys) {
+            Map<String, byte[]> result = new ConcurrentHashMap<>();
+            keys.forEach(k -> {
+                byte[] v = store.get(k);
+                if (v != null) result.put(k, v);
+            });
+            return result;
+        }
+
+        @Override
+        public void putAll(Map<String, byte[]> entries, Duration ttl) {
+            store.putAll(entries);
+        }
+
+        @Override
+        public void deleteAll(Collection<String> keys) {
+            keys.forEach(store::remove);
+        }
+
+        @Override
+        public AtomicResult atomic(AtomicOp op) {
+            byte[] appended = (new String(store.getOrDefault(op.key(), new byte[0])) + new String(op.operand())).getBytes();
+            store.put(op.key(), appended);
+            return new AtomicResult(AtomicResult.Status.APPLIED, appended, op.expectedVersion() + 1);
+        }
+
+        @Override
+        public long replicate(ReplicationBatch batch) {
+            for (ReplicationOp op : batch.ops()) {
+                if (op.op() == ReplicationOp.Type.PUT) store.put(op.key(), op.value());
+                else store.remove(op.key());
+            }
+            return batch.ops().get(batch.ops().size() - 1).seq();
+        }
+
+        @Override
+        public Map<String, byte[]> scan(int partitionId, String afterKey, String prefix, int limit) {
+            Map<String, byte[]> page = new LinkedHashMap<>();
+            store.keySet().stream().sorted()
+                    .filter(k -> afterKey == null || k.compareTo(afterKey) > 0)
+                    .filter(k -> prefix == null || k.startsWith(prefix))
+                    .limit(limit)
+                    .forEach(k -> page.put(k, store.get(k)));
+            return page;
+        }
+
+        @Override
+        public Optional<byte[]> getLeased(String key, String holder, long leaseMs) {
+            return get(key);
+        }
+
+        @Override
+        public Optional<VersionedValue> getVersioned(String key) {
+            return get(key).map(v -> new VersionedValue(v, 1));
+        }
+
+        @Override
+        public void readRepair(String key, Collection<String> staleNodes) {
+        }
+
+        @Override
+        public void invalidate(Collection<String> keys) {
+        }
+
+        @Override
+        public long[] merkleHashes(int[] partitions, int[] nodes) {
+            long[] hashes = new long[partitions.length];
+            for (int i = 0; i < hashes.length; i++) {
+                hashes[i] = ((long) partitions[i] << 32) | nodes[i];
+            }
+            return hashes;
+        }
+
+        @Override
+        public Map<String, Long> merkleEntries(int partitionId, int[] leaves) {
+            Map<String, Long> entries = new HashMap<>();
+            store.forEach((k, v) -> entries.put(k, (long) v.length));
+            return entries;
+        }
+    }
+}
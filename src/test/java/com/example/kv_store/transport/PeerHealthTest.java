@@ -0,0 +1,50 @@
+package com.example.kv_store.transport;
+
+import com.example.kv_store.metrics.HotPathMetrics;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PeerHealthTest {
+
+    @Test
+    void circuitOpensAfterFailuresAndClosesAfterSuccessfulProbe() throws Exception {
+        PeerHealth health = new PeerHealth(new HotPathMetrics(true, 1), 3, 50, true, 0.95, 2, 20);
+
+        health.onFailure("node2");
+        health.onFailure("node2");
+        assertTrue(health.allow("node2"));
+        health.onFailure("node2");
+        assertFalse(health.allow("node2"), "third failure in a row opens the circuit");
+        assertTrue(health.isOpen("node2"));
+        assertTrue(health.allow("node3"), "other peers are unaffected");
+
+        Thread.sleep(60);
+        assertFalse(health.isOpen("node2"), "cooled down, waiting for a probe");
+        assertTrue(health.allow("node2"), "one probe goes through");
+        assertFalse(health.allow("node2"), "only one");
+        health.onFailure("node2");
+        assertFalse(health.allow("node2"), "a failed probe reopens the circuit");
+
+        Thread.sleep(60);
+        assertTrue(health.allow("node2"));
+        health.onSuccess("node2");
+        assertTrue(health.allow("node2"));
+        assertFalse(health.isOpen("node2"));
+    }
+
+    @Test
+    void hedgeDelayFollowsForwardLatency() {
+        HotPathMetrics metrics = new HotPathMetrics(true, 1);
+        PeerHealth health = new PeerHealth(metrics, 3, 50, true, 0.95, 2, 20);
+        assertEquals(20, health.hedgeDelayMillis("node2"), "initial delay until there are enough samples");
+
+        HotPathMetrics warmed = new HotPathMetrics(true, 1);
+        for (int i = 0; i < 1_000; i++) {
+            long start = System.nanoTime() - (i < 900 ? 1_000_000 : 40_000_000); // 90% at 1ms, 10% at 40ms
+            warmed.record("forward.get", "node2", start);
+        }
+        long delay = new PeerHealth(warmed, 3, 50, true, 0.95, 2, 20).hedgeDelayMillis("node2");
+        assertTrue(delay >= 39 && delay <= 42, "p95 is in the slow tail: " + delay);
+    }
+}